@@ -0,0 +1,50 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import org.springframework.core.NestedRuntimeException;
+
+/**
+ * Exception thrown by {@link BulkheadInterceptor} when an invocation
+ * could not enter the bulkhead for its target within the maximum wait time.
+ *
+ * @since 2.5.7
+ * @see BulkheadInterceptor
+ */
+public class BulkheadFullException extends NestedRuntimeException {
+
+	private final String targetKey;
+
+
+	/**
+	 * Create a new BulkheadFullException.
+	 * @param msg the detail message
+	 * @param targetKey the key of the target whose bulkhead is full
+	 */
+	public BulkheadFullException(String msg, String targetKey) {
+		super(msg);
+		this.targetKey = targetKey;
+	}
+
+	/**
+	 * Return the key of the target whose bulkhead is full.
+	 */
+	public String getTargetKey() {
+		return this.targetKey;
+	}
+
+}
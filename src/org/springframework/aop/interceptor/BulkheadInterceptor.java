@@ -0,0 +1,270 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ConcurrencyThrottleSupport;
+
+/**
+ * Interceptor that implements the bulkhead pattern: a separate concurrency
+ * limit per target, so that a slow target (such as a remote service or a
+ * database) can only tie up a bounded number of caller threads, leaving
+ * the remaining threads available for invocations of other targets.
+ *
+ * <p>In contrast to {@link ConcurrencyThrottleInterceptor}, which limits
+ * concurrency for all invocations passing through it, this interceptor keeps
+ * a separate pool of permits per target. Invocations that find their target's
+ * pool exhausted wait up to the {@link #setMaxWaitTime maximum wait time}
+ * and are rejected with a {@link BulkheadFullException} afterwards.
+ *
+ * <p>By default, targets are distinguished by identity: by the service URL of
+ * remote service proxies, by the bean name if exposed through
+ * {@link ExposeBeanNameAdvisors}, or else by the class and identity hash code of
+ * the target object (see {@link ExposeTargetKeyInterceptor#determineTargetKey}).
+ * Override {@link #getTargetKey} for a different granularity, e.g. per class
+ * or per method.
+ *
+ * <p>Bulkhead statistics are exposed through public methods, so that this
+ * interceptor can be exported as an MBean through Spring's
+ * {@link org.springframework.jmx.export.MBeanExporter} as-is.
+ *
+ * @since 2.5.7
+ * @see ConcurrencyThrottleInterceptor
+ * @see CircuitBreakerInterceptor
+ */
+public class BulkheadInterceptor implements MethodInterceptor {
+
+	/**
+	 * Default maximum number of concurrent invocations per target: 10.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_CALLS = 10;
+
+
+	private int maxConcurrentCalls = DEFAULT_MAX_CONCURRENT_CALLS;
+
+	private Map targetLimits = new HashMap();
+
+	private long maxWaitTime = 0;
+
+	private boolean fair = false;
+
+	/** Bulkheads keyed by target key, sorted for display purposes */
+	private final Map bulkheads = new TreeMap();
+
+
+	/**
+	 * Set the maximum number of concurrent invocations per target,
+	 * unless overridden through the "targetLimits" property.
+	 * Default is {@link #DEFAULT_MAX_CONCURRENT_CALLS}.
+	 * @see #setTargetLimits
+	 */
+	public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+		Assert.isTrue(maxConcurrentCalls > 0, "'maxConcurrentCalls' must be positive");
+		this.maxConcurrentCalls = maxConcurrentCalls;
+	}
+
+	/**
+	 * Return the maximum number of concurrent invocations per target.
+	 */
+	public int getMaxConcurrentCalls() {
+		return this.maxConcurrentCalls;
+	}
+
+	/**
+	 * Specify the maximum number of concurrent invocations for specific targets,
+	 * with target keys as keys and Integers (or Strings) as values. With the
+	 * default target keys, these are bean names or remote service URLs.
+	 * @see #getTargetKey
+	 */
+	public void setTargetLimits(Map targetLimits) {
+		this.targetLimits = (targetLimits != null ? targetLimits : new HashMap());
+	}
+
+	/**
+	 * Set the maximum time (in milliseconds) that an invocation waits for a
+	 * permit of its target's bulkhead. Default is 0, rejecting invocations
+	 * right away if the target's bulkhead is full; -1 waits indefinitely.
+	 */
+	public void setMaxWaitTime(long maxWaitTime) {
+		this.maxWaitTime = maxWaitTime;
+	}
+
+	/**
+	 * Return the maximum time (in milliseconds) that an invocation waits for a permit.
+	 */
+	public long getMaxWaitTime() {
+		return this.maxWaitTime;
+	}
+
+	/**
+	 * Set whether waiting invocations should be granted permits in arrival order.
+	 * Default is "false". Only applies on JDK 1.5 or higher.
+	 * @see ConcurrencyThrottleSupport#setFair
+	 */
+	public void setFair(boolean fair) {
+		this.fair = fair;
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		String targetKey = getTargetKey(invocation);
+		Bulkhead bulkhead = getBulkhead(targetKey);
+		if (!bulkhead.enter(this.maxWaitTime)) {
+			throw new BulkheadFullException("Bulkhead for target [" + targetKey + "] is full: " +
+					bulkhead.getConcurrencyLimit() + " concurrent invocations in progress - not permitting invocation of " +
+					invocation.getMethod(), targetKey);
+		}
+		try {
+			return invocation.proceed();
+		}
+		finally {
+			bulkhead.exit();
+		}
+	}
+
+	/**
+	 * Determine the key of the target that the given invocation goes to.
+	 * Invocations with the same key share a bulkhead.
+	 * <p>The default implementation identifies the target by the exposed service URL
+	 * or bean name, or else by the class and identity hash code of the target object.
+	 * @param invocation the current invocation
+	 * @return the target key (never <code>null</code>)
+	 * @see ExposeTargetKeyInterceptor#determineTargetKey
+	 */
+	protected String getTargetKey(MethodInvocation invocation) {
+		return ExposeTargetKeyInterceptor.determineTargetKey(invocation);
+	}
+
+	private Bulkhead getBulkhead(String targetKey) {
+		synchronized (this.bulkheads) {
+			Bulkhead bulkhead = (Bulkhead) this.bulkheads.get(targetKey);
+			if (bulkhead == null) {
+				bulkhead = new Bulkhead();
+				bulkhead.setFair(this.fair);
+				bulkhead.setConcurrencyLimit(determineLimit(targetKey));
+				this.bulkheads.put(targetKey, bulkhead);
+			}
+			return bulkhead;
+		}
+	}
+
+	private int determineLimit(String targetKey) {
+		Object limit = this.targetLimits.get(targetKey);
+		if (limit instanceof Number) {
+			return ((Number) limit).intValue();
+		}
+		if (limit instanceof String) {
+			return Integer.parseInt((String) limit);
+		}
+		return this.maxConcurrentCalls;
+	}
+
+	private Bulkhead getExistingBulkhead(String targetKey) {
+		synchronized (this.bulkheads) {
+			Bulkhead bulkhead = (Bulkhead) this.bulkheads.get(targetKey);
+			if (bulkhead == null) {
+				throw new IllegalArgumentException("No bulkhead for target [" + targetKey + "]");
+			}
+			return bulkhead;
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Management operations, suitable for JMX export
+	//---------------------------------------------------------------------
+
+	/**
+	 * Return the keys of all targets that have been invoked so far.
+	 */
+	public String[] getTargetKeys() {
+		synchronized (this.bulkheads) {
+			return (String[]) this.bulkheads.keySet().toArray(new String[this.bulkheads.size()]);
+		}
+	}
+
+	/**
+	 * Return the number of invocations of the given target currently in progress.
+	 */
+	public int getActiveCount(String targetKey) {
+		return getExistingBulkhead(targetKey).getConcurrencyCount();
+	}
+
+	/**
+	 * Return the number of invocations of the given target that have been rejected.
+	 */
+	public long getRejectedCount(String targetKey) {
+		return getExistingBulkhead(targetKey).getRejectedCount();
+	}
+
+	/**
+	 * Change the maximum number of concurrent invocations for the given target at runtime.
+	 */
+	public void setConcurrencyLimit(String targetKey, int limit) {
+		Assert.isTrue(limit > 0, "Concurrency limit must be positive");
+		getBulkhead(targetKey).setConcurrencyLimit(limit);
+	}
+
+	/**
+	 * Return a one-line summary per target, with active and rejected invocations.
+	 */
+	public String[] getBulkheadSummary() {
+		String[] targetKeys = getTargetKeys();
+		String[] summary = new String[targetKeys.length];
+		for (int i = 0; i < targetKeys.length; i++) {
+			Bulkhead bulkhead = getExistingBulkhead(targetKeys[i]);
+			summary[i] = targetKeys[i] + ": active = " + bulkhead.getConcurrencyCount() + " of " +
+					bulkhead.getConcurrencyLimit() + ", rejected = " + bulkhead.getRejectedCount();
+		}
+		return summary;
+	}
+
+
+	/**
+	 * The bulkhead for a single target, based on the concurrency throttle.
+	 */
+	private static class Bulkhead extends ConcurrencyThrottleSupport {
+
+		private long rejectedCount = 0;
+
+		public boolean enter(long maxWaitTime) {
+			if (tryBeforeAccess(maxWaitTime)) {
+				return true;
+			}
+			synchronized (this) {
+				this.rejectedCount++;
+			}
+			return false;
+		}
+
+		public void exit() {
+			afterAccess();
+		}
+
+		public synchronized long getRejectedCount() {
+			return this.rejectedCount;
+		}
+	}
+
+}
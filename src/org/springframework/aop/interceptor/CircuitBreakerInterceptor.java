@@ -0,0 +1,629 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Interceptor that implements the circuit breaker pattern per target,
+ * failing fast instead of letting callers pile up waiting for a target
+ * (such as a remote service or a database) that is failing or slow.
+ *
+ * <p>Each target has its own circuit, which starts out {@link #STATE_CLOSED closed}:
+ * invocations pass through, with their outcomes being recorded in a sliding
+ * window of the most recent {@link #setSlidingWindowSize invocations}. Once the
+ * window holds the {@link #setMinimumNumberOfCalls minimum number of invocations},
+ * a failure rate at or above the {@link #setFailureRateThreshold failure rate
+ * threshold} (or a rate of invocations slower than the {@link #setSlowCallDurationThreshold
+ * slow call duration threshold} at or above the {@link #setSlowCallRateThreshold
+ * slow call rate threshold}) opens the circuit. While {@link #STATE_OPEN open},
+ * invocations are rejected with a {@link CircuitBreakerOpenException}. After the
+ * {@link #setOpenStateDuration open state duration}, the circuit becomes
+ * {@link #STATE_HALF_OPEN half-open}, permitting a limited number of probe
+ * invocations: the circuit closes again if they succeed and opens again otherwise,
+ * or if they do not complete within the {@link #setHalfOpenStateTimeout half-open
+ * state timeout}.
+ *
+ * <p>By default, targets are distinguished by identity: by the service URL of
+ * remote service proxies, by the bean name if exposed through
+ * {@link ExposeBeanNameAdvisors}, or else by the class and identity hash code of
+ * the target object (see {@link ExposeTargetKeyInterceptor#determineTargetKey}).
+ * Override {@link #getTargetKey} for a different granularity, e.g. per class
+ * or per method.
+ *
+ * <p>Circuit states and statistics are exposed through public methods, so that
+ * this interceptor can be exported as an MBean through Spring's
+ * {@link org.springframework.jmx.export.MBeanExporter} as-is. State transitions
+ * are reported to {@link #setListeners CircuitBreakerListeners}, for example a
+ * {@link org.springframework.context.event.CircuitBreakerEventPublisher} that
+ * publishes them as application events.
+ *
+ * @since 2.5.7
+ * @see CircuitBreakerListener
+ * @see BulkheadInterceptor
+ */
+public class CircuitBreakerInterceptor implements MethodInterceptor {
+
+	/** The circuit is closed: invocations pass through */
+	public static final String STATE_CLOSED = "CLOSED";
+
+	/** The circuit is open: invocations are rejected */
+	public static final String STATE_OPEN = "OPEN";
+
+	/** The circuit is half-open: a limited number of probe invocations pass through */
+	public static final String STATE_HALF_OPEN = "HALF_OPEN";
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private float failureRateThreshold = 0.5f;
+
+	private long slowCallDurationThreshold = 0;
+
+	private float slowCallRateThreshold = 1.0f;
+
+	private int slidingWindowSize = 20;
+
+	private int minimumNumberOfCalls = 10;
+
+	private long openStateDuration = 30000;
+
+	private int permittedCallsInHalfOpenState = 3;
+
+	private long halfOpenStateTimeout = 60000;
+
+	private Class[] ignoredExceptions = new Class[0];
+
+	private CircuitBreakerListener[] listeners = new CircuitBreakerListener[0];
+
+	/** Circuits keyed by target key, sorted for display purposes */
+	private final Map circuits = new TreeMap();
+
+
+	/**
+	 * Set the failure rate (between 0 and 1) at or above which the circuit
+	 * opens. Default is 0.5, i.e. 50% of the invocations in the sliding window.
+	 */
+	public void setFailureRateThreshold(float failureRateThreshold) {
+		Assert.isTrue(failureRateThreshold > 0 && failureRateThreshold <= 1,
+				"'failureRateThreshold' must be greater than 0 and not greater than 1");
+		this.failureRateThreshold = failureRateThreshold;
+	}
+
+	/**
+	 * Return the failure rate at or above which the circuit opens.
+	 */
+	public float getFailureRateThreshold() {
+		return this.failureRateThreshold;
+	}
+
+	/**
+	 * Set the duration (in milliseconds) above which an invocation counts as slow.
+	 * Default is 0, not considering invocation durations at all.
+	 * @see #setSlowCallRateThreshold
+	 */
+	public void setSlowCallDurationThreshold(long slowCallDurationThreshold) {
+		this.slowCallDurationThreshold = slowCallDurationThreshold;
+	}
+
+	/**
+	 * Return the duration (in milliseconds) above which an invocation counts as slow.
+	 */
+	public long getSlowCallDurationThreshold() {
+		return this.slowCallDurationThreshold;
+	}
+
+	/**
+	 * Set the rate of slow invocations (between 0 and 1) at or above which
+	 * the circuit opens. Default is 1, i.e. all invocations in the sliding window.
+	 * Only applies if a slow call duration threshold has been specified.
+	 * @see #setSlowCallDurationThreshold
+	 */
+	public void setSlowCallRateThreshold(float slowCallRateThreshold) {
+		Assert.isTrue(slowCallRateThreshold > 0 && slowCallRateThreshold <= 1,
+				"'slowCallRateThreshold' must be greater than 0 and not greater than 1");
+		this.slowCallRateThreshold = slowCallRateThreshold;
+	}
+
+	/**
+	 * Return the rate of slow invocations at or above which the circuit opens.
+	 */
+	public float getSlowCallRateThreshold() {
+		return this.slowCallRateThreshold;
+	}
+
+	/**
+	 * Set the number of most recent invocations per target that failure
+	 * and slow call rates are calculated from. Default is 20.
+	 */
+	public void setSlidingWindowSize(int slidingWindowSize) {
+		Assert.isTrue(slidingWindowSize > 0, "'slidingWindowSize' must be positive");
+		this.slidingWindowSize = slidingWindowSize;
+	}
+
+	/**
+	 * Return the number of most recent invocations per target that failure
+	 * and slow call rates are calculated from.
+	 */
+	public int getSlidingWindowSize() {
+		return this.slidingWindowSize;
+	}
+
+	/**
+	 * Set the number of invocations that need to be recorded before the
+	 * circuit may open. Default is 10 (capped at the sliding window size).
+	 */
+	public void setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+		Assert.isTrue(minimumNumberOfCalls > 0, "'minimumNumberOfCalls' must be positive");
+		this.minimumNumberOfCalls = minimumNumberOfCalls;
+	}
+
+	/**
+	 * Return the number of invocations that need to be recorded before the circuit may open.
+	 */
+	public int getMinimumNumberOfCalls() {
+		return this.minimumNumberOfCalls;
+	}
+
+	/**
+	 * Set the time (in milliseconds) that a circuit stays open before
+	 * permitting probe invocations. Default is 30000 (30 seconds).
+	 */
+	public void setOpenStateDuration(long openStateDuration) {
+		Assert.isTrue(openStateDuration >= 0, "'openStateDuration' must not be negative");
+		this.openStateDuration = openStateDuration;
+	}
+
+	/**
+	 * Return the time (in milliseconds) that a circuit stays open.
+	 */
+	public long getOpenStateDuration() {
+		return this.openStateDuration;
+	}
+
+	/**
+	 * Set the number of probe invocations permitted in half-open state,
+	 * all of which need to complete before the circuit closes or opens again.
+	 * Default is 3.
+	 */
+	public void setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+		Assert.isTrue(permittedCallsInHalfOpenState > 0, "'permittedCallsInHalfOpenState' must be positive");
+		this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+	}
+
+	/**
+	 * Return the number of probe invocations permitted in half-open state.
+	 */
+	public int getPermittedCallsInHalfOpenState() {
+		return this.permittedCallsInHalfOpenState;
+	}
+
+	/**
+	 * Set the maximum time (in milliseconds) that a circuit stays half-open.
+	 * If the probe invocations have not completed by then, for example because
+	 * a probe hangs, the circuit opens again, discarding the results of the
+	 * outstanding probes. Default is 60000 (60 seconds); 0 means no timeout.
+	 */
+	public void setHalfOpenStateTimeout(long halfOpenStateTimeout) {
+		Assert.isTrue(halfOpenStateTimeout >= 0, "'halfOpenStateTimeout' must not be negative");
+		this.halfOpenStateTimeout = halfOpenStateTimeout;
+	}
+
+	/**
+	 * Return the maximum time (in milliseconds) that a circuit stays half-open.
+	 */
+	public long getHalfOpenStateTimeout() {
+		return this.halfOpenStateTimeout;
+	}
+
+	/**
+	 * Specify exception types that do not count as failures, for example
+	 * business exceptions that indicate a healthy target. Invocations that
+	 * throw such exceptions (or subclasses) count as successful.
+	 */
+	public void setIgnoredExceptions(Class[] ignoredExceptions) {
+		this.ignoredExceptions = (ignoredExceptions != null ? ignoredExceptions : new Class[0]);
+	}
+
+	/**
+	 * Set the listeners to notify of circuit state transitions.
+	 * @see org.springframework.context.event.CircuitBreakerEventPublisher
+	 */
+	public void setListeners(CircuitBreakerListener[] listeners) {
+		this.listeners = (listeners != null ? listeners : new CircuitBreakerListener[0]);
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		String targetKey = getTargetKey(invocation);
+		Circuit circuit = getCircuit(targetKey);
+		long permission = circuit.acquirePermission();
+		if (permission < 0) {
+			throw new CircuitBreakerOpenException("Circuit for target [" + targetKey +
+					"] is open - not permitting invocation of " + invocation.getMethod(), targetKey);
+		}
+		long startTime = System.currentTimeMillis();
+		boolean failure = false;
+		try {
+			return invocation.proceed();
+		}
+		catch (Throwable ex) {
+			failure = isFailure(ex);
+			throw ex;
+		}
+		finally {
+			long duration = System.currentTimeMillis() - startTime;
+			boolean slow = (this.slowCallDurationThreshold > 0 && duration > this.slowCallDurationThreshold);
+			circuit.recordResult(permission, failure, slow);
+		}
+	}
+
+	/**
+	 * Determine the key of the target that the given invocation goes to.
+	 * Invocations with the same key share a circuit.
+	 * <p>The default implementation identifies the target by the exposed service URL
+	 * or bean name, or else by the class and identity hash code of the target object.
+	 * @param invocation the current invocation
+	 * @return the target key (never <code>null</code>)
+	 * @see ExposeTargetKeyInterceptor#determineTargetKey
+	 */
+	protected String getTargetKey(MethodInvocation invocation) {
+		return ExposeTargetKeyInterceptor.determineTargetKey(invocation);
+	}
+
+	/**
+	 * Determine whether the given exception counts as failure of the target.
+	 * <p>The default implementation returns <code>true</code> unless the exception
+	 * is an instance of one of the specified ignored exception types.
+	 * @param ex the exception thrown by the invocation
+	 * @return whether the exception counts as failure
+	 * @see #setIgnoredExceptions
+	 */
+	protected boolean isFailure(Throwable ex) {
+		for (int i = 0; i < this.ignoredExceptions.length; i++) {
+			if (this.ignoredExceptions[i].isInstance(ex)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Circuit getCircuit(String targetKey) {
+		synchronized (this.circuits) {
+			Circuit circuit = (Circuit) this.circuits.get(targetKey);
+			if (circuit == null) {
+				circuit = new Circuit(targetKey);
+				this.circuits.put(targetKey, circuit);
+			}
+			return circuit;
+		}
+	}
+
+	private Circuit getExistingCircuit(String targetKey) {
+		synchronized (this.circuits) {
+			Circuit circuit = (Circuit) this.circuits.get(targetKey);
+			if (circuit == null) {
+				throw new IllegalArgumentException("No circuit for target [" + targetKey + "]");
+			}
+			return circuit;
+		}
+	}
+
+	private void notifyListeners(String targetKey, String oldState, String newState) {
+		if (logger.isWarnEnabled() && !STATE_CLOSED.equals(newState)) {
+			logger.warn("Circuit for target [" + targetKey + "] changed from " + oldState + " to " + newState);
+		}
+		else if (logger.isInfoEnabled()) {
+			logger.info("Circuit for target [" + targetKey + "] changed from " + oldState + " to " + newState);
+		}
+		for (int i = 0; i < this.listeners.length; i++) {
+			try {
+				this.listeners[i].stateChanged(this, targetKey, oldState, newState);
+			}
+			catch (RuntimeException ex) {
+				logger.error("CircuitBreakerListener threw exception", ex);
+			}
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Management operations, suitable for JMX export
+	//---------------------------------------------------------------------
+
+	/**
+	 * Return the keys of all targets that have been invoked so far.
+	 */
+	public String[] getTargetKeys() {
+		synchronized (this.circuits) {
+			return (String[]) this.circuits.keySet().toArray(new String[this.circuits.size()]);
+		}
+	}
+
+	/**
+	 * Return the current state of the circuit for the given target.
+	 * @param targetKey the key of the target
+	 * @return one of {@link #STATE_CLOSED}, {@link #STATE_OPEN} and {@link #STATE_HALF_OPEN}
+	 */
+	public String getState(String targetKey) {
+		return getExistingCircuit(targetKey).getState();
+	}
+
+	/**
+	 * Return the failure rate (between 0 and 1) in the sliding window
+	 * for the given target.
+	 */
+	public float getFailureRate(String targetKey) {
+		return getExistingCircuit(targetKey).getFailureRate();
+	}
+
+	/**
+	 * Return the number of invocations of the given target that have been
+	 * rejected because of an open circuit.
+	 */
+	public long getRejectedCount(String targetKey) {
+		return getExistingCircuit(targetKey).getRejectedCount();
+	}
+
+	/**
+	 * Return a one-line summary per target, with state, failure rate,
+	 * slow call rate and rejected invocations.
+	 */
+	public String[] getCircuitSummary() {
+		Circuit[] circuits;
+		synchronized (this.circuits) {
+			circuits = (Circuit[]) this.circuits.values().toArray(new Circuit[this.circuits.size()]);
+		}
+		String[] summary = new String[circuits.length];
+		for (int i = 0; i < circuits.length; i++) {
+			summary[i] = circuits[i].toString();
+		}
+		return summary;
+	}
+
+	/**
+	 * Close the circuit for the given target, discarding its recorded invocations.
+	 */
+	public void close(String targetKey) {
+		getExistingCircuit(targetKey).transitionTo(STATE_CLOSED);
+	}
+
+	/**
+	 * Open the circuit for the given target, rejecting invocations
+	 * for the open state duration.
+	 */
+	public void open(String targetKey) {
+		getCircuit(targetKey).transitionTo(STATE_OPEN);
+	}
+
+	/**
+	 * Close all circuits, discarding their recorded invocations.
+	 */
+	public void closeAll() {
+		String[] targetKeys = getTargetKeys();
+		for (int i = 0; i < targetKeys.length; i++) {
+			close(targetKeys[i]);
+		}
+	}
+
+
+	/**
+	 * The circuit for a single target.
+	 */
+	private class Circuit {
+
+		private final String targetKey;
+
+		private String state = STATE_CLOSED;
+
+		/** Incremented on every state transition, to discard results of earlier invocations */
+		private long generation = 0;
+
+		private boolean[] failures = new boolean[slidingWindowSize];
+
+		private boolean[] slowCalls = new boolean[slidingWindowSize];
+
+		private int windowIndex = 0;
+
+		private int windowCount = 0;
+
+		private int failureCount = 0;
+
+		private int slowCallCount = 0;
+
+		private long openedAt;
+
+		private long halfOpenedAt;
+
+		private int halfOpenPermitted = 0;
+
+		private int halfOpenCompleted = 0;
+
+		private long rejectedCount = 0;
+
+		public Circuit(String targetKey) {
+			this.targetKey = targetKey;
+		}
+
+		/**
+		 * Acquire permission for an invocation.
+		 * @return the generation to report the invocation's result for,
+		 * or -1 if the invocation is not permitted
+		 */
+		public long acquirePermission() {
+			String oldState = null;
+			String newState = null;
+			long permission;
+			synchronized (this) {
+				long now = System.currentTimeMillis();
+				if (STATE_OPEN.equals(this.state) && now - this.openedAt >= openStateDuration) {
+					newState = STATE_HALF_OPEN;
+				}
+				else if (STATE_HALF_OPEN.equals(this.state) && halfOpenStateTimeout > 0 &&
+						now - this.halfOpenedAt >= halfOpenStateTimeout) {
+					// Probes did not complete in time: open again.
+					newState = STATE_OPEN;
+				}
+				if (newState != null) {
+					oldState = this.state;
+					doTransitionTo(newState);
+				}
+				if (STATE_CLOSED.equals(this.state)) {
+					permission = this.generation;
+				}
+				else if (STATE_HALF_OPEN.equals(this.state) && this.halfOpenPermitted < permittedCallsInHalfOpenState) {
+					this.halfOpenPermitted++;
+					permission = this.generation;
+				}
+				else {
+					this.rejectedCount++;
+					permission = -1;
+				}
+			}
+			if (newState != null) {
+				notifyListeners(this.targetKey, oldState, newState);
+			}
+			return permission;
+		}
+
+		public void recordResult(long permission, boolean failure, boolean slow) {
+			String oldState;
+			String newState = null;
+			synchronized (this) {
+				if (permission != this.generation) {
+					return;
+				}
+				oldState = this.state;
+				record(failure, slow);
+				if (STATE_CLOSED.equals(this.state)) {
+					if (this.windowCount >= Math.min(minimumNumberOfCalls, slidingWindowSize) && isThresholdExceeded()) {
+						newState = STATE_OPEN;
+					}
+				}
+				else if (STATE_HALF_OPEN.equals(this.state)) {
+					this.halfOpenCompleted++;
+					if (this.halfOpenCompleted >= permittedCallsInHalfOpenState) {
+						newState = (isThresholdExceeded() ? STATE_OPEN : STATE_CLOSED);
+					}
+				}
+				if (newState != null) {
+					doTransitionTo(newState);
+				}
+			}
+			if (newState != null) {
+				notifyListeners(this.targetKey, oldState, newState);
+			}
+		}
+
+		public void transitionTo(String newState) {
+			String oldState;
+			synchronized (this) {
+				oldState = this.state;
+				doTransitionTo(newState);
+			}
+			if (!oldState.equals(newState)) {
+				notifyListeners(this.targetKey, oldState, newState);
+			}
+		}
+
+		private void doTransitionTo(String newState) {
+			this.state = newState;
+			this.generation++;
+			if (this.failures.length != slidingWindowSize) {
+				this.failures = new boolean[slidingWindowSize];
+				this.slowCalls = new boolean[slidingWindowSize];
+			}
+			for (int i = 0; i < this.failures.length; i++) {
+				this.failures[i] = false;
+				this.slowCalls[i] = false;
+			}
+			this.windowIndex = 0;
+			this.windowCount = 0;
+			this.failureCount = 0;
+			this.slowCallCount = 0;
+			this.halfOpenPermitted = 0;
+			this.halfOpenCompleted = 0;
+			if (STATE_OPEN.equals(newState)) {
+				this.openedAt = System.currentTimeMillis();
+			}
+			else if (STATE_HALF_OPEN.equals(newState)) {
+				this.halfOpenedAt = System.currentTimeMillis();
+			}
+		}
+
+		private void record(boolean failure, boolean slow) {
+			if (this.windowCount == this.failures.length) {
+				// Evict the oldest outcome from the sliding window.
+				if (this.failures[this.windowIndex]) {
+					this.failureCount--;
+				}
+				if (this.slowCalls[this.windowIndex]) {
+					this.slowCallCount--;
+				}
+			}
+			else {
+				this.windowCount++;
+			}
+			this.failures[this.windowIndex] = failure;
+			this.slowCalls[this.windowIndex] = slow;
+			if (failure) {
+				this.failureCount++;
+			}
+			if (slow) {
+				this.slowCallCount++;
+			}
+			this.windowIndex = (this.windowIndex + 1) % this.failures.length;
+		}
+
+		private boolean isThresholdExceeded() {
+			return ((float) this.failureCount / this.windowCount >= failureRateThreshold ||
+					(slowCallDurationThreshold > 0 &&
+							(float) this.slowCallCount / this.windowCount >= slowCallRateThreshold));
+		}
+
+		public synchronized String getState() {
+			return this.state;
+		}
+
+		public synchronized float getFailureRate() {
+			return (this.windowCount > 0 ? (float) this.failureCount / this.windowCount : 0);
+		}
+
+		public synchronized long getRejectedCount() {
+			return this.rejectedCount;
+		}
+
+		public synchronized String toString() {
+			StringBuffer sb = new StringBuffer(this.targetKey);
+			sb.append(": ").append(this.state);
+			sb.append(", calls in window = ").append(this.windowCount);
+			sb.append(", failures = ").append(this.failureCount);
+			sb.append(", slow calls = ").append(this.slowCallCount);
+			sb.append(", rejected = ").append(this.rejectedCount);
+			return sb.toString();
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+/**
+ * Callback interface for state transitions of the circuits
+ * managed by a {@link CircuitBreakerInterceptor}.
+ *
+ * <p>Invoked outside of any locks held by the interceptor,
+ * in the thread that caused the transition.
+ *
+ * @since 2.5.7
+ * @see CircuitBreakerInterceptor#setListeners
+ * @see org.springframework.context.event.CircuitBreakerEventPublisher
+ */
+public interface CircuitBreakerListener {
+
+	/**
+	 * Notification that the circuit for the given target changed its state.
+	 * @param interceptor the interceptor that manages the circuit
+	 * @param targetKey the key of the target
+	 * @param oldState the previous state (one of the
+	 * <code>CircuitBreakerInterceptor.STATE_*</code> constants)
+	 * @param newState the new state (one of the
+	 * <code>CircuitBreakerInterceptor.STATE_*</code> constants)
+	 */
+	void stateChanged(CircuitBreakerInterceptor interceptor, String targetKey, String oldState, String newState);
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import org.springframework.core.NestedRuntimeException;
+
+/**
+ * Exception thrown by {@link CircuitBreakerInterceptor} when an invocation
+ * is not permitted because the circuit for its target is open.
+ *
+ * @since 2.5.7
+ * @see CircuitBreakerInterceptor
+ */
+public class CircuitBreakerOpenException extends NestedRuntimeException {
+
+	private final String targetKey;
+
+
+	/**
+	 * Create a new CircuitBreakerOpenException.
+	 * @param msg the detail message
+	 * @param targetKey the key of the target whose circuit is open
+	 */
+	public CircuitBreakerOpenException(String msg, String targetKey) {
+		super(msg);
+		this.targetKey = targetKey;
+	}
+
+	/**
+	 * Return the key of the target whose circuit is open.
+	 */
+	public String getTargetKey() {
+		return this.targetKey;
+	}
+
+}
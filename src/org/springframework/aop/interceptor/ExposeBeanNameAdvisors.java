@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2008 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -78,6 +78,18 @@ public abstract class ExposeBeanNameAdvisors {
 		return beanName;
 	}
 
+	/**
+	 * Find the bean name for the given invocation, if exposed.
+	 * @param mi the current MethodInvocation
+	 * @return the bean name, or <code>null</code> if none has been exposed
+	 */
+	static String findBeanName(MethodInvocation mi) {
+		if (!(mi instanceof ProxyMethodInvocation)) {
+			return null;
+		}
+		return (String) ((ProxyMethodInvocation) mi).getUserAttribute(BEAN_NAME_ATTRIBUTE);
+	}
+
 	/**
 	 * Create a new advisor that will expose the given bean name,
 	 * with no introduction
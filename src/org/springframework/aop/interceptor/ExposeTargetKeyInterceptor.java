@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Interceptor that exposes a key for the target of the current invocation
+ * as invocation attribute, for interceptors further down the chain that keep
+ * state per target, such as {@link CircuitBreakerInterceptor} and
+ * {@link BulkheadInterceptor}.
+ *
+ * <p>Intended for proxies without a target object, such as remote service
+ * proxies, which expose their service URL through this interceptor.
+ *
+ * @since 2.5.7
+ * @see #getTargetKey(MethodInvocation)
+ * @see #determineTargetKey(MethodInvocation)
+ * @see org.springframework.remoting.support.RemoteAccessor#createServiceProxy
+ */
+public class ExposeTargetKeyInterceptor implements MethodInterceptor {
+
+	/**
+	 * Binding for the target key of the current invocation
+	 * in the ReflectiveMethodInvocation userAttributes Map.
+	 */
+	private static final String TARGET_KEY_ATTRIBUTE = ExposeTargetKeyInterceptor.class.getName() + ".targetKey";
+
+
+	/**
+	 * Find the target key for the given invocation, as exposed by an
+	 * ExposeTargetKeyInterceptor earlier in the interceptor chain.
+	 * @param mi the current MethodInvocation
+	 * @return the target key, or <code>null</code> if none has been exposed
+	 */
+	public static String getTargetKey(MethodInvocation mi) {
+		if (!(mi instanceof ProxyMethodInvocation)) {
+			return null;
+		}
+		return (String) ((ProxyMethodInvocation) mi).getUserAttribute(TARGET_KEY_ATTRIBUTE);
+	}
+
+	/**
+	 * Determine a key that identifies the target of the given invocation.
+	 * <p>Returns the target key exposed by an ExposeTargetKeyInterceptor (e.g. the
+	 * service URL of a remote service proxy) if any, else the bean name exposed
+	 * through {@link ExposeBeanNameAdvisors} if any, else the class name of the
+	 * target object plus its identity hash code. For a proxy without target object,
+	 * the name of the interface that declares the invoked method plus the identity
+	 * hash code of the proxy is used. Different target instances of the same class
+	 * thus never share a key.
+	 * @param mi the current MethodInvocation
+	 * @return the target key (never <code>null</code>)
+	 */
+	public static String determineTargetKey(MethodInvocation mi) {
+		String targetKey = getTargetKey(mi);
+		if (targetKey != null) {
+			return targetKey;
+		}
+		String beanName = ExposeBeanNameAdvisors.findBeanName(mi);
+		if (beanName != null) {
+			return beanName;
+		}
+		Object target = mi.getThis();
+		if (target != null) {
+			return AopUtils.getTargetClass(target).getName() + "@" + ObjectUtils.getIdentityHexString(target);
+		}
+		String interfaceName = mi.getMethod().getDeclaringClass().getName();
+		if (mi instanceof ProxyMethodInvocation) {
+			return interfaceName + "@" + ObjectUtils.getIdentityHexString(((ProxyMethodInvocation) mi).getProxy());
+		}
+		return interfaceName;
+	}
+
+
+	private final String targetKey;
+
+
+	/**
+	 * Create a new ExposeTargetKeyInterceptor for the given target key.
+	 * @param targetKey the key to expose, e.g. a service URL
+	 */
+	public ExposeTargetKeyInterceptor(String targetKey) {
+		Assert.notNull(targetKey, "Target key must not be null");
+		this.targetKey = targetKey;
+	}
+
+
+	public Object invoke(MethodInvocation mi) throws Throwable {
+		if (!(mi instanceof ProxyMethodInvocation)) {
+			throw new IllegalStateException("MethodInvocation is not a Spring ProxyMethodInvocation: " + mi);
+		}
+		((ProxyMethodInvocation) mi).setUserAttribute(TARGET_KEY_ATTRIBUTE, this.targetKey);
+		return mi.proceed();
+	}
+
+}
@@ -136,6 +136,9 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	/** Cache of filtered PropertyDescriptors: bean Class -> PropertyDescriptor array */
 	private final Map filteredPropertyDescriptorsCache = new HashMap();
 
+	/** Profiler to notify of bean creation, if any */
+	private volatile BeanCreationProfiler beanCreationProfiler;
+
 
 	/**
 	 * Create a new AbstractAutowireCapableBeanFactory.
@@ -231,6 +234,23 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	}
 
 
+	/**
+	 * Set a profiler to record the time spent on creating each bean,
+	 * or <code>null</code> to stop profiling. Default is none.
+	 * @see org.springframework.context.support.StartupProfiler
+	 */
+	public void setBeanCreationProfiler(BeanCreationProfiler beanCreationProfiler) {
+		this.beanCreationProfiler = beanCreationProfiler;
+	}
+
+	/**
+	 * Return the profiler to notify of bean creation, if any.
+	 */
+	public BeanCreationProfiler getBeanCreationProfiler() {
+		return this.beanCreationProfiler;
+	}
+
+
 	public void copyConfigurationFrom(ConfigurableBeanFactory otherFactory) {
 		super.copyConfigurationFrom(otherFactory);
 		if (otherFactory instanceof AbstractAutowireCapableBeanFactory) {
@@ -376,43 +396,54 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	protected Object createBean(final String beanName, final RootBeanDefinition mbd, final Object[] args)
 			throws BeanCreationException {
 
-		AccessControlContext acc = AccessController.getContext();
-		return AccessController.doPrivileged(new PrivilegedAction() {
-			public Object run() {
-				if (logger.isDebugEnabled()) {
-					logger.debug("Creating instance of bean '" + beanName + "'");
-				}
-				// Make sure bean class is actually resolved at this point.
-				resolveBeanClass(mbd, beanName);
+		final BeanCreationProfiler profiler = this.beanCreationProfiler;
+		if (profiler != null) {
+			profiler.beanCreationStarted(beanName, mbd.getBeanClassName());
+		}
+		try {
+			AccessControlContext acc = AccessController.getContext();
+			return AccessController.doPrivileged(new PrivilegedAction() {
+				public Object run() {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Creating instance of bean '" + beanName + "'");
+					}
+					// Make sure bean class is actually resolved at this point.
+					resolveBeanClass(mbd, beanName);
 
-				// Prepare method overrides.
-				try {
-					mbd.prepareMethodOverrides();
-				}
-				catch (BeanDefinitionValidationException ex) {
-					throw new BeanDefinitionStoreException(mbd.getResourceDescription(),
-							beanName, "Validation of method overrides failed", ex);
-				}
+					// Prepare method overrides.
+					try {
+						mbd.prepareMethodOverrides();
+					}
+					catch (BeanDefinitionValidationException ex) {
+						throw new BeanDefinitionStoreException(mbd.getResourceDescription(),
+								beanName, "Validation of method overrides failed", ex);
+					}
 
-				try {
-					// Give BeanPostProcessors a chance to return a proxy instead of the target bean instance.
-					Object bean = resolveBeforeInstantiation(beanName, mbd);
-					if (bean != null) {
-						return bean;
+					try {
+						// Give BeanPostProcessors a chance to return a proxy instead of the target bean instance.
+						Object bean = resolveBeforeInstantiation(beanName, mbd);
+						if (bean != null) {
+							return bean;
+						}
+					}
+					catch (Throwable ex) {
+						throw new BeanCreationException(mbd.getResourceDescription(), beanName,
+								"BeanPostProcessor before instantiation of bean failed", ex);
 					}
-				}
-				catch (Throwable ex) {
-					throw new BeanCreationException(mbd.getResourceDescription(), beanName,
-							"BeanPostProcessor before instantiation of bean failed", ex);
-				}
 
-				Object beanInstance = doCreateBean(beanName, mbd, args);
-				if (logger.isDebugEnabled()) {
-					logger.debug("Finished creating instance of bean '" + beanName + "'");
+					Object beanInstance = doCreateBean(beanName, mbd, args);
+					if (logger.isDebugEnabled()) {
+						logger.debug("Finished creating instance of bean '" + beanName + "'");
+					}
+					return beanInstance;
 				}
-				return beanInstance;
+			}, acc);
+		}
+		finally {
+			if (profiler != null) {
+				profiler.beanCreationCompleted(beanName);
 			}
-		}, acc);
+		}
 	}
 
 	/**
@@ -437,7 +468,13 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 			instanceWrapper = (BeanWrapper) this.factoryBeanInstanceCache.remove(beanName);
 		}
 		if (instanceWrapper == null) {
-			instanceWrapper = createBeanInstance(beanName, mbd, args);
+			startProfiledPhase(beanName);
+			try {
+				instanceWrapper = createBeanInstance(beanName, mbd, args);
+			}
+			finally {
+				endProfiledPhase(beanName, BeanCreationProfiler.PHASE_INSTANTIATION);
+			}
 		}
 		final Object bean = (instanceWrapper != null ? instanceWrapper.getWrappedInstance() : null);
 		Class beanType = (instanceWrapper != null ? instanceWrapper.getWrappedClass() : null);
@@ -469,7 +506,13 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 		// Initialize the bean instance.
 		Object exposedObject = bean;
 		try {
-			populateBean(beanName, mbd, instanceWrapper);
+			startProfiledPhase(beanName);
+			try {
+				populateBean(beanName, mbd, instanceWrapper);
+			}
+			finally {
+				endProfiledPhase(beanName, BeanCreationProfiler.PHASE_POPULATION);
+			}
 			exposedObject = initializeBean(beanName, exposedObject, mbd);
 		}
 		catch (Throwable ex) {
@@ -1328,9 +1371,16 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 
 		Object wrappedBean = bean;
 		if (mbd == null || !mbd.isSynthetic()) {
-			wrappedBean = applyBeanPostProcessorsBeforeInitialization(wrappedBean, beanName);
+			startProfiledPhase(beanName);
+			try {
+				wrappedBean = applyBeanPostProcessorsBeforeInitialization(wrappedBean, beanName);
+			}
+			finally {
+				endProfiledPhase(beanName, BeanCreationProfiler.PHASE_BEFORE_INITIALIZATION);
+			}
 		}
 
+		startProfiledPhase(beanName);
 		try {
 			invokeInitMethods(beanName, wrappedBean, mbd);
 		}
@@ -1339,13 +1389,42 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 					(mbd != null ? mbd.getResourceDescription() : null),
 					beanName, "Invocation of init method failed", ex);
 		}
+		finally {
+			endProfiledPhase(beanName, BeanCreationProfiler.PHASE_INIT_METHODS);
+		}
 
 		if (mbd == null || !mbd.isSynthetic()) {
-			wrappedBean = applyBeanPostProcessorsAfterInitialization(wrappedBean, beanName);
+			startProfiledPhase(beanName);
+			try {
+				wrappedBean = applyBeanPostProcessorsAfterInitialization(wrappedBean, beanName);
+			}
+			finally {
+				endProfiledPhase(beanName, BeanCreationProfiler.PHASE_AFTER_INITIALIZATION);
+			}
 		}
 		return wrappedBean;
 	}
 
+	/**
+	 * Notify the bean creation profiler, if any, of the start of a creation phase.
+	 */
+	private void startProfiledPhase(String beanName) {
+		BeanCreationProfiler profiler = this.beanCreationProfiler;
+		if (profiler != null) {
+			profiler.phaseStarted(beanName);
+		}
+	}
+
+	/**
+	 * Notify the bean creation profiler, if any, of the completion of a creation phase.
+	 */
+	private void endProfiledPhase(String beanName, int phase) {
+		BeanCreationProfiler profiler = this.beanCreationProfiler;
+		if (profiler != null) {
+			profiler.phaseCompleted(beanName, phase);
+		}
+	}
+
 	/**
 	 * Give a bean a chance to react now all its properties are set,
 	 * and a chance to know about its owning bean factory (this object).
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.factory.support;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Timing information for the creation of a single bean instance,
+ * as recorded by a {@link BeanCreationProfiler}.
+ *
+ * <p>The total time of a bean includes the creation of all beans that got
+ * created as dependencies while it was being created. The self time and the
+ * per-phase times exclude the time spent on creating such dependencies.
+ *
+ * @since 2.5.7
+ * @see BeanCreationProfiler#getBeanProfiles()
+ */
+public class BeanCreationProfile {
+
+	private final String beanName;
+
+	private final String beanClassName;
+
+	private final BeanCreationProfile parent;
+
+	private final String threadName;
+
+	private final long startNanos;
+
+	private final long[] phaseNanos = new long[BeanCreationProfiler.PHASE_NAMES.length];
+
+	/** Profiles of the beans created as dependencies */
+	private final List dependencies = new ArrayList(4);
+
+	private long totalNanos = -1;
+
+	private long dependencyNanos;
+
+	private long phaseStartNanos;
+
+	private long phaseStartDependencyNanos;
+
+
+	BeanCreationProfile(String beanName, String beanClassName, BeanCreationProfile parent, long startNanos) {
+		this.beanName = beanName;
+		this.beanClassName = beanClassName;
+		this.parent = parent;
+		this.threadName = Thread.currentThread().getName();
+		this.startNanos = startNanos;
+		if (parent != null) {
+			parent.dependencies.add(this);
+		}
+	}
+
+
+	void phaseStarted(long nanos) {
+		this.phaseStartNanos = nanos;
+		this.phaseStartDependencyNanos = this.dependencyNanos;
+	}
+
+	void phaseCompleted(int phase, long nanos) {
+		this.phaseNanos[phase] +=
+				(nanos - this.phaseStartNanos) - (this.dependencyNanos - this.phaseStartDependencyNanos);
+	}
+
+	void completed(long nanos) {
+		this.totalNanos = nanos - this.startNanos;
+		if (this.parent != null) {
+			this.parent.dependencyNanos += this.totalNanos;
+		}
+	}
+
+	BeanCreationProfile getParent() {
+		return this.parent;
+	}
+
+	List getDependencyProfiles() {
+		return this.dependencies;
+	}
+
+
+	/**
+	 * Return the name of the bean.
+	 */
+	public String getBeanName() {
+		return this.beanName;
+	}
+
+	/**
+	 * Return the class name specified in the bean definition, if any.
+	 */
+	public String getBeanClassName() {
+		return this.beanClassName;
+	}
+
+	/**
+	 * Return the name of the bean whose creation triggered the creation
+	 * of this bean, or <code>null</code> if created at top level.
+	 */
+	public String getParentBeanName() {
+		return (this.parent != null ? this.parent.beanName : null);
+	}
+
+	/**
+	 * Return the names of the beans that got created as dependencies
+	 * while this bean was being created, in creation order.
+	 */
+	public String[] getDependencies() {
+		String[] names = new String[this.dependencies.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = ((BeanCreationProfile) this.dependencies.get(i)).beanName;
+		}
+		return names;
+	}
+
+	/**
+	 * Return the chain of bean names that led to the creation of this bean:
+	 * starting with the top-level bean, ending with this bean.
+	 */
+	public String[] getDependencyChain() {
+		LinkedList chain = new LinkedList();
+		for (BeanCreationProfile current = this; current != null; current = current.parent) {
+			chain.addFirst(current.beanName);
+		}
+		return (String[]) chain.toArray(new String[chain.size()]);
+	}
+
+	/**
+	 * Return the name of the thread that created the bean.
+	 */
+	public String getThreadName() {
+		return this.threadName;
+	}
+
+	/**
+	 * Return whether the creation of the bean has completed
+	 * (successfully or not).
+	 */
+	public boolean isCompleted() {
+		return (this.totalNanos >= 0);
+	}
+
+	/**
+	 * Return the total creation time (in milliseconds), including
+	 * the creation of dependencies.
+	 */
+	public double getTotalMillis() {
+		return toMillis(Math.max(this.totalNanos, 0));
+	}
+
+	/**
+	 * Return the creation time (in milliseconds), excluding
+	 * the creation of dependencies.
+	 */
+	public double getSelfMillis() {
+		return toMillis(Math.max(this.totalNanos - this.dependencyNanos, 0));
+	}
+
+	/**
+	 * Return the time spent in the given phase (in milliseconds),
+	 * excluding the creation of dependencies.
+	 * @param phase one of the <code>BeanCreationProfiler.PHASE_*</code> constants
+	 */
+	public double getPhaseMillis(int phase) {
+		return toMillis(this.phaseNanos[phase]);
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer(this.beanName);
+		sb.append(": total=[").append(getTotalMillis()).append("ms]; self=[").append(getSelfMillis()).append("ms]");
+		for (int i = 0; i < this.phaseNanos.length; i++) {
+			sb.append("; ").append(BeanCreationProfiler.PHASE_NAMES[i]).append("=[").append(getPhaseMillis(i)).append("ms]");
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.factory.support;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.core.JdkVersion;
+
+/**
+ * Records the time spent on creating each bean in an
+ * {@link AbstractAutowireCapableBeanFactory}, broken down into instantiation,
+ * property population, BeanPostProcessor callbacks and init methods,
+ * along with the chain of beans that led to the creation of each bean.
+ *
+ * <p>To be set on a bean factory through
+ * {@link AbstractAutowireCapableBeanFactory#setBeanCreationProfiler}; typically
+ * used through an application context's
+ * {@link org.springframework.context.support.StartupProfiler}, which detaches
+ * the profiler once the context has been refreshed. Bean creation on multiple
+ * threads is supported, with dependency chains tracked per thread.
+ *
+ * <p>Uses <code>System.nanoTime()</code> for measuring on JDK 1.5 or higher,
+ * falling back to <code>System.currentTimeMillis()</code> on JDK 1.4.
+ *
+ * @since 2.5.7
+ * @see BeanCreationProfile
+ * @see AbstractAutowireCapableBeanFactory#setBeanCreationProfiler
+ */
+public class BeanCreationProfiler {
+
+	/** Phase: instantiation of the bean, including constructor autowiring */
+	public static final int PHASE_INSTANTIATION = 0;
+
+	/** Phase: population of bean properties, including property autowiring */
+	public static final int PHASE_POPULATION = 1;
+
+	/** Phase: BeanPostProcessors before initialization */
+	public static final int PHASE_BEFORE_INITIALIZATION = 2;
+
+	/** Phase: InitializingBean callback and custom init method */
+	public static final int PHASE_INIT_METHODS = 3;
+
+	/** Phase: BeanPostProcessors after initialization */
+	public static final int PHASE_AFTER_INITIALIZATION = 4;
+
+	static final String[] PHASE_NAMES = new String[] {
+			"instantiation", "population", "beforeInitialization", "initMethods", "afterInitialization"};
+
+	private static final boolean nanoTimeAvailable = JdkVersion.isAtLeastJava15();
+
+
+	/** The profile of the bean currently being created by each thread */
+	private final ThreadLocal currentProfile = new ThreadLocal();
+
+	/** All profiles, in order of creation start */
+	private final List profiles = new ArrayList();
+
+
+	/**
+	 * Return the name of the given phase.
+	 * @param phase one of the <code>PHASE_*</code> constants
+	 */
+	public static String getPhaseName(int phase) {
+		return PHASE_NAMES[phase];
+	}
+
+	private static long currentNanos() {
+		return (nanoTimeAvailable ? System.nanoTime() : System.currentTimeMillis() * 1000000);
+	}
+
+
+	//---------------------------------------------------------------------
+	// Callbacks from the bean factory
+	//---------------------------------------------------------------------
+
+	/**
+	 * Callback for the start of the creation of the given bean.
+	 * @param beanName the name of the bean
+	 * @param beanClassName the class name specified in the bean definition, if any
+	 */
+	public void beanCreationStarted(String beanName, String beanClassName) {
+		BeanCreationProfile parent = (BeanCreationProfile) this.currentProfile.get();
+		BeanCreationProfile profile;
+		synchronized (this.profiles) {
+			profile = new BeanCreationProfile(beanName, beanClassName, parent, currentNanos());
+			this.profiles.add(profile);
+		}
+		this.currentProfile.set(profile);
+	}
+
+	/**
+	 * Callback for the start of a creation phase of the given bean.
+	 * Ignored if the given bean is not the bean currently being created.
+	 * @param beanName the name of the bean
+	 */
+	public void phaseStarted(String beanName) {
+		BeanCreationProfile profile = getCurrentProfile(beanName);
+		if (profile != null) {
+			profile.phaseStarted(currentNanos());
+		}
+	}
+
+	/**
+	 * Callback for the completion of a creation phase of the given bean.
+	 * Ignored if the given bean is not the bean currently being created.
+	 * @param beanName the name of the bean
+	 * @param phase one of the <code>PHASE_*</code> constants
+	 */
+	public void phaseCompleted(String beanName, int phase) {
+		BeanCreationProfile profile = getCurrentProfile(beanName);
+		if (profile != null) {
+			profile.phaseCompleted(phase, currentNanos());
+		}
+	}
+
+	/**
+	 * Callback for the completion of the creation of the given bean,
+	 * successful or not.
+	 * @param beanName the name of the bean
+	 */
+	public void beanCreationCompleted(String beanName) {
+		BeanCreationProfile profile = getCurrentProfile(beanName);
+		if (profile != null) {
+			synchronized (this.profiles) {
+				profile.completed(currentNanos());
+			}
+			this.currentProfile.set(profile.getParent());
+		}
+	}
+
+	private BeanCreationProfile getCurrentProfile(String beanName) {
+		BeanCreationProfile profile = (BeanCreationProfile) this.currentProfile.get();
+		return (profile != null && profile.getBeanName().equals(beanName) ? profile : null);
+	}
+
+
+	//---------------------------------------------------------------------
+	// Reporting
+	//---------------------------------------------------------------------
+
+	/**
+	 * Return the profiles of all beans created so far, in order of creation start.
+	 */
+	public BeanCreationProfile[] getBeanProfiles() {
+		synchronized (this.profiles) {
+			return (BeanCreationProfile[]) this.profiles.toArray(new BeanCreationProfile[this.profiles.size()]);
+		}
+	}
+
+	/**
+	 * Return the number of beans created so far.
+	 */
+	public int getBeanCount() {
+		synchronized (this.profiles) {
+			return this.profiles.size();
+		}
+	}
+
+	/**
+	 * Return the profiles of the beans with the highest self time,
+	 * in descending order.
+	 * @param maxCount the maximum number of profiles to return
+	 */
+	public BeanCreationProfile[] getSlowestBeans(int maxCount) {
+		BeanCreationProfile[] profiles = getBeanProfiles();
+		Arrays.sort(profiles, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				double self1 = ((BeanCreationProfile) o1).getSelfMillis();
+				double self2 = ((BeanCreationProfile) o2).getSelfMillis();
+				return (self1 > self2 ? -1 : (self1 < self2 ? 1 : 0));
+			}
+		});
+		if (profiles.length <= maxCount) {
+			return profiles;
+		}
+		BeanCreationProfile[] result = new BeanCreationProfile[maxCount];
+		System.arraycopy(profiles, 0, result, 0, maxCount);
+		return result;
+	}
+
+	/**
+	 * Return the profile of the most recent creation of the given bean.
+	 * @param beanName the name of the bean
+	 * @return the profile, or <code>null</code> if the bean has not been created
+	 */
+	public BeanCreationProfile getBeanProfile(String beanName) {
+		synchronized (this.profiles) {
+			for (int i = this.profiles.size() - 1; i >= 0; i--) {
+				BeanCreationProfile profile = (BeanCreationProfile) this.profiles.get(i);
+				if (profile.getBeanName().equals(beanName)) {
+					return profile;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Clear all profiles recorded so far.
+	 */
+	public void reset() {
+		synchronized (this.profiles) {
+			this.profiles.clear();
+		}
+	}
+
+	/**
+	 * Write the tree of bean creations to the given Writer: one line per bean,
+	 * with the beans that got created as its dependencies indented below it.
+	 * @param writer the Writer to write to
+	 */
+	public void writeDependencyTree(Writer writer) throws IOException {
+		BeanCreationProfile[] profiles = getBeanProfiles();
+		PrintWriter pw = new PrintWriter(writer);
+		synchronized (this.profiles) {
+			for (int i = 0; i < profiles.length; i++) {
+				if (profiles[i].getParent() == null) {
+					writeDependencyTree(pw, profiles[i], 0);
+				}
+			}
+		}
+		pw.flush();
+	}
+
+	private void writeDependencyTree(PrintWriter pw, BeanCreationProfile profile, int depth) {
+		for (int i = 0; i < depth; i++) {
+			pw.print("  ");
+		}
+		pw.print(profile.getBeanName());
+		pw.print(" [total ");
+		pw.print(profile.getTotalMillis());
+		pw.print("ms, self ");
+		pw.print(profile.getSelfMillis());
+		pw.println("ms]");
+		List dependencies = profile.getDependencyProfiles();
+		for (int i = 0; i < dependencies.size(); i++) {
+			writeDependencyTree(pw, (BeanCreationProfile) dependencies.get(i), depth + 1);
+		}
+	}
+
+	/**
+	 * Write all profiles to the given Writer in CSV format, with a header line
+	 * followed by one line per bean in order of creation start.
+	 * @param writer the Writer to write to
+	 */
+	public void writeCsv(Writer writer) throws IOException {
+		BeanCreationProfile[] profiles = getBeanProfiles();
+		PrintWriter pw = new PrintWriter(writer);
+		pw.print("beanName,beanClassName,parentBeanName,threadName,totalMillis,selfMillis");
+		for (int i = 0; i < PHASE_NAMES.length; i++) {
+			pw.print(',');
+			pw.print(PHASE_NAMES[i]);
+			pw.print("Millis");
+		}
+		pw.println();
+		for (int i = 0; i < profiles.length; i++) {
+			BeanCreationProfile profile = profiles[i];
+			pw.print(quoteCsvValue(profile.getBeanName()));
+			pw.print(',');
+			pw.print(quoteCsvValue(profile.getBeanClassName()));
+			pw.print(',');
+			pw.print(quoteCsvValue(profile.getParentBeanName()));
+			pw.print(',');
+			pw.print(quoteCsvValue(profile.getThreadName()));
+			pw.print(',');
+			pw.print(profile.getTotalMillis());
+			pw.print(',');
+			pw.print(profile.getSelfMillis());
+			for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+				pw.print(',');
+				pw.print(profile.getPhaseMillis(phase));
+			}
+			pw.println();
+		}
+		pw.flush();
+	}
+
+	private static String quoteCsvValue(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1) {
+			return value;
+		}
+		StringBuffer sb = new StringBuffer("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				sb.append('"');
+			}
+			sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+}
@@ -16,17 +16,22 @@
 
 package org.springframework.beans.factory.support;
 
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.FatalBeanException;
+import org.springframework.beans.PropertyValue;
 import org.springframework.beans.TypeConverter;
 import org.springframework.beans.factory.BeanCreationException;
 import org.springframework.beans.factory.BeanCurrentlyInCreationException;
@@ -42,8 +47,12 @@ import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.BeanDefinitionHolder;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
 import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.core.CollectionFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
@@ -105,6 +114,9 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 	/** Map from dependency type to corresponding autowired value */
 	private final Map resolvableDependencies = new HashMap();
 
+	/** Executor for preinstantiating independent singletons in parallel, if any */
+	private TaskExecutor preInstantiationExecutor;
+
 
 	/**
 	 * Create a new DefaultListableBeanFactory.
@@ -165,12 +177,46 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 	}
 
 
+	/**
+	 * Set a TaskExecutor for preinstantiating singletons in parallel.
+	 * <p>Default is none, preinstantiating all singletons sequentially on the
+	 * calling thread. If specified, {@link #preInstantiateSingletons()} splits
+	 * the non-lazy singletons into groups of beans that are independent of each
+	 * other, according to their "depends-on" declarations, their bean references
+	 * and - for autowiring by name, by type and by constructor - their autowire
+	 * candidates. Each group gets instantiated on the given executor, with the
+	 * beans within a group created sequentially in registration order.
+	 * <p>Dependencies that cannot be determined upfront (such as annotation-driven
+	 * injection points) are still safe: A thread asking for a singleton that is
+	 * currently in creation in another thread waits for that thread to finish,
+	 * and circular references across threads are resolved just like within a
+	 * single thread, i.e. through an early reference to a singleton that the
+	 * other thread is still initializing. Tasks rejected by the executor run
+	 * on the calling thread.
+	 * <p>Use a bounded executor such as a ThreadPoolTaskExecutor with a
+	 * limited pool size; the calling thread blocks until all groups are done.
+	 * @see #preInstantiateSingletons()
+	 * @see #setConcurrentSingletonCreation
+	 */
+	public void setPreInstantiationExecutor(TaskExecutor preInstantiationExecutor) {
+		this.preInstantiationExecutor = preInstantiationExecutor;
+	}
+
+	/**
+	 * Return the TaskExecutor for preinstantiating singletons in parallel, if any.
+	 */
+	public TaskExecutor getPreInstantiationExecutor() {
+		return this.preInstantiationExecutor;
+	}
+
+
 	public void copyConfigurationFrom(ConfigurableBeanFactory otherFactory) {
 		super.copyConfigurationFrom(otherFactory);
 		if (otherFactory instanceof DefaultListableBeanFactory) {
 			DefaultListableBeanFactory otherListableFactory = (DefaultListableBeanFactory) otherFactory;
 			this.allowBeanDefinitionOverriding = otherListableFactory.allowBeanDefinitionOverriding;
 			this.allowEagerClassLoading = otherListableFactory.allowEagerClassLoading;
+			this.preInstantiationExecutor = otherListableFactory.preInstantiationExecutor;
 		}
 	}
 
@@ -414,21 +460,242 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 			this.logger.info("Pre-instantiating singletons in " + this);
 		}
 
+		if (this.preInstantiationExecutor != null) {
+			preInstantiateSingletonsInParallel();
+			return;
+		}
+
 		synchronized (this.beanDefinitionMap) {
 			for (Iterator it = this.beanDefinitionNames.iterator(); it.hasNext();) {
-				String beanName = (String) it.next();
-				RootBeanDefinition bd = getMergedLocalBeanDefinition(beanName);
-				if (!bd.isAbstract() && bd.isSingleton() && !bd.isLazyInit()) {
-					if (isFactoryBean(beanName)) {
-						FactoryBean factory = (FactoryBean) getBean(FACTORY_BEAN_PREFIX + beanName);
-						if (factory instanceof SmartFactoryBean && ((SmartFactoryBean) factory).isEagerInit()) {
-							getBean(beanName);
-						}
+				preInstantiateSingleton((String) it.next());
+			}
+		}
+	}
+
+	/**
+	 * Preinstantiate the given bean if it is a non-lazy singleton,
+	 * also initializing the product of an eager-init SmartFactoryBean.
+	 * @param beanName the name of the bean
+	 */
+	private void preInstantiateSingleton(String beanName) {
+		RootBeanDefinition bd = getMergedLocalBeanDefinition(beanName);
+		if (!bd.isAbstract() && bd.isSingleton() && !bd.isLazyInit()) {
+			if (isFactoryBean(beanName)) {
+				FactoryBean factory = (FactoryBean) getBean(FACTORY_BEAN_PREFIX + beanName);
+				if (factory instanceof SmartFactoryBean && ((SmartFactoryBean) factory).isEagerInit()) {
+					getBean(beanName);
+				}
+			}
+			else {
+				getBean(beanName);
+			}
+		}
+	}
+
+	/**
+	 * Preinstantiate all non-lazy singletons on the preinstantiation executor,
+	 * one task per group of dependent beans. Blocks until all tasks are done.
+	 * @see #setPreInstantiationExecutor
+	 */
+	private void preInstantiateSingletonsInParallel() throws BeansException {
+		// Work on a snapshot: worker threads need access to the bean definitions.
+		List beanGroups = determineIndependentBeanGroups(getBeanDefinitionNames());
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug("Pre-instantiating " + beanGroups.size() + " groups of independent singletons in parallel");
+		}
+		PreInstantiationProgress progress = new PreInstantiationProgress(beanGroups.size());
+		setConcurrentSingletonCreation(true);
+		try {
+			for (Iterator it = beanGroups.iterator(); it.hasNext();) {
+				Runnable task = new BeanGroupPreInstantiator((List) it.next(), progress);
+				try {
+					this.preInstantiationExecutor.execute(task);
+				}
+				catch (TaskRejectedException ex) {
+					task.run();
+				}
+			}
+			progress.awaitCompletion();
+		}
+		finally {
+			setConcurrentSingletonCreation(false);
+		}
+	}
+
+	/**
+	 * Split the given beans into groups of beans that may be created independent
+	 * of each other. Only includes non-lazy singletons to be preinstantiated.
+	 * @param beanNames the names of the bean definitions in registration order
+	 * @return a List of Lists of bean names, each in registration order
+	 */
+	private List determineIndependentBeanGroups(String[] beanNames) {
+		// Union-find over bean names: bean name --> bean name of group representative
+		Map groupLinks = new HashMap();
+		for (int i = 0; i < beanNames.length; i++) {
+			RootBeanDefinition bd = getMergedLocalBeanDefinition(beanNames[i]);
+			if (!bd.isAbstract()) {
+				Set dependencies = new LinkedHashSet();
+				collectStaticDependencies(beanNames[i], bd, dependencies);
+				for (Iterator it = dependencies.iterator(); it.hasNext();) {
+					String groupName = findBeanGroup(groupLinks, beanNames[i]);
+					String otherGroupName = findBeanGroup(groupLinks, transformedBeanName((String) it.next()));
+					if (!groupName.equals(otherGroupName)) {
+						groupLinks.put(otherGroupName, groupName);
 					}
-					else {
-						getBean(beanName);
+				}
+			}
+		}
+		Map beanGroups = new LinkedHashMap();
+		for (int i = 0; i < beanNames.length; i++) {
+			RootBeanDefinition bd = getMergedLocalBeanDefinition(beanNames[i]);
+			if (!bd.isAbstract() && bd.isSingleton() && !bd.isLazyInit()) {
+				String groupName = findBeanGroup(groupLinks, beanNames[i]);
+				List beanGroup = (List) beanGroups.get(groupName);
+				if (beanGroup == null) {
+					beanGroup = new ArrayList();
+					beanGroups.put(groupName, beanGroup);
+				}
+				beanGroup.add(beanNames[i]);
+			}
+		}
+		return new ArrayList(beanGroups.values());
+	}
+
+	private static String findBeanGroup(Map groupLinks, String beanName) {
+		String groupName = beanName;
+		String linkedName = (String) groupLinks.get(groupName);
+		while (linkedName != null) {
+			groupName = linkedName;
+			linkedName = (String) groupLinks.get(groupName);
+		}
+		if (!groupName.equals(beanName)) {
+			groupLinks.put(beanName, groupName);
+		}
+		return groupName;
+	}
+
+	/**
+	 * Collect the names of the beans that the given bean definition depends on,
+	 * as far as determinable without creating any bean: "depends-on" declarations,
+	 * factory bean, bean references (including those of inner beans) and
+	 * autowire candidates for autowiring by name, by type and by constructor.
+	 * @param beanName the name of the bean
+	 * @param bd the bean definition to analyze
+	 * @param dependencies the Set to add the dependency names to
+	 */
+	private void collectStaticDependencies(String beanName, BeanDefinition bd, Set dependencies) {
+		if (bd instanceof AbstractBeanDefinition) {
+			String[] dependsOn = ((AbstractBeanDefinition) bd).getDependsOn();
+			if (dependsOn != null) {
+				for (int i = 0; i < dependsOn.length; i++) {
+					dependencies.add(dependsOn[i]);
+				}
+			}
+		}
+		if (bd.getFactoryBeanName() != null) {
+			dependencies.add(bd.getFactoryBeanName());
+		}
+		PropertyValue[] pvs = bd.getPropertyValues().getPropertyValues();
+		for (int i = 0; i < pvs.length; i++) {
+			collectReferencedBeans(beanName, pvs[i].getValue(), dependencies);
+		}
+		ConstructorArgumentValues cargs = bd.getConstructorArgumentValues();
+		for (Iterator it = cargs.getIndexedArgumentValues().values().iterator(); it.hasNext();) {
+			collectReferencedBeans(beanName, ((ConstructorArgumentValues.ValueHolder) it.next()).getValue(), dependencies);
+		}
+		for (Iterator it = cargs.getGenericArgumentValues().iterator(); it.hasNext();) {
+			collectReferencedBeans(beanName, ((ConstructorArgumentValues.ValueHolder) it.next()).getValue(), dependencies);
+		}
+		if (bd instanceof AbstractBeanDefinition) {
+			collectAutowireCandidates(beanName, (AbstractBeanDefinition) bd, dependencies);
+		}
+	}
+
+	private void collectReferencedBeans(String beanName, Object value, Set dependencies) {
+		if (value instanceof RuntimeBeanReference) {
+			dependencies.add(((RuntimeBeanReference) value).getBeanName());
+		}
+		else if (value instanceof BeanDefinitionHolder) {
+			collectStaticDependencies(beanName, ((BeanDefinitionHolder) value).getBeanDefinition(), dependencies);
+		}
+		else if (value instanceof BeanDefinition) {
+			collectStaticDependencies(beanName, (BeanDefinition) value, dependencies);
+		}
+		else if (value instanceof Object[]) {
+			Object[] array = (Object[]) value;
+			for (int i = 0; i < array.length; i++) {
+				collectReferencedBeans(beanName, array[i], dependencies);
+			}
+		}
+		else if (value instanceof Collection) {
+			for (Iterator it = ((Collection) value).iterator(); it.hasNext();) {
+				collectReferencedBeans(beanName, it.next(), dependencies);
+			}
+		}
+		else if (value instanceof Map) {
+			for (Iterator it = ((Map) value).entrySet().iterator(); it.hasNext();) {
+				Map.Entry entry = (Map.Entry) it.next();
+				collectReferencedBeans(beanName, entry.getKey(), dependencies);
+				collectReferencedBeans(beanName, entry.getValue(), dependencies);
+			}
+		}
+	}
+
+	private void collectAutowireCandidates(String beanName, AbstractBeanDefinition bd, Set dependencies) {
+		int autowireMode = bd.getResolvedAutowireMode();
+		if (autowireMode != AUTOWIRE_BY_NAME && autowireMode != AUTOWIRE_BY_TYPE &&
+				autowireMode != AUTOWIRE_CONSTRUCTOR) {
+			return;
+		}
+		Class beanClass = null;
+		try {
+			if (bd.hasBeanClass()) {
+				beanClass = bd.getBeanClass();
+			}
+			else if (bd instanceof RootBeanDefinition) {
+				beanClass = resolveBeanClass((RootBeanDefinition) bd, beanName);
+			}
+		}
+		catch (CannotLoadBeanClassException ex) {
+			// Will be reported when actually creating the bean.
+		}
+		if (beanClass == null) {
+			return;
+		}
+		if (autowireMode == AUTOWIRE_CONSTRUCTOR) {
+			Constructor[] ctors = beanClass.getDeclaredConstructors();
+			for (int i = 0; i < ctors.length; i++) {
+				Class[] paramTypes = ctors[i].getParameterTypes();
+				for (int j = 0; j < paramTypes.length; j++) {
+					collectCandidatesOfType(paramTypes[j], dependencies);
+				}
+			}
+			return;
+		}
+		PropertyDescriptor[] pds = BeanUtils.getPropertyDescriptors(beanClass);
+		for (int i = 0; i < pds.length; i++) {
+			PropertyDescriptor pd = pds[i];
+			if (pd.getWriteMethod() != null && !isExcludedFromDependencyCheck(pd) &&
+					!BeanUtils.isSimpleProperty(pd.getPropertyType())) {
+				if (autowireMode == AUTOWIRE_BY_NAME) {
+					if (containsBean(pd.getName())) {
+						dependencies.add(pd.getName());
 					}
 				}
+				else {
+					collectCandidatesOfType(pd.getPropertyType(), dependencies);
+				}
+			}
+		}
+	}
+
+	private void collectCandidatesOfType(Class type, Set dependencies) {
+		Class typeToMatch = (type.isArray() ? type.getComponentType() : type);
+		if (!BeanUtils.isSimpleProperty(typeToMatch) && !Collection.class.isAssignableFrom(typeToMatch) &&
+				!Map.class.isAssignableFrom(typeToMatch)) {
+			String[] candidateNames = getBeanNamesForType(typeToMatch, true, false);
+			for (int i = 0; i < candidateNames.length; i++) {
+				dependencies.add(candidateNames[i]);
 			}
 		}
 	}
@@ -744,4 +1011,88 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 		return sb.toString();
 	}
 
+
+	/**
+	 * Task that preinstantiates a group of dependent singletons sequentially.
+	 */
+	private class BeanGroupPreInstantiator implements Runnable {
+
+		private final List beanNames;
+
+		private final PreInstantiationProgress progress;
+
+		public BeanGroupPreInstantiator(List beanNames, PreInstantiationProgress progress) {
+			this.beanNames = beanNames;
+			this.progress = progress;
+		}
+
+		public void run() {
+			Throwable failure = null;
+			try {
+				for (Iterator it = this.beanNames.iterator(); it.hasNext() && !this.progress.hasFailed();) {
+					preInstantiateSingleton((String) it.next());
+				}
+			}
+			catch (Throwable ex) {
+				failure = ex;
+			}
+			finally {
+				this.progress.taskCompleted(failure);
+			}
+		}
+	}
+
+
+	/**
+	 * Tracks the completion of parallel preinstantiation tasks,
+	 * keeping the first failure for rethrowing on the calling thread.
+	 */
+	private static class PreInstantiationProgress {
+
+		private int pendingTasks;
+
+		private Throwable failure;
+
+		public PreInstantiationProgress(int taskCount) {
+			this.pendingTasks = taskCount;
+		}
+
+		public synchronized boolean hasFailed() {
+			return (this.failure != null);
+		}
+
+		public synchronized void taskCompleted(Throwable taskFailure) {
+			if (this.failure == null) {
+				this.failure = taskFailure;
+			}
+			this.pendingTasks--;
+			notifyAll();
+		}
+
+		public synchronized void awaitCompletion() throws BeansException {
+			boolean interrupted = false;
+			while (this.pendingTasks > 0) {
+				try {
+					wait();
+				}
+				catch (InterruptedException ex) {
+					// Tasks must not keep on creating beans behind our back: keep waiting.
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (this.failure instanceof RuntimeException) {
+				throw (RuntimeException) this.failure;
+			}
+			if (this.failure instanceof Error) {
+				throw (Error) this.failure;
+			}
+			if (this.failure != null) {
+				throw new FatalBeanException("Parallel preinstantiation of singletons failed", this.failure);
+			}
+		}
+	}
+
 }
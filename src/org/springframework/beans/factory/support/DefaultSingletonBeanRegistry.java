@@ -97,6 +97,15 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 	/** Names of beans that are currently in creation */
 	private final Set singletonsCurrentlyInCreation = Collections.synchronizedSet(new HashSet());
 
+	/** Whether singletons may be created by multiple threads concurrently */
+	private volatile boolean concurrentSingletonCreation = false;
+
+	/** Threads creating singletons in concurrent mode: bean name --> Thread */
+	private final Map singletonCreationThreads = new HashMap();
+
+	/** Threads waiting for a singleton in concurrent mode: Thread --> bean name */
+	private final Map threadsAwaitingSingletons = new HashMap();
+
 	/** List of suppressed Exceptions, available for associating related causes */
 	private Set suppressedExceptions;
 
@@ -178,20 +187,36 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 		Object singletonObject = this.singletonObjects.get(beanName);
 		if (singletonObject == null) {
 			synchronized (this.singletonObjects) {
-				singletonObject = this.earlySingletonObjects.get(beanName);
-				if (singletonObject == null && allowEarlyReference) {
-					ObjectFactory singletonFactory = (ObjectFactory) this.singletonFactories.get(beanName);
-					if (singletonFactory != null) {
-						singletonObject = singletonFactory.getObject();
-						this.earlySingletonObjects.put(beanName, singletonObject);
-						this.singletonFactories.remove(beanName);
-					}
+				Thread creatingThread = (Thread) this.singletonCreationThreads.get(beanName);
+				if (creatingThread != null && creatingThread != Thread.currentThread()) {
+					// Do not expose a singleton that another thread is still initializing here:
+					// getSingleton(String, ObjectFactory) waits for it instead, only resorting
+					// to the early reference in case of a circular reference across threads.
+					return null;
 				}
+				singletonObject = getEarlySingleton(beanName, allowEarlyReference);
 			}
 		}
 		return (singletonObject != NULL_OBJECT ? singletonObject : null);
 	}
 
+	/**
+	 * Return the early reference to the given singleton, if any.
+	 * To be called with the singleton mutex held.
+	 */
+	private Object getEarlySingleton(String beanName, boolean allowEarlyReference) {
+		Object singletonObject = this.earlySingletonObjects.get(beanName);
+		if (singletonObject == null && allowEarlyReference) {
+			ObjectFactory singletonFactory = (ObjectFactory) this.singletonFactories.get(beanName);
+			if (singletonFactory != null) {
+				singletonObject = singletonFactory.getObject();
+				this.earlySingletonObjects.put(beanName, singletonObject);
+				this.singletonFactories.remove(beanName);
+			}
+		}
+		return singletonObject;
+	}
+
 	/**
 	 * Return the (raw) singleton object registered under the given name,
 	 * creating and registering a new one if none registered yet.
@@ -202,6 +227,9 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 	 */
 	public Object getSingleton(String beanName, ObjectFactory singletonFactory) {
 		Assert.notNull(beanName, "'beanName' must not be null");
+		if (this.concurrentSingletonCreation) {
+			return getSingletonConcurrently(beanName, singletonFactory);
+		}
 		synchronized (this.singletonObjects) {
 			Object singletonObject = this.singletonObjects.get(beanName);
 			if (singletonObject == null) {
@@ -241,6 +269,134 @@ public class DefaultSingletonBeanRegistry extends SimpleAliasRegistry implements
 		}
 	}
 
+	/**
+	 * Variant of {@link #getSingleton(String, ObjectFactory)} for concurrent mode:
+	 * creates the singleton without holding the singleton mutex, letting other
+	 * threads that ask for the same singleton wait until it has been created.
+	 * <p>A circular reference between singletons created by different threads
+	 * gets resolved through an early singleton reference, just like within
+	 * a single thread: In that case, the early reference <i>is</i> handed out
+	 * to the other thread, which may therefore see the singleton before its
+	 * initialization has completed. Early references are not handed out to
+	 * other threads in any other case.
+	 * @param beanName the name of the bean
+	 * @param singletonFactory the ObjectFactory to lazily create the singleton
+	 * with, if necessary
+	 * @return the registered singleton object
+	 * @see #setConcurrentSingletonCreation
+	 */
+	private Object getSingletonConcurrently(String beanName, ObjectFactory singletonFactory) {
+		Thread currentThread = Thread.currentThread();
+		synchronized (this.singletonObjects) {
+			while (true) {
+				Object singletonObject = this.singletonObjects.get(beanName);
+				if (singletonObject != null) {
+					return (singletonObject != NULL_OBJECT ? singletonObject : null);
+				}
+				Thread creatingThread = (Thread) this.singletonCreationThreads.get(beanName);
+				if (creatingThread == null || creatingThread == currentThread) {
+					break;
+				}
+				if (isAwaitingThread(creatingThread, currentThread)) {
+					// Circular reference across threads: waiting would lead to a deadlock.
+					singletonObject = getEarlySingleton(beanName, true);
+					if (singletonObject == null) {
+						throw new BeanCurrentlyInCreationException(beanName,
+								"Requested bean is currently in creation in thread [" + creatingThread.getName() +
+								"] which is waiting for a bean created by the current thread: " +
+								"Is there an unresolvable circular reference?");
+					}
+					return (singletonObject != NULL_OBJECT ? singletonObject : null);
+				}
+				this.threadsAwaitingSingletons.put(currentThread, beanName);
+				try {
+					this.singletonObjects.wait();
+				}
+				catch (InterruptedException ex) {
+					currentThread.interrupt();
+					throw new BeanCreationException(beanName,
+							"Interrupted while waiting for creation of singleton bean in another thread");
+				}
+				finally {
+					this.threadsAwaitingSingletons.remove(currentThread);
+				}
+			}
+			if (this.singletonsCurrentlyInDestruction) {
+				throw new BeanCreationNotAllowedException(beanName,
+						"Singleton bean creation not allowed while the singletons of this factory are in destruction " +
+						"(Do not request a bean from a BeanFactory in a destroy method implementation!)");
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Creating shared instance of singleton bean '" + beanName + "'");
+			}
+			beforeSingletonCreation(beanName);
+			this.singletonCreationThreads.put(beanName, currentThread);
+		}
+
+		Object singletonObject = null;
+		boolean created = false;
+		try {
+			singletonObject = singletonFactory.getObject();
+			created = true;
+		}
+		finally {
+			synchronized (this.singletonObjects) {
+				this.singletonCreationThreads.remove(beanName);
+				try {
+					afterSingletonCreation(beanName);
+					if (created) {
+						addSingleton(beanName, singletonObject);
+					}
+				}
+				finally {
+					this.singletonObjects.notifyAll();
+				}
+			}
+		}
+		return (singletonObject != NULL_OBJECT ? singletonObject : null);
+	}
+
+	/**
+	 * Determine whether the given thread is (transitively) waiting for
+	 * a singleton that the given awaited thread is creating.
+	 * To be called with the singleton mutex held.
+	 */
+	private boolean isAwaitingThread(Thread thread, Thread awaitedThread) {
+		Thread current = thread;
+		for (int i = 0; current != null && i <= this.threadsAwaitingSingletons.size(); i++) {
+			if (current == awaitedThread) {
+				return true;
+			}
+			String awaitedBeanName = (String) this.threadsAwaitingSingletons.get(current);
+			current = (awaitedBeanName != null ? (Thread) this.singletonCreationThreads.get(awaitedBeanName) : null);
+		}
+		return false;
+	}
+
+	/**
+	 * Set whether singletons may be created by multiple threads concurrently.
+	 * <p>Default is "false": Singleton creation happens with the singleton mutex
+	 * held, serializing the creation of all singletons in this registry.
+	 * If switched on, each singleton gets created without holding the mutex,
+	 * with threads asking for a singleton that is currently in creation waiting
+	 * for the creating thread to finish. A circular reference across threads
+	 * gets resolved through an early reference handed out to the waiting thread.
+	 * Suppressed exceptions do not get recorded in that mode.
+	 * <p>Meant to be switched on temporarily, for phases such as the parallel
+	 * preinstantiation of independent singletons.
+	 * @see DefaultListableBeanFactory#setPreInstantiationExecutor
+	 */
+	protected void setConcurrentSingletonCreation(boolean concurrentSingletonCreation) {
+		this.concurrentSingletonCreation = concurrentSingletonCreation;
+	}
+
+	/**
+	 * Return whether singletons may currently be created by multiple threads concurrently.
+	 */
+	protected boolean isConcurrentSingletonCreation() {
+		return this.concurrentSingletonCreation;
+	}
+
 	/**
 	 * Register an Exception that happened to get suppressed during the creation of a
 	 * singleton bean instance, e.g. a temporary circular reference resolution problem.
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.event;
+
+import org.springframework.aop.interceptor.CircuitBreakerInterceptor;
+import org.springframework.aop.interceptor.CircuitBreakerListener;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+/**
+ * {@link CircuitBreakerListener} that publishes every state transition as
+ * {@link CircuitBreakerStateChangedEvent} to the containing application context.
+ *
+ * <p>To be defined as a bean and passed to the "listeners" property
+ * of a {@link CircuitBreakerInterceptor}.
+ *
+ * @since 2.5.7
+ * @see CircuitBreakerInterceptor#setListeners
+ */
+public class CircuitBreakerEventPublisher implements CircuitBreakerListener, ApplicationEventPublisherAware {
+
+	private ApplicationEventPublisher applicationEventPublisher;
+
+
+	public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+		this.applicationEventPublisher = applicationEventPublisher;
+	}
+
+	public void stateChanged(CircuitBreakerInterceptor interceptor, String targetKey, String oldState, String newState) {
+		if (this.applicationEventPublisher != null) {
+			this.applicationEventPublisher.publishEvent(
+					new CircuitBreakerStateChangedEvent(interceptor, targetKey, oldState, newState));
+		}
+	}
+
+}
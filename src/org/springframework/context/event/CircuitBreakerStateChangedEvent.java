@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.event;
+
+import org.springframework.aop.interceptor.CircuitBreakerInterceptor;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event raised when a circuit managed by a {@link CircuitBreakerInterceptor}
+ * changes its state.
+ *
+ * @since 2.5.7
+ * @see CircuitBreakerEventPublisher
+ */
+public class CircuitBreakerStateChangedEvent extends ApplicationEvent {
+
+	private final String targetKey;
+
+	private final String oldState;
+
+	private final String newState;
+
+
+	/**
+	 * Create a new CircuitBreakerStateChangedEvent.
+	 * @param source the CircuitBreakerInterceptor that manages the circuit
+	 * @param targetKey the key of the target
+	 * @param oldState the previous state
+	 * @param newState the new state
+	 */
+	public CircuitBreakerStateChangedEvent(
+			CircuitBreakerInterceptor source, String targetKey, String oldState, String newState) {
+
+		super(source);
+		this.targetKey = targetKey;
+		this.oldState = oldState;
+		this.newState = newState;
+	}
+
+
+	/**
+	 * Return the CircuitBreakerInterceptor that manages the circuit.
+	 */
+	public CircuitBreakerInterceptor getCircuitBreakerInterceptor() {
+		return (CircuitBreakerInterceptor) getSource();
+	}
+
+	/**
+	 * Return the key of the target whose circuit changed its state.
+	 */
+	public String getTargetKey() {
+		return this.targetKey;
+	}
+
+	/**
+	 * Return the previous state of the circuit.
+	 * @see CircuitBreakerInterceptor#STATE_CLOSED
+	 * @see CircuitBreakerInterceptor#STATE_OPEN
+	 * @see CircuitBreakerInterceptor#STATE_HALF_OPEN
+	 */
+	public String getOldState() {
+		return this.oldState;
+	}
+
+	/**
+	 * Return the new state of the circuit.
+	 * @see CircuitBreakerInterceptor#STATE_CLOSED
+	 * @see CircuitBreakerInterceptor#STATE_OPEN
+	 * @see CircuitBreakerInterceptor#STATE_HALF_OPEN
+	 */
+	public String getNewState() {
+		return this.newState;
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.event;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.StartupProfiler;
+
+/**
+ * Event raised after an <code>ApplicationContext</code> with a
+ * {@link StartupProfiler} has been initialized or refreshed,
+ * carrying the results of the profiled refresh.
+ *
+ * @since 2.5.7
+ * @see org.springframework.context.support.AbstractApplicationContext#setStartupProfiler
+ */
+public class StartupProfileEvent extends ApplicationContextEvent {
+
+	private final StartupProfiler startupProfiler;
+
+
+	/**
+	 * Create a new StartupProfileEvent.
+	 * @param source the <code>ApplicationContext</code> that has been initialized
+	 * or refreshed (must not be <code>null</code>)
+	 * @param startupProfiler the profiler that recorded the refresh
+	 */
+	public StartupProfileEvent(ApplicationContext source, StartupProfiler startupProfiler) {
+		super(source);
+		this.startupProfiler = startupProfiler;
+	}
+
+
+	/**
+	 * Return the profiler that recorded the refresh.
+	 */
+	public StartupProfiler getStartupProfiler() {
+		return this.startupProfiler;
+	}
+
+}
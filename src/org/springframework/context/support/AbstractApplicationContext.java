@@ -40,6 +40,7 @@ import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractAutowireCapableBeanFactory;
 import org.springframework.beans.support.ResourceEditorRegistrar;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -61,6 +62,7 @@ import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.ContextStartedEvent;
 import org.springframework.context.event.ContextStoppedEvent;
 import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.context.event.StartupProfileEvent;
 import org.springframework.core.JdkVersion;
 import org.springframework.core.OrderComparator;
 import org.springframework.core.Ordered;
@@ -133,6 +135,13 @@ public abstract class AbstractApplicationContext extends DefaultResourceLoader
 	 */
 	public static final String APPLICATION_EVENT_MULTICASTER_BEAN_NAME = "applicationEventMulticaster";
 
+	/**
+	 * Name of the StartupProfiler bean in the factory, registered
+	 * if a StartupProfiler has been specified for this context.
+	 * @see #setStartupProfiler
+	 */
+	public static final String STARTUP_PROFILER_BEAN_NAME = "startupProfiler";
+
 
 	static {
 		// Eagerly load the ContextClosedEvent class to avoid weird classloader issues
@@ -183,6 +192,9 @@ public abstract class AbstractApplicationContext extends DefaultResourceLoader
 	/** Statically specified listeners */
 	private List applicationListeners = new ArrayList();
 
+	/** Profiler for the refresh of this context, if any */
+	private StartupProfiler startupProfiler;
+
 
 	/**
 	 * Create a new AbstractApplicationContext with no parent.
@@ -342,27 +354,57 @@ public abstract class AbstractApplicationContext extends DefaultResourceLoader
 		return this.applicationListeners;
 	}
 
+	/**
+	 * Specify a profiler to record the time spent in each phase of the refresh
+	 * of this context and on creating each bean. Needs to be set before refresh.
+	 * <p>The profiler gets registered as singleton under the name
+	 * {@link #STARTUP_PROFILER_BEAN_NAME "startupProfiler"}, and a
+	 * {@link org.springframework.context.event.StartupProfileEvent} gets
+	 * published once the refresh has completed. Bean creation after the
+	 * refresh (e.g. of prototypes) is not recorded.
+	 */
+	public void setStartupProfiler(StartupProfiler startupProfiler) {
+		this.startupProfiler = startupProfiler;
+	}
+
+	/**
+	 * Return the profiler for the refresh of this context, if any.
+	 */
+	public StartupProfiler getStartupProfiler() {
+		return this.startupProfiler;
+	}
+
 
 	public void refresh() throws BeansException, IllegalStateException {
 		synchronized (this.startupShutdownMonitor) {
+			if (this.startupProfiler != null) {
+				this.startupProfiler.refreshStarted();
+			}
+
 			// Prepare this context for refreshing.
 			prepareRefresh();
+			markRefreshPhase("prepareRefresh");
 
 			// Tell the subclass to refresh the internal bean factory.
 			ConfigurableListableBeanFactory beanFactory = obtainFreshBeanFactory();
+			markRefreshPhase("obtainFreshBeanFactory");
 
 			// Prepare the bean factory for use in this context.
 			prepareBeanFactory(beanFactory);
+			markRefreshPhase("prepareBeanFactory");
 
 			try {
 				// Allows post-processing of the bean factory in context subclasses.
 				postProcessBeanFactory(beanFactory);
+				markRefreshPhase("postProcessBeanFactory");
 
 				// Invoke factory processors registered as beans in the context.
 				invokeBeanFactoryPostProcessors(beanFactory);
+				markRefreshPhase("invokeBeanFactoryPostProcessors");
 
 				// Register bean processors that intercept bean creation.
 				registerBeanPostProcessors(beanFactory);
+				markRefreshPhase("registerBeanPostProcessors");
 
 				// Initialize message source for this context.
 				initMessageSource();
@@ -375,12 +417,20 @@ public abstract class AbstractApplicationContext extends DefaultResourceLoader
 
 				// Check for listener beans and register them.
 				registerListeners();
+				markRefreshPhase("initSpecialBeans");
 
 				// Instantiate all remaining (non-lazy-init) singletons.
 				finishBeanFactoryInitialization(beanFactory);
+				markRefreshPhase("finishBeanFactoryInitialization");
 
 				// Last step: publish corresponding event.
 				finishRefresh();
+				markRefreshPhase("finishRefresh");
+
+				if (this.startupProfiler != null) {
+					this.startupProfiler.refreshCompleted();
+					publishEvent(new StartupProfileEvent(this, this.startupProfiler));
+				}
 			}
 
 			catch (BeansException ex) {
@@ -393,6 +443,22 @@ public abstract class AbstractApplicationContext extends DefaultResourceLoader
 				// Propagate exception to caller.
 				throw ex;
 			}
+
+			finally {
+				// Stop profiling bean creation after startup.
+				if (this.startupProfiler != null && beanFactory instanceof AbstractAutowireCapableBeanFactory) {
+					((AbstractAutowireCapableBeanFactory) beanFactory).setBeanCreationProfiler(null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Notify the startup profiler, if any, of the completion of the given refresh phase.
+	 */
+	private void markRefreshPhase(String phase) {
+		if (this.startupProfiler != null) {
+			this.startupProfiler.refreshPhaseCompleted(phase);
 		}
 	}
 
@@ -459,6 +525,17 @@ public abstract class AbstractApplicationContext extends DefaultResourceLoader
 		beanFactory.registerResolvableDependency(ApplicationEventPublisher.class, this);
 		beanFactory.registerResolvableDependency(ApplicationContext.class, this);
 
+		// Profile bean creation and expose the profiler as a bean, if specified.
+		if (this.startupProfiler != null) {
+			if (beanFactory instanceof AbstractAutowireCapableBeanFactory) {
+				((AbstractAutowireCapableBeanFactory) beanFactory).setBeanCreationProfiler(
+						this.startupProfiler.getBeanCreationProfiler());
+			}
+			if (!beanFactory.containsLocalBean(STARTUP_PROFILER_BEAN_NAME)) {
+				beanFactory.registerSingleton(STARTUP_PROFILER_BEAN_NAME, this.startupProfiler);
+			}
+		}
+
 		// Detect a LoadTimeWeaver and prepare for weaving, if found.
 		if (beanFactory.containsBean(LOAD_TIME_WEAVER_BEAN_NAME) && JdkVersion.isAtLeastJava15()) {
 			// Register the (JDK 1.5 specific) LoadTimeWeaverAwareProcessor.
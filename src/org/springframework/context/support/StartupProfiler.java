@@ -0,0 +1,300 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.support;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.support.BeanCreationProfile;
+import org.springframework.beans.factory.support.BeanCreationProfiler;
+import org.springframework.util.StringUtils;
+
+/**
+ * Profiler for the startup of an application context: records the time spent
+ * in each phase of {@link AbstractApplicationContext#refresh()} (such as bean
+ * definition loading, BeanFactoryPostProcessor invocation and singleton
+ * preinstantiation) as well as the time spent on creating each bean,
+ * through a {@link BeanCreationProfiler}.
+ *
+ * <p>To be set on an application context through
+ * {@link AbstractApplicationContext#setStartupProfiler} before the context gets
+ * refreshed. The context registers the profiler as singleton under the name
+ * {@link AbstractApplicationContext#STARTUP_PROFILER_BEAN_NAME "startupProfiler"},
+ * so that it can be exported as an MBean through Spring's
+ * {@link org.springframework.jmx.export.MBeanExporter} as-is, and publishes a
+ * {@link org.springframework.context.event.StartupProfileEvent} once the refresh
+ * has completed. The report can also be written to a text file and a CSV file,
+ * either on demand or automatically after each refresh.
+ *
+ * @since 2.5.7
+ * @see AbstractApplicationContext#setStartupProfiler
+ * @see BeanCreationProfiler
+ * @see org.springframework.context.event.StartupProfileEvent
+ */
+public class StartupProfiler {
+
+	/**
+	 * Default number of beans listed in the report of slowest beans: 20.
+	 */
+	public static final int DEFAULT_MAX_REPORTED_BEANS = 20;
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final BeanCreationProfiler beanCreationProfiler = new BeanCreationProfiler();
+
+	/** Map from refresh phase name to Long duration in milliseconds */
+	private final Map refreshPhases = new LinkedHashMap();
+
+	private long refreshStartTime;
+
+	private long lastPhaseEndTime;
+
+	private long refreshMillis = -1;
+
+	private int maxReportedBeans = DEFAULT_MAX_REPORTED_BEANS;
+
+	private String reportFile;
+
+	private String csvFile;
+
+
+	/**
+	 * Set the number of beans to list in the report of slowest beans.
+	 * Default is {@link #DEFAULT_MAX_REPORTED_BEANS}.
+	 */
+	public void setMaxReportedBeans(int maxReportedBeans) {
+		this.maxReportedBeans = maxReportedBeans;
+	}
+
+	/**
+	 * Specify a file to write the text report to after each refresh.
+	 * Default is none.
+	 * @see #writeReport(String)
+	 */
+	public void setReportFile(String reportFile) {
+		this.reportFile = reportFile;
+	}
+
+	/**
+	 * Specify a file to write the per-bean CSV report to after each refresh.
+	 * Default is none.
+	 * @see #writeCsv(String)
+	 */
+	public void setCsvFile(String csvFile) {
+		this.csvFile = csvFile;
+	}
+
+	/**
+	 * Return the underlying BeanCreationProfiler.
+	 */
+	public BeanCreationProfiler getBeanCreationProfiler() {
+		return this.beanCreationProfiler;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Callbacks from the application context
+	//---------------------------------------------------------------------
+
+	/**
+	 * Callback for the start of a context refresh.
+	 * Discards the results of any previous refresh.
+	 */
+	public synchronized void refreshStarted() {
+		this.beanCreationProfiler.reset();
+		this.refreshPhases.clear();
+		this.refreshStartTime = System.currentTimeMillis();
+		this.lastPhaseEndTime = this.refreshStartTime;
+		this.refreshMillis = -1;
+	}
+
+	/**
+	 * Callback for the completion of a phase of the context refresh.
+	 * @param phase the name of the phase
+	 */
+	public synchronized void refreshPhaseCompleted(String phase) {
+		long now = System.currentTimeMillis();
+		this.refreshPhases.put(phase, new Long(now - this.lastPhaseEndTime));
+		this.lastPhaseEndTime = now;
+	}
+
+	/**
+	 * Callback for the completion of a context refresh.
+	 * Writes the report files, if specified.
+	 */
+	public void refreshCompleted() {
+		synchronized (this) {
+			this.refreshMillis = System.currentTimeMillis() - this.refreshStartTime;
+		}
+		if (logger.isInfoEnabled()) {
+			logger.info("Context refresh took " + this.refreshMillis + " ms, creating " +
+					this.beanCreationProfiler.getBeanCount() + " beans");
+		}
+		try {
+			if (this.reportFile != null) {
+				writeReport(this.reportFile);
+			}
+			if (this.csvFile != null) {
+				writeCsv(this.csvFile);
+			}
+		}
+		catch (IOException ex) {
+			logger.warn("Could not write startup profile", ex);
+		}
+	}
+
+
+	//---------------------------------------------------------------------
+	// Management operations, suitable for JMX export
+	//---------------------------------------------------------------------
+
+	/**
+	 * Return the total duration of the last refresh (in milliseconds),
+	 * or -1 if no refresh has completed yet.
+	 */
+	public synchronized long getRefreshMillis() {
+		return this.refreshMillis;
+	}
+
+	/**
+	 * Return the duration of each phase of the last refresh, one line per phase.
+	 */
+	public synchronized String[] getRefreshPhaseSummary() {
+		String[] summary = new String[this.refreshPhases.size()];
+		int i = 0;
+		for (Iterator it = this.refreshPhases.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			summary[i++] = entry.getKey() + ": " + entry.getValue() + " ms";
+		}
+		return summary;
+	}
+
+	/**
+	 * Return the number of beans created during the last refresh.
+	 */
+	public int getBeanCount() {
+		return this.beanCreationProfiler.getBeanCount();
+	}
+
+	/**
+	 * Return the beans with the highest creation time (excluding dependencies),
+	 * one line per bean with the time spent in each creation phase.
+	 * @see #setMaxReportedBeans
+	 */
+	public String[] getSlowestBeans() {
+		BeanCreationProfile[] profiles = this.beanCreationProfiler.getSlowestBeans(this.maxReportedBeans);
+		String[] summary = new String[profiles.length];
+		for (int i = 0; i < profiles.length; i++) {
+			summary[i] = profiles[i].toString();
+		}
+		return summary;
+	}
+
+	/**
+	 * Return the chain of beans that led to the creation of the given bean,
+	 * e.g. "sessionFactory -> dataSource".
+	 * @param beanName the name of the bean
+	 * @return the dependency chain, or <code>null</code> if the bean has not been created
+	 */
+	public String getDependencyChain(String beanName) {
+		BeanCreationProfile profile = this.beanCreationProfiler.getBeanProfile(beanName);
+		return (profile != null ?
+				StringUtils.arrayToDelimitedString(profile.getDependencyChain(), " -> ") : null);
+	}
+
+	/**
+	 * Return the full text report: refresh phases, slowest beans and
+	 * the tree of bean creations.
+	 */
+	public String getReport() {
+		StringWriter writer = new StringWriter();
+		try {
+			writeReport(writer);
+		}
+		catch (IOException ex) {
+			// cannot happen with a StringWriter
+			throw new IllegalStateException(ex.getMessage());
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Write the full text report to the given file.
+	 * @param fileName the name of the file to write to
+	 * @see #getReport()
+	 */
+	public void writeReport(String fileName) throws IOException {
+		Writer writer = new FileWriter(fileName);
+		try {
+			writeReport(writer);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Write the per-bean report to the given file in CSV format.
+	 * @param fileName the name of the file to write to
+	 * @see BeanCreationProfiler#writeCsv
+	 */
+	public void writeCsv(String fileName) throws IOException {
+		Writer writer = new FileWriter(fileName);
+		try {
+			this.beanCreationProfiler.writeCsv(writer);
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Write the full text report to the given Writer.
+	 * @param writer the Writer to write to
+	 */
+	public void writeReport(Writer writer) throws IOException {
+		PrintWriter pw = new PrintWriter(writer);
+		pw.println("Context refresh: " + getRefreshMillis() + " ms, " + getBeanCount() + " beans created");
+		pw.println();
+		pw.println("Refresh phases:");
+		String[] phases = getRefreshPhaseSummary();
+		for (int i = 0; i < phases.length; i++) {
+			pw.println("  " + phases[i]);
+		}
+		pw.println();
+		pw.println("Slowest beans (excluding dependencies):");
+		String[] slowestBeans = getSlowestBeans();
+		for (int i = 0; i < slowestBeans.length; i++) {
+			pw.println("  " + slowestBeans[i]);
+		}
+		pw.println();
+		pw.println("Bean creation tree:");
+		pw.flush();
+		this.beanCreationProfiler.writeDependencyTree(writer);
+	}
+
+}
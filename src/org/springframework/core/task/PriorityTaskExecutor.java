@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.task;
+
+/**
+ * Extended interface for {@link TaskExecutor} implementations that order
+ * pending tasks by priority, offering overloaded <code>execute</code>
+ * variants with priority and deadline hints.
+ *
+ * <p>Tasks submitted through the plain {@link #execute(Runnable)} method
+ * are executed with {@link #PRIORITY_DEFAULT default priority} and
+ * without deadline.
+ *
+ * @since 2.5.7
+ * @see org.springframework.scheduling.concurrent.PriorityThreadPoolTaskExecutor
+ */
+public interface PriorityTaskExecutor extends TaskExecutor {
+
+	/** Constant for low priority tasks, e.g. bulk work */
+	int PRIORITY_LOW = -10;
+
+	/** Constant for the default priority */
+	int PRIORITY_DEFAULT = 0;
+
+	/** Constant for high priority tasks, e.g. latency-sensitive work */
+	int PRIORITY_HIGH = 10;
+
+	/** Constant that indicates no deadline */
+	long NO_DEADLINE = Long.MAX_VALUE;
+
+
+	/**
+	 * Execute the given <code>task</code> with the given priority.
+	 * @param task the <code>Runnable</code> to execute (never <code>null</code>)
+	 * @param priority the priority of the task: pending tasks with a higher
+	 * value will be executed before pending tasks with a lower value
+	 * @throws TaskRejectedException if the given task was not accepted
+	 */
+	void execute(Runnable task, int priority);
+
+	/**
+	 * Execute the given <code>task</code> with the given priority and deadline.
+	 * @param task the <code>Runnable</code> to execute (never <code>null</code>)
+	 * @param priority the priority of the task: pending tasks with a higher
+	 * value will be executed before pending tasks with a lower value
+	 * @param deadlineTimeout the time duration (in milliseconds) within which
+	 * the task needs to start; a task that is still pending after that time
+	 * will not be executed anymore. Use {@link #NO_DEADLINE} for no time limit.
+	 * @throws TaskRejectedException if the given task was not accepted
+	 */
+	void execute(Runnable task, int priority, long deadlineTimeout);
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2008 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,7 +16,11 @@
 
 package org.springframework.core.task;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedList;
 
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
@@ -30,9 +34,17 @@ import org.springframework.util.CustomizableThreadCreator;
  * <p>Supports limiting concurrent threads through the "concurrencyLimit"
  * bean property. By default, the number of concurrent threads is unlimited.
  *
- * <p><b>NOTE: This implementation does not reuse threads!</b> Consider a
- * thread-pooling TaskExecutor implementation instead, in particular for
- * executing a large number of short-lived tasks.
+ * <p><b>NOTE: By default, this implementation does not reuse threads!</b>
+ * Specify a positive {@link #setKeepAliveSeconds "keepAliveSeconds"} value
+ * to let threads that have finished a task wait for further tasks for
+ * the given period, avoiding the cost of thread creation for frequently
+ * submitted tasks (e.g. from a DefaultMessageListenerContainer with dynamic
+ * scaling, or from asynchronous event multicasting). Consider a
+ * thread-pooling TaskExecutor implementation instead for executing
+ * a large number of short-lived tasks. Idle non-daemon threads keep the
+ * VM alive until their keep-alive time has elapsed: Call {@link #shutdown()}
+ * to release them, for example as "destroy-method" of the bean definition,
+ * or let this executor create {@link #setDaemon daemon threads}.
  *
  * @author Juergen Hoeller
  * @since 2.0
@@ -68,6 +80,14 @@ public class SimpleAsyncTaskExecutor extends CustomizableThreadCreator implement
 	 */
 	private final ConcurrencyThrottleAdapter concurrencyThrottle = new ConcurrencyThrottleAdapter();
 
+	private int keepAliveSeconds = 0;
+
+	/** Threads waiting for a task to reuse them, most recently used first */
+	private transient LinkedList idleThreads = new LinkedList();
+
+	/** Whether shutdown has been called, guarded by the idleThreads monitor */
+	private transient boolean shutdown = false;
+
 
 	/**
 	 * Create a new SimpleAsyncTaskExecutor with default thread name prefix.
@@ -106,6 +126,15 @@ public class SimpleAsyncTaskExecutor extends CustomizableThreadCreator implement
 		return this.concurrencyThrottle.getConcurrencyLimit();
 	}
 
+	/**
+	 * Set whether threads waiting for the concurrency throttle should be
+	 * granted access in arrival order. Default is "false".
+	 * @see ConcurrencyThrottleSupport#setFair
+	 */
+	public void setFairConcurrency(boolean fairConcurrency) {
+		this.concurrencyThrottle.setFair(fairConcurrency);
+	}
+
 	/**
 	 * Return whether this throttle is currently active.
 	 * @return <code>true</code> if the concurrency limit for this instance is active
@@ -116,6 +145,53 @@ public class SimpleAsyncTaskExecutor extends CustomizableThreadCreator implement
 		return this.concurrencyThrottle.isThrottleActive();
 	}
 
+	/**
+	 * Set the time (in seconds) that a thread which has finished its task
+	 * remains available for executing further tasks. Default is 0,
+	 * creating a new thread for each task.
+	 * <p>In principle, this value can be changed at runtime,
+	 * although it is generally designed as a config time setting.
+	 */
+	public void setKeepAliveSeconds(int keepAliveSeconds) {
+		this.keepAliveSeconds = keepAliveSeconds;
+	}
+
+	/**
+	 * Return the time (in seconds) that finished threads remain available for reuse.
+	 */
+	public int getKeepAliveSeconds() {
+		return this.keepAliveSeconds;
+	}
+
+	/**
+	 * Return the number of threads currently waiting for a task to reuse them.
+	 */
+	public int getIdleThreadCount() {
+		synchronized (this.idleThreads) {
+			return this.idleThreads.size();
+		}
+	}
+
+	/**
+	 * Release all threads currently waiting for further tasks, and let all
+	 * other threads terminate once they have finished their current task.
+	 * Tasks submitted afterwards still get executed, in a new thread each.
+	 * <p>Only needed with a positive "keepAliveSeconds" value; can be
+	 * specified as "destroy-method" of the executor's bean definition.
+	 * @see #setKeepAliveSeconds
+	 */
+	public void shutdown() {
+		LinkedList threadsToRelease;
+		synchronized (this.idleThreads) {
+			this.shutdown = true;
+			threadsToRelease = new LinkedList(this.idleThreads);
+			this.idleThreads.clear();
+		}
+		for (Iterator it = threadsToRelease.iterator(); it.hasNext();) {
+			((ReusableThreadRunnable) it.next()).release();
+		}
+	}
+
 
 	/**
 	 * Executes the given task, within a concurrency throttle
@@ -131,14 +207,21 @@ public class SimpleAsyncTaskExecutor extends CustomizableThreadCreator implement
 	 * if configured (through the superclass's settings).
 	 * <p>Executes urgent tasks (with 'immediate' timeout) directly,
 	 * bypassing the concurrency throttle (if active). All other
-	 * tasks are subject to throttling.
+	 * tasks are subject to throttling, waiting for the concurrency
+	 * count to drop below the limit for at most the given timeout.
 	 * @see #TIMEOUT_IMMEDIATE
 	 * @see #doExecute(Runnable)
 	 */
 	public void execute(Runnable task, long startTimeout) {
 		Assert.notNull(task, "Runnable must not be null");
 		if (isThrottleActive() && startTimeout > TIMEOUT_IMMEDIATE) {
-			this.concurrencyThrottle.beforeAccess();
+			if (startTimeout == TIMEOUT_INDEFINITE) {
+				this.concurrencyThrottle.beforeAccess();
+			}
+			else if (!this.concurrencyThrottle.tryBeforeAccess(startTimeout)) {
+				throw new TaskTimeoutException("Concurrency limit of " + getConcurrencyLimit() +
+						" still reached after start timeout of " + startTimeout + " ms - did not accept task: " + task);
+			}
 			doExecute(new ConcurrencyThrottlingRunnable(task));
 		}
 		else {
@@ -148,13 +231,44 @@ public class SimpleAsyncTaskExecutor extends CustomizableThreadCreator implement
 
 	/**
 	 * Template method for the actual execution of a task.
-	 * <p>The default implementation creates a new Thread and starts it.
+	 * <p>The default implementation hands the task over to an idle thread,
+	 * if available according to the "keepAliveSeconds" setting,
+	 * or otherwise creates a new Thread and starts it.
 	 * @param task the Runnable to execute
+	 * @see #setKeepAliveSeconds
 	 * @see #createThread
 	 * @see java.lang.Thread#start()
 	 */
 	protected void doExecute(Runnable task) {
-		createThread(task).start();
+		if (this.keepAliveSeconds > 0) {
+			ReusableThreadRunnable idleThread = null;
+			boolean reuse;
+			synchronized (this.idleThreads) {
+				reuse = !this.shutdown;
+				if (!this.idleThreads.isEmpty()) {
+					idleThread = (ReusableThreadRunnable) this.idleThreads.removeFirst();
+				}
+			}
+			if (idleThread != null) {
+				idleThread.handOver(task);
+			}
+			else {
+				createThread(reuse ? new ReusableThreadRunnable(task) : task).start();
+			}
+		}
+		else {
+			createThread(task).start();
+		}
+	}
+
+
+	private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+		// Rely on default serialization, just initialize state after deserialization.
+		ois.defaultReadObject();
+
+		// Initialize transient fields.
+		this.idleThreads = new LinkedList();
+		this.shutdown = false;
 	}
 
 
@@ -169,6 +283,10 @@ public class SimpleAsyncTaskExecutor extends CustomizableThreadCreator implement
 			super.beforeAccess();
 		}
 
+		protected boolean tryBeforeAccess(long timeout) {
+			return super.tryBeforeAccess(timeout);
+		}
+
 		protected void afterAccess() {
 			super.afterAccess();
 		}
@@ -197,4 +315,89 @@ public class SimpleAsyncTaskExecutor extends CustomizableThreadCreator implement
 		}
 	}
 
+
+	/**
+	 * Runnable for a thread that waits for further tasks after
+	 * completing its initial task, up to the keep-alive time.
+	 * A task that throws an exception terminates the thread.
+	 */
+	private class ReusableThreadRunnable implements Runnable {
+
+		private Runnable task;
+
+		private boolean released;
+
+		public ReusableThreadRunnable(Runnable task) {
+			this.task = task;
+		}
+
+		public void run() {
+			Runnable task = takeTask();
+			while (task != null) {
+				task.run();
+				task = awaitNextTask();
+			}
+		}
+
+		/**
+		 * Hand over the given task to this thread, which has been removed
+		 * from the list of idle threads already.
+		 */
+		public synchronized void handOver(Runnable task) {
+			this.task = task;
+			notify();
+		}
+
+		/**
+		 * Let this thread terminate instead of waiting for further tasks;
+		 * it has been removed from the list of idle threads already.
+		 */
+		public synchronized void release() {
+			this.released = true;
+			notify();
+		}
+
+		private synchronized Runnable takeTask() {
+			Runnable task = this.task;
+			this.task = null;
+			return task;
+		}
+
+		private Runnable awaitNextTask() {
+			synchronized (idleThreads) {
+				if (shutdown) {
+					return null;
+				}
+				idleThreads.addFirst(this);
+			}
+			synchronized (this) {
+				long deadline = System.currentTimeMillis() + keepAliveSeconds * 1000L;
+				boolean expired = false;
+				while (this.task == null) {
+					if (this.released) {
+						return null;
+					}
+					long remaining = deadline - System.currentTimeMillis();
+					if (!expired && remaining <= 0) {
+						synchronized (idleThreads) {
+							if (idleThreads.remove(this)) {
+								return null;
+							}
+						}
+						// Already picked by a submitter: wait for the task to be handed over.
+						expired = true;
+					}
+					try {
+						wait(expired ? 0 : remaining);
+					}
+					catch (InterruptedException ex) {
+						// Stop waiting for further tasks, unless already picked by a submitter.
+						deadline = 0;
+					}
+				}
+				return takeTask();
+			}
+		}
+	}
+
 }
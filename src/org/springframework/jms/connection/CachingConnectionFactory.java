@@ -16,6 +16,8 @@
 
 package org.springframework.jms.connection;
 
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -23,9 +25,13 @@ import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
@@ -38,8 +44,12 @@ import javax.jms.Session;
 import javax.jms.Topic;
 import javax.jms.TopicSession;
 
+import org.springframework.core.CollectionFactory;
+import org.springframework.core.JdkVersion;
+import org.springframework.jms.support.JmsUtils;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
+import org.springframework.util.ReflectionUtils;
 
 /**
  * {@link SingleConnectionFactory} subclass that adds {@link javax.jms.Session}
@@ -52,6 +62,15 @@ import org.springframework.util.ObjectUtils;
  * {@link #setSessionCacheSize "sessionCacheSize" value} in case of a
  * high-concurrency environment.
  *
+ * <p>On JDK 1.5+, cached Sessions are kept in a non-blocking queue per session
+ * acknowledgement type, so that obtaining and returning a Session does not
+ * require any shared lock. On JDK 1.4, a synchronized list will be used instead.
+ * Optionally, a thread may preferably receive the Session that it returned last
+ * (see {@link #setSessionThreadAffinity "sessionThreadAffinity"}), and the number
+ * of MessageProducers cached per Session may be limited (see
+ * {@link #setProducerCacheSize "producerCacheSize"}). Cache statistics are
+ * exposed through bean property getters, e.g. for export via JMX.
+ *
  * <p><b>NOTE: This ConnectionFactory decorator requires JMS 1.1 or higher.</b>
  * You may use it through the JMS 1.0.2 API; however, the target JMS driver
  * needs to be compliant with JMS 1.1.
@@ -76,6 +95,7 @@ import org.springframework.util.ObjectUtils;
  *
  * @author Juergen Hoeller
  * @since 2.5.3
+ * @see org.springframework.jmx.export.MBeanExporter
  */
 public class CachingConnectionFactory extends SingleConnectionFactory {
 
@@ -83,11 +103,21 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 
 	private boolean cacheProducers = true;
 
+	private int producerCacheSize = 0;
+
 	private boolean cacheConsumers = true;
 
+	private boolean sessionThreadAffinity = false;
+
 	private volatile boolean active = true;
 
-	private final Map cachedSessions = new HashMap();
+	private final Map cachedSessions = CollectionFactory.createConcurrentMapIfPossible(4);
+
+	/** Weak Reference to the handler of the Session that the current thread returned last */
+	private final ThreadLocal lastReturnedSession = new ThreadLocal();
+
+	/** Whether a subclass still overrides the deprecated LinkedList-based proxy hook */
+	private final boolean legacySessionProxyHook = isLegacySessionProxyHookOverridden();
 
 
 	/**
@@ -139,6 +169,7 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 	 * (more specifically: one MessageProducer per Destination and Session).
 	 * <p>Default is "true". Switch this to "false" in order to always
 	 * recreate MessageProducers on demand.
+	 * @see #setProducerCacheSize
 	 */
 	public void setCacheProducers(boolean cacheProducers) {
 		this.cacheProducers = cacheProducers;
@@ -151,6 +182,26 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 		return this.cacheProducers;
 	}
 
+	/**
+	 * Specify the maximum number of JMS MessageProducers to cache per JMS
+	 * Session instance, in case of {@link #setCacheProducers "cacheProducers"}.
+	 * <p>Default is 0, indicating no limit. Specify a limit when sending to
+	 * a large or open-ended set of Destinations, e.g. to temporary reply queues:
+	 * The least recently used MessageProducers will then be closed whenever the
+	 * Session gets returned to the cache.
+	 */
+	public void setProducerCacheSize(int producerCacheSize) {
+		Assert.isTrue(producerCacheSize >= 0, "Producer cache size must not be negative");
+		this.producerCacheSize = producerCacheSize;
+	}
+
+	/**
+	 * Return the maximum number of JMS MessageProducers to cache per JMS Session.
+	 */
+	public int getProducerCacheSize() {
+		return this.producerCacheSize;
+	}
+
 	/**
 	 * Specify whether to cache JMS MessageConsumers per JMS Session instance
 	 * (more specifically: one MessageConsumer per Destination, selector String
@@ -170,6 +221,117 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 		return this.cacheConsumers;
 	}
 
+	/**
+	 * Specify whether a thread should preferably obtain the cached Session
+	 * that it returned last, provided that the Session is still available
+	 * in the cache. This keeps the MessageProducers and MessageConsumers
+	 * that a thread works with warm.
+	 * <p>Default is "false". Sessions remain part of the shared cache in any
+	 * case; a Session that has been obtained by another thread in the meantime
+	 * will simply be skipped.
+	 */
+	public void setSessionThreadAffinity(boolean sessionThreadAffinity) {
+		this.sessionThreadAffinity = sessionThreadAffinity;
+	}
+
+	/**
+	 * Return whether a thread should preferably obtain the Session it returned last.
+	 */
+	public boolean isSessionThreadAffinity() {
+		return this.sessionThreadAffinity;
+	}
+
+
+	/**
+	 * Return the number of Sessions that are currently cached,
+	 * that is, available for reuse.
+	 */
+	public int getCachedSessionCount() {
+		int count = 0;
+		for (Iterator it = getSessionPools().iterator(); it.hasNext();) {
+			count += ((SessionPool) it.next()).size();
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of Sessions that are currently in use,
+	 * that is, obtained from this ConnectionFactory but not closed yet.
+	 */
+	public int getActiveSessionCount() {
+		long count = 0;
+		for (Iterator it = getSessionPools().iterator(); it.hasNext();) {
+			count += ((SessionPool) it.next()).activeCount.get();
+		}
+		return (int) count;
+	}
+
+	/**
+	 * Return the number of Session requests that have been served
+	 * from the cache since the last Connection reset.
+	 */
+	public long getSessionCacheHitCount() {
+		long count = 0;
+		for (Iterator it = getSessionPools().iterator(); it.hasNext();) {
+			count += ((SessionPool) it.next()).hitCount.get();
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of Session requests that required the creation of a new
+	 * Session since the last Connection reset.
+	 */
+	public long getSessionCacheMissCount() {
+		long count = 0;
+		for (Iterator it = getSessionPools().iterator(); it.hasNext();) {
+			count += ((SessionPool) it.next()).missCount.get();
+		}
+		return count;
+	}
+
+	/**
+	 * Return the ratio of Session requests served from the cache,
+	 * between 0 and 1 (0 if no Session has been requested yet).
+	 */
+	public double getSessionCacheHitRatio() {
+		long hits = getSessionCacheHitCount();
+		long total = hits + getSessionCacheMissCount();
+		return (total > 0 ? (double) hits / total : 0);
+	}
+
+	/**
+	 * Return the average time that a cache miss made the caller wait for
+	 * the creation of a new Session, in milliseconds.
+	 */
+	public double getAverageSessionCreationTime() {
+		long misses = 0;
+		long time = 0;
+		for (Iterator it = getSessionPools().iterator(); it.hasNext();) {
+			SessionPool pool = (SessionPool) it.next();
+			misses += pool.missCount.get();
+			time += pool.creationTime.get();
+		}
+		return (misses > 0 ? (double) time / misses : 0);
+	}
+
+	/**
+	 * Return the current utilization of the Session cache, that is, the number
+	 * of active Sessions in relation to the overall cache capacity across all
+	 * session acknowledgement types in use. May exceed 1 if more Sessions are
+	 * in use than can be cached.
+	 */
+	public double getSessionCacheUtilization() {
+		int capacity = getSessionPools().size() * getSessionCacheSize();
+		return (capacity > 0 ? (double) getActiveSessionCount() / capacity : 0);
+	}
+
+	private List getSessionPools() {
+		synchronized (this.cachedSessions) {
+			return new ArrayList(this.cachedSessions.values());
+		}
+	}
+
 
 	/**
 	 * Resets the Session cache as well.
@@ -178,22 +340,22 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 		this.active = false;
 		synchronized (this.cachedSessions) {
 			for (Iterator it = this.cachedSessions.values().iterator(); it.hasNext();) {
-				LinkedList sessionList = (LinkedList) it.next();
-				synchronized (sessionList) {
-					for (Iterator it2 = sessionList.iterator(); it2.hasNext();) {
-						Session session = (Session) it2.next();
-						try {
-							session.close();
-						}
-						catch (Throwable ex) {
-							logger.trace("Could not close cached JMS Session", ex);
-						}
+				SessionPool pool = (SessionPool) it.next();
+				CachedSessionInvocationHandler handler = pool.poll();
+				while (handler != null) {
+					try {
+						handler.physicalClose();
 					}
+					catch (Throwable ex) {
+						logger.trace("Could not close cached JMS Session", ex);
+					}
+					handler = pool.poll();
 				}
 			}
 			this.cachedSessions.clear();
 		}
 		this.active = true;
+		this.lastReturnedSession.set(null);
 
 		// Now proceed with actual closing of the shared Connection...
 		super.resetConnection();
@@ -203,34 +365,58 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 	 * Checks for a cached Session for the given mode.
 	 */
 	protected Session getSession(Connection con, Integer mode) throws JMSException {
-		LinkedList sessionList = null;
-		synchronized (this.cachedSessions) {
-			sessionList = (LinkedList) this.cachedSessions.get(mode);
-			if (sessionList == null) {
-				sessionList = new LinkedList();
-				this.cachedSessions.put(mode, sessionList);
+		SessionPool pool = getSessionPool(mode);
+		CachedSessionInvocationHandler handler = null;
+		if (isSessionThreadAffinity()) {
+			Reference lastHandlerRef = (Reference) this.lastReturnedSession.get();
+			CachedSessionInvocationHandler lastHandler =
+					(lastHandlerRef != null ? (CachedSessionInvocationHandler) lastHandlerRef.get() : null);
+			if (lastHandler != null && lastHandler.pool == pool && pool.remove(lastHandler)) {
+				handler = lastHandler;
 			}
 		}
-		Session session = null;
-		synchronized (sessionList) {
-			if (!sessionList.isEmpty()) {
-				session = (Session) sessionList.removeFirst();
-			}
+		if (handler == null) {
+			handler = pool.poll();
 		}
-		if (session != null) {
+		if (handler != null) {
+			handler.returned = false;
+			pool.hitCount.increment(1);
+			pool.activeCount.increment(1);
 			if (logger.isTraceEnabled()) {
-				logger.trace("Found cached JMS Session for mode " + mode + ": " +
-						(session instanceof SessionProxy ? ((SessionProxy) session).getTargetSession() : session));
+				logger.trace("Found cached JMS Session for mode " + mode + ": " + handler.target);
 			}
+			return handler.proxy;
 		}
-		else {
-			Session targetSession = createSession(con, mode);
-			if (logger.isDebugEnabled()) {
-				logger.debug("Creating cached JMS Session for mode " + mode + ": " + targetSession);
+		long startTime = System.currentTimeMillis();
+		Session targetSession = createSession(con, mode);
+		pool.creationTime.increment(System.currentTimeMillis() - startTime);
+		pool.missCount.increment(1);
+		pool.activeCount.increment(1);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Creating cached JMS Session for mode " + mode + ": " + targetSession);
+		}
+		if (this.legacySessionProxyHook) {
+			return getCachedSessionProxy(targetSession, (LinkedList) null);
+		}
+		return getCachedSessionProxy(targetSession, mode);
+	}
+
+	/**
+	 * Obtain the Session pool for the given mode, creating it if necessary.
+	 * Lookups of existing pools do not lock on a concurrent Map.
+	 */
+	private SessionPool getSessionPool(Integer mode) {
+		SessionPool pool = (SessionPool) this.cachedSessions.get(mode);
+		if (pool == null) {
+			synchronized (this.cachedSessions) {
+				pool = (SessionPool) this.cachedSessions.get(mode);
+				if (pool == null) {
+					pool = new SessionPool();
+					this.cachedSessions.put(mode, pool);
+				}
 			}
-			session = getCachedSessionProxy(targetSession, sessionList);
 		}
-		return session;
+		return pool;
 	}
 
 	/**
@@ -238,10 +424,11 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 	 * but adapts close calls. This is useful for allowing application code to
 	 * handle a special framework Session just like an ordinary Session.
 	 * @param target the original Session to wrap
-	 * @param sessionList the List of cached Sessions that the given Session belongs to
+	 * @param mode the Session mode that the given Session has been created for,
+	 * determining the cache that it will be returned to
 	 * @return the wrapped Session
 	 */
-	protected Session getCachedSessionProxy(Session target, LinkedList sessionList) {
+	protected Session getCachedSessionProxy(Session target, Integer mode) {
 		List classes = new ArrayList(3);
 		classes.add(SessionProxy.class);
 		if (target instanceof QueueSession) {
@@ -250,10 +437,42 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 		if (target instanceof TopicSession) {
 			classes.add(TopicSession.class);
 		}
-		return (Session) Proxy.newProxyInstance(
+		CachedSessionInvocationHandler handler = new CachedSessionInvocationHandler(target, getSessionPool(mode));
+		handler.proxy = (Session) Proxy.newProxyInstance(
 				SessionProxy.class.getClassLoader(),
 				(Class[]) classes.toArray(new Class[classes.size()]),
-				new CachedSessionInvocationHandler(target, sessionList));
+				handler);
+		return handler.proxy;
+	}
+
+	/**
+	 * Wrap the given Session with a proxy that delegates every method call to it
+	 * but adapts close calls.
+	 * <p>Still called instead of {@link #getCachedSessionProxy(Session, Integer)}
+	 * if a subclass overrides it. Delegates to that method for the Session's own
+	 * acknowledgement mode.
+	 * @param target the original Session to wrap
+	 * @param sessionList not used anymore (<code>null</code> when called by this
+	 * class), since cached Sessions are held in a pool per Session mode now
+	 * @return the wrapped Session
+	 * @deprecated as of Spring 2.5.7, in favor of
+	 * {@link #getCachedSessionProxy(Session, Integer)}
+	 */
+	protected Session getCachedSessionProxy(Session target, LinkedList sessionList) {
+		try {
+			Integer mode = (target.getTransacted() ?
+					new Integer(Session.SESSION_TRANSACTED) : new Integer(target.getAcknowledgeMode()));
+			return getCachedSessionProxy(target, mode);
+		}
+		catch (JMSException ex) {
+			throw JmsUtils.convertJmsAccessException(ex);
+		}
+	}
+
+	private boolean isLegacySessionProxyHookOverridden() {
+		Method legacyHook = ReflectionUtils.findMethod(
+				getClass(), "getCachedSessionProxy", new Class[] {Session.class, LinkedList.class});
+		return (legacyHook != null && !legacyHook.getDeclaringClass().equals(CachingConnectionFactory.class));
 	}
 
 
@@ -264,17 +483,21 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 
 		private final Session target;
 
-		private final LinkedList sessionList;
+		private final SessionPool pool;
 
-		private final Map cachedProducers = new HashMap();
+		private Session proxy;
+
+		private volatile boolean returned = false;
+
+		private final Map cachedProducers = new LinkedHashMap(16, 0.75f, true);
 
 		private final Map cachedConsumers = new HashMap();
 
 		private boolean transactionOpen = false;
 
-		public CachedSessionInvocationHandler(Session target, LinkedList sessionList) {
+		public CachedSessionInvocationHandler(Session target, SessionPool pool) {
 			this.target = target;
-			this.sessionList = sessionList;
+			this.pool = pool;
 		}
 
 		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
@@ -292,14 +515,15 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 			}
 			else if (methodName.equals("close")) {
 				// Handle close method: don't pass the call on.
-				if (active) {
-					synchronized (this.sessionList) {
-						if (this.sessionList.size() < getSessionCacheSize()) {
-							logicalClose(proxy);
-							// Remain open in the session list.
-							return null;
-						}
-					}
+				// Allow for multiple close calls...
+				if (this.returned) {
+					return null;
+				}
+				this.returned = true;
+				this.pool.activeCount.increment(-1);
+				if (active && logicalClose()) {
+					// Remain open in the session pool.
+					return null;
 				}
 				// If we get here, we're supposed to shut down.
 				physicalClose();
@@ -380,7 +604,11 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 			return new CachedMessageConsumer(consumer);
 		}
 
-		private void logicalClose(Object proxy) throws JMSException {
+		/**
+		 * Return this Session to the pool, if there is still room for it.
+		 * @return whether the Session has been returned to the pool
+		 */
+		private boolean logicalClose() throws JMSException {
 			// Preserve rollback-on-close semantics.
 			if (this.transactionOpen && this.target.getTransacted()) {
 				this.transactionOpen = false;
@@ -395,13 +623,29 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 					it.remove();
 				}
 			}
-			// Allow for multiple close calls...
-			if (!this.sessionList.contains(proxy)) {
-				if (logger.isTraceEnabled()) {
-					logger.trace("Returning cached Session: " + this.target);
+			// Evict least recently used producers, now that none of them is in use anymore.
+			int producerLimit = getProducerCacheSize();
+			if (producerLimit > 0) {
+				for (Iterator it = this.cachedProducers.values().iterator();
+						it.hasNext() && this.cachedProducers.size() > producerLimit;) {
+					MessageProducer producer = (MessageProducer) it.next();
+					it.remove();
+					if (logger.isDebugEnabled()) {
+						logger.debug("Evicting cached JMS MessageProducer: " + producer);
+					}
+					producer.close();
 				}
-				this.sessionList.addLast(proxy);
 			}
+			if (!this.pool.offer(this, getSessionCacheSize())) {
+				return false;
+			}
+			if (logger.isTraceEnabled()) {
+				logger.trace("Returning cached Session: " + this.target);
+			}
+			if (isSessionThreadAffinity()) {
+				lastReturnedSession.set(new WeakReference(this));
+			}
+			return true;
 		}
 
 		private void physicalClose() throws JMSException {
@@ -428,6 +672,198 @@ public class CachingConnectionFactory extends SingleConnectionFactory {
 	}
 
 
+	/**
+	 * Cache of Sessions for a specific session acknowledgement type,
+	 * along with usage statistics for it. Backed by a non-blocking queue
+	 * and atomic counters on JDK 1.5+.
+	 */
+	private static class SessionPool {
+
+		private final SessionQueue queue;
+
+		private final Counter activeCount = createCounter();
+
+		private final Counter hitCount = createCounter();
+
+		private final Counter missCount = createCounter();
+
+		private final Counter creationTime = createCounter();
+
+		public SessionPool() {
+			this.queue = (JdkVersion.isAtLeastJava15() ?
+					JdkConcurrentFactory.createSessionQueue() : new SynchronizedSessionQueue());
+		}
+
+		private static Counter createCounter() {
+			return (JdkVersion.isAtLeastJava15() ?
+					JdkConcurrentFactory.createCounter() : new SynchronizedCounter());
+		}
+
+		public CachedSessionInvocationHandler poll() {
+			return (CachedSessionInvocationHandler) this.queue.poll();
+		}
+
+		public boolean remove(CachedSessionInvocationHandler handler) {
+			return this.queue.remove(handler);
+		}
+
+		public boolean offer(CachedSessionInvocationHandler handler, int maxSize) {
+			return this.queue.offer(handler, maxSize);
+		}
+
+		public int size() {
+			return this.queue.size();
+		}
+	}
+
+
+	/**
+	 * Queue of cached Sessions with a size limit.
+	 */
+	private interface SessionQueue {
+
+		Object poll();
+
+		boolean remove(Object element);
+
+		boolean offer(Object element, int maxSize);
+
+		int size();
+	}
+
+
+	/**
+	 * Simple counter used for Session pool statistics.
+	 */
+	private interface Counter {
+
+		void increment(long delta);
+
+		long get();
+	}
+
+
+	/**
+	 * SessionQueue implementation based on a synchronized LinkedList,
+	 * used on JDK 1.4.
+	 */
+	private static class SynchronizedSessionQueue implements SessionQueue {
+
+		private final LinkedList list = new LinkedList();
+
+		public synchronized Object poll() {
+			return (this.list.isEmpty() ? null : this.list.removeFirst());
+		}
+
+		public synchronized boolean remove(Object element) {
+			return this.list.remove(element);
+		}
+
+		public synchronized boolean offer(Object element, int maxSize) {
+			if (this.list.size() >= maxSize) {
+				return false;
+			}
+			this.list.addLast(element);
+			return true;
+		}
+
+		public synchronized int size() {
+			return this.list.size();
+		}
+	}
+
+
+	/**
+	 * Counter implementation based on a synchronized long, used on JDK 1.4.
+	 */
+	private static class SynchronizedCounter implements Counter {
+
+		private long value;
+
+		public synchronized void increment(long delta) {
+			this.value += delta;
+		}
+
+		public synchronized long get() {
+			return this.value;
+		}
+	}
+
+
+	/**
+	 * Actual creation of JDK 1.5+ concurrent structures.
+	 * In separate inner class to avoid runtime dependency on JDK 1.5.
+	 */
+	private static abstract class JdkConcurrentFactory {
+
+		private static SessionQueue createSessionQueue() {
+			return new JdkConcurrentSessionQueue();
+		}
+
+		private static Counter createCounter() {
+			return new JdkConcurrentCounter();
+		}
+	}
+
+
+	/**
+	 * SessionQueue implementation based on a JDK 1.5+ ConcurrentLinkedQueue,
+	 * reserving room for new elements through an atomic size counter.
+	 */
+	private static class JdkConcurrentSessionQueue implements SessionQueue {
+
+		private final ConcurrentLinkedQueue queue = new ConcurrentLinkedQueue();
+
+		private final AtomicInteger size = new AtomicInteger();
+
+		public Object poll() {
+			Object element = this.queue.poll();
+			if (element != null) {
+				this.size.decrementAndGet();
+			}
+			return element;
+		}
+
+		public boolean remove(Object element) {
+			if (this.queue.remove(element)) {
+				this.size.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+		public boolean offer(Object element, int maxSize) {
+			if (this.size.incrementAndGet() > maxSize) {
+				this.size.decrementAndGet();
+				return false;
+			}
+			this.queue.offer(element);
+			return true;
+		}
+
+		public int size() {
+			return this.size.get();
+		}
+	}
+
+
+	/**
+	 * Counter implementation based on a JDK 1.5+ AtomicLong.
+	 */
+	private static class JdkConcurrentCounter implements Counter {
+
+		private final AtomicLong value = new AtomicLong();
+
+		public void increment(long delta) {
+			this.value.addAndGet(delta);
+		}
+
+		public long get() {
+			return this.value.get();
+		}
+	}
+
+
 	/**
 	 * Simple wrapper class around a Destination and other consumer attributes.
 	 * Used as the key when caching consumers.
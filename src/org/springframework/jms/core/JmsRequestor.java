@@ -0,0 +1,700 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.core;
+
+import java.rmi.server.UID;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.CollectionFactory;
+import org.springframework.jms.connection.ConnectionFactoryUtils;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.destination.JmsDestinationAccessor;
+import org.springframework.util.Assert;
+
+/**
+ * Helper class for request/reply messaging over JMS, receiving all replies
+ * through a single long-lived reply consumer instead of creating a temporary
+ * queue and a consumer for every single request.
+ *
+ * <p>Each request gets sent with a unique JMS correlation ID and with the
+ * shared reply destination as "JMSReplyTo". The replying side is expected to
+ * send its reply to that destination, carrying the request's correlation ID
+ * (as done by {@link org.springframework.jms.remoting.JmsInvokerServiceExporter}).
+ * Incoming replies are dispatched to the waiting callers through a concurrent
+ * correlation map; requests that have not been answered within the
+ * {@link #setReplyTimeout reply timeout} expire, with late replies discarded.
+ *
+ * <p>Requests can either be sent in a blocking fashion, via
+ * {@link #sendAndReceive(Destination, MessageCreator)}, or through
+ * {@link #sendRequest(Destination, MessageCreator)}, which returns a
+ * {@link PendingReply} handle to pick up the reply message later on.
+ *
+ * <p>The reply destination is a {@link javax.jms.TemporaryQueue} created for
+ * the shared connection by default. Alternatively, a specific reply destination
+ * can be configured; in that case, the reply consumer uses a message selector
+ * that restricts it to the correlation IDs issued by this requestor, allowing
+ * for a reply queue to be shared between several requestors.
+ *
+ * <p>The shared connection gets created on the first request and recreated
+ * after a connection failure, with all outstanding requests failing at that
+ * point. Sessions and producers for sending requests are cached on the
+ * shared connection, up to the specified {@link #setSessionCacheSize session
+ * cache size}. This class is thread-safe; requests may be sent concurrently.
+ *
+ * @since 2.5.7
+ * @see PendingReply
+ * @see org.springframework.jms.remoting.JmsInvokerClientInterceptor#setRequestor
+ */
+public class JmsRequestor extends JmsDestinationAccessor implements DisposableBean {
+
+	/**
+	 * Default reply timeout: 5000 milliseconds.
+	 */
+	public static final long DEFAULT_REPLY_TIMEOUT = 5000;
+
+	/**
+	 * Number of requests after which expired replies get purged from the
+	 * correlation map (covering requests whose callers never wait for the reply).
+	 */
+	private static final int PURGE_INTERVAL = 256;
+
+
+	private Object replyDestination;
+
+	private long replyTimeout = DEFAULT_REPLY_TIMEOUT;
+
+	private int sessionCacheSize = 10;
+
+	private final String correlationIdPrefix = new UID().toString();
+
+	private final Map pendingReplies = CollectionFactory.createConcurrentMapIfPossible(64);
+
+	private SharedConnection sharedConnection;
+
+	private boolean active = true;
+
+	private final Object connectionMonitor = new Object();
+
+	private long requestCount = 0;
+
+	private long replyCount = 0;
+
+	private long expiredCount = 0;
+
+	private long lateReplyCount = 0;
+
+	private final Object statisticsMonitor = new Object();
+
+
+	/**
+	 * Create a new JmsRequestor for bean-style usage.
+	 * <p>Note: The ConnectionFactory has to be set before using the instance.
+	 * @see #setConnectionFactory
+	 */
+	public JmsRequestor() {
+	}
+
+	/**
+	 * Create a new JmsRequestor, given a ConnectionFactory.
+	 * @param connectionFactory the ConnectionFactory to obtain the shared Connection from
+	 */
+	public JmsRequestor(ConnectionFactory connectionFactory) {
+		setConnectionFactory(connectionFactory);
+		afterPropertiesSet();
+	}
+
+
+	/**
+	 * Set the destination to receive replies from.
+	 * <p>Default is a temporary queue, created for the shared connection.
+	 */
+	public void setReplyDestination(Destination replyDestination) {
+		this.replyDestination = replyDestination;
+	}
+
+	/**
+	 * Set the name of the destination to receive replies from.
+	 * The specified name will be dynamically resolved via the
+	 * {@link #setDestinationResolver DestinationResolver}.
+	 * <p>Default is a temporary queue, created for the shared connection.
+	 */
+	public void setReplyDestinationName(String replyDestinationName) {
+		this.replyDestination = replyDestinationName;
+	}
+
+	/**
+	 * Set the timeout after which an unanswered request expires
+	 * (in milliseconds). Default is 5000.
+	 * <p>A value of 0 or below lets requests wait for their replies
+	 * indefinitely. Note that this bears the risk of accumulating entries
+	 * in the correlation map for requests that never get answered.
+	 */
+	public void setReplyTimeout(long replyTimeout) {
+		this.replyTimeout = replyTimeout;
+	}
+
+	/**
+	 * Return the timeout after which an unanswered request expires.
+	 */
+	public long getReplyTimeout() {
+		return this.replyTimeout;
+	}
+
+	/**
+	 * Specify the maximum number of idle Sessions (each with a cached
+	 * MessageProducer) to keep for sending requests. Default is 10.
+	 */
+	public void setSessionCacheSize(int sessionCacheSize) {
+		Assert.isTrue(sessionCacheSize >= 0, "'sessionCacheSize' must not be negative");
+		this.sessionCacheSize = sessionCacheSize;
+	}
+
+	/**
+	 * Return the maximum number of idle Sessions to keep for sending requests.
+	 */
+	public int getSessionCacheSize() {
+		return this.sessionCacheSize;
+	}
+
+
+	/**
+	 * Send a request message to the given destination and wait for the reply,
+	 * for at most the {@link #setReplyTimeout reply timeout}.
+	 * @param destination the destination to send the request to
+	 * @param messageCreator callback to create the request message
+	 * @return the reply message, or <code>null</code> if the request expired
+	 * @throws org.springframework.jms.JmsException if the request could not be
+	 * sent or the shared reply connection failed
+	 */
+	public Message sendAndReceive(Destination destination, MessageCreator messageCreator) {
+		return receiveReply(doSendRequest(destination, messageCreator));
+	}
+
+	/**
+	 * Send a request message to the given destination and wait for the reply,
+	 * for at most the {@link #setReplyTimeout reply timeout}.
+	 * @param destinationName the name of the destination to send the request to
+	 * (to be resolved to an actual destination by a DestinationResolver)
+	 * @param messageCreator callback to create the request message
+	 * @return the reply message, or <code>null</code> if the request expired
+	 * @throws org.springframework.jms.JmsException if the request could not be
+	 * sent or the shared reply connection failed
+	 */
+	public Message sendAndReceive(String destinationName, MessageCreator messageCreator) {
+		return receiveReply(doSendRequest(destinationName, messageCreator));
+	}
+
+	/**
+	 * Send a request message to the given destination, returning immediately.
+	 * @param destination the destination to send the request to
+	 * @param messageCreator callback to create the request message
+	 * @return a handle for the outstanding reply
+	 * @throws org.springframework.jms.JmsException if the request could not be sent
+	 */
+	public PendingReply sendRequest(Destination destination, MessageCreator messageCreator) {
+		return doSendRequest(destination, messageCreator);
+	}
+
+	/**
+	 * Send a request message to the given destination, returning immediately.
+	 * @param destinationName the name of the destination to send the request to
+	 * (to be resolved to an actual destination by a DestinationResolver)
+	 * @param messageCreator callback to create the request message
+	 * @return a handle for the outstanding reply
+	 * @throws org.springframework.jms.JmsException if the request could not be sent
+	 */
+	public PendingReply sendRequest(String destinationName, MessageCreator messageCreator) {
+		return doSendRequest(destinationName, messageCreator);
+	}
+
+	/**
+	 * Wait for the given pending reply, cancelling it if it does not complete.
+	 */
+	private Message receiveReply(PendingReply pendingReply) {
+		try {
+			Message reply = pendingReply.getReply();
+			if (reply == null) {
+				pendingReply.cancel();
+			}
+			return reply;
+		}
+		catch (JMSException ex) {
+			throw convertJmsAccessException(ex);
+		}
+	}
+
+	/**
+	 * Send the request message on a cached Session of the shared connection,
+	 * registering a pending reply for its correlation ID before actually sending.
+	 * @param destination the target destination: a Destination or a destination name
+	 * @param messageCreator callback to create the request message
+	 * @return the pending reply
+	 */
+	protected PendingReply doSendRequest(Object destination, MessageCreator messageCreator) {
+		Assert.notNull(messageCreator, "MessageCreator must not be null");
+		DefaultPendingReply pendingReply = null;
+		try {
+			SharedConnection sharedCon = obtainSharedConnection();
+			SendSession sendSession = sharedCon.obtainSendSession();
+			boolean reusable = false;
+			try {
+				Destination destinationToUse = (destination instanceof Destination ? (Destination) destination :
+						resolveDestinationName(sendSession.session, (String) destination));
+				Message requestMessage = messageCreator.createMessage(sendSession.session);
+				String correlationId = nextCorrelationId();
+				requestMessage.setJMSCorrelationID(correlationId);
+				requestMessage.setJMSReplyTo(sharedCon.replyDestination);
+				long expirationTime = (this.replyTimeout > 0 ? System.currentTimeMillis() + this.replyTimeout : 0);
+				pendingReply = new DefaultPendingReply(correlationId, expirationTime);
+				this.pendingReplies.put(correlationId, pendingReply);
+				if (logger.isDebugEnabled()) {
+					logger.debug("Sending request with correlation ID [" + correlationId +
+							"] to destination [" + destinationToUse + "]");
+				}
+				sendSession.producer.send(destinationToUse, requestMessage);
+				reusable = true;
+			}
+			finally {
+				if (!reusable && pendingReply != null) {
+					this.pendingReplies.remove(pendingReply.getCorrelationId());
+				}
+				sharedCon.releaseSendSession(sendSession, reusable);
+			}
+		}
+		catch (JMSException ex) {
+			throw convertJmsAccessException(ex);
+		}
+		if (isPurgeDue()) {
+			purgeExpiredReplies();
+		}
+		return pendingReply;
+	}
+
+	/**
+	 * Generate a correlation ID that is unique across requestor instances.
+	 */
+	private String nextCorrelationId() {
+		synchronized (this.statisticsMonitor) {
+			this.requestCount++;
+			return this.correlationIdPrefix + "-" + this.requestCount;
+		}
+	}
+
+	private boolean isPurgeDue() {
+		synchronized (this.statisticsMonitor) {
+			return (this.requestCount % PURGE_INTERVAL == 0);
+		}
+	}
+
+	/**
+	 * Remove all pending replies from the correlation map that have expired
+	 * without their callers noticing.
+	 */
+	protected void purgeExpiredReplies() {
+		long now = System.currentTimeMillis();
+		List pending = new ArrayList(this.pendingReplies.values());
+		for (Iterator it = pending.iterator(); it.hasNext();) {
+			DefaultPendingReply pendingReply = (DefaultPendingReply) it.next();
+			if (pendingReply.isExpired(now)) {
+				pendingReply.expire();
+			}
+		}
+	}
+
+	/**
+	 * Dispatch the given reply message to the pending reply with the same
+	 * correlation ID. Called by the shared reply consumer.
+	 * @param replyMessage the reply message
+	 */
+	protected void dispatchReply(Message replyMessage) {
+		String correlationId = null;
+		try {
+			correlationId = replyMessage.getJMSCorrelationID();
+		}
+		catch (JMSException ex) {
+			logger.warn("Could not determine correlation ID of reply message", ex);
+		}
+		DefaultPendingReply pendingReply =
+				(correlationId != null ? (DefaultPendingReply) this.pendingReplies.remove(correlationId) : null);
+		boolean dispatched = false;
+		if (pendingReply != null) {
+			synchronized (pendingReply) {
+				// count the reply before waking up the waiting caller
+				if (!pendingReply.isDone()) {
+					synchronized (this.statisticsMonitor) {
+						this.replyCount++;
+					}
+					dispatched = pendingReply.complete(replyMessage, null);
+				}
+			}
+		}
+		if (!dispatched) {
+			synchronized (this.statisticsMonitor) {
+				this.lateReplyCount++;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Discarding reply with correlation ID [" + correlationId +
+						"]: request has expired or has been cancelled");
+			}
+		}
+	}
+
+	/**
+	 * Obtain the shared connection, initializing it if necessary.
+	 */
+	private SharedConnection obtainSharedConnection() throws JMSException {
+		synchronized (this.connectionMonitor) {
+			if (!this.active) {
+				throw new javax.jms.IllegalStateException("JmsRequestor has been shut down");
+			}
+			if (this.sharedConnection == null) {
+				this.sharedConnection = initSharedConnection();
+			}
+			return this.sharedConnection;
+		}
+	}
+
+	/**
+	 * Create the shared connection, along with the reply consumer.
+	 */
+	private SharedConnection initSharedConnection() throws JMSException {
+		final SharedConnection sharedCon = new SharedConnection(createConnection());
+		try {
+			sharedCon.connection.setExceptionListener(new ExceptionListener() {
+				public void onException(JMSException ex) {
+					handleConnectionFailure(sharedCon, ex);
+				}
+			});
+			sharedCon.consumerSession = sharedCon.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			String messageSelector = null;
+			if (this.replyDestination instanceof Destination) {
+				sharedCon.replyDestination = (Destination) this.replyDestination;
+			}
+			else if (this.replyDestination instanceof String) {
+				sharedCon.replyDestination = resolveDestinationName(sharedCon.consumerSession, (String) this.replyDestination);
+			}
+			else {
+				sharedCon.replyDestination = sharedCon.consumerSession.createTemporaryQueue();
+			}
+			if (this.replyDestination != null) {
+				messageSelector = "JMSCorrelationID LIKE '" + this.correlationIdPrefix + "-%'";
+			}
+			sharedCon.consumer = sharedCon.consumerSession.createConsumer(sharedCon.replyDestination, messageSelector);
+			sharedCon.consumer.setMessageListener(new MessageListener() {
+				public void onMessage(Message message) {
+					dispatchReply(message);
+				}
+			});
+			sharedCon.connection.start();
+		}
+		catch (JMSException ex) {
+			sharedCon.close();
+			throw ex;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Established shared JMS Connection with reply destination [" +
+					sharedCon.replyDestination + "]");
+		}
+		return sharedCon;
+	}
+
+	/**
+	 * Handle a failure of the given shared connection: discard the connection
+	 * (to be recreated on the next request) and fail all outstanding requests.
+	 * @param sharedCon the shared connection that failed
+	 * @param ex the JMSException reported by the JMS provider
+	 */
+	private void handleConnectionFailure(SharedConnection sharedCon, JMSException ex) {
+		logger.info("Shared JMS Connection for replies failed - outstanding requests will fail", ex);
+		synchronized (this.connectionMonitor) {
+			if (this.sharedConnection == sharedCon) {
+				this.sharedConnection = null;
+			}
+		}
+		sharedCon.close();
+		failPendingReplies(ex);
+	}
+
+	/**
+	 * Fail all outstanding requests with the given exception.
+	 */
+	private void failPendingReplies(JMSException ex) {
+		List pending = new ArrayList(this.pendingReplies.values());
+		for (Iterator it = pending.iterator(); it.hasNext();) {
+			DefaultPendingReply pendingReply = (DefaultPendingReply) it.next();
+			this.pendingReplies.remove(pendingReply.getCorrelationId());
+			pendingReply.complete(null, ex);
+		}
+	}
+
+	/**
+	 * Close the shared connection, failing all outstanding requests.
+	 */
+	public void destroy() {
+		SharedConnection sharedCon = null;
+		synchronized (this.connectionMonitor) {
+			this.active = false;
+			sharedCon = this.sharedConnection;
+			this.sharedConnection = null;
+		}
+		if (sharedCon != null) {
+			sharedCon.close();
+		}
+		failPendingReplies(new javax.jms.IllegalStateException("JmsRequestor has been shut down"));
+	}
+
+
+	/**
+	 * Return the number of requests currently waiting for their replies.
+	 */
+	public int getPendingReplyCount() {
+		return this.pendingReplies.size();
+	}
+
+	/**
+	 * Return the total number of requests sent.
+	 */
+	public long getRequestCount() {
+		synchronized (this.statisticsMonitor) {
+			return this.requestCount;
+		}
+	}
+
+	/**
+	 * Return the total number of replies dispatched to their requests.
+	 */
+	public long getReplyCount() {
+		synchronized (this.statisticsMonitor) {
+			return this.replyCount;
+		}
+	}
+
+	/**
+	 * Return the total number of requests that expired without a reply.
+	 */
+	public long getExpiredRequestCount() {
+		synchronized (this.statisticsMonitor) {
+			return this.expiredCount;
+		}
+	}
+
+	/**
+	 * Return the total number of replies that have been discarded since
+	 * their requests had expired or been cancelled already.
+	 */
+	public long getLateReplyCount() {
+		synchronized (this.statisticsMonitor) {
+			return this.lateReplyCount;
+		}
+	}
+
+
+	/**
+	 * Holder for the shared Connection, its reply consumer, and the cached
+	 * Sessions for sending requests on that Connection.
+	 */
+	private class SharedConnection {
+
+		private final Connection connection;
+
+		private Session consumerSession;
+
+		private MessageConsumer consumer;
+
+		private Destination replyDestination;
+
+		private final LinkedList idleSendSessions = new LinkedList();
+
+		private boolean closed = false;
+
+		public SharedConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		public SendSession obtainSendSession() throws JMSException {
+			synchronized (this.idleSendSessions) {
+				if (!this.idleSendSessions.isEmpty()) {
+					return (SendSession) this.idleSendSessions.removeFirst();
+				}
+			}
+			Session session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			try {
+				return new SendSession(session, session.createProducer(null));
+			}
+			catch (JMSException ex) {
+				JmsUtils.closeSession(session);
+				throw ex;
+			}
+		}
+
+		public void releaseSendSession(SendSession sendSession, boolean reusable) {
+			if (reusable) {
+				synchronized (this.idleSendSessions) {
+					if (!this.closed && this.idleSendSessions.size() < getSessionCacheSize()) {
+						this.idleSendSessions.add(sendSession);
+						return;
+					}
+				}
+			}
+			JmsUtils.closeMessageProducer(sendSession.producer);
+			JmsUtils.closeSession(sendSession.session);
+		}
+
+		public void close() {
+			synchronized (this.idleSendSessions) {
+				this.closed = true;
+				for (Iterator it = this.idleSendSessions.iterator(); it.hasNext();) {
+					SendSession sendSession = (SendSession) it.next();
+					JmsUtils.closeMessageProducer(sendSession.producer);
+					JmsUtils.closeSession(sendSession.session);
+				}
+				this.idleSendSessions.clear();
+			}
+			JmsUtils.closeMessageConsumer(this.consumer);
+			JmsUtils.closeSession(this.consumerSession);
+			ConnectionFactoryUtils.releaseConnection(this.connection, getConnectionFactory(), true);
+		}
+	}
+
+
+	/**
+	 * Holder for a cached Session with its anonymous MessageProducer.
+	 */
+	private static class SendSession {
+
+		public final Session session;
+
+		public final MessageProducer producer;
+
+		public SendSession(Session session, MessageProducer producer) {
+			this.session = session;
+			this.producer = producer;
+		}
+	}
+
+
+	/**
+	 * PendingReply implementation that gets completed by the reply consumer.
+	 */
+	private class DefaultPendingReply implements PendingReply {
+
+		private final String correlationId;
+
+		private final long expirationTime;
+
+		private Message reply;
+
+		private JMSException failure;
+
+		private boolean done = false;
+
+		public DefaultPendingReply(String correlationId, long expirationTime) {
+			this.correlationId = correlationId;
+			this.expirationTime = expirationTime;
+		}
+
+		public String getCorrelationId() {
+			return this.correlationId;
+		}
+
+		public Message getReply() throws JMSException {
+			return getReply(0);
+		}
+
+		public Message getReply(long timeout) throws JMSException {
+			long now = System.currentTimeMillis();
+			long deadline = (timeout > 0 ? now + timeout : (timeout < 0 ? now : 0));
+			if (this.expirationTime > 0 && (deadline == 0 || this.expirationTime < deadline)) {
+				deadline = this.expirationTime;
+			}
+			synchronized (this) {
+				while (!this.done && (deadline == 0 || now < deadline)) {
+					try {
+						wait(deadline == 0 ? 0 : deadline - now);
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						return null;
+					}
+					now = System.currentTimeMillis();
+				}
+				if (this.failure != null) {
+					throw this.failure;
+				}
+				if (this.done) {
+					return this.reply;
+				}
+			}
+			if (isExpired(now)) {
+				expire();
+			}
+			return null;
+		}
+
+		public synchronized boolean isDone() {
+			return this.done;
+		}
+
+		public boolean cancel() {
+			pendingReplies.remove(this.correlationId);
+			return complete(null, null);
+		}
+
+		public boolean isExpired(long now) {
+			return (this.expirationTime > 0 && now >= this.expirationTime);
+		}
+
+		public void expire() {
+			if (cancel()) {
+				synchronized (statisticsMonitor) {
+					expiredCount++;
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("Request with correlation ID [" + this.correlationId + "] expired without reply");
+				}
+			}
+		}
+
+		public synchronized boolean complete(Message reply, JMSException failure) {
+			if (this.done) {
+				return false;
+			}
+			this.reply = reply;
+			this.failure = failure;
+			this.done = true;
+			notifyAll();
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.core;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Handle for the outstanding reply to a request sent through a
+ * {@link JmsRequestor}, allowing the caller to continue with other
+ * work and to pick up the reply message later on.
+ *
+ * <p>A pending reply expires once the requestor's reply timeout has been
+ * exceeded; a reply that arrives after that point will be discarded.
+ *
+ * @since 2.5.7
+ * @see JmsRequestor#sendRequest(javax.jms.Destination, MessageCreator)
+ */
+public interface PendingReply {
+
+	/**
+	 * Return the JMS correlation ID that the request has been sent with.
+	 */
+	String getCorrelationId();
+
+	/**
+	 * Wait for the reply message, for at most the requestor's reply timeout.
+	 * @return the reply message, or <code>null</code> if the pending reply
+	 * expired, has been cancelled, or the current thread has been interrupted
+	 * @throws JMSException if the shared reply connection failed
+	 * @see JmsRequestor#setReplyTimeout
+	 */
+	Message getReply() throws JMSException;
+
+	/**
+	 * Wait for the reply message, for at most the given timeout
+	 * (in milliseconds) and not beyond the requestor's reply timeout.
+	 * @param timeout the timeout to wait for: 0 indicates waiting until the
+	 * requestor's reply timeout, a negative value indicates not waiting at all
+	 * @return the reply message, or <code>null</code> if none has arrived
+	 * in time or the pending reply has been cancelled
+	 * @throws JMSException if the shared reply connection failed
+	 */
+	Message getReply(long timeout) throws JMSException;
+
+	/**
+	 * Return whether this pending reply has completed, that is, whether a
+	 * reply has arrived or the request has expired, failed or been cancelled.
+	 */
+	boolean isDone();
+
+	/**
+	 * Cancel this pending reply, discarding the reply message if it arrives later on.
+	 * @return <code>true</code> if the reply was still outstanding,
+	 * <code>false</code> if it had completed already
+	 */
+	boolean cancel();
+
+}
@@ -16,6 +16,8 @@
 
 package org.springframework.jms.listener;
 
+import java.util.List;
+
 import javax.jms.Connection;
 import javax.jms.Destination;
 import javax.jms.ExceptionListener;
@@ -465,6 +467,61 @@ public abstract class AbstractMessageListenerContainer extends AbstractJmsListen
 		commitIfNecessary(session, message);
 	}
 
+	/**
+	 * Execute the specified batch listener, committing or rolling back
+	 * the transaction afterwards (if necessary) for the entire batch.
+	 * @param session the JMS Session to operate on
+	 * @param messages the received JMS Messages (never empty)
+	 * @throws JMSException if thrown by JMS API methods
+	 * @see #invokeBatchListener
+	 * @see #commitIfNecessary
+	 * @see #rollbackOnExceptionIfNecessary
+	 */
+	protected void doExecuteBatchListener(Session session, List messages) throws JMSException {
+		if (!isAcceptMessagesWhileStopping() && !isRunning()) {
+			if (logger.isWarnEnabled()) {
+				logger.warn("Rejecting batch of " + messages.size() + " received messages because of the " +
+						"listener container having been stopped in the meantime");
+			}
+			rollbackIfNecessary(session);
+			throw new MessageRejectedWhileStoppingException();
+		}
+		try {
+			invokeBatchListener(session, messages);
+		}
+		catch (JMSException ex) {
+			rollbackOnExceptionIfNecessary(session, ex);
+			throw ex;
+		}
+		catch (RuntimeException ex) {
+			rollbackOnExceptionIfNecessary(session, ex);
+			throw ex;
+		}
+		catch (Error err) {
+			rollbackOnExceptionIfNecessary(session, err);
+			throw err;
+		}
+		// Acknowledging the last message acknowledges all messages consumed by the Session.
+		commitIfNecessary(session, (Message) messages.get(messages.size() - 1));
+	}
+
+	/**
+	 * Invoke the specified listener as {@link BatchMessageListener}.
+	 * @param session the JMS Session to operate on
+	 * @param messages the received JMS Messages
+	 * @throws JMSException if thrown by JMS API methods
+	 * @see #setMessageListener
+	 */
+	protected void invokeBatchListener(Session session, List messages) throws JMSException {
+		Object listener = getMessageListener();
+		if (listener instanceof BatchMessageListener) {
+			((BatchMessageListener) listener).onMessages(messages, session);
+		}
+		else {
+			throw new IllegalStateException("Message listener is not a BatchMessageListener: " + listener);
+		}
+	}
+
 	/**
 	 * Invoke the specified listener: either as standard JMS MessageListener
 	 * or (preferably) as Spring SessionAwareMessageListener.
@@ -16,6 +16,9 @@
 
 package org.springframework.jms.listener;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.jms.Connection;
 import javax.jms.Destination;
 import javax.jms.JMSException;
@@ -35,6 +38,7 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.transaction.support.ResourceTransactionManager;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.util.Assert;
 
 /**
  * Base class for listener container implementations which are based on polling.
@@ -83,6 +87,12 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 	 */
 	public static final long DEFAULT_RECEIVE_TIMEOUT = 1000;
 
+	/**
+	 * The default maximum number of messages per batch: 10.
+	 * @see BatchMessageListener
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 10;
+
 
 	private final MessageListenerContainerResourceFactory transactionalResourceFactory =
 			new MessageListenerContainerResourceFactory();
@@ -97,6 +107,20 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 
 	private long receiveTimeout = DEFAULT_RECEIVE_TIMEOUT;
 
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private long batchTimeout = 0;
+
+	private final Object batchStatisticsMonitor = new Object();
+
+	private long batchCount = 0;
+
+	private long failedBatchCount = 0;
+
+	private long batchedMessageCount = 0;
+
+	private long batchProcessingTime = 0;
+
 
 	public void setSessionTransacted(boolean sessionTransacted) {
 		super.setSessionTransacted(sessionTransacted);
@@ -185,6 +209,58 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 		this.receiveTimeout = receiveTimeout;
 	}
 
+	/**
+	 * Set the maximum number of messages to receive within a single transaction
+	 * when the message listener is a {@link BatchMessageListener}. Default is 10.
+	 * <p>The first message of a batch is received according to the
+	 * {@link #setReceiveTimeout "receiveTimeout"}; further messages will be added
+	 * to the batch until the batch size or the {@link #setBatchTimeout "batchTimeout"}
+	 * has been reached. The entire batch will be committed or rolled back together.
+	 * <p>This setting has no effect for a regular message listener.
+	 * @see BatchMessageListener
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "'batchSize' must be 1 or higher");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Return the maximum number of messages per batch.
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Set the time to wait for further messages to complete a batch, in
+	 * <b>milliseconds</b>, counted from the reception of the first message.
+	 * <p>Default is 0, which means that a batch only consists of the messages
+	 * that are immediately available after the first message has arrived.
+	 * <p><b>NOTE:</b> Within a transaction manager, the receive timeout plus
+	 * the batch timeout needs to be smaller than the transaction timeout.
+	 * @see #setBatchSize
+	 * @see javax.jms.MessageConsumer#receiveNoWait()
+	 */
+	public void setBatchTimeout(long batchTimeout) {
+		this.batchTimeout = batchTimeout;
+	}
+
+	/**
+	 * Return the time to wait for further messages to complete a batch.
+	 */
+	public long getBatchTimeout() {
+		return this.batchTimeout;
+	}
+
+	/**
+	 * This implementation accepts a {@link BatchMessageListener} as well.
+	 */
+	protected void checkMessageListener(Object messageListener) {
+		if (!(messageListener instanceof BatchMessageListener)) {
+			super.checkMessageListener(messageListener);
+		}
+	}
+
 
 	public void initialize() {
 		// Set sessionTransacted=true in case of a non-JTA transaction manager.
@@ -307,6 +383,10 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 			}
 			Message message = receiveMessage(consumerToUse);
 			if (message != null) {
+				List batch = null;
+				if (getMessageListener() instanceof BatchMessageListener) {
+					batch = receiveBatch(consumerToUse, message);
+				}
 				if (logger.isDebugEnabled()) {
 					logger.debug("Received message of type [" + message.getClass() + "] from consumer [" +
 							consumerToUse + "] of " + (transactional ? "transactional " : "") + "session [" +
@@ -320,7 +400,12 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 							getConnectionFactory(), new LocallyExposedJmsResourceHolder(sessionToUse));
 				}
 				try {
-					doExecuteListener(sessionToUse, message);
+					if (batch != null) {
+						doExecuteBatch(sessionToUse, batch);
+					}
+					else {
+						doExecuteListener(sessionToUse, message);
+					}
 				}
 				catch (Throwable ex) {
 					if (status != null) {
@@ -405,6 +490,106 @@ public abstract class AbstractPollingMessageListenerContainer extends AbstractMe
 		return (this.receiveTimeout < 0 ? consumer.receive() : consumer.receive(this.receiveTimeout));
 	}
 
+	/**
+	 * Complete a batch of messages, starting with the given message that has
+	 * just been received from the given consumer.
+	 * @param consumer the MessageConsumer to use
+	 * @param firstMessage the first Message of the batch
+	 * @return the List of received Messages (containing at least the first Message)
+	 * @throws JMSException if thrown by JMS methods
+	 * @see #setBatchSize
+	 * @see #setBatchTimeout
+	 */
+	protected List receiveBatch(MessageConsumer consumer, Message firstMessage) throws JMSException {
+		List messages = new ArrayList(this.batchSize);
+		messages.add(firstMessage);
+		long deadline = System.currentTimeMillis() + this.batchTimeout;
+		while (messages.size() < this.batchSize) {
+			long remaining = deadline - System.currentTimeMillis();
+			Message message = (remaining > 0 ? consumer.receive(remaining) : consumer.receiveNoWait());
+			if (message == null) {
+				break;
+			}
+			messages.add(message);
+		}
+		return messages;
+	}
+
+	/**
+	 * Execute the batch listener for the given messages, keeping track of
+	 * batch statistics.
+	 */
+	private void doExecuteBatch(Session session, List messages) throws JMSException {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Executing batch listener for " + messages.size() + " messages");
+		}
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+		try {
+			doExecuteBatchListener(session, messages);
+			success = true;
+		}
+		finally {
+			synchronized (this.batchStatisticsMonitor) {
+				this.batchCount++;
+				this.batchedMessageCount += messages.size();
+				this.batchProcessingTime += System.currentTimeMillis() - startTime;
+				if (!success) {
+					this.failedBatchCount++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the number of message batches processed so far,
+	 * including failed batches.
+	 * @see BatchMessageListener
+	 */
+	public long getBatchCount() {
+		synchronized (this.batchStatisticsMonitor) {
+			return this.batchCount;
+		}
+	}
+
+	/**
+	 * Return the number of message batches that have been rolled back
+	 * because of a listener exception.
+	 */
+	public long getFailedBatchCount() {
+		synchronized (this.batchStatisticsMonitor) {
+			return this.failedBatchCount;
+		}
+	}
+
+	/**
+	 * Return the total number of messages processed in batches so far.
+	 */
+	public long getBatchedMessageCount() {
+		synchronized (this.batchStatisticsMonitor) {
+			return this.batchedMessageCount;
+		}
+	}
+
+	/**
+	 * Return the average number of messages per batch.
+	 */
+	public double getAverageBatchSize() {
+		synchronized (this.batchStatisticsMonitor) {
+			return (this.batchCount > 0 ? (double) this.batchedMessageCount / this.batchCount : 0);
+		}
+	}
+
+	/**
+	 * Return the total time spent in batch listener execution
+	 * (including commit), in milliseconds.
+	 */
+	public long getBatchProcessingTime() {
+		synchronized (this.batchStatisticsMonitor) {
+			return this.batchProcessingTime;
+		}
+	}
+
 	/**
 	 * Template method that gets called right when a new message has been received,
 	 * before attempting to process it. Allows subclasses to react to the event
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import org.springframework.util.Assert;
+
+/**
+ * Default {@link ConsumerScalingPolicy} implementation, sizing the number of
+ * consumers according to the observed receive rate, processing time and
+ * consumer busy ratio.
+ *
+ * <p>The number of consumers required to handle the observed load is estimated
+ * as <code>receiveRate * averageProcessingTime / targetBusyRatio</code>.
+ * Since the observed receive rate cannot exceed the capacity of the current
+ * consumers, an additional consumer will be requested whenever the consumers
+ * are saturated, i.e. the busy ratio exceeds the "scaleUpBusyRatio".
+ *
+ * <p>To avoid oscillation, scaling up happens in steps of at most
+ * "maxScaleUpStep" consumers, at most once per "scaleUpCooldown" period.
+ * Scaling down happens one consumer at a time, only once the busy ratio
+ * has dropped below the "scaleDownBusyRatio", and only after the
+ * "scaleDownCooldown" period has passed since the last scaling decision.
+ *
+ * @since 2.5.7
+ * @see DefaultMessageListenerContainer#setConsumerScalingPolicy
+ */
+public class AdaptiveConsumerScalingPolicy implements ConsumerScalingPolicy {
+
+	private double targetBusyRatio = 0.7;
+
+	private double scaleUpBusyRatio = 0.9;
+
+	private double scaleDownBusyRatio = 0.3;
+
+	private int maxScaleUpStep = 2;
+
+	private long scaleUpCooldown = 5000;
+
+	private long scaleDownCooldown = 60000;
+
+	private long lastScaleUpTime = -1;
+
+	private long lastScaleDownTime = -1;
+
+
+	/**
+	 * Set the consumer busy ratio to size the number of consumers for,
+	 * leaving headroom for load peaks. Default is 0.7.
+	 */
+	public void setTargetBusyRatio(double targetBusyRatio) {
+		Assert.isTrue(targetBusyRatio > 0 && targetBusyRatio <= 1, "'targetBusyRatio' must be between 0 and 1");
+		this.targetBusyRatio = targetBusyRatio;
+	}
+
+	/**
+	 * Set the busy ratio above which the consumers are considered saturated,
+	 * requesting at least one additional consumer. Default is 0.9.
+	 */
+	public void setScaleUpBusyRatio(double scaleUpBusyRatio) {
+		this.scaleUpBusyRatio = scaleUpBusyRatio;
+	}
+
+	/**
+	 * Set the busy ratio below which surplus consumers may be released.
+	 * Default is 0.3.
+	 */
+	public void setScaleDownBusyRatio(double scaleDownBusyRatio) {
+		this.scaleDownBusyRatio = scaleDownBusyRatio;
+	}
+
+	/**
+	 * Set the maximum number of consumers to add in a single scaling decision.
+	 * Default is 2.
+	 */
+	public void setMaxScaleUpStep(int maxScaleUpStep) {
+		Assert.isTrue(maxScaleUpStep > 0, "'maxScaleUpStep' must be 1 or higher");
+		this.maxScaleUpStep = maxScaleUpStep;
+	}
+
+	/**
+	 * Set the minimum time between two scale-up decisions, in milliseconds.
+	 * Default is 5000 ms, that is, 5 seconds.
+	 */
+	public void setScaleUpCooldown(long scaleUpCooldown) {
+		this.scaleUpCooldown = scaleUpCooldown;
+	}
+
+	/**
+	 * Set the minimum time between the last scaling decision and a subsequent
+	 * scale-down decision, in milliseconds. Default is 60000 ms, that is, 1 minute.
+	 */
+	public void setScaleDownCooldown(long scaleDownCooldown) {
+		this.scaleDownCooldown = scaleDownCooldown;
+	}
+
+
+	public synchronized int determineConsumerCount(ConsumerStatistics statistics) {
+		long now = statistics.getTimestamp();
+		int current = statistics.getScheduledConsumerCount();
+
+		double required = statistics.getReceiveRate() * statistics.getAverageProcessingTime() / 1000 /
+				this.targetBusyRatio;
+		int desired = (int) Math.ceil(required);
+		if (statistics.getBusyRatio() >= this.scaleUpBusyRatio) {
+			desired = Math.max(desired, current + 1);
+		}
+		desired = Math.min(Math.max(desired, statistics.getMinConsumerCount()), statistics.getMaxConsumerCount());
+
+		if (desired > current) {
+			if (elapsedSince(this.lastScaleUpTime, now) < this.scaleUpCooldown) {
+				return current;
+			}
+			this.lastScaleUpTime = now;
+			return Math.min(desired, current + this.maxScaleUpStep);
+		}
+		if (desired < current && statistics.getBusyRatio() <= this.scaleDownBusyRatio) {
+			long lastScaleTime = Math.max(this.lastScaleUpTime, this.lastScaleDownTime);
+			if (elapsedSince(lastScaleTime, now) < this.scaleDownCooldown) {
+				return current;
+			}
+			this.lastScaleDownTime = now;
+			return current - 1;
+		}
+		return current;
+	}
+
+	private long elapsedSince(long time, long now) {
+		return (time >= 0 ? now - time : Long.MAX_VALUE);
+	}
+
+}
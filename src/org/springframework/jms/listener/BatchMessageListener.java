@@ -0,0 +1,52 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+/**
+ * Variant of the {@link SessionAwareMessageListener} interface that receives
+ * a batch of messages at once, together with the underlying JMS Session.
+ *
+ * <p>Supported by Spring's {@link DefaultMessageListenerContainer}, which will
+ * receive up to {@link AbstractPollingMessageListenerContainer#setBatchSize "batchSize"}
+ * messages within a single transaction and hand them to this listener in one call.
+ * The entire batch will be committed or rolled back together, depending on
+ * whether the listener returns normally or throws an exception.
+ *
+ * @since 2.5.7
+ * @see AbstractPollingMessageListenerContainer#setBatchSize
+ * @see AbstractPollingMessageListenerContainer#setBatchTimeout
+ * @see SessionAwareMessageListener
+ */
+public interface BatchMessageListener {
+
+	/**
+	 * Callback for processing a batch of received JMS messages.
+	 * <p>Implementors are supposed to process all of the given Messages,
+	 * throwing an exception if the entire batch should be rolled back.
+	 * @param messages the received JMS messages, in order of reception
+	 * (a List of {@link javax.jms.Message} objects, never empty)
+	 * @param session the underlying JMS Session (never <code>null</code>)
+	 * @throws JMSException if thrown by JMS methods
+	 */
+	void onMessages(List messages, Session session) throws JMSException;
+
+}
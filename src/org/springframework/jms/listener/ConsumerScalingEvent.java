@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event raised when a {@link DefaultMessageListenerContainer} changes its
+ * target number of consumers, as determined by its {@link ConsumerScalingPolicy}.
+ *
+ * @since 2.5.7
+ * @see DefaultMessageListenerContainer#setConsumerScalingPolicy
+ * @see org.springframework.context.ApplicationListener
+ */
+public class ConsumerScalingEvent extends ApplicationEvent {
+
+	private final int previousConsumerCount;
+
+	private final int consumerCount;
+
+	private final ConsumerStatistics statistics;
+
+
+	/**
+	 * Create a new ConsumerScalingEvent.
+	 * @param source the listener container that changed its number of consumers
+	 * @param previousConsumerCount the previous target number of consumers
+	 * @param consumerCount the new target number of consumers
+	 * @param statistics the statistics that the decision has been based on
+	 */
+	public ConsumerScalingEvent(DefaultMessageListenerContainer source,
+			int previousConsumerCount, int consumerCount, ConsumerStatistics statistics) {
+
+		super(source);
+		this.previousConsumerCount = previousConsumerCount;
+		this.consumerCount = consumerCount;
+		this.statistics = statistics;
+	}
+
+
+	/**
+	 * Return the listener container that changed its number of consumers.
+	 */
+	public DefaultMessageListenerContainer getListenerContainer() {
+		return (DefaultMessageListenerContainer) getSource();
+	}
+
+	/**
+	 * Return the previous target number of consumers.
+	 */
+	public int getPreviousConsumerCount() {
+		return this.previousConsumerCount;
+	}
+
+	/**
+	 * Return the new target number of consumers.
+	 */
+	public int getConsumerCount() {
+		return this.consumerCount;
+	}
+
+	/**
+	 * Return the statistics that the scaling decision has been based on.
+	 */
+	public ConsumerStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Return whether the number of consumers has been increased.
+	 */
+	public boolean isScaleUp() {
+		return (this.consumerCount > this.previousConsumerCount);
+	}
+
+
+	public String toString() {
+		return "ConsumerScalingEvent: consumers " + this.previousConsumerCount + " -> " +
+				this.consumerCount + " [" + this.statistics + "]";
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+/**
+ * Strategy interface for determining the number of concurrent consumers
+ * of a {@link DefaultMessageListenerContainer}, based on observed load.
+ *
+ * <p>Called once per sampling interval with the statistics gathered
+ * within that interval. The container will schedule additional consumers
+ * or let surplus consumers shut down in order to reach the returned count,
+ * always staying within its "concurrentConsumers" and "maxConcurrentConsumers"
+ * bounds.
+ *
+ * <p>Implementations need to be thread-safe, since they may be invoked
+ * from any of the container's consumer threads.
+ *
+ * @since 2.5.7
+ * @see DefaultMessageListenerContainer#setConsumerScalingPolicy
+ * @see AdaptiveConsumerScalingPolicy
+ */
+public interface ConsumerScalingPolicy {
+
+	/**
+	 * Determine the desired number of concurrent consumers.
+	 * @param statistics the consumer statistics for the last sampling interval
+	 * @return the desired number of consumers (will be adjusted to the
+	 * container's minimum and maximum number of consumers)
+	 */
+	int determineConsumerCount(ConsumerStatistics statistics);
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the consumer load observed by a {@link DefaultMessageListenerContainer}
+ * within one sampling interval, as passed to a {@link ConsumerScalingPolicy}.
+ *
+ * <p>Rates and times refer to listener executions, i.e. received messages
+ * (or batches of messages, in case of a {@link BatchMessageListener}).
+ *
+ * @since 2.5.7
+ * @see ConsumerScalingPolicy#determineConsumerCount
+ * @see DefaultMessageListenerContainer#setConsumerScalingPolicy
+ */
+public class ConsumerStatistics implements Serializable {
+
+	private final long timestamp;
+
+	private final int scheduledConsumerCount;
+
+	private final int minConsumerCount;
+
+	private final int maxConsumerCount;
+
+	private final double receiveRate;
+
+	private final double averageProcessingTime;
+
+	private final double busyRatio;
+
+
+	/**
+	 * Create a new ConsumerStatistics snapshot.
+	 * @param timestamp the time at which the statistics have been taken
+	 * @param scheduledConsumerCount the number of currently scheduled consumers
+	 * @param minConsumerCount the configured minimum number of consumers
+	 * @param maxConsumerCount the configured maximum number of consumers
+	 * @param receiveRate the number of listener executions per second
+	 * @param averageProcessingTime the average listener processing time, in milliseconds
+	 * @param busyRatio the fraction of available consumer time spent in listener
+	 * processing (between 0.0 and 1.0)
+	 */
+	public ConsumerStatistics(long timestamp, int scheduledConsumerCount, int minConsumerCount,
+			int maxConsumerCount, double receiveRate, double averageProcessingTime, double busyRatio) {
+
+		this.timestamp = timestamp;
+		this.scheduledConsumerCount = scheduledConsumerCount;
+		this.minConsumerCount = minConsumerCount;
+		this.maxConsumerCount = maxConsumerCount;
+		this.receiveRate = receiveRate;
+		this.averageProcessingTime = averageProcessingTime;
+		this.busyRatio = busyRatio;
+	}
+
+
+	/**
+	 * Return the time at which the statistics have been taken.
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	/**
+	 * Return the number of currently scheduled consumers.
+	 */
+	public int getScheduledConsumerCount() {
+		return this.scheduledConsumerCount;
+	}
+
+	/**
+	 * Return the configured minimum number of consumers ("concurrentConsumers").
+	 */
+	public int getMinConsumerCount() {
+		return this.minConsumerCount;
+	}
+
+	/**
+	 * Return the configured maximum number of consumers ("maxConcurrentConsumers").
+	 */
+	public int getMaxConsumerCount() {
+		return this.maxConsumerCount;
+	}
+
+	/**
+	 * Return the number of listener executions per second.
+	 */
+	public double getReceiveRate() {
+		return this.receiveRate;
+	}
+
+	/**
+	 * Return the average listener processing time, in milliseconds.
+	 */
+	public double getAverageProcessingTime() {
+		return this.averageProcessingTime;
+	}
+
+	/**
+	 * Return the fraction of available consumer time that has been spent
+	 * in listener processing, between 0.0 (all idle) and 1.0 (all busy).
+	 */
+	public double getBusyRatio() {
+		return this.busyRatio;
+	}
+
+
+	public String toString() {
+		return "ConsumerStatistics: scheduledConsumers=" + this.scheduledConsumerCount +
+				", receiveRate=" + this.receiveRate + "/s, averageProcessingTime=" +
+				this.averageProcessingTime + "ms, busyRatio=" + this.busyRatio;
+	}
+
+}
@@ -25,6 +25,8 @@ import javax.jms.JMSException;
 import javax.jms.MessageConsumer;
 import javax.jms.Session;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.core.Constants;
 import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
@@ -98,6 +100,21 @@ import org.springframework.util.ClassUtils;
  * place; for a topic, you will typically stick with the default number of 1
  * consumer, else you'd receive the same message multiple times on the same node.
  *
+ * <p>As an alternative to a per-message listener, a {@link BatchMessageListener}
+ * may be specified: Each invoker will then receive up to
+ * {@link #setBatchSize "batchSize"} messages within a single transaction
+ * and commit or roll back the entire batch at once, reducing the per-message
+ * transaction overhead for high-volume queues.
+ *
+ * <p>For load-driven scaling beyond the built-in heuristic, specify a
+ * {@link #setConsumerScalingPolicy "consumerScalingPolicy"}, for example an
+ * {@link AdaptiveConsumerScalingPolicy}. The policy will be consulted once per
+ * {@link #setScalingInterval "scalingInterval"} with the observed receive rate,
+ * processing time and busy ratio, determining the number of consumers within
+ * the "concurrentConsumers" and "maxConcurrentConsumers" bounds. Scaling decisions
+ * get published as {@link ConsumerScalingEvent ConsumerScalingEvents} and are
+ * reflected in the statistics exposed by this container (e.g. for JMX export).
+ *
  * <p><b>It is strongly recommended to either set {@link #setSessionTransacted
  * "sessionTransacted"} to "true" or specify an external {@link #setTransactionManager
  * "transactionManager"}.</b> See the {@link AbstractMessageListenerContainer}
@@ -113,7 +130,8 @@ import org.springframework.util.ClassUtils;
  * @see SimpleMessageListenerContainer
  * @see org.springframework.jms.listener.endpoint.JmsMessageEndpointManager
  */
-public class DefaultMessageListenerContainer extends AbstractPollingMessageListenerContainer {
+public class DefaultMessageListenerContainer extends AbstractPollingMessageListenerContainer
+		implements ApplicationEventPublisherAware {
 
 	/**
 	 * Default thread name prefix: "DefaultMessageListenerContainer-".
@@ -126,6 +144,11 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 	 */
 	public static final long DEFAULT_RECOVERY_INTERVAL = 5000;
 
+	/**
+	 * The default scaling interval: 1000 ms = 1 second.
+	 */
+	public static final long DEFAULT_SCALING_INTERVAL = 1000;
+
 
 	/**
 	 * Constant that indicates to cache no JMS resources at all.
@@ -191,6 +214,28 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 
 	private final Object recoveryMonitor = new Object();
 
+	private ConsumerScalingPolicy consumerScalingPolicy;
+
+	private long scalingInterval = DEFAULT_SCALING_INTERVAL;
+
+	private ApplicationEventPublisher applicationEventPublisher;
+
+	private int targetConsumerCount = 0;
+
+	private int scaleUpCount = 0;
+
+	private int scaleDownCount = 0;
+
+	private final Object statisticsMonitor = new Object();
+
+	private long statisticsIntervalStart = System.currentTimeMillis();
+
+	private long intervalExecutionCount = 0;
+
+	private long intervalProcessingTime = 0;
+
+	private ConsumerStatistics lastStatistics;
+
 
 	/**
 	 * Set the Spring TaskExecutor to use for running the listener threads.
@@ -448,6 +493,45 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 		}
 	}
 
+	/**
+	 * Specify a policy for adapting the number of concurrent consumers to the
+	 * observed load, between "concurrentConsumers" and "maxConcurrentConsumers".
+	 * <p>Default is none, scheduling a new consumer whenever a message has been
+	 * received and no other consumer is idle (see {@link #setIdleConsumerLimit}),
+	 * and shrinking according to the {@link #setIdleTaskExecutionLimit} setting.
+	 * <p>If specified, the policy replaces that heuristic: Consumers get added
+	 * and released according to the policy's decision, evaluated once per
+	 * {@link #setScalingInterval "scalingInterval"}. Surplus consumers will be
+	 * released even in case of long-lived consumer tasks.
+	 * @see AdaptiveConsumerScalingPolicy
+	 * @see ConsumerScalingEvent
+	 */
+	public void setConsumerScalingPolicy(ConsumerScalingPolicy consumerScalingPolicy) {
+		this.consumerScalingPolicy = consumerScalingPolicy;
+	}
+
+	/**
+	 * Specify the interval for gathering consumer statistics and consulting the
+	 * {@link #setConsumerScalingPolicy "consumerScalingPolicy"}, in <b>milliseconds</b>.
+	 * The default is 1000 ms, that is, 1 second.
+	 * <p>Note that the policy will only be consulted after a consumer
+	 * finished a receive attempt, so effectively at least once per
+	 * {@link #setReceiveTimeout "receiveTimeout"} as well.
+	 */
+	public void setScalingInterval(long scalingInterval) {
+		Assert.isTrue(scalingInterval > 0, "'scalingInterval' must be greater than 0");
+		this.scalingInterval = scalingInterval;
+	}
+
+	/**
+	 * Specify the ApplicationEventPublisher to publish
+	 * {@link ConsumerScalingEvent ConsumerScalingEvents} to.
+	 * Usually set automatically by the ApplicationContext.
+	 */
+	public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+		this.applicationEventPublisher = applicationEventPublisher;
+	}
+
 	protected void validateConfiguration() {
 		super.validateConfiguration();
 		synchronized (this.lifecycleMonitor) {
@@ -496,6 +580,7 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 	 */
 	protected void doInitialize() throws JMSException {
 		synchronized (this.lifecycleMonitor) {
+			this.targetConsumerCount = this.concurrentConsumers;
 			for (int i = 0; i < this.concurrentConsumers; i++) {
 				scheduleNewInvoker();
 			}
@@ -584,6 +669,75 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 		}
 	}
 
+	/**
+	 * Return the number of consumers that the
+	 * {@link #setConsumerScalingPolicy "consumerScalingPolicy"} currently aims for,
+	 * adjusted to the "concurrentConsumers" and "maxConcurrentConsumers" bounds.
+	 * <p>Without a scaling policy, this is the "concurrentConsumers" value.
+	 */
+	public final int getTargetConsumerCount() {
+		synchronized (this.lifecycleMonitor) {
+			return Math.min(Math.max(this.targetConsumerCount, this.concurrentConsumers), this.maxConcurrentConsumers);
+		}
+	}
+
+	/**
+	 * Return the number of scale-up decisions taken by the scaling policy so far.
+	 */
+	public final int getScaleUpCount() {
+		synchronized (this.lifecycleMonitor) {
+			return this.scaleUpCount;
+		}
+	}
+
+	/**
+	 * Return the number of scale-down decisions taken by the scaling policy so far.
+	 */
+	public final int getScaleDownCount() {
+		synchronized (this.lifecycleMonitor) {
+			return this.scaleDownCount;
+		}
+	}
+
+	/**
+	 * Return the consumer statistics gathered within the last completed
+	 * scaling interval, or <code>null</code> if none available yet.
+	 * Only gathered in case of a scaling policy specified.
+	 * @see #setConsumerScalingPolicy
+	 */
+	public ConsumerStatistics getLastConsumerStatistics() {
+		synchronized (this.statisticsMonitor) {
+			return this.lastStatistics;
+		}
+	}
+
+	/**
+	 * Return the number of listener executions per second
+	 * within the last scaling interval.
+	 */
+	public double getReceiveRate() {
+		ConsumerStatistics statistics = getLastConsumerStatistics();
+		return (statistics != null ? statistics.getReceiveRate() : 0);
+	}
+
+	/**
+	 * Return the average listener processing time (in milliseconds)
+	 * within the last scaling interval.
+	 */
+	public double getAverageProcessingTime() {
+		ConsumerStatistics statistics = getLastConsumerStatistics();
+		return (statistics != null ? statistics.getAverageProcessingTime() : 0);
+	}
+
+	/**
+	 * Return the fraction of consumer time spent in listener processing
+	 * within the last scaling interval.
+	 */
+	public double getBusyRatio() {
+		ConsumerStatistics statistics = getLastConsumerStatistics();
+		return (statistics != null ? statistics.getBusyRatio() : 0);
+	}
+
 
 	/**
 	 * Create a default TaskExecutor. Called if no explicit TaskExecutor has been specified.
@@ -632,6 +786,7 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 	 */
 	protected void messageReceived(Object invoker, Session session) {
 		((AsyncMessageListenerInvoker) invoker).setIdle(false);
+		((AsyncMessageListenerInvoker) invoker).processingStartTime = System.currentTimeMillis();
 		scheduleNewInvokerIfAppropriate();
 	}
 
@@ -647,6 +802,8 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 	 * invokers for this listener container, but only if the specified
 	 * "maxConcurrentConsumers" limit has not been reached yet, and only
 	 * if the specified "idleConsumerLimit" has not been reached either.
+	 * In case of a scaling policy, the number of invokers will be raised
+	 * to the policy's target number of consumers instead.
 	 * <p>Called once a message has been received, in order to scale up while
 	 * processing the message in the invoker that originally received it.
 	 * @see #setTaskExecutor
@@ -657,7 +814,16 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 		if (isRunning()) {
 			resumePausedTasks();
 			synchronized (this.lifecycleMonitor) {
-				if (this.scheduledInvokers.size() < this.maxConcurrentConsumers &&
+				if (this.consumerScalingPolicy != null) {
+					int missingInvokers = getTargetConsumerCount() - this.scheduledInvokers.size();
+					for (int i = 0; i < missingInvokers; i++) {
+						scheduleNewInvoker();
+					}
+					if (missingInvokers > 0 && logger.isDebugEnabled()) {
+						logger.debug("Raised scheduled invoker count: " + this.scheduledInvokers.size());
+					}
+				}
+				else if (this.scheduledInvokers.size() < this.maxConcurrentConsumers &&
 						getIdleInvokerCount() < this.idleConsumerLimit) {
 					scheduleNewInvoker();
 					if (logger.isDebugEnabled()) {
@@ -675,12 +841,112 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 	 * that this invoker task has already accumulated (in a row)
 	 */
 	private boolean shouldRescheduleInvoker(int idleTaskExecutionCount) {
+		if (this.consumerScalingPolicy != null) {
+			return (this.scheduledInvokers.size() <= getTargetConsumerCount());
+		}
 		boolean superfluous =
 				(idleTaskExecutionCount >= this.idleTaskExecutionLimit && getIdleInvokerCount() > 1);
 		return (this.scheduledInvokers.size() <=
 				(superfluous ? this.concurrentConsumers : this.maxConcurrentConsumers));
 	}
 
+	/**
+	 * Determine whether the given invoker is surplus according to the
+	 * scaling policy, i.e. whether it should stop its ongoing receive loop.
+	 * <p>Claims the scale-down slot atomically: If so, the invoker is removed
+	 * from the scheduled invokers right away, so that other invokers checking
+	 * concurrently will not consider themselves surplus as well.
+	 * @param invoker the invoker to check
+	 * @return <code>true</code> if the invoker has been removed and should shut down
+	 */
+	private boolean claimSurplusInvoker(AsyncMessageListenerInvoker invoker) {
+		if (this.consumerScalingPolicy == null) {
+			return false;
+		}
+		synchronized (this.lifecycleMonitor) {
+			if (this.scheduledInvokers.size() > getTargetConsumerCount() && this.scheduledInvokers.remove(invoker)) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Lowered scheduled invoker count: " + this.scheduledInvokers.size());
+				}
+				this.lifecycleMonitor.notifyAll();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Record a completed receive attempt of the given invoker, consulting
+	 * the scaling policy once the current scaling interval has elapsed.
+	 * @param invoker the invoker that performed the receive attempt
+	 * @param messageReceived whether a message has been received and processed
+	 */
+	private void recordReceiveAttempt(AsyncMessageListenerInvoker invoker, boolean messageReceived) {
+		long now = System.currentTimeMillis();
+		long elapsed;
+		long executionCount;
+		long processingTime;
+		synchronized (this.statisticsMonitor) {
+			if (messageReceived) {
+				this.intervalExecutionCount++;
+				this.intervalProcessingTime += now - invoker.processingStartTime;
+			}
+			elapsed = now - this.statisticsIntervalStart;
+			if (elapsed < this.scalingInterval) {
+				return;
+			}
+			executionCount = this.intervalExecutionCount;
+			processingTime = this.intervalProcessingTime;
+			this.statisticsIntervalStart = now;
+			this.intervalExecutionCount = 0;
+			this.intervalProcessingTime = 0;
+		}
+
+		int scheduledConsumers = getScheduledConsumerCount();
+		double busyRatio = Math.min(1.0, (double) processingTime / (elapsed * Math.max(scheduledConsumers, 1)));
+		ConsumerStatistics statistics = new ConsumerStatistics(now, scheduledConsumers,
+				getConcurrentConsumers(), getMaxConcurrentConsumers(), executionCount * 1000.0 / elapsed,
+				(executionCount > 0 ? (double) processingTime / executionCount : 0), busyRatio);
+		synchronized (this.statisticsMonitor) {
+			this.lastStatistics = statistics;
+		}
+		applyScalingPolicy(statistics);
+	}
+
+	/**
+	 * Consult the scaling policy with the given statistics, adapting the
+	 * target number of consumers and publishing a ConsumerScalingEvent
+	 * in case of a change.
+	 */
+	private void applyScalingPolicy(ConsumerStatistics statistics) {
+		int consumerCount = this.consumerScalingPolicy.determineConsumerCount(statistics);
+		int previousConsumerCount;
+		synchronized (this.lifecycleMonitor) {
+			previousConsumerCount = getTargetConsumerCount();
+			this.targetConsumerCount = consumerCount;
+			consumerCount = getTargetConsumerCount();
+			if (consumerCount > previousConsumerCount) {
+				this.scaleUpCount++;
+			}
+			else if (consumerCount < previousConsumerCount) {
+				this.scaleDownCount++;
+			}
+		}
+		if (consumerCount != previousConsumerCount) {
+			if (logger.isInfoEnabled()) {
+				logger.info("Changing target number of consumers for destination '" + getDestinationDescription() +
+						"' from " + previousConsumerCount + " to " + consumerCount + " - " + statistics);
+			}
+			if (this.applicationEventPublisher != null) {
+				this.applicationEventPublisher.publishEvent(
+						new ConsumerScalingEvent(this, previousConsumerCount, consumerCount, statistics));
+			}
+			if (consumerCount > previousConsumerCount) {
+				scheduleNewInvokerIfAppropriate();
+			}
+		}
+	}
+
 	/**
 	 * Determine whether this listener container currently has more
 	 * than one idle instance among its scheduled invokers.
@@ -894,6 +1160,10 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 
 		private volatile boolean idle = true;
 
+		private boolean surplus = false;
+
+		private long processingStartTime;
+
 		public void run() {
 			synchronized (lifecycleMonitor) {
 				activeInvokerCount++;
@@ -945,6 +1215,11 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 			else {
 				this.idleTaskExecutionCount = 0;
 			}
+			if (this.surplus) {
+				// Already removed from the scheduled invokers: shut down without rescheduling.
+				clearResources();
+				return;
+			}
 			synchronized (lifecycleMonitor) {
 				if (!shouldRescheduleInvoker(this.idleTaskExecutionCount) || !rescheduleTaskIfNecessary(this)) {
 					// We're shutting down completely.
@@ -1001,6 +1276,11 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 				}
 				if (active) {
 					messageReceived = (invokeListener() || messageReceived);
+					if (claimSurplusInvoker(this)) {
+						// Leave the ongoing loop, letting this invoker shut down.
+						this.surplus = true;
+						active = false;
+					}
 				}
 			}
 			return messageReceived;
@@ -1010,6 +1290,9 @@ public class DefaultMessageListenerContainer extends AbstractPollingMessageListe
 			initResourcesIfNecessary();
 			boolean messageReceived = receiveAndExecute(this, this.session, this.consumer);
 			this.lastMessageSucceeded = true;
+			if (consumerScalingPolicy != null) {
+				recordReceiveAttempt(this, messageReceived);
+			}
 			return messageReceived;
 		}
 
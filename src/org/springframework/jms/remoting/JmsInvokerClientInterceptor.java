@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2008 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -36,7 +36,11 @@ import org.aopalliance.intercept.MethodInvocation;
 
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jms.JmsException;
 import org.springframework.jms.connection.ConnectionFactoryUtils;
+import org.springframework.jms.core.JmsRequestor;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.jms.core.PendingReply;
 import org.springframework.jms.support.JmsUtils;
 import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.jms.support.converter.SimpleMessageConverter;
@@ -46,6 +50,7 @@ import org.springframework.remoting.RemoteAccessException;
 import org.springframework.remoting.RemoteInvocationFailureException;
 import org.springframework.remoting.support.DefaultRemoteInvocationFactory;
 import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationBatcher;
 import org.springframework.remoting.support.RemoteInvocationFactory;
 import org.springframework.remoting.support.RemoteInvocationResult;
 
@@ -59,6 +64,11 @@ import org.springframework.remoting.support.RemoteInvocationResult;
  *
  * <p>To be configured with a {@link javax.jms.QueueConnectionFactory} and a
  * target queue (either as {@link javax.jms.Queue} reference or as queue name).
+ * By default, a temporary queue gets created for receiving the response to
+ * each invocation; consider specifying a {@link #setRequestor JmsRequestor}
+ * for receiving all responses through a shared reply consumer instead.
+ * Concurrent invocations can be coalesced into batches, sent as a single
+ * request message, through the {@link #setBatchWindow "batchWindow"} property.
  *
  * <p>Thanks to James Strachan for the original prototype that this
  * JMS invoker mechanism was inspired by!
@@ -86,6 +96,10 @@ public class JmsInvokerClientInterceptor implements MethodInterceptor, Initializ
 
 	private long receiveTimeout = 0;
 
+	private JmsRequestor requestor;
+
+	private final RemoteInvocationBatcher remoteInvocationBatcher = new RemoteInvocationBatcher();
+
 
 	/**
 	 * Set the QueueConnectionFactory to use for obtaining JMS QueueConnections.
@@ -152,6 +166,9 @@ public class JmsInvokerClientInterceptor implements MethodInterceptor, Initializ
 	 * <p>Custom implementations may generally adapt Serializables into
 	 * special kinds of messages, or might be specifically tailored for
 	 * translating RemoteInvocation(Result)s into specific kinds of messages.
+	 * <p>Consider a {@link org.springframework.jms.support.converter.CompactBinaryMessageConverter}
+	 * for a more compact and efficient message format; it needs to be specified
+	 * for the corresponding service exporter as well.
 	 */
 	public void setMessageConverter(MessageConverter messageConverter) {
 		this.messageConverter = (messageConverter != null ? messageConverter : new SimpleMessageConverter());
@@ -176,6 +193,52 @@ public class JmsInvokerClientInterceptor implements MethodInterceptor, Initializ
 		return this.receiveTimeout;
 	}
 
+	/**
+	 * Set a {@link org.springframework.jms.core.JmsRequestor} to send invoker
+	 * requests through, receiving all responses via its shared reply consumer
+	 * instead of creating a temporary queue and a consumer for every invocation.
+	 * <p>The requestor's {@link JmsRequestor#setReplyTimeout reply timeout}
+	 * applies in addition to this interceptor's receive timeout. A target queue
+	 * specified by name will be resolved by the requestor's DestinationResolver.
+	 * <p>Default is none, executing each request via
+	 * {@link #doExecuteRequest standard JMS send/receive}.
+	 */
+	public void setRequestor(JmsRequestor requestor) {
+		this.requestor = requestor;
+	}
+
+	/**
+	 * Return the JmsRequestor to send invoker requests through, if any.
+	 */
+	protected JmsRequestor getRequestor() {
+		return this.requestor;
+	}
+
+	/**
+	 * Set the time (in milliseconds) to wait for concurrent invocations
+	 * to join a batch, which then gets sent as a single request message.
+	 * Default is 0, sending every invocation on its own.
+	 * <p>Requires a {@link JmsInvokerServiceExporter} as of Spring 2.5.7
+	 * on the server side.
+	 * <p><b>NOTE:</b> A batch gets sent by one of its callers, with that
+	 * caller's transport context (e.g. a user-specific connection) applying to
+	 * all invocations in the batch. Only activate batching if that context is
+	 * the same for all callers, or override {@link #getBatchKey} to batch only
+	 * invocations of callers with the same context.
+	 * @see org.springframework.remoting.support.RemoteInvocationBatcher#setBatchWindow
+	 */
+	public void setBatchWindow(long batchWindow) {
+		this.remoteInvocationBatcher.setBatchWindow(batchWindow);
+	}
+
+	/**
+	 * Set the maximum number of invocations per batch.
+	 * @see org.springframework.remoting.support.RemoteInvocationBatcher#setMaxBatchSize
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.remoteInvocationBatcher.setMaxBatchSize(maxBatchSize);
+	}
+
 
 	public void afterPropertiesSet() {
 		if (getConnectionFactory() == null) {
@@ -184,6 +247,9 @@ public class JmsInvokerClientInterceptor implements MethodInterceptor, Initializ
 		if (this.queue == null) {
 			throw new IllegalArgumentException("'queue' or 'queueName' is required");
 		}
+		if (this.requestor != null && !(this.queue instanceof Queue) && !(this.queue instanceof String)) {
+			throw new IllegalArgumentException("'queue' needs to be a Queue or a queue name when using a requestor");
+		}
 	}
 
 
@@ -195,11 +261,24 @@ public class JmsInvokerClientInterceptor implements MethodInterceptor, Initializ
 		RemoteInvocation invocation = createRemoteInvocation(methodInvocation);
 		RemoteInvocationResult result = null;
 		try {
-			result = executeRequest(invocation);
+			if (this.remoteInvocationBatcher.isBatchingActive()) {
+				Object batchKey = getBatchKey(methodInvocation);
+				result = this.remoteInvocationBatcher.execute(invocation, batchKey, new RemoteInvocationBatcher.Sender() {
+					public RemoteInvocationResult send(RemoteInvocation invocationToSend) throws JMSException {
+						return executeRequest(invocationToSend);
+					}
+				});
+			}
+			else {
+				result = executeRequest(invocation);
+			}
 		}
 		catch (JMSException ex) {
 			throw convertJmsInvokerAccessException(ex);
 		}
+		catch (JmsException ex) {
+			throw new RemoteAccessException("Could not access JMS invoker queue [" + this.queue + "]", ex);
+		}
 		try {
 			return recreateRemoteInvocationResult(result);
 		}
@@ -214,6 +293,20 @@ public class JmsInvokerClientInterceptor implements MethodInterceptor, Initializ
 		}
 	}
 
+	/**
+	 * Determine the batch key for the given AOP method invocation: Only
+	 * invocations with equal batch keys get sent within the same batch.
+	 * <p>The default implementation returns <code>null</code>, letting the
+	 * invocations of all callers share a batch. Can be overridden in subclasses
+	 * to return whatever distinguishes the transport context of the current caller.
+	 * @param methodInvocation the current AOP method invocation
+	 * @return the batch key (may be <code>null</code>)
+	 * @see #setBatchWindow
+	 */
+	protected Object getBatchKey(MethodInvocation methodInvocation) {
+		return null;
+	}
+
 	/**
 	 * Create a new RemoteInvocation object for the given AOP method invocation.
 	 * The default implementation delegates to the RemoteInvocationFactory.
@@ -236,8 +329,12 @@ public class JmsInvokerClientInterceptor implements MethodInterceptor, Initializ
 	 * @return the RemoteInvocationResult object
 	 * @throws JMSException in case of JMS failure
 	 * @see #doExecuteRequest
+	 * @see #executeRequestViaRequestor
 	 */
 	protected RemoteInvocationResult executeRequest(RemoteInvocation invocation) throws JMSException {
+		if (this.requestor != null) {
+			return executeRequestViaRequestor(invocation);
+		}
 		Connection con = createConnection();
 		Session session = null;
 		try {
@@ -254,6 +351,37 @@ public class JmsInvokerClientInterceptor implements MethodInterceptor, Initializ
 		}
 	}
 
+	/**
+	 * Execute the given remote invocation through the specified
+	 * {@link #setRequestor JmsRequestor}, waiting for the corresponding
+	 * response on the requestor's shared reply destination.
+	 * @param invocation the RemoteInvocation to execute
+	 * @return the RemoteInvocationResult object
+	 * @throws JMSException in case of JMS failure
+	 */
+	protected RemoteInvocationResult executeRequestViaRequestor(final RemoteInvocation invocation)
+			throws JMSException {
+
+		MessageCreator messageCreator = new MessageCreator() {
+			public Message createMessage(Session session) throws JMSException {
+				return createRequestMessage(session, invocation);
+			}
+		};
+		PendingReply pendingReply = (this.queue instanceof Queue ?
+				this.requestor.sendRequest((Queue) this.queue, messageCreator) :
+				this.requestor.sendRequest((String) this.queue, messageCreator));
+		Message responseMessage = null;
+		try {
+			responseMessage = pendingReply.getReply(getReceiveTimeout());
+		}
+		finally {
+			if (responseMessage == null) {
+				pendingReply.cancel();
+			}
+		}
+		return extractInvocationResult(responseMessage);
+	}
+
 	/**
 	 * Create a new JMS Connection for this JMS invoker,
 	 * ideally a <code>javax.jms.QueueConnection</code>.
@@ -72,6 +72,9 @@ public class JmsInvokerServiceExporter extends RemoteInvocationBasedExporter
 	 * <p>Custom implementations may generally adapt Serializables into
 	 * special kinds of messages, or might be specifically tailored for
 	 * translating RemoteInvocation(Result)s into specific kinds of messages.
+	 * <p>Consider a {@link org.springframework.jms.support.converter.CompactBinaryMessageConverter}
+	 * for a more compact and efficient message format; it needs to be specified
+	 * for the corresponding client interceptor as well.
 	 */
 	public void setMessageConverter(MessageConverter messageConverter) {
 		this.messageConverter = (messageConverter != null ? messageConverter : new SimpleMessageConverter());
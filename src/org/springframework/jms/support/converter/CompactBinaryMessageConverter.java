@@ -0,0 +1,772 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.support.converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.core.CollectionFactory;
+import org.springframework.core.ConfigurableObjectInputStream;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * {@link MessageConverter} implementation that converts objects to and from
+ * {@link javax.jms.BytesMessage BytesMessages}, using a compact binary format
+ * instead of standard Java serialization through {@link javax.jms.ObjectMessage}.
+ *
+ * <p>Strings, primitive wrappers, byte arrays, Dates, Classes, object arrays and
+ * common Collection and Map implementations (ArrayList, LinkedList, HashSet,
+ * LinkedHashSet, HashMap, LinkedHashMap) are written with a one-byte type tag
+ * followed by their values, using variable-length encoding for integral numbers.
+ * Any other Serializable object is written through Java serialization, without
+ * stream header. Each class descriptor is written in full once per message and
+ * referred to by handle afterwards, so compatible class evolution (resolving
+ * fields by name) works as with standard serialization.
+ *
+ * <p>Alternatively, class descriptors can be reduced to class name,
+ * serialVersionUID and a fingerprint of the field layout through the
+ * {@link #setCompactClassDescriptors "compactClassDescriptors"} flag:
+ * The field layout is then taken from the local class on the receiving side.
+ * This requires sender and receiver to share the same class definitions;
+ * a differing serialVersionUID or field layout will be rejected.
+ *
+ * <p>Payloads above the specified {@link #setCompressionThreshold "compressionThreshold"}
+ * will be compressed with the Deflate algorithm.
+ *
+ * <p>Arrays, Collections and Maps in the compact format are written as a tree:
+ * An instance referenced several times will arrive as separate copies, and
+ * a cycle through such containers (for example a List that contains itself)
+ * will be rejected with a {@link MessageConversionException}. References within
+ * objects written through Java serialization are not affected by this limitation.
+ *
+ * <p>Messages other than BytesMessages, as well as BytesMessages that have not
+ * been written in the compact format, are converted by a
+ * {@link SimpleMessageConverter}. This converter requires JMS 1.1 or higher.
+ *
+ * <p>Can be used with {@link org.springframework.jms.core.JmsTemplate} as well as
+ * with {@link org.springframework.jms.remoting.JmsInvokerClientInterceptor} and
+ * {@link org.springframework.jms.remoting.JmsInvokerServiceExporter}; in the
+ * latter case, both sides need to be configured with this converter.
+ *
+ * @since 2.5.7
+ * @see org.springframework.jms.core.JmsTemplate#setMessageConverter
+ * @see org.springframework.jms.remoting.JmsInvokerClientInterceptor#setMessageConverter
+ * @see org.springframework.jms.remoting.JmsInvokerServiceExporter#setMessageConverter
+ */
+public class CompactBinaryMessageConverter implements MessageConverter, BeanClassLoaderAware {
+
+	private static final byte[] FORMAT_HEADER = new byte[] {(byte) 0xC0, (byte) 0xB1, 1};
+
+	private static final int FLAG_DEFLATED = 1;
+
+	private static final int FLAG_COMPACT_CLASS_DESCRIPTORS = 2;
+
+	private static final byte TAG_NULL = 0;
+
+	private static final byte TAG_STRING = 1;
+
+	private static final byte TAG_LONG_STRING = 2;
+
+	private static final byte TAG_TRUE = 3;
+
+	private static final byte TAG_FALSE = 4;
+
+	private static final byte TAG_INTEGER = 5;
+
+	private static final byte TAG_LONG = 6;
+
+	private static final byte TAG_SHORT = 7;
+
+	private static final byte TAG_BYTE = 8;
+
+	private static final byte TAG_CHARACTER = 9;
+
+	private static final byte TAG_DOUBLE = 10;
+
+	private static final byte TAG_FLOAT = 11;
+
+	private static final byte TAG_BYTE_ARRAY = 12;
+
+	private static final byte TAG_OBJECT_ARRAY = 13;
+
+	private static final byte TAG_ARRAY_LIST = 14;
+
+	private static final byte TAG_LINKED_LIST = 15;
+
+	private static final byte TAG_HASH_SET = 16;
+
+	private static final byte TAG_LINKED_HASH_SET = 17;
+
+	private static final byte TAG_HASH_MAP = 18;
+
+	private static final byte TAG_LINKED_HASH_MAP = 19;
+
+	private static final byte TAG_DATE = 20;
+
+	private static final byte TAG_CLASS = 21;
+
+	private static final byte TAG_SERIALIZABLE = 22;
+
+	/** Maximum String length that is guaranteed to fit into modified UTF-8 with 64K bytes */
+	private static final int MAX_UTF_LENGTH = 65535 / 3;
+
+
+	private int compressionThreshold = -1;
+
+	private int compressionLevel = Deflater.BEST_SPEED;
+
+	private boolean compactClassDescriptors = false;
+
+	private ClassLoader beanClassLoader = ClassUtils.getDefaultClassLoader();
+
+	private final Map classCache = CollectionFactory.createConcurrentMapIfPossible(64);
+
+	private final SimpleMessageConverter fallbackConverter = new SimpleMessageConverter();
+
+
+	/**
+	 * Set the payload size (in bytes) above which payloads will be compressed.
+	 * <p>Default is -1, indicating no compression. Compression pays off for
+	 * large text-heavy payloads on slow links, at the expense of CPU time.
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * Set the compression level to use, from 0 (no compression) to 9
+	 * (best compression). Default is 1: best speed.
+	 * @see java.util.zip.Deflater#setLevel
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Set whether to reduce the class descriptors of serializable objects
+	 * to class name, serialVersionUID and a fingerprint of the field layout,
+	 * deriving the actual descriptors from the local classes on the receiving side.
+	 * <p>Default is "false": writing full class descriptors, once per class
+	 * per message. Only switch this to "true" if sender and receiver are
+	 * guaranteed to use the same class definitions; a class with a differing
+	 * field layout will be rejected on the receiving side, even if it declares
+	 * the same serialVersionUID. The receiving side detects the format of each
+	 * message, independent of its own setting.
+	 */
+	public void setCompactClassDescriptors(boolean compactClassDescriptors) {
+		this.compactClassDescriptors = compactClassDescriptors;
+	}
+
+	public void setBeanClassLoader(ClassLoader classLoader) {
+		this.beanClassLoader = classLoader;
+		this.classCache.clear();
+	}
+
+
+	/**
+	 * This implementation creates a BytesMessage for any given object,
+	 * containing the object in compact binary format.
+	 * @see #serialize
+	 */
+	public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+		if (object instanceof Message) {
+			return (Message) object;
+		}
+		byte[] payload;
+		try {
+			payload = serialize(object);
+		}
+		catch (IOException ex) {
+			throw new MessageConversionException("Could not serialize object of type [" +
+					ObjectUtils.nullSafeClassName(object) + "] to compact binary format", ex);
+		}
+		boolean compress = (this.compressionThreshold >= 0 && payload.length > this.compressionThreshold);
+		int flags = (this.compactClassDescriptors ? FLAG_COMPACT_CLASS_DESCRIPTORS : 0);
+		BytesMessage message = session.createBytesMessage();
+		message.writeBytes(compress ? compress(payload, flags | FLAG_DEFLATED) : addHeader(payload, flags));
+		return message;
+	}
+
+	/**
+	 * This implementation converts a BytesMessage in compact binary format
+	 * back to the original object, delegating to a {@link SimpleMessageConverter}
+	 * for any other kind of message.
+	 * @see #deserialize
+	 */
+	public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+		if (!(message instanceof BytesMessage)) {
+			return this.fallbackConverter.fromMessage(message);
+		}
+		BytesMessage bytesMessage = (BytesMessage) message;
+		byte[] content = new byte[(int) bytesMessage.getBodyLength()];
+		bytesMessage.readBytes(content);
+		if (!hasHeader(content)) {
+			return content;
+		}
+		int offset = FORMAT_HEADER.length + 1;
+		int flags = content[FORMAT_HEADER.length];
+		boolean compactClassDescriptors = ((flags & FLAG_COMPACT_CLASS_DESCRIPTORS) != 0);
+		try {
+			if ((flags & FLAG_DEFLATED) != 0) {
+				return deserialize(decompress(content, offset), compactClassDescriptors);
+			}
+			byte[] payload = new byte[content.length - offset];
+			System.arraycopy(content, offset, payload, 0, payload.length);
+			return deserialize(payload, compactClassDescriptors);
+		}
+		catch (IOException ex) {
+			throw new MessageConversionException("Could not deserialize compact binary message", ex);
+		}
+		catch (ClassNotFoundException ex) {
+			throw new MessageConversionException("Could not deserialize compact binary message", ex);
+		}
+	}
+
+
+	/**
+	 * Serialize the given object into the compact binary format.
+	 * @param object the object to serialize (may be <code>null</code>)
+	 * @return the serialized form (without header and compression)
+	 * @throws IOException if serialization failed
+	 * @see #setCompactClassDescriptors
+	 */
+	protected byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+		ObjectOutputStream out = new CompactObjectOutputStream(baos, this.compactClassDescriptors);
+		writeValue(out, object, new IdentityHashMap());
+		out.flush();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Deserialize the given compact binary content.
+	 * @param content the serialized form (without header and compression)
+	 * @param compactClassDescriptors whether the content has been written
+	 * with compact class descriptors
+	 * @return the deserialized object (may be <code>null</code>)
+	 * @throws IOException if deserialization failed
+	 * @throws ClassNotFoundException if a serialized class could not be found
+	 */
+	protected Object deserialize(byte[] content, boolean compactClassDescriptors)
+			throws IOException, ClassNotFoundException {
+
+		ObjectInput in = new CompactObjectInputStream(
+				new ByteArrayInputStream(content), this.beanClassLoader, compactClassDescriptors);
+		return readValue(in);
+	}
+
+
+	/**
+	 * Write the given value, including its tag.
+	 * @param out the stream to write to
+	 * @param value the value to write (may be <code>null</code>)
+	 * @param containers the arrays, Collections and Maps currently being written,
+	 * for detection of cyclic references
+	 */
+	private void writeValue(ObjectOutput out, Object value, Map containers) throws IOException {
+		if (value == null) {
+			out.writeByte(TAG_NULL);
+		}
+		else if (value instanceof String) {
+			String str = (String) value;
+			if (str.length() <= MAX_UTF_LENGTH) {
+				out.writeByte(TAG_STRING);
+				out.writeUTF(str);
+			}
+			else {
+				out.writeByte(TAG_LONG_STRING);
+				byte[] bytes = str.getBytes("UTF-8");
+				writeVarLong(out, bytes.length);
+				out.write(bytes);
+			}
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(TAG_INTEGER);
+			writeSignedVarLong(out, ((Integer) value).intValue());
+		}
+		else if (value instanceof Long) {
+			out.writeByte(TAG_LONG);
+			writeSignedVarLong(out, ((Long) value).longValue());
+		}
+		else if (value instanceof Short) {
+			out.writeByte(TAG_SHORT);
+			out.writeShort(((Short) value).shortValue());
+		}
+		else if (value instanceof Byte) {
+			out.writeByte(TAG_BYTE);
+			out.writeByte(((Byte) value).byteValue());
+		}
+		else if (value instanceof Character) {
+			out.writeByte(TAG_CHARACTER);
+			out.writeChar(((Character) value).charValue());
+		}
+		else if (value instanceof Double) {
+			out.writeByte(TAG_DOUBLE);
+			out.writeDouble(((Double) value).doubleValue());
+		}
+		else if (value instanceof Float) {
+			out.writeByte(TAG_FLOAT);
+			out.writeFloat(((Float) value).floatValue());
+		}
+		else if (value instanceof byte[]) {
+			byte[] bytes = (byte[]) value;
+			out.writeByte(TAG_BYTE_ARRAY);
+			writeVarLong(out, bytes.length);
+			out.write(bytes);
+		}
+		else if (value instanceof Object[]) {
+			Object[] array = (Object[]) value;
+			enterContainer(containers, array);
+			out.writeByte(TAG_OBJECT_ARRAY);
+			out.writeUTF(value.getClass().getComponentType().getName());
+			writeVarLong(out, array.length);
+			for (int i = 0; i < array.length; i++) {
+				writeValue(out, array[i], containers);
+			}
+			containers.remove(array);
+		}
+		else if (value instanceof Class) {
+			out.writeByte(TAG_CLASS);
+			out.writeUTF(((Class) value).getName());
+		}
+		else if (value.getClass() == Date.class) {
+			out.writeByte(TAG_DATE);
+			out.writeLong(((Date) value).getTime());
+		}
+		else if (value.getClass() == ArrayList.class) {
+			writeCollection(out, TAG_ARRAY_LIST, (Collection) value, containers);
+		}
+		else if (value.getClass() == LinkedList.class) {
+			writeCollection(out, TAG_LINKED_LIST, (Collection) value, containers);
+		}
+		else if (value.getClass() == HashSet.class) {
+			writeCollection(out, TAG_HASH_SET, (Collection) value, containers);
+		}
+		else if (value.getClass() == LinkedHashSet.class) {
+			writeCollection(out, TAG_LINKED_HASH_SET, (Collection) value, containers);
+		}
+		else if (value.getClass() == HashMap.class) {
+			writeMap(out, TAG_HASH_MAP, (Map) value, containers);
+		}
+		else if (value.getClass() == LinkedHashMap.class) {
+			writeMap(out, TAG_LINKED_HASH_MAP, (Map) value, containers);
+		}
+		else if (value instanceof Serializable) {
+			out.writeByte(TAG_SERIALIZABLE);
+			out.writeObject(value);
+		}
+		else {
+			throw new MessageConversionException("Cannot convert object of type [" +
+					ObjectUtils.nullSafeClassName(value) + "] to compact binary format: " +
+					"neither a supported type nor Serializable");
+		}
+	}
+
+	private void writeCollection(ObjectOutput out, byte tag, Collection collection, Map containers)
+			throws IOException {
+
+		enterContainer(containers, collection);
+		out.writeByte(tag);
+		writeVarLong(out, collection.size());
+		for (Iterator it = collection.iterator(); it.hasNext();) {
+			writeValue(out, it.next(), containers);
+		}
+		containers.remove(collection);
+	}
+
+	private void writeMap(ObjectOutput out, byte tag, Map map, Map containers) throws IOException {
+		enterContainer(containers, map);
+		out.writeByte(tag);
+		writeVarLong(out, map.size());
+		for (Iterator it = map.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			writeValue(out, entry.getKey(), containers);
+			writeValue(out, entry.getValue(), containers);
+		}
+		containers.remove(map);
+	}
+
+	private void enterContainer(Map containers, Object container) {
+		if (containers.put(container, Boolean.TRUE) != null) {
+			throw new MessageConversionException("Cannot convert cyclic object graph to compact binary format: " +
+					"object of type [" + container.getClass().getName() + "] contains a reference to itself");
+		}
+	}
+
+	private Object readValue(ObjectInput in) throws IOException, ClassNotFoundException {
+		byte tag = in.readByte();
+		switch (tag) {
+			case TAG_NULL:
+				return null;
+			case TAG_STRING:
+				return in.readUTF();
+			case TAG_LONG_STRING:
+				return new String(readBytes(in), "UTF-8");
+			case TAG_TRUE:
+				return Boolean.TRUE;
+			case TAG_FALSE:
+				return Boolean.FALSE;
+			case TAG_INTEGER:
+				return new Integer((int) readSignedVarLong(in));
+			case TAG_LONG:
+				return new Long(readSignedVarLong(in));
+			case TAG_SHORT:
+				return new Short(in.readShort());
+			case TAG_BYTE:
+				return new Byte(in.readByte());
+			case TAG_CHARACTER:
+				return new Character(in.readChar());
+			case TAG_DOUBLE:
+				return new Double(in.readDouble());
+			case TAG_FLOAT:
+				return new Float(in.readFloat());
+			case TAG_BYTE_ARRAY:
+				return readBytes(in);
+			case TAG_OBJECT_ARRAY:
+				Class componentType = resolveClassName(in.readUTF());
+				Object[] array = (Object[]) Array.newInstance(componentType, readLength(in));
+				for (int i = 0; i < array.length; i++) {
+					array[i] = readValue(in);
+				}
+				return array;
+			case TAG_CLASS:
+				return resolveClassName(in.readUTF());
+			case TAG_DATE:
+				return new Date(in.readLong());
+			case TAG_ARRAY_LIST:
+			case TAG_LINKED_LIST:
+			case TAG_HASH_SET:
+			case TAG_LINKED_HASH_SET:
+				return readCollection(in, tag);
+			case TAG_HASH_MAP:
+			case TAG_LINKED_HASH_MAP:
+				return readMap(in, tag);
+			case TAG_SERIALIZABLE:
+				return in.readObject();
+			default:
+				throw new StreamCorruptedException("Unknown type tag: " + tag);
+		}
+	}
+
+	private Collection readCollection(ObjectInput in, byte tag) throws IOException, ClassNotFoundException {
+		int size = readLength(in);
+		Collection collection;
+		if (tag == TAG_ARRAY_LIST) {
+			collection = new ArrayList(size);
+		}
+		else if (tag == TAG_LINKED_LIST) {
+			collection = new LinkedList();
+		}
+		else if (tag == TAG_HASH_SET) {
+			collection = new HashSet(mapCapacity(size));
+		}
+		else {
+			collection = new LinkedHashSet(mapCapacity(size));
+		}
+		for (int i = 0; i < size; i++) {
+			collection.add(readValue(in));
+		}
+		return collection;
+	}
+
+	private Map readMap(ObjectInput in, byte tag) throws IOException, ClassNotFoundException {
+		int size = readLength(in);
+		Map map = (tag == TAG_HASH_MAP ? new HashMap(mapCapacity(size)) : new LinkedHashMap(mapCapacity(size)));
+		for (int i = 0; i < size; i++) {
+			map.put(readValue(in), readValue(in));
+		}
+		return map;
+	}
+
+	private byte[] readBytes(ObjectInput in) throws IOException {
+		byte[] bytes = new byte[readLength(in)];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private int readLength(ObjectInput in) throws IOException {
+		long length = readVarLong(in);
+		if (length < 0 || length > Integer.MAX_VALUE) {
+			throw new StreamCorruptedException("Invalid length: " + length);
+		}
+		return (int) length;
+	}
+
+	private static int mapCapacity(int size) {
+		return Math.max((int) (size / 0.75f) + 1, 16);
+	}
+
+	private static void writeSignedVarLong(ObjectOutput out, long value) throws IOException {
+		// ZigZag encoding: small negative numbers result in small unsigned numbers as well
+		writeVarLong(out, (value << 1) ^ (value >> 63));
+	}
+
+	private static long readSignedVarLong(ObjectInput in) throws IOException {
+		long value = readVarLong(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarLong(ObjectOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(ObjectInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed variable-length number");
+	}
+
+
+	/**
+	 * Resolve the given class name against the bean ClassLoader,
+	 * caching the resolved classes.
+	 */
+	private Class resolveClassName(String className) throws ClassNotFoundException {
+		Class clazz = (Class) this.classCache.get(className);
+		if (clazz == null) {
+			clazz = ClassUtils.forName(className, this.beanClassLoader);
+			this.classCache.put(className, clazz);
+		}
+		return clazz;
+	}
+
+	private byte[] addHeader(byte[] payload, int flags) {
+		byte[] content = new byte[FORMAT_HEADER.length + 1 + payload.length];
+		System.arraycopy(FORMAT_HEADER, 0, content, 0, FORMAT_HEADER.length);
+		content[FORMAT_HEADER.length] = (byte) flags;
+		System.arraycopy(payload, 0, content, FORMAT_HEADER.length + 1, payload.length);
+		return content;
+	}
+
+	private boolean hasHeader(byte[] content) {
+		if (content.length <= FORMAT_HEADER.length) {
+			return false;
+		}
+		for (int i = 0; i < FORMAT_HEADER.length; i++) {
+			if (content[i] != FORMAT_HEADER[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private byte[] compress(byte[] payload, int flags) {
+		Deflater deflater = new Deflater(this.compressionLevel);
+		try {
+			deflater.setInput(payload);
+			deflater.finish();
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(payload.length / 2 + 16);
+			baos.write(FORMAT_HEADER, 0, FORMAT_HEADER.length);
+			baos.write(flags);
+			// Uncompressed length, for sizing the buffer on decompression.
+			baos.write(payload.length >>> 24);
+			baos.write(payload.length >>> 16);
+			baos.write(payload.length >>> 8);
+			baos.write(payload.length);
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				baos.write(buffer, 0, count);
+			}
+			return baos.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	private byte[] decompress(byte[] content, int offset) throws IOException {
+		if (content.length < offset + 4) {
+			throw new StreamCorruptedException("Missing uncompressed length");
+		}
+		int length = ((content[offset] & 0xFF) << 24) | ((content[offset + 1] & 0xFF) << 16) |
+				((content[offset + 2] & 0xFF) << 8) | (content[offset + 3] & 0xFF);
+		if (length < 0) {
+			throw new StreamCorruptedException("Invalid uncompressed length: " + length);
+		}
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(content, offset + 4, content.length - offset - 4);
+			byte[] payload = new byte[length];
+			int count = 0;
+			while (count < length) {
+				int inflated = inflater.inflate(payload, count, length - count);
+				if (inflated == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())) {
+					throw new StreamCorruptedException("Compressed payload is truncated");
+				}
+				count += inflated;
+			}
+			return payload;
+		}
+		catch (DataFormatException ex) {
+			throw new StreamCorruptedException("Invalid compressed payload: " + ex.getMessage());
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+
+	/**
+	 * Compute a fingerprint of the serializable field layout described by the
+	 * given descriptor, covering field names and types in canonical order.
+	 */
+	private static int getFieldLayoutFingerprint(ObjectStreamClass desc) {
+		int fingerprint = 1;
+		ObjectStreamField[] fields = desc.getFields();
+		for (int i = 0; i < fields.length; i++) {
+			fingerprint = 31 * fingerprint + fields[i].getName().hashCode();
+			fingerprint = 31 * fingerprint + fields[i].getTypeCode();
+			String typeString = fields[i].getTypeString();
+			fingerprint = 31 * fingerprint + (typeString != null ? typeString.hashCode() : 0);
+		}
+		return fingerprint;
+	}
+
+
+	/**
+	 * ObjectOutputStream that omits the stream header and optionally reduces the
+	 * descriptors of serializable classes to class name, serialVersionUID and
+	 * field layout fingerprint.
+	 */
+	private static class CompactObjectOutputStream extends ObjectOutputStream {
+
+		private final boolean compactClassDescriptors;
+
+		public CompactObjectOutputStream(OutputStream out, boolean compactClassDescriptors) throws IOException {
+			super(out);
+			this.compactClassDescriptors = compactClassDescriptors;
+		}
+
+		protected void writeStreamHeader() {
+		}
+
+		protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+			if (!this.compactClassDescriptors) {
+				super.writeClassDescriptor(desc);
+				return;
+			}
+			Class clazz = desc.forClass();
+			if (clazz != null && Serializable.class.isAssignableFrom(clazz)) {
+				writeBoolean(true);
+				writeUTF(desc.getName());
+				writeLong(desc.getSerialVersionUID());
+				writeInt(getFieldLayoutFingerprint(desc));
+			}
+			else {
+				// Descriptor for a non-serializable class, e.g. a primitive type
+				// as part of a Class object: write the full descriptor.
+				writeBoolean(false);
+				super.writeClassDescriptor(desc);
+			}
+		}
+	}
+
+
+	/**
+	 * ObjectInputStream counterpart of {@link CompactObjectOutputStream},
+	 * deriving compact class descriptors from the locally available classes.
+	 */
+	private class CompactObjectInputStream extends ConfigurableObjectInputStream {
+
+		private final boolean compactClassDescriptors;
+
+		public CompactObjectInputStream(InputStream in, ClassLoader classLoader, boolean compactClassDescriptors)
+				throws IOException {
+
+			super(in, classLoader);
+			this.compactClassDescriptors = compactClassDescriptors;
+		}
+
+		protected void readStreamHeader() {
+		}
+
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+			if (!this.compactClassDescriptors || !readBoolean()) {
+				return super.readClassDescriptor();
+			}
+			String className = readUTF();
+			long serialVersionUID = readLong();
+			int fieldLayoutFingerprint = readInt();
+			ObjectStreamClass desc = ObjectStreamClass.lookup(resolveClassName(className));
+			if (desc == null) {
+				throw new InvalidClassException(className, "Local class is not serializable");
+			}
+			if (desc.getSerialVersionUID() != serialVersionUID) {
+				throw new InvalidClassException(className, "Incompatible serialVersionUID: stream " +
+						serialVersionUID + ", local class " + desc.getSerialVersionUID());
+			}
+			if (getFieldLayoutFingerprint(desc) != fieldLayoutFingerprint) {
+				throw new InvalidClassException(className, "Field layout of local class differs from " +
+						"sending side - cannot use compact class descriptors for this class");
+			}
+			return desc;
+		}
+
+		protected Class resolveClass(ObjectStreamClass classDesc) throws IOException, ClassNotFoundException {
+			Class clazz = classDesc.forClass();
+			return (clazz != null ? clazz : super.resolveClass(classDesc));
+		}
+	}
+
+}
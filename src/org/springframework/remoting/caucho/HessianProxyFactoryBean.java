@@ -16,7 +16,6 @@
 
 package org.springframework.remoting.caucho;
 
-import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.factory.FactoryBean;
 
 /**
@@ -47,7 +46,7 @@ public class HessianProxyFactoryBean extends HessianClientInterceptor implements
 
 	public void afterPropertiesSet() {
 		super.afterPropertiesSet();
-		this.serviceProxy = new ProxyFactory(getServiceInterface(), this).getProxy(getBeanClassLoader());
+		this.serviceProxy = createServiceProxy(this);
 	}
 
 
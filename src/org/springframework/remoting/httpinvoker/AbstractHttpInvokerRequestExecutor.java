@@ -125,7 +125,14 @@ public abstract class AbstractHttpInvokerRequestExecutor
 	}
 
 
-	public final RemoteInvocationResult executeRequest(
+	/**
+	 * Serializes the given invocation into a ByteArrayOutputStream and
+	 * passes it on to {@link #doExecuteRequest}.
+	 * <p>Can be overridden to write the invocation to the request body
+	 * as it gets serialized, without an intermediate byte array.
+	 * @see PooledCommonsHttpInvokerRequestExecutor
+	 */
+	public RemoteInvocationResult executeRequest(
 			HttpInvokerClientConfiguration config, RemoteInvocation invocation) throws Exception {
 
 		ByteArrayOutputStream baos = getByteArrayOutputStream(invocation);
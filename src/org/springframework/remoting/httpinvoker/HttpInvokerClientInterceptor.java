@@ -29,6 +29,7 @@ import org.springframework.remoting.RemoteConnectFailureException;
 import org.springframework.remoting.RemoteInvocationFailureException;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationBasedAccessor;
+import org.springframework.remoting.support.RemoteInvocationBatcher;
 import org.springframework.remoting.support.RemoteInvocationResult;
 
 /**
@@ -138,7 +139,12 @@ public class HttpInvokerClientInterceptor extends RemoteInvocationBasedAccessor
 		RemoteInvocation invocation = createRemoteInvocation(methodInvocation);
 		RemoteInvocationResult result = null;
 		try {
-			result = executeRequest(invocation, methodInvocation);
+			if (isBatchingActive()) {
+				result = executeBatchableRequest(invocation, methodInvocation);
+			}
+			else {
+				result = executeRequest(invocation, methodInvocation);
+			}
 		}
 		catch (Throwable ex) {
 			throw convertHttpInvokerAccessException(ex);
@@ -173,6 +179,30 @@ public class HttpInvokerClientInterceptor extends RemoteInvocationBasedAccessor
 		return executeRequest(invocation);
 	}
 
+	/**
+	 * Execute the given remote invocation as part of a batch, if concurrent
+	 * invocations arrive within the batch window.
+	 * <p>This implementation sends batches (and single invocations) through
+	 * {@link #executeRequest(RemoteInvocation, MethodInvocation)}, passing the
+	 * MethodInvocation of the thread that sends the batch. Only invocations
+	 * with the same {@link #getBatchKey batch key} share a batch.
+	 * @param invocation the RemoteInvocation to execute
+	 * @param originalInvocation the original MethodInvocation
+	 * @return the RemoteInvocationResult object
+	 * @throws Exception in case of errors
+	 * @see #setBatchWindow
+	 */
+	protected RemoteInvocationResult executeBatchableRequest(
+			RemoteInvocation invocation, final MethodInvocation originalInvocation) throws Exception {
+
+		Object batchKey = getBatchKey(originalInvocation);
+		return getRemoteInvocationBatcher().execute(invocation, batchKey, new RemoteInvocationBatcher.Sender() {
+			public RemoteInvocationResult send(RemoteInvocation invocationToSend) throws Exception {
+				return executeRequest(invocationToSend, originalInvocation);
+			}
+		});
+	}
+
 	/**
 	 * Execute the given remote invocation via the HttpInvokerRequestExecutor.
 	 * <p>Can be overridden in subclasses to pass a different configuration object
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2008 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,6 +21,7 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -84,7 +85,8 @@ public class HttpInvokerServiceExporter extends RemoteInvocationSerializingExpor
 	 * <p>Delegates to
 	 * {@link #readRemoteInvocation(javax.servlet.http.HttpServletRequest, java.io.InputStream)}
 	 * with the
-	 * {@link javax.servlet.ServletRequest#getInputStream() servlet request's input stream}.
+	 * {@link javax.servlet.ServletRequest#getInputStream() servlet request's input stream},
+	 * wrapped in a GZIPInputStream if the request is recognized as GZIP request.
 	 * @param request current HTTP request
 	 * @return the RemoteInvocation object
 	 * @throws IOException in case of I/O failure
@@ -93,7 +95,21 @@ public class HttpInvokerServiceExporter extends RemoteInvocationSerializingExpor
 	protected RemoteInvocation readRemoteInvocation(HttpServletRequest request)
 			throws IOException, ClassNotFoundException {
 
-		return readRemoteInvocation(request, request.getInputStream());
+		InputStream is = request.getInputStream();
+		return readRemoteInvocation(request, (isGzipRequest(request) ? new GZIPInputStream(is) : is));
+	}
+
+	/**
+	 * Determine whether the given request is a GZIP request,
+	 * as sent by a client with request compression enabled.
+	 * <p>Default implementation checks whether the HTTP "Content-Encoding"
+	 * header contains "gzip" (in any casing).
+	 * @param request current HTTP request
+	 * @see PooledCommonsHttpInvokerRequestExecutor#setCompressRequests
+	 */
+	protected boolean isGzipRequest(HttpServletRequest request) {
+		String encodingHeader = request.getHeader("Content-Encoding");
+		return (encodingHeader != null && encodingHeader.toLowerCase().indexOf("gzip") != -1);
 	}
 
 	/**
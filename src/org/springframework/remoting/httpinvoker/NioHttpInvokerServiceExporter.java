@@ -0,0 +1,1121 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.rmi.RemoteInvocationSerializingExporter;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Standalone HTTP invoker service exporter, based on a non-blocking NIO
+ * selector. Accepts HTTP invoker requests on the specified port without
+ * requiring a servlet container or Sun's JRE 1.6 HTTP server, and is
+ * accessible via an HTTP invoker proxy.
+ *
+ * <p>A single selector thread accepts connections and performs all socket I/O,
+ * parsing HTTP requests (with a "Content-Length" or chunked request body)
+ * without blocking. Complete requests get dispatched to the
+ * {@link #setTaskExecutor worker TaskExecutor}, which deserializes the remote
+ * invocation, executes it and serializes the result. Idle connections are kept
+ * alive for further requests until the {@link #setKeepAliveTimeout keep-alive
+ * timeout} elapses, so that a large number of clients can stay connected
+ * without occupying a thread each.
+ *
+ * <p>Applies back-pressure instead of queueing work without bounds: A connection
+ * does not get read from while its request is being processed; once the
+ * {@link #setMaxPendingRequests maximum number of pending requests} has been
+ * reached, further complete requests wait until a worker becomes available;
+ * and once the {@link #setMaxConnections maximum number of connections} has
+ * been reached, no further connections get accepted. Requests that exceed the
+ * {@link #setMaxRequestSize maximum request size} are rejected with status 413.
+ *
+ * <p>Deserializes remote invocation objects and serializes remote invocation
+ * result objects, just like {@link HttpInvokerServiceExporter}. GZIP-compressed
+ * request bodies are accepted as well.
+ *
+ * @since 2.5.7
+ * @see #setPort
+ * @see #setTaskExecutor
+ * @see HttpInvokerServiceExporter
+ * @see SimpleHttpInvokerServiceExporter
+ * @see HttpInvokerProxyFactoryBean
+ */
+public class NioHttpInvokerServiceExporter extends RemoteInvocationSerializingExporter
+		implements DisposableBean {
+
+	/**
+	 * Default port: 8080.
+	 */
+	public static final int DEFAULT_PORT = 8080;
+
+	/**
+	 * Default maximum request size: 10 MB.
+	 */
+	public static final int DEFAULT_MAX_REQUEST_SIZE = 10 * 1024 * 1024;
+
+	/**
+	 * Default maximum size of a request's header section: 8 KB.
+	 */
+	public static final int DEFAULT_MAX_HEADER_SIZE = 8 * 1024;
+
+	/**
+	 * Default maximum number of concurrent connections: 10000.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 10000;
+
+	/**
+	 * Default maximum number of requests dispatched to workers at any time: 200.
+	 */
+	public static final int DEFAULT_MAX_PENDING_REQUESTS = 200;
+
+	/**
+	 * Default keep-alive timeout: 60 seconds.
+	 */
+	public static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 60;
+
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private static final long SELECT_TIMEOUT = 1000;
+
+	private static final String HEADER_CHARSET = "ISO-8859-1";
+
+
+	private int port = DEFAULT_PORT;
+
+	private String hostname;
+
+	private int backlog = -1;
+
+	private String servicePath;
+
+	private TaskExecutor taskExecutor;
+
+	private SimpleAsyncTaskExecutor defaultTaskExecutor;
+
+	private boolean keepAlive = true;
+
+	private int keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
+
+	private int maxRequestSize = DEFAULT_MAX_REQUEST_SIZE;
+
+	private int maxHeaderSize = DEFAULT_MAX_HEADER_SIZE;
+
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+	private int maxPendingRequests = DEFAULT_MAX_PENDING_REQUESTS;
+
+	private Selector selector;
+
+	private ServerSocketChannel serverChannel;
+
+	private SelectionKey serverKey;
+
+	private Thread selectorThread;
+
+	private volatile boolean running;
+
+	/** Responses completed by workers, to be written by the selector thread */
+	private final List completedExchanges = new LinkedList();
+
+	/** Complete requests waiting for a pending request slot (selector thread only) */
+	private final LinkedList deferredConnections = new LinkedList();
+
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+	private volatile int connectionCount = 0;
+
+	private volatile int pendingRequestCount = 0;
+
+	private volatile long requestCount = 0;
+
+	private long lastIdleCheck = System.currentTimeMillis();
+
+
+	/**
+	 * Specify the port to listen on. Default is 8080.
+	 * <p>Specify 0 to listen on an arbitrary free port, to be
+	 * determined through {@link #getPort()} after initialization.
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Return the port that this exporter listens on: the actual local port
+	 * once started, or the specified port before.
+	 */
+	public int getPort() {
+		ServerSocketChannel serverChannel = this.serverChannel;
+		return (serverChannel != null ? serverChannel.socket().getLocalPort() : this.port);
+	}
+
+	/**
+	 * Specify the hostname to bind to. Default is to bind to all local addresses;
+	 * can be overridden with a specific network address to bind to.
+	 */
+	public void setHostname(String hostname) {
+		this.hostname = hostname;
+	}
+
+	/**
+	 * Specify the TCP backlog. Default is -1, indicating the system's default value.
+	 */
+	public void setBacklog(int backlog) {
+		this.backlog = backlog;
+	}
+
+	/**
+	 * Specify the request path that the service is exposed at, e.g. "/accountService".
+	 * Requests for other paths are rejected with status 404.
+	 * <p>Default is none, accepting requests for any path.
+	 */
+	public void setServicePath(String servicePath) {
+		this.servicePath = servicePath;
+	}
+
+	/**
+	 * Set the TaskExecutor to use for deserializing, executing and serializing
+	 * remote invocations.
+	 * <p>Default is a {@link SimpleAsyncTaskExecutor} that reuses its daemon
+	 * threads, bounded by the "maxPendingRequests" setting. Consider specifying
+	 * a thread pool instead, for example a
+	 * {@link org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor}.
+	 * Tasks rejected by the TaskExecutor lead to status 503.
+	 * @see #setMaxPendingRequests
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Set whether to keep connections open for further requests, according
+	 * to the HTTP version and "Connection" header of each request.
+	 * Default is "true".
+	 */
+	public void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * Return whether to keep connections open for further requests.
+	 */
+	public boolean isKeepAlive() {
+		return this.keepAlive;
+	}
+
+	/**
+	 * Set the number of seconds that an idle connection, or a connection with
+	 * an incomplete request, is kept open. Default is 60.
+	 */
+	public void setKeepAliveTimeout(int keepAliveTimeout) {
+		Assert.isTrue(keepAliveTimeout > 0, "'keepAliveTimeout' must be positive");
+		this.keepAliveTimeout = keepAliveTimeout;
+	}
+
+	/**
+	 * Set the maximum size of a request body in bytes, as transferred
+	 * (that is, before decompression). Larger requests are rejected with
+	 * status 413. Default is {@link #DEFAULT_MAX_REQUEST_SIZE}.
+	 */
+	public void setMaxRequestSize(int maxRequestSize) {
+		Assert.isTrue(maxRequestSize > 0, "'maxRequestSize' must be positive");
+		this.maxRequestSize = maxRequestSize;
+	}
+
+	/**
+	 * Set the maximum size of a request's header section in bytes.
+	 * Larger header sections are rejected with status 400.
+	 * Default is {@link #DEFAULT_MAX_HEADER_SIZE}.
+	 */
+	public void setMaxHeaderSize(int maxHeaderSize) {
+		Assert.isTrue(maxHeaderSize > 0, "'maxHeaderSize' must be positive");
+		this.maxHeaderSize = maxHeaderSize;
+	}
+
+	/**
+	 * Set the maximum number of concurrent connections. Once reached, further
+	 * connections remain in the TCP backlog until existing connections get closed.
+	 * Default is {@link #DEFAULT_MAX_CONNECTIONS}.
+	 */
+	public void setMaxConnections(int maxConnections) {
+		Assert.isTrue(maxConnections > 0, "'maxConnections' must be positive");
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Set the maximum number of requests that are handed to the TaskExecutor
+	 * at any time. Once reached, further requests wait for earlier requests
+	 * to complete, with their connections not being read from in the meantime.
+	 * Default is {@link #DEFAULT_MAX_PENDING_REQUESTS}.
+	 */
+	public void setMaxPendingRequests(int maxPendingRequests) {
+		Assert.isTrue(maxPendingRequests > 0, "'maxPendingRequests' must be positive");
+		this.maxPendingRequests = maxPendingRequests;
+	}
+
+
+	/**
+	 * Prepares the service proxy and starts listening for requests.
+	 */
+	public void afterPropertiesSet() {
+		super.afterPropertiesSet();
+		if (this.taskExecutor == null) {
+			SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(ClassUtils.getShortName(getClass()) + "-");
+			executor.setDaemon(true);
+			executor.setKeepAliveSeconds(this.keepAliveTimeout);
+			this.taskExecutor = executor;
+			this.defaultTaskExecutor = executor;
+		}
+		try {
+			start();
+		}
+		catch (IOException ex) {
+			throw new RemoteAccessException("Could not start NIO HTTP invoker exporter on port " + this.port, ex);
+		}
+	}
+
+	/**
+	 * Open the server socket and start the selector thread.
+	 * @throws IOException if the server socket could not be opened
+	 */
+	protected void start() throws IOException {
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.configureBlocking(false);
+		InetSocketAddress address = (this.hostname != null ?
+				new InetSocketAddress(this.hostname, this.port) : new InetSocketAddress(this.port));
+		this.serverChannel.socket().setReuseAddress(true);
+		this.serverChannel.socket().bind(address, (this.backlog > 0 ? this.backlog : 0));
+		this.serverKey = this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+		this.running = true;
+		this.selectorThread = new Thread(new Runnable() {
+			public void run() {
+				runSelectorLoop();
+			}
+		}, ClassUtils.getShortName(getClass()) + "-selector-" + getPort());
+		this.selectorThread.setDaemon(true);
+		this.selectorThread.start();
+		if (logger.isInfoEnabled()) {
+			logger.info("Started NIO HTTP invoker exporter on port " + getPort());
+		}
+	}
+
+	/**
+	 * Stops listening for requests and closes all connections.
+	 */
+	public void destroy() throws InterruptedException {
+		if (this.running) {
+			this.running = false;
+			this.selector.wakeup();
+			this.selectorThread.join(5000);
+			if (this.defaultTaskExecutor != null) {
+				this.defaultTaskExecutor.shutdown();
+			}
+			if (logger.isInfoEnabled()) {
+				logger.info("Stopped NIO HTTP invoker exporter on port " + getPort());
+			}
+		}
+	}
+
+	/**
+	 * Return whether this exporter is currently listening for requests.
+	 */
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * Return the number of currently open connections.
+	 */
+	public int getConnectionCount() {
+		return this.connectionCount;
+	}
+
+	/**
+	 * Return the number of requests currently handed to the TaskExecutor.
+	 */
+	public int getPendingRequestCount() {
+		return this.pendingRequestCount;
+	}
+
+	/**
+	 * Return the total number of requests received so far.
+	 */
+	public long getRequestCount() {
+		return this.requestCount;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Remote invocation handling, performed by worker threads
+	//---------------------------------------------------------------------
+
+	/**
+	 * Deserialize a RemoteInvocation object from the given request body.
+	 * <p>Gives {@link #decorateInputStream} a chance to decorate the stream
+	 * first (for example, for custom encryption or compression). Creates a
+	 * {@link org.springframework.remoting.rmi.CodebaseAwareObjectInputStream}
+	 * and calls {@link #doReadRemoteInvocation} to actually read the object.
+	 * <p>Can be overridden for custom serialization of the invocation.
+	 * @param is the request body, already decompressed if necessary
+	 * @return the RemoteInvocation object
+	 * @throws IOException in case of I/O failure
+	 * @throws ClassNotFoundException if thrown during deserialization
+	 */
+	protected RemoteInvocation readRemoteInvocation(InputStream is) throws IOException, ClassNotFoundException {
+		ObjectInputStream ois = createObjectInputStream(decorateInputStream(is));
+		return doReadRemoteInvocation(ois);
+	}
+
+	/**
+	 * Return the InputStream to use for reading remote invocations,
+	 * potentially decorating the given original InputStream.
+	 * <p>The default implementation returns the given stream as-is.
+	 * Can be overridden, for example, for custom encryption or compression.
+	 * @param is the original InputStream
+	 * @return the potentially decorated InputStream
+	 * @throws IOException in case of I/O failure
+	 */
+	protected InputStream decorateInputStream(InputStream is) throws IOException {
+		return is;
+	}
+
+	/**
+	 * Serialize the given RemoteInvocationResult to the given OutputStream.
+	 * <p>The default implementation gives {@link #decorateOutputStream} a chance
+	 * to decorate the stream first (for example, for custom encryption or compression).
+	 * Creates an {@link java.io.ObjectOutputStream} for the final stream and calls
+	 * {@link #doWriteRemoteInvocationResult} to actually write the object.
+	 * <p>Can be overridden for custom serialization of the invocation.
+	 * @param result the RemoteInvocationResult object
+	 * @param os the OutputStream to write to
+	 * @throws IOException in case of I/O failure
+	 */
+	protected void writeRemoteInvocationResult(RemoteInvocationResult result, OutputStream os) throws IOException {
+		ObjectOutputStream oos = createObjectOutputStream(decorateOutputStream(os));
+		doWriteRemoteInvocationResult(result, oos);
+		oos.flush();
+	}
+
+	/**
+	 * Return the OutputStream to use for writing remote invocation results,
+	 * potentially decorating the given original OutputStream.
+	 * <p>The default implementation returns the given stream as-is.
+	 * Can be overridden, for example, for custom encryption or compression.
+	 * @param os the original OutputStream
+	 * @return the potentially decorated OutputStream
+	 * @throws IOException in case of I/O failure
+	 */
+	protected OutputStream decorateOutputStream(OutputStream os) throws IOException {
+		return os;
+	}
+
+	/**
+	 * Process the given complete request: read the remote invocation,
+	 * execute it, and create the HTTP response.
+	 */
+	private byte[] processRequest(HttpRequest request) {
+		try {
+			InputStream is = new ByteArrayInputStream(request.body.toByteArray());
+			if (request.isGzip()) {
+				is = new GZIPInputStream(is);
+			}
+			RemoteInvocation invocation = readRemoteInvocation(is);
+			RemoteInvocationResult result = invokeAndCreateResult(invocation, getProxy());
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+			writeRemoteInvocationResult(result, baos);
+			return createResponse(200, "OK", getContentType(), baos.toByteArray(), request.keepAlive);
+		}
+		catch (ClassNotFoundException ex) {
+			logger.error("Class not found during deserialization", ex);
+			return createResponse(500, "Internal Server Error", null, null, request.keepAlive);
+		}
+		catch (Throwable ex) {
+			logger.error("Failed to process HTTP invoker request", ex);
+			request.keepAlive = false;
+			return createResponse(500, "Internal Server Error", null, null, false);
+		}
+	}
+
+	private byte[] createResponse(int statusCode, String reasonPhrase, String contentType, byte[] body,
+			boolean keepAlive) {
+
+		StringBuffer headers = new StringBuffer(128);
+		headers.append("HTTP/1.1 ").append(statusCode).append(' ').append(reasonPhrase).append("\r\n");
+		if (contentType != null) {
+			headers.append("Content-Type: ").append(contentType).append("\r\n");
+		}
+		headers.append("Content-Length: ").append(body != null ? body.length : 0).append("\r\n");
+		headers.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+		byte[] headerBytes;
+		try {
+			headerBytes = headers.toString().getBytes(HEADER_CHARSET);
+		}
+		catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException("Unsupported header charset: " + ex);
+		}
+		if (body == null) {
+			return headerBytes;
+		}
+		byte[] response = new byte[headerBytes.length + body.length];
+		System.arraycopy(headerBytes, 0, response, 0, headerBytes.length);
+		System.arraycopy(body, 0, response, headerBytes.length, body.length);
+		return response;
+	}
+
+
+	//---------------------------------------------------------------------
+	// Selector loop, performing all socket I/O
+	//---------------------------------------------------------------------
+
+	private void runSelectorLoop() {
+		try {
+			while (this.running) {
+				try {
+					this.selector.select(SELECT_TIMEOUT);
+					processCompletedExchanges();
+					Iterator it = this.selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = (SelectionKey) it.next();
+						it.remove();
+						if (key == this.serverKey) {
+							if (key.isValid() && key.isAcceptable()) {
+								acceptConnections();
+							}
+						}
+						else {
+							handleConnectionEvent((Connection) key.attachment(), key);
+						}
+					}
+					closeIdleConnections();
+				}
+				catch (IOException ex) {
+					if (this.running) {
+						logger.error("I/O failure in selector loop", ex);
+					}
+				}
+			}
+		}
+		finally {
+			shutdownSelector();
+		}
+	}
+
+	private void handleConnectionEvent(Connection connection, SelectionKey key) {
+		try {
+			if (key.isValid() && key.isReadable()) {
+				connection.read();
+			}
+			if (key.isValid() && key.isWritable()) {
+				connection.write();
+			}
+		}
+		catch (CancelledKeyException ex) {
+			connection.close();
+		}
+		catch (IOException ex) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Closing connection after I/O failure: " + ex);
+			}
+			connection.close();
+		}
+	}
+
+	private void acceptConnections() throws IOException {
+		SocketChannel channel;
+		while (this.connectionCount < this.maxConnections && (channel = this.serverChannel.accept()) != null) {
+			try {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				Connection connection = new Connection(channel);
+				connection.key = channel.register(this.selector, SelectionKey.OP_READ, connection);
+				this.connectionCount++;
+			}
+			catch (IOException ex) {
+				logger.debug("Could not register accepted connection", ex);
+				channel.close();
+			}
+		}
+		if (this.connectionCount >= this.maxConnections) {
+			// Back-pressure: leave further connections in the TCP backlog for the time being.
+			this.serverKey.interestOps(0);
+		}
+	}
+
+	private void dispatch(final Connection connection) {
+		if (this.pendingRequestCount >= this.maxPendingRequests) {
+			this.deferredConnections.add(connection);
+			return;
+		}
+		this.pendingRequestCount++;
+		final HttpRequest request = connection.request;
+		try {
+			this.taskExecutor.execute(new Runnable() {
+				public void run() {
+					byte[] response = processRequest(request);
+					completeExchange(connection, response, request.keepAlive);
+				}
+			});
+		}
+		catch (TaskRejectedException ex) {
+			this.pendingRequestCount--;
+			logger.warn("Worker TaskExecutor rejected HTTP invoker request", ex);
+			connection.sendResponse(createResponse(503, "Service Unavailable", null, null, false), false);
+		}
+	}
+
+	/**
+	 * Hand the given response over to the selector thread. Called by worker threads.
+	 */
+	private void completeExchange(Connection connection, byte[] response, boolean keepAlive) {
+		synchronized (this.completedExchanges) {
+			this.completedExchanges.add(new CompletedExchange(connection, response, keepAlive));
+		}
+		this.selector.wakeup();
+	}
+
+	private void processCompletedExchanges() {
+		CompletedExchange[] exchanges;
+		synchronized (this.completedExchanges) {
+			if (this.completedExchanges.isEmpty()) {
+				return;
+			}
+			exchanges = (CompletedExchange[])
+					this.completedExchanges.toArray(new CompletedExchange[this.completedExchanges.size()]);
+			this.completedExchanges.clear();
+		}
+		for (int i = 0; i < exchanges.length; i++) {
+			this.pendingRequestCount--;
+			if (exchanges[i].connection.isOpen()) {
+				exchanges[i].connection.sendResponse(exchanges[i].response, exchanges[i].keepAlive);
+			}
+		}
+		while (!this.deferredConnections.isEmpty() && this.pendingRequestCount < this.maxPendingRequests) {
+			Connection connection = (Connection) this.deferredConnections.removeFirst();
+			if (connection.isOpen()) {
+				dispatch(connection);
+			}
+		}
+	}
+
+	private void closeIdleConnections() {
+		long now = System.currentTimeMillis();
+		if (now - this.lastIdleCheck < SELECT_TIMEOUT) {
+			return;
+		}
+		this.lastIdleCheck = now;
+		long idleThreshold = now - this.keepAliveTimeout * 1000L;
+		SelectionKey[] keys = (SelectionKey[]) this.selector.keys().toArray(new SelectionKey[0]);
+		for (int i = 0; i < keys.length; i++) {
+			Object attachment = keys[i].attachment();
+			if (attachment instanceof Connection) {
+				Connection connection = (Connection) attachment;
+				if (!connection.processing && connection.lastActivity < idleThreshold) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Closing idle connection from " + connection.channel.socket().getRemoteSocketAddress());
+					}
+					connection.close();
+				}
+			}
+		}
+	}
+
+	private void shutdownSelector() {
+		SelectionKey[] keys = (SelectionKey[]) this.selector.keys().toArray(new SelectionKey[0]);
+		for (int i = 0; i < keys.length; i++) {
+			Object attachment = keys[i].attachment();
+			if (attachment instanceof Connection) {
+				((Connection) attachment).close();
+			}
+		}
+		try {
+			this.serverChannel.close();
+		}
+		catch (IOException ex) {
+			logger.debug("Could not close server socket", ex);
+		}
+		try {
+			this.selector.close();
+		}
+		catch (IOException ex) {
+			logger.debug("Could not close selector", ex);
+		}
+	}
+
+
+	/**
+	 * A client connection, confined to the selector thread.
+	 */
+	private class Connection {
+
+		private final SocketChannel channel;
+
+		private SelectionKey key;
+
+		/** Received bytes that have not been parsed yet */
+		private byte[] input = new byte[READ_BUFFER_SIZE];
+
+		private int inputStart = 0;
+
+		private int inputEnd = 0;
+
+		private HttpRequest request = new HttpRequest();
+
+		/** Whether the current request is being processed (or waits for a worker) */
+		private boolean processing = false;
+
+		private ByteBuffer output;
+
+		private boolean keepAliveAfterOutput;
+
+		private long lastActivity = System.currentTimeMillis();
+
+		public Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		public boolean isOpen() {
+			return this.channel.isOpen();
+		}
+
+		public void read() throws IOException {
+			readBuffer.clear();
+			int count = this.channel.read(readBuffer);
+			if (count < 0) {
+				close();
+				return;
+			}
+			this.lastActivity = System.currentTimeMillis();
+			readBuffer.flip();
+			appendInput(readBuffer);
+			processInput();
+		}
+
+		private void appendInput(ByteBuffer buffer) {
+			int count = buffer.remaining();
+			if (this.inputEnd + count > this.input.length) {
+				int unparsed = this.inputEnd - this.inputStart;
+				byte[] target = (unparsed + count > this.input.length ?
+						new byte[Math.max(this.input.length * 2, unparsed + count)] : this.input);
+				System.arraycopy(this.input, this.inputStart, target, 0, unparsed);
+				this.input = target;
+				this.inputStart = 0;
+				this.inputEnd = unparsed;
+			}
+			buffer.get(this.input, this.inputEnd, count);
+			this.inputEnd += count;
+		}
+
+		/**
+		 * Parse as much of the buffered input as possible, dispatching
+		 * the request once it is complete.
+		 */
+		private void processInput() {
+			try {
+				while (!this.request.isComplete() && this.inputStart < this.inputEnd) {
+					int consumed = this.request.parse(this.input, this.inputStart, this.inputEnd, this);
+					if (consumed == 0) {
+						break;
+					}
+					this.inputStart += consumed;
+				}
+				if (this.inputStart == this.inputEnd) {
+					this.inputStart = 0;
+					this.inputEnd = 0;
+					if (this.input.length > READ_BUFFER_SIZE) {
+						this.input = new byte[READ_BUFFER_SIZE];
+					}
+				}
+				if (this.request.isComplete()) {
+					requestCount++;
+					this.processing = true;
+					this.key.interestOps(0);
+					dispatch(this);
+				}
+			}
+			catch (HttpStatusException ex) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Rejecting HTTP invoker request: " + ex.getMessage());
+				}
+				this.processing = true;
+				sendResponse(createResponse(ex.getStatusCode(), ex.getMessage(), null, null, false), false);
+			}
+		}
+
+		/**
+		 * Write an interim "100 Continue" response. This is small enough to fit
+		 * into the socket's send buffer; we give up on the connection otherwise.
+		 */
+		public void sendContinue() throws HttpStatusException {
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap("HTTP/1.1 100 Continue\r\n\r\n".getBytes(HEADER_CHARSET));
+				this.channel.write(buffer);
+				if (buffer.hasRemaining()) {
+					throw new HttpStatusException(503, "Service Unavailable");
+				}
+			}
+			catch (IOException ex) {
+				throw new HttpStatusException(500, "Internal Server Error");
+			}
+		}
+
+		public void sendResponse(byte[] response, boolean keepAlive) {
+			this.output = ByteBuffer.wrap(response);
+			this.keepAliveAfterOutput = keepAlive;
+			this.processing = false;
+			try {
+				write();
+			}
+			catch (CancelledKeyException ex) {
+				close();
+			}
+			catch (IOException ex) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Closing connection after I/O failure: " + ex);
+				}
+				close();
+			}
+		}
+
+		public void write() throws IOException {
+			if (this.output == null) {
+				return;
+			}
+			this.channel.write(this.output);
+			this.lastActivity = System.currentTimeMillis();
+			if (this.output.hasRemaining()) {
+				this.key.interestOps(SelectionKey.OP_WRITE);
+				return;
+			}
+			this.output = null;
+			if (!this.keepAliveAfterOutput) {
+				close();
+				return;
+			}
+			this.request = new HttpRequest();
+			this.key.interestOps(SelectionKey.OP_READ);
+			if (this.inputStart < this.inputEnd) {
+				// Pipelined request data received along with the previous request.
+				processInput();
+			}
+		}
+
+		public void close() {
+			if (!this.channel.isOpen()) {
+				return;
+			}
+			if (this.key != null) {
+				this.key.cancel();
+			}
+			try {
+				this.channel.close();
+			}
+			catch (IOException ex) {
+				logger.debug("Could not close connection", ex);
+			}
+			connectionCount--;
+			if (running && serverKey.isValid() && serverKey.interestOps() == 0 && connectionCount < maxConnections) {
+				serverKey.interestOps(SelectionKey.OP_ACCEPT);
+			}
+		}
+	}
+
+
+	/**
+	 * Incremental parser and holder for a single HTTP request,
+	 * supporting "Content-Length" as well as chunked request bodies.
+	 */
+	private class HttpRequest {
+
+		private static final int STATE_HEADERS = 0;
+
+		private static final int STATE_BODY = 1;
+
+		private static final int STATE_CHUNK_SIZE = 2;
+
+		private static final int STATE_CHUNK_DATA = 3;
+
+		private static final int STATE_CHUNK_DATA_END = 4;
+
+		private static final int STATE_TRAILER = 5;
+
+		private static final int STATE_COMPLETE = 6;
+
+		private int state = STATE_HEADERS;
+
+		private final Map headers = new HashMap();
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+		private int remaining;
+
+		private boolean keepAlive;
+
+		public boolean isComplete() {
+			return (this.state == STATE_COMPLETE);
+		}
+
+		public boolean isGzip() {
+			String encoding = (String) this.headers.get("content-encoding");
+			return (encoding != null && encoding.toLowerCase().indexOf("gzip") != -1);
+		}
+
+		/**
+		 * Parse the given input.
+		 * @return the number of bytes consumed (0 if more input is required)
+		 */
+		public int parse(byte[] input, int start, int end, Connection connection) throws HttpStatusException {
+			switch (this.state) {
+				case STATE_HEADERS:
+					int headerEnd = indexOf(input, start, end, "\r\n\r\n");
+					if (headerEnd == -1) {
+						if (end - start > maxHeaderSize) {
+							throw new HttpStatusException(400, "Request Header Too Large");
+						}
+						return 0;
+					}
+					if (headerEnd - start > maxHeaderSize) {
+						throw new HttpStatusException(400, "Request Header Too Large");
+					}
+					parseHeaders(input, start, headerEnd);
+					if ("100-continue".equalsIgnoreCase((String) this.headers.get("expect"))) {
+						connection.sendContinue();
+					}
+					return headerEnd + 4 - start;
+
+				case STATE_BODY:
+					int count = Math.min(this.remaining, end - start);
+					this.body.write(input, start, count);
+					this.remaining -= count;
+					if (this.remaining == 0) {
+						this.state = STATE_COMPLETE;
+					}
+					return count;
+
+				case STATE_CHUNK_SIZE:
+					int lineEnd = indexOf(input, start, end, "\r\n");
+					if (lineEnd == -1) {
+						if (end - start > 1024) {
+							throw new HttpStatusException(400, "Bad Request");
+						}
+						return 0;
+					}
+					String line = toString(input, start, lineEnd);
+					int extensionIndex = line.indexOf(';');
+					if (extensionIndex != -1) {
+						line = line.substring(0, extensionIndex);
+					}
+					int chunkSize;
+					try {
+						chunkSize = Integer.parseInt(line.trim(), 16);
+					}
+					catch (NumberFormatException ex) {
+						throw new HttpStatusException(400, "Bad Request");
+					}
+					// Written as subtraction: the sum could overflow for huge chunk sizes.
+					if (chunkSize < 0 || chunkSize > maxRequestSize - this.body.size()) {
+						throw new HttpStatusException(413, "Request Entity Too Large");
+					}
+					this.remaining = chunkSize;
+					this.state = (chunkSize > 0 ? STATE_CHUNK_DATA : STATE_TRAILER);
+					return lineEnd + 2 - start;
+
+				case STATE_CHUNK_DATA:
+					int chunkCount = Math.min(this.remaining, end - start);
+					this.body.write(input, start, chunkCount);
+					this.remaining -= chunkCount;
+					if (this.remaining == 0) {
+						this.state = STATE_CHUNK_DATA_END;
+					}
+					return chunkCount;
+
+				case STATE_CHUNK_DATA_END:
+					if (end - start < 2) {
+						return 0;
+					}
+					if (input[start] != '\r' || input[start + 1] != '\n') {
+						throw new HttpStatusException(400, "Bad Request");
+					}
+					this.state = STATE_CHUNK_SIZE;
+					return 2;
+
+				case STATE_TRAILER:
+					int trailerEnd = indexOf(input, start, end, "\r\n");
+					if (trailerEnd == -1) {
+						if (end - start > maxHeaderSize) {
+							throw new HttpStatusException(400, "Request Header Too Large");
+						}
+						return 0;
+					}
+					if (trailerEnd - start > maxHeaderSize) {
+						throw new HttpStatusException(400, "Request Header Too Large");
+					}
+					if (trailerEnd == start) {
+						this.state = STATE_COMPLETE;
+					}
+					return trailerEnd + 2 - start;
+
+				default:
+					return 0;
+			}
+		}
+
+		private void parseHeaders(byte[] input, int start, int end) throws HttpStatusException {
+			String[] lines = toString(input, start, end).split("\r\n");
+			String[] requestLine = lines[0].split(" ");
+			if (requestLine.length != 3) {
+				throw new HttpStatusException(400, "Bad Request");
+			}
+			for (int i = 1; i < lines.length; i++) {
+				int separatorIndex = lines[i].indexOf(':');
+				if (separatorIndex > 0) {
+					this.headers.put(lines[i].substring(0, separatorIndex).trim().toLowerCase(),
+							lines[i].substring(separatorIndex + 1).trim());
+				}
+			}
+			String connectionHeader = (String) this.headers.get("connection");
+			if ("HTTP/1.1".equals(requestLine[2])) {
+				this.keepAlive = (isKeepAlive() && !"close".equalsIgnoreCase(connectionHeader));
+			}
+			else {
+				this.keepAlive = (isKeepAlive() && "keep-alive".equalsIgnoreCase(connectionHeader));
+			}
+			if (!"POST".equals(requestLine[0])) {
+				throw new HttpStatusException(405, "Method Not Allowed");
+			}
+			if (servicePath != null) {
+				String path = requestLine[1];
+				int queryIndex = path.indexOf('?');
+				if (queryIndex != -1) {
+					path = path.substring(0, queryIndex);
+				}
+				if (!servicePath.equals(path)) {
+					throw new HttpStatusException(404, "Not Found");
+				}
+			}
+			String transferEncoding = (String) this.headers.get("transfer-encoding");
+			if (transferEncoding != null && transferEncoding.toLowerCase().indexOf("chunked") != -1) {
+				this.state = STATE_CHUNK_SIZE;
+				return;
+			}
+			String contentLength = (String) this.headers.get("content-length");
+			if (contentLength == null) {
+				throw new HttpStatusException(411, "Length Required");
+			}
+			try {
+				this.remaining = Integer.parseInt(contentLength);
+			}
+			catch (NumberFormatException ex) {
+				throw new HttpStatusException(400, "Bad Request");
+			}
+			if (this.remaining < 0 || this.remaining > maxRequestSize) {
+				throw new HttpStatusException(413, "Request Entity Too Large");
+			}
+			this.state = (this.remaining > 0 ? STATE_BODY : STATE_COMPLETE);
+		}
+
+		private int indexOf(byte[] input, int start, int end, String delimiter) {
+			int length = delimiter.length();
+			outer:
+			for (int i = start; i <= end - length; i++) {
+				for (int j = 0; j < length; j++) {
+					if (input[i + j] != delimiter.charAt(j)) {
+						continue outer;
+					}
+				}
+				return i;
+			}
+			return -1;
+		}
+
+		private String toString(byte[] input, int start, int end) {
+			try {
+				return new String(input, start, end - start, HEADER_CHARSET);
+			}
+			catch (UnsupportedEncodingException ex) {
+				throw new IllegalStateException("Unsupported header charset: " + ex);
+			}
+		}
+	}
+
+
+	/**
+	 * A response created by a worker thread, to be written by the selector thread.
+	 */
+	private static class CompletedExchange {
+
+		private final Connection connection;
+
+		private final byte[] response;
+
+		private final boolean keepAlive;
+
+		public CompletedExchange(Connection connection, byte[] response, boolean keepAlive) {
+			this.connection = connection;
+			this.response = response;
+			this.keepAlive = keepAlive;
+		}
+	}
+
+
+	/**
+	 * Exception that indicates an HTTP request to be rejected with a specific status code.
+	 */
+	private static class HttpStatusException extends Exception {
+
+		private final int statusCode;
+
+		public HttpStatusException(int statusCode, String reasonPhrase) {
+			super(reasonPhrase);
+			this.statusCode = statusCode;
+		}
+
+		public int getStatusCode() {
+			return this.statusCode;
+		}
+	}
+
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.URI;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.util.LatencyHistogram;
+
+/**
+ * Variant of {@link CommonsHttpInvokerRequestExecutor} that is tuned for
+ * high volumes of remote invocations against a small set of endpoints.
+ *
+ * <p>Keeps persistent HTTP connections in a pool with explicit limits
+ * (see {@link #setMaxConnectionsPerHost "maxConnectionsPerHost"} and
+ * {@link #setMaxTotalConnections "maxTotalConnections"}) rather than the
+ * low HttpClient defaults, closing pooled connections that have been idle
+ * for longer than the {@link #setIdleConnectionTimeout "idleConnectionTimeout"}.
+ *
+ * <p>By default, remote invocations get serialized straight into the request
+ * body, sent with chunked transfer encoding, instead of being buffered in a
+ * byte array first. Request bodies can optionally be GZIP-compressed,
+ * complementing the GZIP response support of the base class; this requires
+ * a server that understands compressed requests, such as Spring 2.5.7's
+ * {@link HttpInvokerServiceExporter} and {@link SimpleHttpInvokerServiceExporter}.
+ *
+ * <p>Collects invocation latencies in a {@link LatencyHistogram} per service URL,
+ * along with invocation and failure counts. The statistics and the number of
+ * pooled connections are exposed through bean property getters and simple
+ * operations (such as {@link #getEndpointSummary()}), suitable for export via
+ * JMX through Spring's {@link org.springframework.jmx.export.MBeanExporter}.
+ *
+ * <p>The pool limits, the idle connection closing and the shutdown on
+ * {@link #destroy()} only apply to the connection manager that this executor
+ * creates by default. The connection manager of an HttpClient passed in
+ * (through the constructor or {@link #setHttpClient "httpClient"}) remains
+ * under the control of the caller, since it may be shared.
+ *
+ * @since 2.5.7
+ * @see #setChunkedRequests
+ * @see #setCompressRequests
+ */
+public class PooledCommonsHttpInvokerRequestExecutor extends CommonsHttpInvokerRequestExecutor
+		implements InitializingBean, DisposableBean {
+
+	/**
+	 * Default maximum number of pooled connections per host: 20.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+	/**
+	 * Default maximum number of pooled connections in total: 100.
+	 */
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+
+	/**
+	 * Default time after which idle connections get closed: 60 seconds.
+	 */
+	public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 60 * 1000;
+
+
+	private boolean chunkedRequests = true;
+
+	private boolean compressRequests = false;
+
+	private long idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+	private IdleConnectionTimeoutThread idleConnectionTimeoutThread;
+
+	/** The connection manager created by this executor, if any */
+	private final HttpConnectionManager ownConnectionManager;
+
+	/** Map from service URL String to EndpointStatistics, sorted by service URL */
+	private final Map endpointStatistics = new TreeMap();
+
+
+	/**
+	 * Create a new PooledCommonsHttpInvokerRequestExecutor with a default
+	 * HttpClient that uses a MultiThreadedHttpConnectionManager with
+	 * the default pool limits of this class, stale connection checking
+	 * and TCP_NODELAY.
+	 * @see #DEFAULT_MAX_CONNECTIONS_PER_HOST
+	 * @see #DEFAULT_MAX_TOTAL_CONNECTIONS
+	 */
+	public PooledCommonsHttpInvokerRequestExecutor() {
+		super();
+		this.ownConnectionManager = getHttpClient().getHttpConnectionManager();
+		HttpConnectionManagerParams params = this.ownConnectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+		params.setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
+		params.setStaleCheckingEnabled(true);
+		params.setTcpNoDelay(true);
+	}
+
+	/**
+	 * Create a new PooledCommonsHttpInvokerRequestExecutor with the given
+	 * HttpClient instance. The connection manager of the provided HttpClient
+	 * will not be tuned, checked for idle connections or shut down by this
+	 * executor: Configure it directly instead.
+	 * @param httpClient the HttpClient instance to use for this request executor
+	 */
+	public PooledCommonsHttpInvokerRequestExecutor(HttpClient httpClient) {
+		super(httpClient);
+		this.ownConnectionManager = null;
+	}
+
+
+	/**
+	 * Set the maximum number of pooled connections per host.
+	 * Default is {@link #DEFAULT_MAX_CONNECTIONS_PER_HOST}.
+	 * @see org.apache.commons.httpclient.params.HttpConnectionManagerParams#setDefaultMaxConnectionsPerHost
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		getConnectionManagerParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+	}
+
+	/**
+	 * Set the maximum number of pooled connections in total.
+	 * Default is {@link #DEFAULT_MAX_TOTAL_CONNECTIONS}.
+	 * @see org.apache.commons.httpclient.params.HttpConnectionManagerParams#setMaxTotalConnections
+	 */
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		getConnectionManagerParams().setMaxTotalConnections(maxTotalConnections);
+	}
+
+	/**
+	 * Set the timeout for establishing a new connection (in milliseconds).
+	 * A value of 0 means <emphasis>never</emphasis> timeout.
+	 * @see org.apache.commons.httpclient.params.HttpConnectionManagerParams#setConnectionTimeout
+	 */
+	public void setConnectionTimeout(int connectionTimeout) {
+		if (connectionTimeout < 0) {
+			throw new IllegalArgumentException("timeout must be a non-negative value");
+		}
+		getConnectionManagerParams().setConnectionTimeout(connectionTimeout);
+	}
+
+	/**
+	 * Set whether to check a pooled connection for having been closed
+	 * by the server before reusing it. Default is "true".
+	 * @see org.apache.commons.httpclient.params.HttpConnectionManagerParams#setStaleCheckingEnabled
+	 */
+	public void setStaleCheckingEnabled(boolean staleCheckingEnabled) {
+		getConnectionManagerParams().setStaleCheckingEnabled(staleCheckingEnabled);
+	}
+
+	/**
+	 * Set the time (in milliseconds) after which pooled connections that have
+	 * not been used get closed. Default is {@link #DEFAULT_IDLE_CONNECTION_TIMEOUT}.
+	 * A value of 0 or less keeps idle connections open until the server closes them.
+	 * <p>Only applies to the connection manager created by this executor.
+	 */
+	public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	/**
+	 * Set whether to write remote invocations straight into the request body,
+	 * using chunked transfer encoding. Default is "true".
+	 * <p>Turn this flag off to buffer each serialized invocation and send
+	 * it with a "Content-Length" header, for servers or proxies that do not
+	 * accept chunked HTTP/1.1 requests.
+	 */
+	public void setChunkedRequests(boolean chunkedRequests) {
+		this.chunkedRequests = chunkedRequests;
+	}
+
+	/**
+	 * Return whether remote invocations get written straight into the request body.
+	 */
+	public boolean isChunkedRequests() {
+		return this.chunkedRequests;
+	}
+
+	/**
+	 * Set whether to GZIP-compress request bodies, sending the HTTP
+	 * "Content-Encoding" header with "gzip" as value. Default is "false".
+	 * <p>Only turn this flag on for servers that decompress such requests.
+	 * @see HttpInvokerServiceExporter#isGzipRequest
+	 * @see SimpleHttpInvokerServiceExporter#isGzipRequest
+	 */
+	public void setCompressRequests(boolean compressRequests) {
+		this.compressRequests = compressRequests;
+	}
+
+	/**
+	 * Return whether request bodies get GZIP-compressed.
+	 */
+	public boolean isCompressRequests() {
+		return this.compressRequests;
+	}
+
+	/**
+	 * Return whether the current HttpClient uses the connection manager
+	 * created by this executor, rather than one provided by the caller.
+	 */
+	protected boolean isOwnConnectionManager() {
+		return (this.ownConnectionManager != null &&
+				getHttpClient().getHttpConnectionManager() == this.ownConnectionManager);
+	}
+
+	private HttpConnectionManagerParams getConnectionManagerParams() {
+		if (!isOwnConnectionManager()) {
+			throw new IllegalStateException("Cannot change the settings of the connection manager of " +
+					"a provided HttpClient: Configure the connection manager directly instead");
+		}
+		return this.ownConnectionManager.getParams();
+	}
+
+
+	/**
+	 * Starts a background thread that closes idle connections, if an
+	 * "idleConnectionTimeout" has been specified and the connection manager
+	 * has been created by this executor.
+	 */
+	public void afterPropertiesSet() {
+		if (this.idleConnectionTimeout > 0 && isOwnConnectionManager()) {
+			this.idleConnectionTimeoutThread = new IdleConnectionTimeoutThread();
+			this.idleConnectionTimeoutThread.setName(getClass().getName() + " idle connection closer");
+			this.idleConnectionTimeoutThread.setConnectionTimeout(this.idleConnectionTimeout);
+			this.idleConnectionTimeoutThread.setTimeoutInterval(Math.max(this.idleConnectionTimeout / 2, 1000));
+			this.idleConnectionTimeoutThread.addConnectionManager(this.ownConnectionManager);
+			this.idleConnectionTimeoutThread.start();
+		}
+	}
+
+	/**
+	 * Stops the idle connection thread and closes all pooled connections
+	 * of the connection manager created by this executor.
+	 * The connection manager of a provided HttpClient is left as-is.
+	 */
+	public void destroy() {
+		if (this.idleConnectionTimeoutThread != null) {
+			this.idleConnectionTimeoutThread.shutdown();
+			this.idleConnectionTimeoutThread = null;
+		}
+		if (this.ownConnectionManager instanceof MultiThreadedHttpConnectionManager) {
+			((MultiThreadedHttpConnectionManager) this.ownConnectionManager).shutdown();
+		}
+	}
+
+
+	/**
+	 * Executes the request, recording its latency for the target service URL.
+	 * Writes the invocation straight into the request body if
+	 * {@link #setChunkedRequests "chunkedRequests"} is active.
+	 */
+	public RemoteInvocationResult executeRequest(
+			HttpInvokerClientConfiguration config, RemoteInvocation invocation) throws Exception {
+
+		EndpointStatistics statistics = getEndpointStatistics(config.getServiceUrl());
+		long startTime = System.currentTimeMillis();
+		boolean success = false;
+		try {
+			RemoteInvocationResult result = null;
+			if (this.chunkedRequests) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Sending chunked HTTP invoker request for service at [" + config.getServiceUrl() + "]");
+				}
+				result = doExecuteRequest(config, invocation);
+			}
+			else {
+				result = super.executeRequest(config, invocation);
+			}
+			success = true;
+			return result;
+		}
+		finally {
+			statistics.record(System.currentTimeMillis() - startTime, success);
+		}
+	}
+
+	/**
+	 * Execute the given request through Commons HttpClient, writing the
+	 * invocation straight into the request body.
+	 * <p>Follows the processing workflow of
+	 * {@link #doExecuteRequest(HttpInvokerClientConfiguration, java.io.ByteArrayOutputStream)},
+	 * using the same template methods.
+	 * @param config the HTTP invoker configuration that specifies the target service
+	 * @param invocation the RemoteInvocation to execute
+	 * @return the RemoteInvocationResult object
+	 * @throws IOException if thrown by I/O operations
+	 * @throws ClassNotFoundException if thrown during deserialization
+	 */
+	protected RemoteInvocationResult doExecuteRequest(
+			HttpInvokerClientConfiguration config, RemoteInvocation invocation)
+			throws IOException, ClassNotFoundException {
+
+		PostMethod postMethod = createPostMethod(config);
+		try {
+			postMethod.setRequestEntity(new RemoteInvocationRequestEntity(invocation));
+			executePostMethod(config, getHttpClient(), postMethod);
+			validateResponse(config, postMethod);
+			InputStream responseBody = getResponseBody(config, postMethod);
+			return readRemoteInvocationResult(responseBody, config.getCodebaseUrl());
+		}
+		finally {
+			// Need to explicitly release because it might be pooled.
+			postMethod.releaseConnection();
+		}
+	}
+
+	/**
+	 * Adds a "Content-Encoding" header if request compression is active.
+	 */
+	protected PostMethod createPostMethod(HttpInvokerClientConfiguration config) throws IOException {
+		PostMethod postMethod = super.createPostMethod(config);
+		if (this.compressRequests) {
+			postMethod.addRequestHeader(HTTP_HEADER_CONTENT_ENCODING, ENCODING_GZIP);
+		}
+		return postMethod;
+	}
+
+	/**
+	 * Compresses the serialized invocation if request compression is active.
+	 */
+	protected void setRequestBody(
+			HttpInvokerClientConfiguration config, PostMethod postMethod, ByteArrayOutputStream baos)
+			throws IOException {
+
+		if (this.compressRequests) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(baos.size() / 2 + 64);
+			GZIPOutputStream gzos = new GZIPOutputStream(compressed);
+			baos.writeTo(gzos);
+			gzos.close();
+			postMethod.setRequestEntity(new ByteArrayRequestEntity(compressed.toByteArray(), getContentType()));
+		}
+		else {
+			super.setRequestBody(config, postMethod, baos);
+		}
+	}
+
+
+	private EndpointStatistics getEndpointStatistics(String serviceUrl) {
+		synchronized (this.endpointStatistics) {
+			EndpointStatistics statistics = (EndpointStatistics) this.endpointStatistics.get(serviceUrl);
+			if (statistics == null) {
+				statistics = new EndpointStatistics();
+				this.endpointStatistics.put(serviceUrl, statistics);
+			}
+			return statistics;
+		}
+	}
+
+	private EndpointStatistics findEndpointStatistics(String serviceUrl) {
+		synchronized (this.endpointStatistics) {
+			return (EndpointStatistics) this.endpointStatistics.get(serviceUrl);
+		}
+	}
+
+	/**
+	 * Return the service URLs that requests have been sent to so far.
+	 */
+	public String[] getServiceUrls() {
+		synchronized (this.endpointStatistics) {
+			return (String[]) this.endpointStatistics.keySet().toArray(new String[this.endpointStatistics.size()]);
+		}
+	}
+
+	/**
+	 * Return the latency histogram for the given service URL,
+	 * or <code>null</code> if no request has been sent to it yet.
+	 */
+	public LatencyHistogram getLatencyHistogram(String serviceUrl) {
+		EndpointStatistics statistics = findEndpointStatistics(serviceUrl);
+		return (statistics != null ? statistics.getLatencyHistogram() : null);
+	}
+
+	/**
+	 * Return the number of requests sent to the given service URL.
+	 */
+	public long getRequestCount(String serviceUrl) {
+		EndpointStatistics statistics = findEndpointStatistics(serviceUrl);
+		return (statistics != null ? statistics.getRequestCount() : 0);
+	}
+
+	/**
+	 * Return the number of requests to the given service URL that failed,
+	 * either with an I/O error or an unsuccessful HTTP response.
+	 */
+	public long getFailureCount(String serviceUrl) {
+		EndpointStatistics statistics = findEndpointStatistics(serviceUrl);
+		return (statistics != null ? statistics.getFailureCount() : 0);
+	}
+
+	/**
+	 * Return the number of pooled connections to the host of the given service URL,
+	 * or -1 if the connection manager is not a {@link MultiThreadedHttpConnectionManager}.
+	 */
+	public int getConnectionsInPool(String serviceUrl) {
+		HttpConnectionManager connectionManager = getHttpClient().getHttpConnectionManager();
+		if (!(connectionManager instanceof MultiThreadedHttpConnectionManager)) {
+			return -1;
+		}
+		try {
+			HostConfiguration hostConfiguration = (HostConfiguration) getHttpClient().getHostConfiguration().clone();
+			hostConfiguration.setHost(new URI(serviceUrl, true));
+			return ((MultiThreadedHttpConnectionManager) connectionManager).getConnectionsInPool(hostConfiguration);
+		}
+		catch (IOException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Return the total number of pooled connections,
+	 * or -1 if the connection manager is not a {@link MultiThreadedHttpConnectionManager}.
+	 */
+	public int getConnectionsInPool() {
+		HttpConnectionManager connectionManager = getHttpClient().getHttpConnectionManager();
+		if (!(connectionManager instanceof MultiThreadedHttpConnectionManager)) {
+			return -1;
+		}
+		return ((MultiThreadedHttpConnectionManager) connectionManager).getConnectionsInPool();
+	}
+
+	/**
+	 * Return a summary of the statistics per service URL.
+	 */
+	public String[] getEndpointSummary() {
+		String[] serviceUrls = getServiceUrls();
+		String[] summary = new String[serviceUrls.length];
+		for (int i = 0; i < serviceUrls.length; i++) {
+			EndpointStatistics statistics = findEndpointStatistics(serviceUrls[i]);
+			summary[i] = "serviceUrl=[" + serviceUrls[i] + "]; requests=" + statistics.getRequestCount() +
+					"; failures=" + statistics.getFailureCount() + "; connectionsInPool=" +
+					getConnectionsInPool(serviceUrls[i]) + "; " + statistics.getLatencyHistogram();
+		}
+		return summary;
+	}
+
+	/**
+	 * Reset the statistics for all service URLs.
+	 */
+	public void resetStatistics() {
+		synchronized (this.endpointStatistics) {
+			for (Iterator it = this.endpointStatistics.values().iterator(); it.hasNext();) {
+				((EndpointStatistics) it.next()).reset();
+			}
+		}
+	}
+
+
+	/**
+	 * RequestEntity that serializes the remote invocation straight into the
+	 * request body, compressing it if request compression is active.
+	 * Repeatable, since the invocation can simply be written again.
+	 */
+	private class RemoteInvocationRequestEntity implements RequestEntity {
+
+		private final RemoteInvocation invocation;
+
+		public RemoteInvocationRequestEntity(RemoteInvocation invocation) {
+			this.invocation = invocation;
+		}
+
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		public void writeRequest(OutputStream out) throws IOException {
+			// HttpClient finishes the chunked stream itself.
+			OutputStream os = new NonClosingOutputStream(out);
+			writeRemoteInvocation(this.invocation, (compressRequests ? new GZIPOutputStream(os) : os));
+		}
+
+		public long getContentLength() {
+			return -1;
+		}
+
+		public String getContentType() {
+			return PooledCommonsHttpInvokerRequestExecutor.this.getContentType();
+		}
+	}
+
+
+	/**
+	 * OutputStream decorator that only flushes the target stream on close.
+	 */
+	private static class NonClosingOutputStream extends FilterOutputStream {
+
+		public NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+		}
+
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+
+	/**
+	 * Request statistics for a single service URL.
+	 */
+	private static class EndpointStatistics {
+
+		private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+		private long requestCount;
+
+		private long failureCount;
+
+		public void record(long millis, boolean success) {
+			this.latencyHistogram.record(millis);
+			synchronized (this) {
+				this.requestCount++;
+				if (!success) {
+					this.failureCount++;
+				}
+			}
+		}
+
+		public LatencyHistogram getLatencyHistogram() {
+			return this.latencyHistogram;
+		}
+
+		public synchronized long getRequestCount() {
+			return this.requestCount;
+		}
+
+		public synchronized long getFailureCount() {
+			return this.failureCount;
+		}
+
+		public void reset() {
+			this.latencyHistogram.reset();
+			synchronized (this) {
+				this.requestCount = 0;
+				this.failureCount = 0;
+			}
+		}
+	}
+
+}
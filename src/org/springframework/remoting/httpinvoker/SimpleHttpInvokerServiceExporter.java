@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2008 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,6 +21,7 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
@@ -79,7 +80,8 @@ public class SimpleHttpInvokerServiceExporter extends RemoteInvocationSerializin
 	 * <p>Delegates to
 	 * {@link #readRemoteInvocation(com.sun.net.httpserver.HttpExchange, java.io.InputStream)}
 	 * with the
-	 * {@link com.sun.net.httpserver.HttpExchange#getRequestBody()} request's input stream}.
+	 * {@link com.sun.net.httpserver.HttpExchange#getRequestBody()} request's input stream},
+	 * wrapped in a GZIPInputStream if the request is recognized as GZIP request.
 	 * @param exchange current HTTP request/response
 	 * @return the RemoteInvocation object
 	 * @throws java.io.IOException in case of I/O failure
@@ -88,7 +90,21 @@ public class SimpleHttpInvokerServiceExporter extends RemoteInvocationSerializin
 	protected RemoteInvocation readRemoteInvocation(HttpExchange exchange)
 			throws IOException, ClassNotFoundException {
 
-		return readRemoteInvocation(exchange, exchange.getRequestBody());
+		InputStream is = exchange.getRequestBody();
+		return readRemoteInvocation(exchange, (isGzipRequest(exchange) ? new GZIPInputStream(is) : is));
+	}
+
+	/**
+	 * Determine whether the given request is a GZIP request,
+	 * as sent by a client with request compression enabled.
+	 * <p>Default implementation checks whether the HTTP "Content-Encoding"
+	 * header contains "gzip" (in any casing).
+	 * @param exchange current HTTP request/response
+	 * @see PooledCommonsHttpInvokerRequestExecutor#setCompressRequests
+	 */
+	protected boolean isGzipRequest(HttpExchange exchange) {
+		String encodingHeader = exchange.getRequestHeaders().getFirst("Content-Encoding");
+		return (encodingHeader != null && encodingHeader.toLowerCase().indexOf("gzip") != -1);
 	}
 
 	/**
@@ -37,7 +37,11 @@ import org.springframework.aop.support.AopUtils;
 import org.springframework.remoting.RemoteConnectFailureException;
 import org.springframework.remoting.RemoteInvocationFailureException;
 import org.springframework.remoting.RemoteLookupFailureException;
+import org.springframework.remoting.support.BatchRemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationBasedAccessor;
+import org.springframework.remoting.support.RemoteInvocationBatcher;
+import org.springframework.remoting.support.RemoteInvocationResult;
 import org.springframework.remoting.support.RemoteInvocationUtils;
 
 /**
@@ -394,7 +398,75 @@ public class RmiClientInterceptor extends RemoteInvocationBasedAccessor
 			return "RMI invoker proxy for service URL [" + getServiceUrl() + "]";
 		}
 
-		return invocationHandler.invoke(createRemoteInvocation(methodInvocation));
+		RemoteInvocation invocation = createRemoteInvocation(methodInvocation);
+		if (isBatchingActive()) {
+			return doInvokeBatchable(invocation, getBatchKey(methodInvocation), invocationHandler);
+		}
+		return invocationHandler.invoke(invocation);
+	}
+
+	/**
+	 * Perform the given invocation on the given RMI invocation handler,
+	 * as part of a batch if concurrent invocations with the same batch key
+	 * arrive within the batch window.
+	 * @param invocation the RemoteInvocation to perform
+	 * @param batchKey the batch key for the invocation
+	 * @param invocationHandler the RmiInvocationHandler to apply the invocation to
+	 * @return the invocation result
+	 * @throws RemoteException in case of communication errors
+	 * @throws NoSuchMethodException if the method name could not be resolved
+	 * @throws IllegalAccessException if the method could not be accessed
+	 * @throws InvocationTargetException if the method invocation resulted in an exception
+	 * @see #setBatchWindow
+	 */
+	protected Object doInvokeBatchable(
+			RemoteInvocation invocation, Object batchKey, final RmiInvocationHandler invocationHandler)
+			throws RemoteException, NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+
+		RemoteInvocationResult result = null;
+		try {
+			result = getRemoteInvocationBatcher().execute(invocation, batchKey, new RemoteInvocationBatcher.Sender() {
+				public RemoteInvocationResult send(RemoteInvocation invocationToSend) throws Exception {
+					if (invocationToSend instanceof BatchRemoteInvocation) {
+						return (RemoteInvocationResult) invocationHandler.invoke(invocationToSend);
+					}
+					try {
+						return new RemoteInvocationResult(invocationHandler.invoke(invocationToSend));
+					}
+					catch (RemoteException ex) {
+						throw ex;
+					}
+					catch (Exception ex) {
+						return new RemoteInvocationResult(ex);
+					}
+				}
+			});
+		}
+		catch (RemoteException ex) {
+			throw ex;
+		}
+		catch (RuntimeException ex) {
+			throw ex;
+		}
+		catch (Exception ex) {
+			throw new RemoteException("Batched RMI invocation failed", ex);
+		}
+		Throwable ex = result.getException();
+		if (ex == null) {
+			return result.getValue();
+		}
+		else if (ex instanceof InvocationTargetException) {
+			throw (InvocationTargetException) ex;
+		}
+		else if (ex instanceof NoSuchMethodException) {
+			throw (NoSuchMethodException) ex;
+		}
+		else if (ex instanceof IllegalAccessException) {
+			throw (IllegalAccessException) ex;
+		}
+		else {
+			throw new InvocationTargetException(ex);
+		}
 	}
 
 
@@ -16,7 +16,6 @@
 
 package org.springframework.remoting.rmi;
 
-import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.beans.factory.FactoryBean;
 
@@ -68,7 +67,7 @@ public class RmiProxyFactoryBean extends RmiClientInterceptor implements Factory
 		if (getServiceInterface() == null) {
 			throw new IllegalArgumentException("Property 'serviceInterface' is required");
 		}
-		this.serviceProxy = new ProxyFactory(getServiceInterface(), this).getProxy(getBeanClassLoader());
+		this.serviceProxy = createServiceProxy(this);
 	}
 
 
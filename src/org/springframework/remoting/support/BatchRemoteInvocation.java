@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.support;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.springframework.util.Assert;
+
+/**
+ * Remote invocation that carries a batch of independent invocations
+ * for the same target service, coalesced into a single request by a
+ * {@link RemoteInvocationBatcher}.
+ *
+ * <p>Executed by a {@link RemoteInvocationBasedExporter}, which returns
+ * a {@link BatchRemoteInvocationResult} with one result per invocation,
+ * in the same order.
+ *
+ * <p>This is an SPI class, typically not used directly by applications.
+ *
+ * @since 2.5.7
+ * @see BatchRemoteInvocationResult
+ * @see RemoteInvocationBasedExporter#invokeBatch
+ */
+public class BatchRemoteInvocation extends RemoteInvocation {
+
+	private static final long serialVersionUID = 4382536741253107412L;
+
+
+	private final RemoteInvocation[] invocations;
+
+
+	/**
+	 * Create a new BatchRemoteInvocation for the given invocations.
+	 * @param invocations the invocations to execute
+	 */
+	public BatchRemoteInvocation(RemoteInvocation[] invocations) {
+		Assert.notEmpty(invocations, "At least one invocation is required");
+		this.invocations = invocations;
+	}
+
+
+	/**
+	 * Return the invocations to execute.
+	 */
+	public RemoteInvocation[] getInvocations() {
+		return this.invocations;
+	}
+
+	/**
+	 * Batches cannot be applied to a target object as a whole: They need
+	 * to be executed by a batch-aware {@link RemoteInvocationBasedExporter}.
+	 * @throws NoSuchMethodException always
+	 */
+	public Object invoke(Object targetObject)
+			throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+
+		throw new NoSuchMethodException("BatchRemoteInvocation needs to be executed by a batch-aware exporter");
+	}
+
+
+	public String toString() {
+		return "BatchRemoteInvocation with " + this.invocations.length + " invocations";
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.support;
+
+import org.springframework.util.Assert;
+
+/**
+ * Remote invocation result that holds one {@link RemoteInvocationResult}
+ * per invocation of a {@link BatchRemoteInvocation}, in the same order.
+ *
+ * <p>This is an SPI class, typically not used directly by applications.
+ *
+ * @since 2.5.7
+ * @see BatchRemoteInvocation
+ */
+public class BatchRemoteInvocationResult extends RemoteInvocationResult {
+
+	private static final long serialVersionUID = -3175069841027713046L;
+
+
+	private final RemoteInvocationResult[] results;
+
+
+	/**
+	 * Create a new BatchRemoteInvocationResult for the given results.
+	 * @param results the results of the individual invocations
+	 */
+	public BatchRemoteInvocationResult(RemoteInvocationResult[] results) {
+		super((Object) null);
+		Assert.notNull(results, "Results must not be null");
+		this.results = results;
+	}
+
+
+	/**
+	 * Return the results of the individual invocations.
+	 */
+	public RemoteInvocationResult[] getResults() {
+		return this.results;
+	}
+
+}
@@ -16,6 +16,14 @@
 
 package org.springframework.remoting.support;
 
+import org.aopalliance.intercept.MethodInterceptor;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.framework.adapter.AdvisorAdapterRegistry;
+import org.springframework.aop.framework.adapter.GlobalAdvisorAdapterRegistry;
+import org.springframework.aop.interceptor.ExposeTargetKeyInterceptor;
+import org.springframework.util.ObjectUtils;
+
 /**
  * Abstract base class for classes that access a remote service.
  * Provides a "serviceInterface" bean property.
@@ -38,6 +46,8 @@ public abstract class RemoteAccessor extends RemotingSupport {
 
 	private Class serviceInterface;
 
+	private Object[] interceptors;
+
 
 	/**
 	 * Set the interface of the service to access.
@@ -59,4 +69,55 @@ public abstract class RemoteAccessor extends RemotingSupport {
 		return this.serviceInterface;
 	}
 
+	/**
+	 * Set additional interceptors (or advisors) to be applied before the
+	 * remote invocation, e.g. a {@link RemoteResultCacheInterceptor}.
+	 * <p>You may specify any AOP Alliance MethodInterceptors or other
+	 * Spring AOP Advices, as well as Spring AOP Advisors. Only applied
+	 * when a subclass uses <code>createServiceProxy</code> for creating
+	 * the service proxy.
+	 * <p>The interceptors can find out which service is being accessed
+	 * through {@link ExposeTargetKeyInterceptor#getTargetKey}.
+	 * @see #createServiceProxy
+	 * @see #getServiceTargetKey
+	 */
+	public void setInterceptors(Object[] interceptors) {
+		this.interceptors = interceptors;
+	}
+
+
+	/**
+	 * Return the key that identifies the remote service accessed through
+	 * this accessor, as exposed to the additional interceptors.
+	 * <p>The default implementation returns the identity of this accessor.
+	 * @see ExposeTargetKeyInterceptor
+	 */
+	protected String getServiceTargetKey() {
+		return ObjectUtils.identityToString(this);
+	}
+
+	/**
+	 * Create a proxy for the specified service interface, applying the
+	 * given client interceptor for the actual remote invocation, preceded
+	 * by any specified additional interceptors, which see the
+	 * {@link #getServiceTargetKey() service target key} exposed.
+	 * @param clientInterceptor the interceptor performing the remote invocation
+	 * @return the proxy
+	 * @see #setServiceInterface
+	 * @see #setInterceptors
+	 */
+	protected Object createServiceProxy(MethodInterceptor clientInterceptor) {
+		ProxyFactory proxyFactory = new ProxyFactory();
+		proxyFactory.addInterface(getServiceInterface());
+		if (this.interceptors != null) {
+			proxyFactory.addAdvice(new ExposeTargetKeyInterceptor(getServiceTargetKey()));
+			AdvisorAdapterRegistry adapterRegistry = GlobalAdvisorAdapterRegistry.getInstance();
+			for (int i = 0; i < this.interceptors.length; i++) {
+				proxyFactory.addAdvisor(adapterRegistry.wrap(this.interceptors[i]));
+			}
+		}
+		proxyFactory.addAdvice(clientInterceptor);
+		return proxyFactory.getProxy(getBeanClassLoader());
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2008 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -25,6 +25,12 @@ import org.aopalliance.intercept.MethodInvocation;
  * Provides a "remoteInvocationFactory" property, with a
  * {@link DefaultRemoteInvocationFactory} as default strategy.
  *
+ * <p>Optionally coalesces concurrent invocations into batches, through a
+ * {@link RemoteInvocationBatcher} that is configured via the "batchWindow"
+ * and "maxBatchSize" properties. Concrete accessors route their invocations
+ * through the {@link #getRemoteInvocationBatcher() batcher} if
+ * {@link #isBatchingActive() batching is active}.
+ *
  * @author Juergen Hoeller
  * @since 1.1
  * @see #setRemoteInvocationFactory
@@ -36,6 +42,8 @@ public abstract class RemoteInvocationBasedAccessor extends UrlBasedRemoteAccess
 
 	private RemoteInvocationFactory remoteInvocationFactory = new DefaultRemoteInvocationFactory();
 
+	private final RemoteInvocationBatcher remoteInvocationBatcher = new RemoteInvocationBatcher();
+
 
 	/**
 	 * Set the RemoteInvocationFactory to use for this accessor.
@@ -55,6 +63,62 @@ public abstract class RemoteInvocationBasedAccessor extends UrlBasedRemoteAccess
 		return this.remoteInvocationFactory;
 	}
 
+	/**
+	 * Set the time (in milliseconds) to wait for concurrent invocations
+	 * to join a batch, which then gets sent as a single request.
+	 * Default is 0, sending every invocation on its own.
+	 * <p>Requires a remote exporter that supports batches, such as any
+	 * {@link RemoteInvocationBasedExporter} as of Spring 2.5.7.
+	 * <p><b>NOTE:</b> A batch gets sent by one of its callers, with that
+	 * caller's transport context (e.g. thread-bound credentials) applying to
+	 * all invocations in the batch. Only activate batching if that context is
+	 * the same for all callers, or override {@link #getBatchKey} to batch only
+	 * invocations of callers with the same context.
+	 * @see RemoteInvocationBatcher#setBatchWindow
+	 */
+	public void setBatchWindow(long batchWindow) {
+		this.remoteInvocationBatcher.setBatchWindow(batchWindow);
+	}
+
+	/**
+	 * Set the maximum number of invocations per batch.
+	 * Default is {@link RemoteInvocationBatcher#DEFAULT_MAX_BATCH_SIZE}.
+	 * @see RemoteInvocationBatcher#setMaxBatchSize
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.remoteInvocationBatcher.setMaxBatchSize(maxBatchSize);
+	}
+
+	/**
+	 * Return whether concurrent invocations get coalesced into batches.
+	 * @see #setBatchWindow
+	 */
+	public boolean isBatchingActive() {
+		return this.remoteInvocationBatcher.isBatchingActive();
+	}
+
+	/**
+	 * Return the RemoteInvocationBatcher used by this accessor.
+	 */
+	protected RemoteInvocationBatcher getRemoteInvocationBatcher() {
+		return this.remoteInvocationBatcher;
+	}
+
+	/**
+	 * Determine the batch key for the given AOP method invocation: Only
+	 * invocations with equal batch keys get sent within the same batch.
+	 * <p>The default implementation returns <code>null</code>, letting the
+	 * invocations of all callers share a batch. Can be overridden in subclasses
+	 * to return whatever distinguishes the transport context of the current
+	 * caller, for example the credentials of the current user.
+	 * @param methodInvocation the current AOP method invocation
+	 * @return the batch key (may be <code>null</code>)
+	 * @see RemoteInvocationBatcher#execute(RemoteInvocation, Object, RemoteInvocationBatcher.Sender)
+	 */
+	protected Object getBatchKey(MethodInvocation methodInvocation) {
+		return null;
+	}
+
 	/**
 	 * Create a new RemoteInvocation object for the given AOP method invocation.
 	 * <p>The default implementation delegates to the configured
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2008 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,8 @@ package org.springframework.remoting.support;
 
 import java.lang.reflect.InvocationTargetException;
 
+import org.springframework.core.task.TaskExecutor;
+
 /**
  * Abstract base class for remote service exporters that are based
  * on deserialization of {@link RemoteInvocation} objects.
@@ -25,6 +27,12 @@ import java.lang.reflect.InvocationTargetException;
  * <p>Provides a "remoteInvocationExecutor" property, with a
  * {@link DefaultRemoteInvocationExecutor} as default strategy.
  *
+ * <p>Executes {@link BatchRemoteInvocation BatchRemoteInvocations}, as sent
+ * by accessors with an active {@link RemoteInvocationBatcher}, returning a
+ * {@link BatchRemoteInvocationResult}. The invocations of a batch are executed
+ * sequentially, unless a {@link #setBatchTaskExecutor "batchTaskExecutor"}
+ * has been specified.
+ *
  * @author Juergen Hoeller
  * @since 1.1
  * @see RemoteInvocationExecutor
@@ -34,6 +42,8 @@ public abstract class RemoteInvocationBasedExporter extends RemoteExporter {
 
 	private RemoteInvocationExecutor remoteInvocationExecutor = new DefaultRemoteInvocationExecutor();
 
+	private TaskExecutor batchTaskExecutor;
+
 
 	/**
 	 * Set the RemoteInvocationExecutor to use for this exporter.
@@ -52,6 +62,24 @@ public abstract class RemoteInvocationBasedExporter extends RemoteExporter {
 		return this.remoteInvocationExecutor;
 	}
 
+	/**
+	 * Set the TaskExecutor to execute the invocations of a batch with,
+	 * in parallel to each other. Default is none, executing them sequentially.
+	 * <p>Note that invocations executed in a different thread do not see
+	 * thread-bound context of the thread that received the batch.
+	 * @see BatchRemoteInvocation
+	 */
+	public void setBatchTaskExecutor(TaskExecutor batchTaskExecutor) {
+		this.batchTaskExecutor = batchTaskExecutor;
+	}
+
+	/**
+	 * Return the TaskExecutor to execute the invocations of a batch with, if any.
+	 */
+	public TaskExecutor getBatchTaskExecutor() {
+		return this.batchTaskExecutor;
+	}
+
 
 	/**
 	 * Apply the given remote invocation to the given target object.
@@ -60,6 +88,7 @@ public abstract class RemoteInvocationBasedExporter extends RemoteExporter {
 	 * possibly for applying additional invocation parameters from a
 	 * custom RemoteInvocation subclass. Note that it is preferable to use
 	 * a custom RemoteInvocationExecutor which is a reusable strategy.
+	 * <p>A {@link BatchRemoteInvocation} gets passed to {@link #invokeBatch}.
 	 * @param invocation the remote invocation
 	 * @param targetObject the target object to apply the invocation to
 	 * @return the invocation result
@@ -71,6 +100,9 @@ public abstract class RemoteInvocationBasedExporter extends RemoteExporter {
 	protected Object invoke(RemoteInvocation invocation, Object targetObject)
 			throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
 
+		if (invocation instanceof BatchRemoteInvocation) {
+			return invokeBatch((BatchRemoteInvocation) invocation, targetObject);
+		}
 		if (logger.isTraceEnabled()) {
 			logger.trace("Executing " + invocation);
 		}
@@ -110,6 +142,9 @@ public abstract class RemoteInvocationBasedExporter extends RemoteExporter {
 	 * @see #invoke
 	 */
 	protected RemoteInvocationResult invokeAndCreateResult(RemoteInvocation invocation, Object targetObject) {
+		if (invocation instanceof BatchRemoteInvocation) {
+			return invokeBatch((BatchRemoteInvocation) invocation, targetObject);
+		}
 		try {
 			Object value = invoke(invocation, targetObject);
 			return new RemoteInvocationResult(value);
@@ -119,4 +154,91 @@ public abstract class RemoteInvocationBasedExporter extends RemoteExporter {
 		}
 	}
 
+	/**
+	 * Apply the invocations of the given batch to the given target object,
+	 * via {@link #invokeAndCreateResult} for each invocation. Executes the
+	 * invocations in parallel if a "batchTaskExecutor" has been specified.
+	 * <p>All invocations of a batch run within the server-side context of the
+	 * batch request, such as the credentials it has been authenticated with.
+	 * Accessors only batch invocations of callers with the same batch key.
+	 * @param batch the batch of remote invocations
+	 * @param targetObject the target object to apply the invocations to
+	 * @return the invocation results, in the order of the invocations
+	 * @see #setBatchTaskExecutor
+	 */
+	protected BatchRemoteInvocationResult invokeBatch(BatchRemoteInvocation batch, final Object targetObject) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Executing " + batch);
+		}
+		RemoteInvocation[] invocations = batch.getInvocations();
+		final RemoteInvocationResult[] results = new RemoteInvocationResult[invocations.length];
+		final BatchProgress progress = new BatchProgress(invocations.length);
+		for (int i = 0; i < invocations.length; i++) {
+			final int index = i;
+			final RemoteInvocation invocation = invocations[i];
+			Runnable task = new Runnable() {
+				public void run() {
+					try {
+						results[index] = (invocation instanceof BatchRemoteInvocation ?
+								new RemoteInvocationResult(new IllegalArgumentException("Nested batches are not supported")) :
+								invokeAndCreateResult(invocation, targetObject));
+					}
+					finally {
+						progress.completed();
+					}
+				}
+			};
+			// Execute the last invocation in the current thread, while the others are in progress.
+			if (this.batchTaskExecutor != null && i < invocations.length - 1) {
+				try {
+					this.batchTaskExecutor.execute(task);
+					continue;
+				}
+				catch (RuntimeException ex) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Batch TaskExecutor rejected " + invocation + " - executing it directly", ex);
+					}
+				}
+			}
+			task.run();
+		}
+		progress.await();
+		return new BatchRemoteInvocationResult(results);
+	}
+
+
+	/**
+	 * Tracks the number of outstanding invocations of a batch.
+	 */
+	private static class BatchProgress {
+
+		private int outstanding;
+
+		public BatchProgress(int count) {
+			this.outstanding = count;
+		}
+
+		public synchronized void completed() {
+			this.outstanding--;
+			if (this.outstanding == 0) {
+				notifyAll();
+			}
+		}
+
+		public synchronized void await() {
+			boolean interrupted = false;
+			while (this.outstanding > 0) {
+				try {
+					wait();
+				}
+				catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 }
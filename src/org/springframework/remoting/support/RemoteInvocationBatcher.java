@@ -0,0 +1,314 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.util.Assert;
+
+/**
+ * Coalesces concurrent remote invocations against the same endpoint
+ * into a single {@link BatchRemoteInvocation}, demultiplexing the
+ * returned {@link BatchRemoteInvocationResult} back to the callers.
+ *
+ * <p>The first caller that finds no open batch opens one and waits for
+ * the {@link #setBatchWindow batch window} to elapse (or for the batch to
+ * reach its {@link #setMaxBatchSize maximum size}), while further callers
+ * just add their invocations to the open batch. The first caller then
+ * sends the batch on behalf of all, through its {@link Sender}; the other
+ * callers wait for their individual results. A batch that consists of a
+ * single invocation gets sent as plain invocation.
+ *
+ * <p><b>NOTE:</b> A batch gets sent by a single thread, with that thread's
+ * transport context: for example its thread-bound credentials, as picked up
+ * by a request executor or connection factory, and on the server side the
+ * security context established for the batch request. Invocations therefore
+ * only join a batch opened with an equal <i>batch key</i>, which callers need
+ * to derive from everything that distinguishes their transport context (such
+ * as the current user). A <code>null</code> batch key lets invocations of
+ * all callers share a batch.
+ *
+ * <p>Note that batching adds up to the batch window to the latency of each
+ * invocation, and requires a batch-aware {@link RemoteInvocationBasedExporter}
+ * on the server side.
+ *
+ * @since 2.5.7
+ * @see RemoteInvocationBasedAccessor#setBatchWindow
+ * @see RemoteInvocationBasedExporter#invokeBatch
+ */
+public class RemoteInvocationBatcher {
+
+	/**
+	 * Default maximum number of invocations per batch: 50.
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+
+	private long batchWindow = 0;
+
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	private final Object monitor = new Object();
+
+	/** Map from batch key to the open Batch for that key */
+	private final Map openBatches = new HashMap();
+
+	private long batchCount = 0;
+
+	private long batchedInvocationCount = 0;
+
+
+	/**
+	 * Set the time (in milliseconds) to wait for further invocations to join
+	 * a batch before sending it. Default is 0, sending every invocation
+	 * on its own.
+	 */
+	public void setBatchWindow(long batchWindow) {
+		this.batchWindow = batchWindow;
+	}
+
+	/**
+	 * Return the time (in milliseconds) to wait for further invocations to join a batch.
+	 */
+	public long getBatchWindow() {
+		return this.batchWindow;
+	}
+
+	/**
+	 * Set the maximum number of invocations per batch. A batch that has
+	 * reached this size gets sent without waiting for the batch window
+	 * to elapse. Default is {@link #DEFAULT_MAX_BATCH_SIZE}.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		Assert.isTrue(maxBatchSize > 0, "'maxBatchSize' must be positive");
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Return the maximum number of invocations per batch.
+	 */
+	public int getMaxBatchSize() {
+		return this.maxBatchSize;
+	}
+
+	/**
+	 * Return whether invocations get batched, that is, whether
+	 * a positive batch window has been specified.
+	 */
+	public boolean isBatchingActive() {
+		return (this.batchWindow > 0);
+	}
+
+
+	/**
+	 * Execute the given invocation, as part of a batch if other
+	 * invocations with the same batch key arrive within the batch window.
+	 * @param invocation the RemoteInvocation to execute
+	 * @param batchKey the key that identifies the caller's transport context
+	 * (may be <code>null</code> if it is the same for all callers)
+	 * @param sender the Sender to use if the current thread ends up sending
+	 * the batch (or the plain invocation)
+	 * @return the RemoteInvocationResult for the given invocation
+	 * @throws Exception if thrown by the Sender, for the entire batch
+	 */
+	public RemoteInvocationResult execute(RemoteInvocation invocation, Object batchKey, Sender sender)
+			throws Exception {
+
+		if (!isBatchingActive()) {
+			return sender.send(invocation);
+		}
+		Batch batch = null;
+		int index = 0;
+		boolean sending = false;
+		synchronized (this.monitor) {
+			batch = (Batch) this.openBatches.get(batchKey);
+			if (batch == null) {
+				batch = new Batch(batchKey);
+				this.openBatches.put(batchKey, batch);
+				sending = true;
+			}
+			index = batch.add(invocation);
+			if (batch.size() >= this.maxBatchSize) {
+				// Batch is full: let the sending thread proceed right away.
+				this.openBatches.remove(batchKey);
+				this.monitor.notifyAll();
+			}
+		}
+		if (sending) {
+			awaitBatchWindow(batch);
+			batch.send(sender);
+		}
+		return batch.getResult(index);
+	}
+
+	private void awaitBatchWindow(Batch batch) {
+		synchronized (this.monitor) {
+			long deadline = System.currentTimeMillis() + this.batchWindow;
+			long remaining = this.batchWindow;
+			while (this.openBatches.get(batch.getKey()) == batch && remaining > 0) {
+				try {
+					this.monitor.wait(remaining);
+				}
+				catch (InterruptedException ex) {
+					// Re-interrupt current thread and send the batch right away.
+					Thread.currentThread().interrupt();
+					break;
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+			if (this.openBatches.get(batch.getKey()) == batch) {
+				this.openBatches.remove(batch.getKey());
+			}
+			if (batch.size() > 1) {
+				this.batchCount++;
+				this.batchedInvocationCount += batch.size();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of batches (with more than one invocation) sent so far.
+	 */
+	public long getBatchCount() {
+		synchronized (this.monitor) {
+			return this.batchCount;
+		}
+	}
+
+	/**
+	 * Return the number of invocations that have been sent as part of a batch.
+	 */
+	public long getBatchedInvocationCount() {
+		synchronized (this.monitor) {
+			return this.batchedInvocationCount;
+		}
+	}
+
+
+	/**
+	 * Callback for sending a remote invocation, either a plain
+	 * RemoteInvocation or a BatchRemoteInvocation.
+	 */
+	public interface Sender {
+
+		/**
+		 * Send the given invocation to the target endpoint.
+		 * @param invocation the RemoteInvocation to send
+		 * @return the RemoteInvocationResult (a BatchRemoteInvocationResult
+		 * for a BatchRemoteInvocation)
+		 * @throws Exception in case of communication errors
+		 */
+		RemoteInvocationResult send(RemoteInvocation invocation) throws Exception;
+	}
+
+
+	/**
+	 * A batch of invocations, collecting the results once sent.
+	 * Invocations are only added while holding the batcher's monitor,
+	 * and only before the batch gets sent.
+	 */
+	private static class Batch {
+
+		private final Object key;
+
+		private final List invocations = new ArrayList();
+
+		private RemoteInvocationResult[] results;
+
+		private Exception failure;
+
+		public Batch(Object key) {
+			this.key = key;
+		}
+
+		public Object getKey() {
+			return this.key;
+		}
+
+		public int add(RemoteInvocation invocation) {
+			this.invocations.add(invocation);
+			return this.invocations.size() - 1;
+		}
+
+		public int size() {
+			return this.invocations.size();
+		}
+
+		public void send(Sender sender) {
+			RemoteInvocationResult[] results = null;
+			Exception failure = null;
+			try {
+				if (this.invocations.size() == 1) {
+					results = new RemoteInvocationResult[] {sender.send((RemoteInvocation) this.invocations.get(0))};
+				}
+				else {
+					RemoteInvocation[] invocationArray =
+							(RemoteInvocation[]) this.invocations.toArray(new RemoteInvocation[this.invocations.size()]);
+					RemoteInvocationResult result = sender.send(new BatchRemoteInvocation(invocationArray));
+					if (!(result instanceof BatchRemoteInvocationResult) ||
+							((BatchRemoteInvocationResult) result).getResults().length != invocationArray.length) {
+						throw new RemoteAccessException("Did not receive a matching batch result for " +
+								invocationArray.length + " invocations - does the remote exporter support batches? " +
+								"Received: " + result);
+					}
+					results = ((BatchRemoteInvocationResult) result).getResults();
+				}
+			}
+			catch (Exception ex) {
+				failure = ex;
+			}
+			catch (Error err) {
+				failure = new RemoteAccessException("Sending of batched invocations failed", err);
+				synchronized (this) {
+					this.failure = failure;
+					notifyAll();
+				}
+				throw err;
+			}
+			synchronized (this) {
+				this.results = results;
+				this.failure = failure;
+				notifyAll();
+			}
+		}
+
+		public synchronized RemoteInvocationResult getResult(int index) throws Exception {
+			boolean interrupted = false;
+			// The invocation has been sent already: wait for its result in any case.
+			while (this.results == null && this.failure == null) {
+				try {
+					wait();
+				}
+				catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (this.failure != null) {
+				throw this.failure;
+			}
+			return this.results[index];
+		}
+	}
+
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.interceptor.ExposeTargetKeyInterceptor;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.PatternMatchUtils;
+
+/**
+ * AOP Alliance MethodInterceptor that caches the results of idempotent
+ * remote methods on the client side, keyed by target service, method and
+ * serialized arguments. To be applied through the "interceptors" property
+ * of a remote accessor, for example an HTTP invoker or RMI proxy, where the
+ * target service is identified by the accessor's service URL.
+ *
+ * <p>Only methods selected through the {@link #setMappedNames "mappedNames"}
+ * property (or through an overridden {@link #isCacheable} method) get their
+ * results cached. Results expire after the {@link #setTimeToLive time to live};
+ * once the cache holds the {@link #setMaxEntries maximum number of entries},
+ * the least recently used entry gets evicted. Exceptions are never cached,
+ * and neither are invocations with non-serializable arguments.
+ *
+ * <p>By default, concurrent invocations with identical arguments are
+ * coalesced: only the first one actually performs the remote invocation,
+ * with the others waiting for and sharing its result (or exception).
+ *
+ * <p><b>Note:</b> Cached results are shared between callers, in contrast
+ * to the fresh copy that every remote invocation returns. Callers need to
+ * treat cached results as immutable.
+ *
+ * @since 2.5.7
+ * @see RemoteAccessor#setInterceptors
+ * @see org.springframework.aop.support.NameMatchMethodPointcut
+ */
+public class RemoteResultCacheInterceptor implements MethodInterceptor {
+
+	/**
+	 * Default time to live for cached results: 60000 milliseconds (1 minute).
+	 */
+	public static final long DEFAULT_TIME_TO_LIVE = 60000;
+
+	/**
+	 * Default maximum number of cached results: 1000.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private String[] mappedNames = new String[0];
+
+	private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	private boolean coalesceInvocations = true;
+
+	private final Map cache = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return (size() > maxEntries);
+		}
+	};
+
+	private final Map pendingInvocations = new HashMap();
+
+	private long hitCount = 0;
+
+	private long missCount = 0;
+
+	private long coalescedCount = 0;
+
+
+	/**
+	 * Convenience method when we have only a single method name to match.
+	 * Use either this method or <code>setMappedNames</code>, not both.
+	 * @see #setMappedNames
+	 */
+	public void setMappedName(String mappedName) {
+		setMappedNames(new String[] {mappedName});
+	}
+
+	/**
+	 * Set the names of the methods whose results should be cached.
+	 * Supports "xxx*", "*xxx" and "*xxx*" matches, as well as direct equality.
+	 * <p>Does not handle overloaded methods: all methods with a given name
+	 * will be eligible.
+	 * @see #isMatch
+	 */
+	public void setMappedNames(String[] mappedNames) {
+		this.mappedNames = (mappedNames != null ? mappedNames : new String[0]);
+	}
+
+	/**
+	 * Set the time (in milliseconds) that a cached result remains valid.
+	 * A value of 0 indicates that cached results never expire.
+	 * Default is {@link #DEFAULT_TIME_TO_LIVE}.
+	 */
+	public void setTimeToLive(long timeToLive) {
+		Assert.isTrue(timeToLive >= 0, "'timeToLive' must not be negative");
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Return the time (in milliseconds) that a cached result remains valid.
+	 */
+	public long getTimeToLive() {
+		return this.timeToLive;
+	}
+
+	/**
+	 * Set the maximum number of results to cache. Once the cache is full,
+	 * the least recently used result gets evicted.
+	 * Default is {@link #DEFAULT_MAX_ENTRIES}.
+	 */
+	public void setMaxEntries(int maxEntries) {
+		Assert.isTrue(maxEntries > 0, "'maxEntries' must be positive");
+		synchronized (this.cache) {
+			this.maxEntries = maxEntries;
+		}
+	}
+
+	/**
+	 * Return the maximum number of results to cache.
+	 */
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	/**
+	 * Set whether concurrent invocations with identical arguments should share
+	 * a single remote invocation. Default is "true".
+	 * <p>Switch this to "false" to let every cache miss perform its own
+	 * remote invocation.
+	 */
+	public void setCoalesceInvocations(boolean coalesceInvocations) {
+		this.coalesceInvocations = coalesceInvocations;
+	}
+
+	/**
+	 * Return whether concurrent invocations with identical arguments
+	 * share a single remote invocation.
+	 */
+	public boolean isCoalesceInvocations() {
+		return this.coalesceInvocations;
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Method method = invocation.getMethod();
+		if (!isCacheable(method)) {
+			return invocation.proceed();
+		}
+		CacheKey key = createCacheKey(getTargetKey(invocation), method, invocation.getArguments());
+		if (key == null) {
+			return invocation.proceed();
+		}
+
+		PendingInvocation pending = null;
+		synchronized (this.cache) {
+			CachedResult cachedResult = (CachedResult) this.cache.get(key);
+			if (cachedResult != null) {
+				if (!cachedResult.isExpired()) {
+					this.hitCount++;
+					return cachedResult.getValue();
+				}
+				this.cache.remove(key);
+			}
+			this.missCount++;
+			if (this.coalesceInvocations) {
+				pending = (PendingInvocation) this.pendingInvocations.get(key);
+				if (pending != null) {
+					this.coalescedCount++;
+				}
+				else {
+					this.pendingInvocations.put(key, new PendingInvocation());
+				}
+			}
+		}
+		if (pending != null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Waiting for pending remote invocation of " + ClassUtils.getQualifiedMethodName(method));
+			}
+			return pending.getResult(method);
+		}
+
+		try {
+			Object result = invocation.proceed();
+			long timeToLive = getTimeToLive(method);
+			synchronized (this.cache) {
+				this.cache.put(key, new CachedResult(result, timeToLive));
+				pending = (PendingInvocation) this.pendingInvocations.remove(key);
+			}
+			if (pending != null) {
+				pending.setResult(result);
+			}
+			return result;
+		}
+		catch (Throwable ex) {
+			synchronized (this.cache) {
+				pending = (PendingInvocation) this.pendingInvocations.remove(key);
+			}
+			if (pending != null) {
+				pending.setException(ex);
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * Determine whether the results of the given method should be cached.
+	 * <p>The default implementation checks the method name against the
+	 * specified mapped names. Can be overridden in subclasses, e.g. for
+	 * selecting methods based on annotations.
+	 * @param method the service interface method
+	 * @return whether to cache the method's results
+	 * @see #setMappedNames
+	 */
+	protected boolean isCacheable(Method method) {
+		for (int i = 0; i < this.mappedNames.length; i++) {
+			if (isMatch(method.getName(), this.mappedNames[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return if the given method name matches the mapped name.
+	 * <p>The default implementation checks for "xxx*", "*xxx" and "*xxx*" matches,
+	 * as well as direct equality. Can be overridden in subclasses.
+	 * @param methodName the method name of the class
+	 * @param mappedName the name in the descriptor
+	 * @return if the names match
+	 * @see org.springframework.util.PatternMatchUtils#simpleMatch(String, String)
+	 */
+	protected boolean isMatch(String methodName, String mappedName) {
+		return PatternMatchUtils.simpleMatch(mappedName, methodName);
+	}
+
+	/**
+	 * Determine the time to live (in milliseconds) for results of the given method.
+	 * <p>The default implementation returns the "timeToLive" value for all methods.
+	 * Can be overridden in subclasses.
+	 * @param method the service interface method
+	 * @return the time to live, or 0 if the result should never expire
+	 * @see #setTimeToLive
+	 */
+	protected long getTimeToLive(Method method) {
+		return this.timeToLive;
+	}
+
+	/**
+	 * Determine the key of the target service that the given invocation goes to.
+	 * Only invocations with the same target key share cached results.
+	 * <p>The default implementation returns the target key exposed by a remote
+	 * accessor (its service URL, if URL-based), or otherwise the target object or
+	 * the proxy itself, with invocations on different objects never sharing results.
+	 * @param invocation the current invocation
+	 * @return the target key (a String to compare by equality, or any other
+	 * object to compare by identity)
+	 * @see org.springframework.remoting.support.RemoteAccessor#getServiceTargetKey
+	 */
+	protected Object getTargetKey(MethodInvocation invocation) {
+		String exposedTargetKey = ExposeTargetKeyInterceptor.getTargetKey(invocation);
+		if (exposedTargetKey != null) {
+			return exposedTargetKey;
+		}
+		if (invocation.getThis() != null) {
+			return invocation.getThis();
+		}
+		if (invocation instanceof ProxyMethodInvocation) {
+			return ((ProxyMethodInvocation) invocation).getProxy();
+		}
+		return null;
+	}
+
+	/**
+	 * Create the cache key for the given target, method and arguments.
+	 * @param targetKey the key of the target service
+	 * @param method the service interface method
+	 * @param args the invocation arguments
+	 * @return the cache key, or <code>null</code> if the arguments cannot be
+	 * serialized (in which case the invocation will not be cached)
+	 * @see #getTargetKey
+	 */
+	protected CacheKey createCacheKey(Object targetKey, Method method, Object[] args) {
+		if (ObjectUtils.isEmpty(args)) {
+			return new CacheKey(targetKey, method, new byte[0]);
+		}
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+			oos.writeObject(args);
+			oos.flush();
+			return new CacheKey(targetKey, method, baos.toByteArray());
+		}
+		catch (IOException ex) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Not caching result of " + ClassUtils.getQualifiedMethodName(method) +
+						" because of non-serializable arguments: " + ex);
+			}
+			return null;
+		}
+	}
+
+
+	/**
+	 * Remove all cached results.
+	 */
+	public void clear() {
+		synchronized (this.cache) {
+			this.cache.clear();
+		}
+	}
+
+	/**
+	 * Return the current number of cached results (including expired ones
+	 * that have not been evicted yet).
+	 */
+	public int getCacheSize() {
+		synchronized (this.cache) {
+			return this.cache.size();
+		}
+	}
+
+	/**
+	 * Return the number of invocations answered from the cache.
+	 */
+	public long getHitCount() {
+		synchronized (this.cache) {
+			return this.hitCount;
+		}
+	}
+
+	/**
+	 * Return the number of cacheable invocations not found in the cache
+	 * (including coalesced invocations).
+	 */
+	public long getMissCount() {
+		synchronized (this.cache) {
+			return this.missCount;
+		}
+	}
+
+	/**
+	 * Return the number of invocations that shared a pending remote invocation.
+	 * @see #setCoalesceInvocations
+	 */
+	public long getCoalescedCount() {
+		synchronized (this.cache) {
+			return this.coalescedCount;
+		}
+	}
+
+
+	/**
+	 * Cache key consisting of target key, method and serialized arguments.
+	 * A String target key gets compared by equality, any other by identity.
+	 */
+	protected static class CacheKey {
+
+		private final Object targetKey;
+
+		private final Method method;
+
+		private final byte[] serializedArgs;
+
+		private final int hashCode;
+
+		public CacheKey(Object targetKey, Method method, byte[] serializedArgs) {
+			this.targetKey = targetKey;
+			this.method = method;
+			this.serializedArgs = serializedArgs;
+			int targetHashCode = (targetKey instanceof String ? targetKey.hashCode() : System.identityHashCode(targetKey));
+			this.hashCode = (targetHashCode * 29 + method.hashCode()) * 29 + ObjectUtils.nullSafeHashCode(serializedArgs);
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey otherKey = (CacheKey) other;
+			boolean sameTarget = (this.targetKey instanceof String ?
+					this.targetKey.equals(otherKey.targetKey) : this.targetKey == otherKey.targetKey);
+			return (sameTarget && this.method.equals(otherKey.method) &&
+					Arrays.equals(this.serializedArgs, otherKey.serializedArgs));
+		}
+
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		public String toString() {
+			return "CacheKey for method [" + this.method + "] on target [" +
+					(this.targetKey instanceof String ? this.targetKey : ObjectUtils.identityToString(this.targetKey)) + "]";
+		}
+	}
+
+
+	/**
+	 * A cached result along with its expiration time.
+	 */
+	private static class CachedResult {
+
+		private final Object value;
+
+		private final long expirationTime;
+
+		public CachedResult(Object value, long timeToLive) {
+			this.value = value;
+			this.expirationTime = (timeToLive > 0 ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE);
+		}
+
+		public Object getValue() {
+			return this.value;
+		}
+
+		public boolean isExpired() {
+			return (System.currentTimeMillis() >= this.expirationTime);
+		}
+	}
+
+
+	/**
+	 * A remote invocation in progress, which further callers
+	 * with identical arguments can wait for.
+	 */
+	private static class PendingInvocation {
+
+		private boolean done = false;
+
+		private Object result;
+
+		private Throwable exception;
+
+		public synchronized void setResult(Object result) {
+			this.result = result;
+			this.done = true;
+			notifyAll();
+		}
+
+		public synchronized void setException(Throwable exception) {
+			this.exception = exception;
+			this.done = true;
+			notifyAll();
+		}
+
+		public synchronized Object getResult(Method method) throws Throwable {
+			while (!this.done) {
+				try {
+					wait();
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new RemoteAccessException("Interrupted while waiting for pending remote invocation of " +
+							ClassUtils.getQualifiedMethodName(method), ex);
+				}
+			}
+			if (this.exception != null) {
+				throw this.exception;
+			}
+			return this.result;
+		}
+	}
+
+}
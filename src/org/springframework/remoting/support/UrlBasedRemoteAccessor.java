@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2007 the original author or authors.
+ * Copyright 2002-2008 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -45,6 +45,13 @@ public abstract class UrlBasedRemoteAccessor extends RemoteAccessor implements I
 		return this.serviceUrl;
 	}
 
+	/**
+	 * Returns the service URL, if specified.
+	 */
+	protected String getServiceTargetKey() {
+		return (this.serviceUrl != null ? this.serviceUrl : super.getServiceTargetKey());
+	}
+
 
 	public void afterPropertiesSet() {
 		if (getServiceUrl() == null) {
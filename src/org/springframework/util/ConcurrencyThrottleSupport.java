@@ -19,10 +19,14 @@ package org.springframework.util;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.core.JdkVersion;
+
 /**
  * Support class for throttling concurrent access to a specific resource.
  *
@@ -35,6 +39,12 @@ import org.apache.commons.logging.LogFactory;
  * ("unbounded concurrency"). Subclasses may override this default;
  * check the javadoc of the concrete class that you're using.
  *
+ * <p>On JDK 1.5 or higher, the throttle is based on a
+ * {@link java.util.concurrent.Semaphore}, entering without any locking
+ * as long as the concurrency limit has not been reached, and optionally
+ * granting access in arrival order (see {@link #setFair "fair"}).
+ * On JDK 1.4, it falls back to a synchronized monitor.
+ *
  * @author Juergen Hoeller
  * @since 1.2.5
  * @see #setConcurrencyLimit
@@ -59,11 +69,13 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 	/** Transient to optimize serialization */
 	protected transient Log logger = LogFactory.getLog(getClass());
 
-	private transient Object monitor = new Object();
-
 	private int concurrencyLimit = UNBOUNDED_CONCURRENCY;
 
-	private int concurrencyCount = 0;
+	private boolean fair = false;
+
+	private long accessTimeout = -1;
+
+	private transient Throttle throttle = createThrottle(false);
 
 
 	/**
@@ -76,6 +88,7 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 	 * of -1 effectively turns off concurrency counting completely.
 	 */
 	public void setConcurrencyLimit(int concurrencyLimit) {
+		this.throttle.setLimit(concurrencyLimit);
 		this.concurrencyLimit = concurrencyLimit;
 	}
 
@@ -86,6 +99,47 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 		return this.concurrencyLimit;
 	}
 
+	/**
+	 * Set whether waiting access attempts should be granted access in
+	 * arrival order once the concurrency limit has been reached.
+	 * <p>Default is "false", letting an arriving access attempt enter
+	 * immediately whenever a slot is free, which gives higher throughput.
+	 * Switch this flag to "true" to avoid starvation of waiting threads.
+	 * Only applies on JDK 1.5 or higher.
+	 * <p>NOTE: This is a config time setting; do not change it
+	 * while access attempts are in progress.
+	 */
+	public void setFair(boolean fair) {
+		this.fair = fair;
+		this.throttle = createThrottle(fair);
+		this.throttle.setLimit(this.concurrencyLimit);
+	}
+
+	/**
+	 * Return whether waiting access attempts get granted access in arrival order.
+	 */
+	public boolean isFair() {
+		return this.fair;
+	}
+
+	/**
+	 * Set the maximum time (in milliseconds) that {@link #beforeAccess()}
+	 * waits for the concurrency count to drop below the limit, throwing an
+	 * IllegalStateException once that time has elapsed. Default is -1,
+	 * waiting indefinitely.
+	 * @see #tryBeforeAccess(long)
+	 */
+	public void setAccessTimeout(long accessTimeout) {
+		this.accessTimeout = accessTimeout;
+	}
+
+	/**
+	 * Return the maximum time (in milliseconds) to wait for access.
+	 */
+	public long getAccessTimeout() {
+		return this.accessTimeout;
+	}
+
 	/**
 	 * Return whether this throttle is currently active.
 	 * @return <code>true</code> if the concurrency limit for this instance is active
@@ -95,45 +149,80 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 		return (this.concurrencyLimit > 0);
 	}
 
+	/**
+	 * Return the number of access attempts currently in progress,
+	 * or 0 if the throttle is not active.
+	 */
+	public int getConcurrencyCount() {
+		return (isThrottleActive() ? this.throttle.getCount() : 0);
+	}
+
 
 	/**
 	 * To be invoked before the main execution logic of concrete subclasses.
-	 * <p>This implementation applies the concurrency throttle.
-	 * @see #afterAccess() 
+	 * <p>This implementation applies the concurrency throttle, waiting
+	 * for access according to the "accessTimeout" setting.
+	 * @throws IllegalStateException if no access was granted within the access timeout
+	 * @see #afterAccess()
+	 * @see #setAccessTimeout
 	 */
 	protected void beforeAccess() {
+		if (!tryBeforeAccess(this.accessTimeout)) {
+			throw new IllegalStateException("Timed out after " + this.accessTimeout +
+					" ms waiting for invocation access - concurrency limit " + this.concurrencyLimit + " reached");
+		}
+	}
+
+	/**
+	 * To be invoked before the main execution logic of concrete subclasses,
+	 * waiting for access up to the given timeout.
+	 * <p>This implementation applies the concurrency throttle.
+	 * If this method returns <code>true</code>, {@link #afterAccess()}
+	 * needs to be invoked after the main execution logic.
+	 * @param timeout the maximum time to wait (in milliseconds),
+	 * or a negative value to wait indefinitely
+	 * @return <code>true</code> if access was granted; <code>false</code>
+	 * if the concurrency limit was still reached after the given timeout
+	 * @see #afterAccess()
+	 */
+	protected boolean tryBeforeAccess(long timeout) {
 		if (this.concurrencyLimit == NO_CONCURRENCY) {
 			throw new IllegalStateException(
 					"Currently no invocations allowed - concurrency limit set to NO_CONCURRENCY");
 		}
 		if (this.concurrencyLimit > 0) {
 			boolean debug = logger.isDebugEnabled();
-			synchronized (this.monitor) {
-				boolean interrupted = false;
-				while (this.concurrencyCount >= this.concurrencyLimit) {
-					if (interrupted) {
-						throw new IllegalStateException("Thread was interrupted while waiting for invocation access, " +
-								"but concurrency limit still does not allow for entering");
-					}
-					if (debug) {
-						logger.debug("Concurrency count " + this.concurrencyCount +
-								" has reached limit " + this.concurrencyLimit + " - blocking");
-					}
-					try {
-						this.monitor.wait();
-					}
-					catch (InterruptedException ex) {
-						// Re-interrupt current thread, to allow other threads to react.
-						Thread.currentThread().interrupt();
-						interrupted = true;
-					}
-				}
+			if (this.throttle.tryEnter()) {
 				if (debug) {
-					logger.debug("Entering throttle at concurrency count " + this.concurrencyCount);
+					logger.debug("Entering throttle at concurrency count " + (this.throttle.getCount() - 1));
+				}
+				return true;
+			}
+			if (timeout == 0) {
+				return false;
+			}
+			if (debug) {
+				logger.debug("Concurrency count " + this.throttle.getCount() +
+						" has reached limit " + this.concurrencyLimit + " - blocking");
+			}
+			try {
+				if (!this.throttle.enter(timeout)) {
+					return false;
 				}
-				this.concurrencyCount++;
+			}
+			catch (InterruptedException ex) {
+				// Re-interrupt current thread, to allow other threads to react.
+				Thread.currentThread().interrupt();
+				if (!this.throttle.tryEnter()) {
+					throw new IllegalStateException("Thread was interrupted while waiting for invocation access, " +
+							"but concurrency limit still does not allow for entering");
+				}
+			}
+			if (debug) {
+				logger.debug("Entering throttle at concurrency count " + (this.throttle.getCount() - 1));
 			}
 		}
+		return true;
 	}
 
 	/**
@@ -142,17 +231,20 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 	 */
 	protected void afterAccess() {
 		if (this.concurrencyLimit >= 0) {
-			synchronized (this.monitor) {
-				this.concurrencyCount--;
-				if (logger.isDebugEnabled()) {
-					logger.debug("Returning from throttle at concurrency count " + this.concurrencyCount);
-				}
-				this.monitor.notify();
+			this.throttle.exit();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Returning from throttle at concurrency count " + this.throttle.getCount());
 			}
 		}
 	}
 
 
+	private static Throttle createThrottle(boolean fair) {
+		return (JdkVersion.isAtLeastJava15() ?
+				JdkConcurrentFactory.createThrottle(fair) : new MonitorThrottle());
+	}
+
+
 	//---------------------------------------------------------------------
 	// Serialization support
 	//---------------------------------------------------------------------
@@ -163,7 +255,133 @@ public abstract class ConcurrencyThrottleSupport implements Serializable {
 
 		// Initialize transient fields.
 		this.logger = LogFactory.getLog(getClass());
-		this.monitor = new Object();
+		this.throttle = createThrottle(this.fair);
+		this.throttle.setLimit(this.concurrencyLimit);
+	}
+
+
+	/**
+	 * Internal strategy for counting concurrent access attempts.
+	 */
+	private interface Throttle {
+
+		void setLimit(int limit);
+
+		boolean tryEnter();
+
+		boolean enter(long timeout) throws InterruptedException;
+
+		void exit();
+
+		int getCount();
+	}
+
+
+	/**
+	 * Actual creation of a JDK 1.5+ Semaphore-based Throttle.
+	 * In separate inner class to avoid runtime dependency on JDK 1.5.
+	 */
+	private static abstract class JdkConcurrentFactory {
+
+		private static Throttle createThrottle(boolean fair) {
+			return new SemaphoreThrottle(fair);
+		}
+	}
+
+
+	/**
+	 * Throttle based on a JDK 1.5 Semaphore, with one permit per free slot.
+	 */
+	private static class SemaphoreThrottle extends Semaphore implements Throttle {
+
+		private volatile int limit;
+
+		public SemaphoreThrottle(boolean fair) {
+			super(0, fair);
+		}
+
+		public synchronized void setLimit(int limit) {
+			int delta = Math.max(limit, 0) - Math.max(this.limit, 0);
+			if (delta > 0) {
+				release(delta);
+			}
+			else if (delta < 0) {
+				reducePermits(-delta);
+			}
+			this.limit = limit;
+		}
+
+		public boolean tryEnter() {
+			// a fair semaphore's untimed tryAcquire would barge ahead of waiting threads
+			return (isFair() ? !hasQueuedThreads() && tryAcquire() : tryAcquire());
+		}
+
+		public boolean enter(long timeout) throws InterruptedException {
+			if (timeout < 0) {
+				acquire();
+				return true;
+			}
+			return tryAcquire(timeout, TimeUnit.MILLISECONDS);
+		}
+
+		public void exit() {
+			release();
+		}
+
+		public int getCount() {
+			return Math.max(this.limit, 0) - availablePermits();
+		}
+	}
+
+
+	/**
+	 * Throttle based on a synchronized monitor, for use on JDK 1.4.
+	 */
+	private static class MonitorThrottle implements Throttle {
+
+		private int limit;
+
+		private int count;
+
+		public synchronized void setLimit(int limit) {
+			this.limit = limit;
+			notifyAll();
+		}
+
+		public synchronized boolean tryEnter() {
+			if (this.count >= this.limit) {
+				return false;
+			}
+			this.count++;
+			return true;
+		}
+
+		public synchronized boolean enter(long timeout) throws InterruptedException {
+			long deadline = (timeout >= 0 ? System.currentTimeMillis() + timeout : 0);
+			while (this.count >= this.limit) {
+				if (timeout < 0) {
+					wait();
+				}
+				else {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						return false;
+					}
+					wait(remaining);
+				}
+			}
+			this.count++;
+			return true;
+		}
+
+		public synchronized void exit() {
+			this.count--;
+			notify();
+		}
+
+		public synchronized int getCount() {
+			return this.count;
+		}
 	}
 
 }
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.core.JdkVersion;
+
+/**
+ * Simple thread-safe histogram for recording latencies in milliseconds,
+ * counting recorded values in a fixed set of buckets with ascending
+ * upper bounds, plus an overflow bucket for all values beyond the
+ * highest bound.
+ *
+ * <p>Recording a value takes constant time and space, which makes this
+ * class suitable for tracking latency distributions in long-running
+ * processes. On JDK 1.5+, values are recorded through atomic counters,
+ * without any locking. Percentiles are approximated by the upper bound
+ * of the bucket that the requested percentile falls into. Histograms are
+ * serializable, e.g. for exposing them as attributes of a JMX MBean.
+ *
+ * @since 2.5.7
+ * @see StopWatch
+ */
+public class LatencyHistogram implements Serializable {
+
+	private static final long NANOS_PER_MILLI = 1000000;
+
+	private static final long[] DEFAULT_BUCKET_BOUNDS =
+			new long[] {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+
+	private final long[] bucketBounds;
+
+	private final HistogramData data;
+
+
+	/**
+	 * Create a new LatencyHistogram with default bucket bounds,
+	 * ranging from 1 millisecond to 10 seconds.
+	 */
+	public LatencyHistogram() {
+		this(DEFAULT_BUCKET_BOUNDS);
+	}
+
+	/**
+	 * Create a new LatencyHistogram with the given bucket bounds.
+	 * @param bucketBounds the inclusive upper bounds of the buckets
+	 * (in milliseconds), in ascending order
+	 */
+	public LatencyHistogram(long[] bucketBounds) {
+		Assert.isTrue(bucketBounds != null && bucketBounds.length > 0, "At least one bucket bound is required");
+		for (int i = 1; i < bucketBounds.length; i++) {
+			Assert.isTrue(bucketBounds[i] > bucketBounds[i - 1], "Bucket bounds need to be in ascending order");
+		}
+		this.bucketBounds = (long[]) bucketBounds.clone();
+		this.data = (JdkVersion.isAtLeastJava15() ?
+				JdkConcurrentFactory.createHistogramData(bucketBounds.length + 1) :
+				new SynchronizedHistogramData(bucketBounds.length + 1));
+	}
+
+
+	/**
+	 * Record the given latency.
+	 * @param millis the latency in milliseconds
+	 */
+	public void record(long millis) {
+		recordNanos(millis * NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Record the given latency at nanosecond precision, e.g. as measured
+	 * through <code>System.nanoTime()</code>, so that sub-millisecond
+	 * latencies still contribute to the mean.
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void recordNanos(long nanos) {
+		int index = 0;
+		while (index < this.bucketBounds.length && nanos > this.bucketBounds[index] * NANOS_PER_MILLI) {
+			index++;
+		}
+		this.data.record(index, nanos);
+	}
+
+	/**
+	 * Clear all recorded values.
+	 */
+	public void reset() {
+		this.data.reset();
+	}
+
+
+	/**
+	 * Return the inclusive upper bounds of the buckets (in milliseconds).
+	 */
+	public long[] getBucketBounds() {
+		return (long[]) this.bucketBounds.clone();
+	}
+
+	/**
+	 * Return the number of values recorded per bucket, with the last element
+	 * representing the overflow bucket beyond the highest bound.
+	 */
+	public long[] getBucketCounts() {
+		return this.data.getBucketCounts();
+	}
+
+	/**
+	 * Return the number of values recorded.
+	 */
+	public long getCount() {
+		return this.data.getCount();
+	}
+
+	/**
+	 * Return the average of all values recorded (in milliseconds).
+	 */
+	public double getMeanMillis() {
+		long count = this.data.getCount();
+		return (count > 0 ? (double) this.data.getTotal() / count / NANOS_PER_MILLI : 0.0);
+	}
+
+	/**
+	 * Return the highest value recorded (in milliseconds).
+	 */
+	public long getMaxMillis() {
+		return this.data.getMax() / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Return an approximation of the given percentile: the upper bound of
+	 * the bucket that the percentile falls into, or the highest value recorded
+	 * if it falls into the overflow bucket.
+	 * @param percentile the percentile (between 0 and 100)
+	 * @return the approximated percentile (in milliseconds), or 0 if no values
+	 * have been recorded yet
+	 */
+	public long getPercentileMillis(double percentile) {
+		Assert.isTrue(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+		long[] bucketCounts = this.data.getBucketCounts();
+		long count = 0;
+		for (int i = 0; i < bucketCounts.length; i++) {
+			count += bucketCounts[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long max = getMaxMillis();
+		long threshold = (long) Math.ceil(count * percentile / 100);
+		long cumulative = 0;
+		for (int i = 0; i < this.bucketBounds.length; i++) {
+			cumulative += bucketCounts[i];
+			if (cumulative >= threshold) {
+				return Math.min(this.bucketBounds[i], max);
+			}
+		}
+		return max;
+	}
+
+
+	/**
+	 * Return a human-readable summary of the values recorded.
+	 */
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("count=[").append(getCount()).append("]; ");
+		sb.append("mean=[").append(Math.round(getMeanMillis())).append("ms]; ");
+		sb.append("p50=[").append(getPercentileMillis(50)).append("ms]; ");
+		sb.append("p99=[").append(getPercentileMillis(99)).append("ms]; ");
+		sb.append("max=[").append(getMaxMillis()).append("ms]");
+		return sb.toString();
+	}
+
+
+	/**
+	 * Internal strategy for holding the recorded values (in nanoseconds).
+	 */
+	private interface HistogramData extends Serializable {
+
+		void record(int bucketIndex, long nanos);
+
+		long[] getBucketCounts();
+
+		long getCount();
+
+		long getTotal();
+
+		long getMax();
+
+		void reset();
+	}
+
+
+	/**
+	 * Actual creation of JDK 1.5+ concurrent HistogramData.
+	 * In separate inner class to avoid runtime dependency on JDK 1.5.
+	 */
+	private static abstract class JdkConcurrentFactory {
+
+		private static HistogramData createHistogramData(int bucketCount) {
+			return new JdkConcurrentHistogramData(bucketCount);
+		}
+	}
+
+
+	/**
+	 * HistogramData based on JDK 1.5 atomic counters.
+	 */
+	private static class JdkConcurrentHistogramData implements HistogramData {
+
+		private final AtomicLongArray bucketCounts;
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong total = new AtomicLong();
+
+		private final AtomicLong max = new AtomicLong();
+
+		public JdkConcurrentHistogramData(int bucketCount) {
+			this.bucketCounts = new AtomicLongArray(bucketCount);
+		}
+
+		public void record(int bucketIndex, long nanos) {
+			this.bucketCounts.incrementAndGet(bucketIndex);
+			this.count.incrementAndGet();
+			this.total.addAndGet(nanos);
+			long currentMax = this.max.get();
+			while (nanos > currentMax && !this.max.compareAndSet(currentMax, nanos)) {
+				currentMax = this.max.get();
+			}
+		}
+
+		public long[] getBucketCounts() {
+			long[] result = new long[this.bucketCounts.length()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = this.bucketCounts.get(i);
+			}
+			return result;
+		}
+
+		public long getCount() {
+			return this.count.get();
+		}
+
+		public long getTotal() {
+			return this.total.get();
+		}
+
+		public long getMax() {
+			return this.max.get();
+		}
+
+		public void reset() {
+			for (int i = 0; i < this.bucketCounts.length(); i++) {
+				this.bucketCounts.set(i, 0);
+			}
+			this.count.set(0);
+			this.total.set(0);
+			this.max.set(0);
+		}
+	}
+
+
+	/**
+	 * HistogramData based on synchronized access, for use on JDK 1.4.
+	 */
+	private static class SynchronizedHistogramData implements HistogramData {
+
+		private final long[] bucketCounts;
+
+		private long count;
+
+		private long total;
+
+		private long max;
+
+		public SynchronizedHistogramData(int bucketCount) {
+			this.bucketCounts = new long[bucketCount];
+		}
+
+		public synchronized void record(int bucketIndex, long nanos) {
+			this.bucketCounts[bucketIndex]++;
+			this.count++;
+			this.total += nanos;
+			if (nanos > this.max) {
+				this.max = nanos;
+			}
+		}
+
+		public synchronized long[] getBucketCounts() {
+			return (long[]) this.bucketCounts.clone();
+		}
+
+		public synchronized long getCount() {
+			return this.count;
+		}
+
+		public synchronized long getTotal() {
+			return this.total;
+		}
+
+		public synchronized long getMax() {
+			return this.max;
+		}
+
+		public synchronized void reset() {
+			for (int i = 0; i < this.bucketCounts.length; i++) {
+				this.bucketCounts[i] = 0;
+			}
+			this.count = 0;
+			this.total = 0;
+			this.max = 0;
+		}
+	}
+
+}
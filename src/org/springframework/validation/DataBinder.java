@@ -17,8 +17,12 @@
 package org.springframework.validation;
 
 import java.beans.PropertyEditor;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -130,6 +134,10 @@ public class DataBinder implements PropertyEditorRegistry, TypeConverter {
 
 	private String[] requiredFields;
 
+	private FieldMatcher allowedFieldMatcher;
+
+	private FieldMatcher disallowedFieldMatcher;
+
 	private BindingErrorProcessor bindingErrorProcessor = new DefaultBindingErrorProcessor();
 
 
@@ -497,12 +505,22 @@ public class DataBinder implements PropertyEditorRegistry, TypeConverter {
 	 * @see #isAllowed(String)
 	 */
 	protected void checkAllowedFields(MutablePropertyValues mpvs) {
-		PropertyValue[] pvs = mpvs.getPropertyValues();
-		for (int i = 0; i < pvs.length; i++) {
-			PropertyValue pv = pvs[i];
+		List pvList = mpvs.getPropertyValueList();
+		List allowedPvs = null;
+		for (int i = 0; i < pvList.size(); i++) {
+			PropertyValue pv = (PropertyValue) pvList.get(i);
 			String field = PropertyAccessorUtils.canonicalPropertyName(pv.getName());
-			if (!isAllowed(field)) {
-				mpvs.removePropertyValue(pv);
+			if (isAllowed(field)) {
+				if (allowedPvs != null) {
+					allowedPvs.add(pv);
+				}
+			}
+			else {
+				// Collect the remaining values rather than removing each
+				// disallowed value from the list individually.
+				if (allowedPvs == null) {
+					allowedPvs = new ArrayList(pvList.subList(0, i));
+				}
 				getBindingResult().recordSuppressedField(field);
 				if (logger.isDebugEnabled()) {
 					logger.debug("Field [" + field + "] has been removed from PropertyValues " +
@@ -510,6 +528,10 @@ public class DataBinder implements PropertyEditorRegistry, TypeConverter {
 				}
 			}
 		}
+		if (allowedPvs != null) {
+			pvList.clear();
+			pvList.addAll(allowedPvs);
+		}
 	}
 
 	/**
@@ -519,6 +541,8 @@ public class DataBinder implements PropertyEditorRegistry, TypeConverter {
 	 * as well as direct equality, in the specified lists of allowed fields and
 	 * disallowed fields. A field matching a disallowed pattern will not be accepted
 	 * even if it also happens to match a pattern in the allowed list.
+	 * The patterns get precompiled once per configured array, so that plain
+	 * field names are resolved through a hash lookup even for wide forms.
 	 * <p>Can be overridden in subclasses.
 	 * @param field the field to check
 	 * @return if the field is allowed
@@ -529,8 +553,14 @@ public class DataBinder implements PropertyEditorRegistry, TypeConverter {
 	protected boolean isAllowed(String field) {
 		String[] allowed = getAllowedFields();
 		String[] disallowed = getDisallowedFields();
-		return ((ObjectUtils.isEmpty(allowed) || PatternMatchUtils.simpleMatch(allowed, field)) &&
-				(ObjectUtils.isEmpty(disallowed) || !PatternMatchUtils.simpleMatch(disallowed, field)));
+		if (this.allowedFieldMatcher == null || this.allowedFieldMatcher.patterns != allowed) {
+			this.allowedFieldMatcher = new FieldMatcher(allowed);
+		}
+		if (this.disallowedFieldMatcher == null || this.disallowedFieldMatcher.patterns != disallowed) {
+			this.disallowedFieldMatcher = new FieldMatcher(disallowed);
+		}
+		return ((ObjectUtils.isEmpty(allowed) || this.allowedFieldMatcher.matches(field)) &&
+				(ObjectUtils.isEmpty(disallowed) || !this.disallowedFieldMatcher.matches(field)));
 	}
 
 	/**
@@ -610,4 +640,88 @@ public class DataBinder implements PropertyEditorRegistry, TypeConverter {
 		return getBindingResult().getModel();
 	}
 
+
+	/**
+	 * Precompiled form of a set of allowed or disallowed field patterns,
+	 * as supported by {@link PatternMatchUtils#simpleMatch(String, String)}.
+	 * Resolves plain field names through a hash lookup and checks simple
+	 * prefix and suffix patterns without repeated pattern parsing.
+	 */
+	private static class FieldMatcher {
+
+		private final String[] patterns;
+
+		private boolean matchAll;
+
+		private final Set exactNames = new HashSet();
+
+		private final List prefixes = new ArrayList();
+
+		private final List suffixes = new ArrayList();
+
+		private final List infixes = new ArrayList();
+
+		private final List otherPatterns = new ArrayList();
+
+		public FieldMatcher(String[] patterns) {
+			this.patterns = patterns;
+			if (patterns != null) {
+				for (int i = 0; i < patterns.length; i++) {
+					String pattern = patterns[i];
+					if (pattern == null) {
+						continue;
+					}
+					int wildcardCount = StringUtils.countOccurrencesOf(pattern, "*");
+					int length = pattern.length();
+					if (wildcardCount == 0) {
+						this.exactNames.add(pattern);
+					}
+					else if (length == 1) {
+						this.matchAll = true;
+					}
+					else if (wildcardCount == 1 && pattern.charAt(length - 1) == '*') {
+						this.prefixes.add(pattern.substring(0, length - 1));
+					}
+					else if (wildcardCount == 1 && pattern.charAt(0) == '*') {
+						this.suffixes.add(pattern.substring(1));
+					}
+					else if (wildcardCount == 2 && length > 2 &&
+							pattern.charAt(0) == '*' && pattern.charAt(length - 1) == '*') {
+						this.infixes.add(pattern.substring(1, length - 1));
+					}
+					else {
+						this.otherPatterns.add(pattern);
+					}
+				}
+			}
+		}
+
+		public boolean matches(String field) {
+			if (this.matchAll || this.exactNames.contains(field)) {
+				return true;
+			}
+			for (int i = 0; i < this.prefixes.size(); i++) {
+				if (field.startsWith((String) this.prefixes.get(i))) {
+					return true;
+				}
+			}
+			for (int i = 0; i < this.suffixes.size(); i++) {
+				if (field.endsWith((String) this.suffixes.get(i))) {
+					return true;
+				}
+			}
+			for (int i = 0; i < this.infixes.size(); i++) {
+				if (field.indexOf((String) this.infixes.get(i)) != -1) {
+					return true;
+				}
+			}
+			for (int i = 0; i < this.otherPatterns.size(); i++) {
+				if (PatternMatchUtils.simpleMatch((String) this.otherPatterns.get(i), field)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
 }
@@ -17,6 +17,7 @@
 package org.springframework.web.context.request;
 
 import java.security.Principal;
+import java.util.Enumeration;
 import java.util.Locale;
 import java.util.Map;
 
@@ -38,6 +39,14 @@ public class ServletWebRequest extends ServletRequestAttributes implements Nativ
 
 	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
 
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+	private static final String HEADER_ETAG = "ETag";
+
+	private static final String METHOD_GET = "GET";
+
+	private static final String METHOD_HEAD = "HEAD";
+
 
 	private HttpServletResponse response;
 
@@ -133,6 +142,81 @@ public class ServletWebRequest extends ServletRequestAttributes implements Nativ
 		return this.notModified;
 	}
 
+	/**
+	 * Check whether the request qualifies as not modified given the
+	 * supplied entity tag (as determined by the application), typically
+	 * a cheap version token for the underlying resource.
+	 * <p>This will also transparently set the appropriate response headers,
+	 * for both the modified case and the not-modified case. A matching
+	 * entity tag leads to a 304 "Not Modified" status for GET and HEAD
+	 * requests, and to a 412 "Precondition Failed" status for any other
+	 * request method, as required by HTTP 1.1.
+	 * <p>Typical usage:
+	 * <pre class="code">
+	 * public String myHandleMethod(ServletWebRequest webRequest, Model model) {
+	 *   String eTag = // application-specific calculation
+	 *   if (webRequest.checkNotModified(eTag)) {
+	 *     // shortcut exit - no further processing necessary
+	 *     return null;
+	 *   }
+	 *   // further request processing, actually building content
+	 *   model.addAttribute(...);
+	 *   return "myViewName";
+	 * }</pre>
+	 * @param eTag the entity tag that the application determined
+	 * for the underlying resource (with or without surrounding quotes)
+	 * @return whether the request qualifies as not modified (or failed the
+	 * precondition), allowing to abort request processing and relying on
+	 * the response status telling the client about it
+	 * @see org.springframework.web.filter.ShallowEtagHeaderFilter
+	 */
+	public boolean checkNotModified(String eTag) {
+		if (StringUtils.hasLength(eTag) && !this.notModified &&
+				(this.response == null || !this.response.containsHeader(HEADER_ETAG))) {
+			String quotedETag = quoteETag(eTag);
+			this.notModified = matchesIfNoneMatch(quotedETag);
+			if (this.response != null) {
+				if (this.notModified) {
+					String method = getRequest().getMethod();
+					this.response.setStatus(METHOD_GET.equals(method) || METHOD_HEAD.equals(method) ?
+							HttpServletResponse.SC_NOT_MODIFIED : HttpServletResponse.SC_PRECONDITION_FAILED);
+				}
+				this.response.setHeader(HEADER_ETAG, quotedETag);
+			}
+		}
+		return this.notModified;
+	}
+
+	/**
+	 * Determine whether any of the request's If-None-Match headers
+	 * matches the given entity tag, using weak comparison as defined
+	 * for conditional GET requests.
+	 */
+	private boolean matchesIfNoneMatch(String quotedETag) {
+		String candidate = stripWeakIndicator(quotedETag);
+		Enumeration headers = getRequest().getHeaders(HEADER_IF_NONE_MATCH);
+		while (headers != null && headers.hasMoreElements()) {
+			String[] clientETags = StringUtils.tokenizeToStringArray((String) headers.nextElement(), ",");
+			for (int i = 0; i < clientETags.length; i++) {
+				if ("*".equals(clientETags[i]) || candidate.equals(stripWeakIndicator(clientETags[i]))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static String quoteETag(String eTag) {
+		if (eTag.startsWith("\"") || eTag.startsWith("W/\"")) {
+			return eTag;
+		}
+		return "\"" + eTag + "\"";
+	}
+
+	private static String stripWeakIndicator(String eTag) {
+		return (eTag.startsWith("W/") ? eTag.substring(2) : eTag);
+	}
+
 	public boolean isNotModified() {
 		return this.notModified;
 	}
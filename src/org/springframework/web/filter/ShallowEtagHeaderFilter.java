@@ -0,0 +1,299 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.util.Assert;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Servlet 2.3/2.4 Filter that generates an <code>ETag</code> value based on the
+ * content of the response. This ETag is compared to the <code>If-None-Match</code>
+ * header of the request. If these headers are equal, the response content is
+ * not sent, but rather a <code>304 "Not Modified"</code> status instead.
+ *
+ * <p>Since the ETag is based on the response content, the response (e.g. a
+ * {@link org.springframework.web.servlet.View}) is still rendered. As such, this
+ * filter only saves bandwidth, not server performance. To avoid rendering
+ * altogether, handlers can supply a cheap version token of their own through
+ * {@link org.springframework.web.context.request.ServletWebRequest#checkNotModified(String)}:
+ * Such a handler-supplied ETag takes precedence, with this filter passing the
+ * response through without hashing it.
+ *
+ * <p>Only applies to GET requests with a successful (200) response status.
+ * Note that this filter operates on the servlet response and therefore does not
+ * apply to portlet requests; Portlet 1.0 does not give access to HTTP headers.
+ *
+ * @since 2.5.7
+ * @see #setAlgorithm
+ */
+public class ShallowEtagHeaderFilter extends OncePerRequestFilter {
+
+	private static final String HEADER_ETAG = "ETag";
+
+	private static final char[] HEX_CHARS =
+			{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+
+	private String algorithm = "MD5";
+
+
+	/**
+	 * Set the name of the {@link java.security.MessageDigest} algorithm
+	 * used to hash the response content. Default is "MD5".
+	 */
+	public void setAlgorithm(String algorithm) {
+		Assert.hasText(algorithm, "Algorithm must not be empty");
+		this.algorithm = algorithm;
+	}
+
+	protected void initFilterBean() throws ServletException {
+		try {
+			MessageDigest.getInstance(this.algorithm);
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new ServletException("Unsupported ETag digest algorithm [" + this.algorithm + "]", ex);
+		}
+	}
+
+
+	protected void doFilterInternal(
+			HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		if (!isEligibleRequest(request)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		ShallowEtagResponseWrapper responseWrapper = new ShallowEtagResponseWrapper(response);
+		filterChain.doFilter(request, responseWrapper);
+
+		byte[] body = responseWrapper.toByteArray();
+		int statusCode = responseWrapper.getStatusCode();
+
+		if (responseWrapper.hasApplicationETag() || statusCode != HttpServletResponse.SC_OK) {
+			// Handler-supplied ETag (or no cacheable content): pass through as-is.
+			copyBodyToResponse(body, response);
+			return;
+		}
+
+		String eTag = generateETagHeaderValue(body);
+		ServletWebRequest webRequest = new ServletWebRequest(request, response);
+		if (webRequest.checkNotModified(eTag)) {
+			if (logger.isTraceEnabled()) {
+				logger.trace("ETag [" + eTag + "] equal to If-None-Match, sending 304");
+			}
+		}
+		else {
+			if (logger.isTraceEnabled()) {
+				logger.trace("ETag [" + eTag + "] not equal to If-None-Match, sending content");
+			}
+			copyBodyToResponse(body, response);
+		}
+	}
+
+	/**
+	 * Determine whether the given request qualifies for ETag generation.
+	 * <p>The default implementation accepts GET requests only, since HEAD
+	 * responses do not carry the body that the ETag would be computed from.
+	 * @param request current HTTP request
+	 * @return whether to buffer and hash the response for this request
+	 */
+	protected boolean isEligibleRequest(HttpServletRequest request) {
+		return "GET".equals(request.getMethod());
+	}
+
+	/**
+	 * Generate the ETag header value from the given response body byte array.
+	 * <p>The default implementation generates a hex-encoded digest of the body,
+	 * using the configured {@link #setAlgorithm algorithm}.
+	 * @param bytes the response body as byte array
+	 * @return the ETag header value (including surrounding quotes)
+	 */
+	protected String generateETagHeaderValue(byte[] bytes) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance(this.algorithm).digest(bytes);
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("Could not find MessageDigest with algorithm \"" + this.algorithm + "\"");
+		}
+		StringBuffer buffer = new StringBuffer(digest.length * 2 + 3);
+		buffer.append("\"0");
+		for (int i = 0; i < digest.length; i++) {
+			buffer.append(HEX_CHARS[(digest[i] >> 4) & 0x0f]);
+			buffer.append(HEX_CHARS[digest[i] & 0x0f]);
+		}
+		buffer.append('"');
+		return buffer.toString();
+	}
+
+	private void copyBodyToResponse(byte[] body, HttpServletResponse response) throws IOException {
+		if (body.length > 0) {
+			response.setContentLength(body.length);
+			response.getOutputStream().write(body);
+		}
+		response.flushBuffer();
+	}
+
+
+	/**
+	 * {@link HttpServletResponse} wrapper that caches all content written to
+	 * the {@linkplain #getOutputStream() output stream} and {@linkplain #getWriter() writer},
+	 * and allows this content to be retrieved via a {@link #toByteArray() byte array}.
+	 */
+	private static class ShallowEtagResponseWrapper extends HttpServletResponseWrapper {
+
+		private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+		private final ServletOutputStream outputStream = new ResponseServletOutputStream();
+
+		private PrintWriter writer;
+
+		private int statusCode = HttpServletResponse.SC_OK;
+
+		private boolean applicationETag = false;
+
+		public ShallowEtagResponseWrapper(HttpServletResponse response) {
+			super(response);
+		}
+
+		public void setStatus(int sc) {
+			super.setStatus(sc);
+			this.statusCode = sc;
+		}
+
+		public void setStatus(int sc, String sm) {
+			super.setStatus(sc, sm);
+			this.statusCode = sc;
+		}
+
+		public void sendError(int sc) throws IOException {
+			super.sendError(sc);
+			this.statusCode = sc;
+		}
+
+		public void sendError(int sc, String msg) throws IOException {
+			super.sendError(sc, msg);
+			this.statusCode = sc;
+		}
+
+		public void sendRedirect(String location) throws IOException {
+			super.sendRedirect(location);
+			this.statusCode = HttpServletResponse.SC_MOVED_TEMPORARILY;
+		}
+
+		public void setHeader(String name, String value) {
+			super.setHeader(name, value);
+			checkApplicationETag(name);
+		}
+
+		public void addHeader(String name, String value) {
+			super.addHeader(name, value);
+			checkApplicationETag(name);
+		}
+
+		private void checkApplicationETag(String name) {
+			if (HEADER_ETAG.equalsIgnoreCase(name)) {
+				this.applicationETag = true;
+			}
+		}
+
+		public void setContentLength(int len) {
+			// Determined by the filter once the content is complete.
+		}
+
+		public ServletOutputStream getOutputStream() {
+			return this.outputStream;
+		}
+
+		public PrintWriter getWriter() throws IOException {
+			if (this.writer == null) {
+				String characterEncoding = getCharacterEncoding();
+				try {
+					this.writer = (characterEncoding != null ?
+							new PrintWriter(new OutputStreamWriter(this.content, characterEncoding)) :
+							new PrintWriter(new OutputStreamWriter(this.content, "ISO-8859-1")));
+				}
+				catch (UnsupportedEncodingException ex) {
+					throw new IllegalStateException("Unsupported response encoding [" + characterEncoding + "]");
+				}
+			}
+			return this.writer;
+		}
+
+		public void flushBuffer() {
+			// Keep the response uncommitted until the filter has made its decision.
+			if (this.writer != null) {
+				this.writer.flush();
+			}
+		}
+
+		public void resetBuffer() {
+			super.resetBuffer();
+			this.content.reset();
+		}
+
+		public void reset() {
+			super.reset();
+			this.content.reset();
+			this.statusCode = HttpServletResponse.SC_OK;
+			this.applicationETag = false;
+		}
+
+		public int getStatusCode() {
+			return this.statusCode;
+		}
+
+		public boolean hasApplicationETag() {
+			return this.applicationETag;
+		}
+
+		public byte[] toByteArray() {
+			flushBuffer();
+			return this.content.toByteArray();
+		}
+
+
+		private class ResponseServletOutputStream extends ServletOutputStream {
+
+			public void write(int b) {
+				content.write(b);
+			}
+
+			public void write(byte[] b, int off, int len) {
+				content.write(b, off, len);
+			}
+		}
+	}
+
+}
@@ -118,6 +118,15 @@ public class PortletWebRequest extends PortletRequestAttributes implements Nativ
 		return false;
 	}
 
+	/**
+	 * ETag handling not supported for portlet requests:
+	 * As a consequence, this method always returns <code>false</code>.
+	 * @see org.springframework.web.context.request.ServletWebRequest#checkNotModified(String)
+	 */
+	public boolean checkNotModified(String eTag) {
+		return false;
+	}
+
 
 	public String getDescription(boolean includeClientInfo) {
 		PortletRequest request = getRequest();
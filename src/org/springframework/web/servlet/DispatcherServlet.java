@@ -210,6 +210,15 @@ public class DispatcherServlet extends FrameworkServlet {
 	 */
 	public static final String HANDLER_EXECUTION_CHAIN_ATTRIBUTE = DispatcherServlet.class.getName() + ".HANDLER";
 
+	/**
+	 * Request attribute to hold the {@link FutureResultHandlerInterceptor FutureResultHandlerInterceptors}
+	 * of the currently chosen HandlerExecutionChain, as an array. Only exposed if the
+	 * chain contains any such interceptors; to be consumed by HandlerAdapters that
+	 * wait for Future results returned from handlers.
+	 */
+	public static final String FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE =
+			DispatcherServlet.class.getName() + ".FUTURE_RESULT_INTERCEPTORS";
+
 	/**
 	 * Request attribute to hold the current web application context.
 	 * Otherwise only the global web app context is obtainable by tags etc.
@@ -870,9 +879,24 @@ public class DispatcherServlet extends FrameworkServlet {
 					}
 				}
 
+				// Expose Future result interceptors to the HandlerAdapter,
+				// restoring the original ones in case of an include.
+				Object previousFutureResultInterceptors = processedRequest.getAttribute(FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE);
+				exposeFutureResultInterceptors(interceptors, processedRequest);
+
 				// Actually invoke the handler.
 				HandlerAdapter ha = getHandlerAdapter(mappedHandler.getHandler());
-				mv = ha.handle(processedRequest, response, mappedHandler.getHandler());
+				try {
+					mv = ha.handle(processedRequest, response, mappedHandler.getHandler());
+				}
+				finally {
+					if (previousFutureResultInterceptors != null) {
+						processedRequest.setAttribute(FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE, previousFutureResultInterceptors);
+					}
+					else {
+						processedRequest.removeAttribute(FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE);
+					}
+				}
 
 				// Do we need view name translation?
 				if (mv != null && !mv.hasView()) {
@@ -945,6 +969,35 @@ public class DispatcherServlet extends FrameworkServlet {
 		}
 	}
 
+	/**
+	 * Expose the given chain's {@link FutureResultHandlerInterceptor FutureResultHandlerInterceptors}
+	 * as request attribute, for HandlerAdapters that wait for Future results returned from handlers.
+	 * Removes the attribute if there are no such interceptors.
+	 * @param interceptors the interceptors of the current HandlerExecutionChain (may be <code>null</code>)
+	 * @param request current HTTP request
+	 * @see #FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE
+	 */
+	private void exposeFutureResultInterceptors(HandlerInterceptor[] interceptors, HttpServletRequest request) {
+		List futureResultInterceptors = null;
+		if (interceptors != null) {
+			for (int i = 0; i < interceptors.length; i++) {
+				if (interceptors[i] instanceof FutureResultHandlerInterceptor) {
+					if (futureResultInterceptors == null) {
+						futureResultInterceptors = new ArrayList(interceptors.length);
+					}
+					futureResultInterceptors.add(interceptors[i]);
+				}
+			}
+		}
+		if (futureResultInterceptors != null) {
+			request.setAttribute(FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE,
+					futureResultInterceptors.toArray(new FutureResultHandlerInterceptor[futureResultInterceptors.size()]));
+		}
+		else {
+			request.removeAttribute(FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE);
+		}
+	}
+
 	/**
 	 * Override HttpServlet's <code>getLastModified</code> method to evaluate
 	 * the Last-Modified value of the mapped handler.
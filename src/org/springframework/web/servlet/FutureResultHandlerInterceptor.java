@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Extension of the {@link HandlerInterceptor} interface that receives
+ * callbacks around waiting for a pending handler result, i.e. when a handler
+ * returns a <code>java.util.concurrent.Future</code> instead of a final
+ * return value.
+ *
+ * <p>Note that the request thread itself waits for the result: The container
+ * thread is <i>not</i> released in the meantime. These callbacks allow for
+ * observing the wait, for example for measuring how long request threads
+ * are blocked on back-end results.
+ *
+ * <p>Callback order for a handler returning a Future is: <code>preHandle</code>,
+ * <code>beforeFutureResultWait</code>, <code>afterFutureResultWait</code>, then
+ * <code>postHandle</code> and <code>afterCompletion</code> as usual, once the
+ * result has been turned into a ModelAndView. <code>postHandle</code> will
+ * not be called if the computation of the result fails.
+ *
+ * @since 2.5.7
+ * @see org.springframework.web.servlet.mvc.annotation.AnnotationMethodHandlerAdapter#setFutureResultTimeout
+ */
+public interface FutureResultHandlerInterceptor extends HandlerInterceptor {
+
+	/**
+	 * Called when the handler has returned a Future,
+	 * before the request thread starts waiting for its result.
+	 * @param request current HTTP request
+	 * @param response current HTTP response
+	 * @param handler chosen handler to execute, for type and/or instance examination
+	 * @throws Exception in case of errors
+	 */
+	void beforeFutureResultWait(HttpServletRequest request, HttpServletResponse response, Object handler)
+			throws Exception;
+
+	/**
+	 * Called when the request thread stops waiting, i.e. when the result
+	 * is available, has failed, or has timed out.
+	 * Will only be called if this interceptor's <code>beforeFutureResultWait</code>
+	 * method has been invoked before.
+	 * @param request current HTTP request
+	 * @param response current HTTP response
+	 * @param handler chosen handler to execute, for type and/or instance examination
+	 * @param ex exception thrown while obtaining the result (including a timeout),
+	 * or <code>null</code> if the result has been obtained successfully
+	 * @throws Exception in case of errors
+	 */
+	void afterFutureResultWait(
+			HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+			throws Exception;
+
+}
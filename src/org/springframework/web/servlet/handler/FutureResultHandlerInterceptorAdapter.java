@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.handler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.FutureResultHandlerInterceptor;
+
+/**
+ * Abstract adapter class for the FutureResultHandlerInterceptor interface,
+ * for simplified implementation of interceptors that are only interested
+ * in some of the callbacks, including those around waiting for a Future result.
+ *
+ * <p>Only extend this class if the interceptor actually needs to observe
+ * the wait for Future results; use the plain {@link HandlerInterceptorAdapter}
+ * otherwise, avoiding needless callbacks.
+ *
+ * @since 2.5.7
+ */
+public abstract class FutureResultHandlerInterceptorAdapter extends HandlerInterceptorAdapter
+		implements FutureResultHandlerInterceptor {
+
+	/**
+	 * This implementation is empty.
+	 */
+	public void beforeFutureResultWait(HttpServletRequest request, HttpServletResponse response, Object handler)
+			throws Exception {
+	}
+
+	/**
+	 * This implementation is empty.
+	 */
+	public void afterFutureResultWait(
+			HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+			throws Exception {
+	}
+
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.HttpRequestHandler;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.support.WebContentGenerator;
+
+/**
+ * {@link HttpRequestHandler} that serves static resources - JavaScript, CSS,
+ * images and the like - from a list of {@link org.springframework.core.io.Resource}
+ * locations, for example "/resources/" within the web application or
+ * "classpath:/META-INF/public-web-resources/".
+ *
+ * <p>Intended to be mapped through a URL pattern such as "/resources/**" within
+ * a {@link org.springframework.web.servlet.DispatcherServlet}: The path within
+ * the handler mapping determines the resource to serve, relative to each of
+ * the configured locations in turn.
+ *
+ * <p>Serving behavior:
+ * <ul>
+ * <li>Answers "If-Modified-Since" requests with 304 "Not Modified",
+ * based on the resource's last-modified timestamp.
+ * <li>Supports single byte ranges ("Range" header, honoring "If-Range"),
+ * sending a 206 "Partial Content" response.
+ * <li>Sends far-future cache headers for fingerprinted paths, i.e. paths
+ * matching the {@link #setFingerprintPattern "fingerprintPattern"};
+ * other paths use the standard {@link #setCacheSeconds "cacheSeconds"}
+ * setting (with revalidation against the last-modified timestamp).
+ * <li>Keeps resources up to {@link #setMaxCachedResourceSize "maxCachedResourceSize"}
+ * in memory, up to a total of {@link #setMaxCacheSize "maxCacheSize"} bytes,
+ * discarding least-recently-used entries beyond that.
+ * <li>Transfers larger file system resources through
+ * {@link java.nio.channels.FileChannel#transferTo}, avoiding intermediate
+ * copies where the target channel allows for it.
+ * </ul>
+ *
+ * <p>Resources that do not reside in the file system (e.g. within a jar file)
+ * are read into memory in full when requested, so should be of moderate size.
+ *
+ * @since 2.5.7
+ * @see #setLocations
+ * @see org.springframework.web.servlet.ResourceServlet
+ */
+public class ResourceHttpRequestHandler extends WebContentGenerator implements HttpRequestHandler {
+
+	/**
+	 * Default pattern for fingerprinted resource paths: a file name that
+	 * contains a hexadecimal hash of at least 8 characters, separated by a
+	 * dash or dot from the base name (e.g. "app-3f2a9c1d.js", "style.3f2a9c1d.css").
+	 */
+	public static final String DEFAULT_FINGERPRINT_PATTERN = "^(.*/)?[^/]*[-.][0-9a-fA-F]{8,}\\.[^/.]+$";
+
+	private static final int ONE_YEAR_SECONDS = 31536000;
+
+	private static final String HEADER_RANGE = "Range";
+
+	private static final String HEADER_IF_RANGE = "If-Range";
+
+
+	private Resource[] locations;
+
+	private Pattern fingerprintPattern = Pattern.compile(DEFAULT_FINGERPRINT_PATTERN);
+
+	private int fingerprintCacheSeconds = ONE_YEAR_SECONDS;
+
+	private int maxCachedResourceSize = 16 * 1024;
+
+	private long maxCacheSize = 4 * 1024 * 1024;
+
+	/** Cache of resource content, keyed by resource path, in access order */
+	private final LinkedHashMap contentCache = new LinkedHashMap(16, 0.75f, true);
+
+	private long cachedBytes = 0;
+
+
+	/**
+	 * Create a new ResourceHttpRequestHandler, supporting GET and HEAD requests.
+	 */
+	public ResourceHttpRequestHandler() {
+		setSupportedMethods(new String[] {METHOD_GET, METHOD_HEAD});
+	}
+
+
+	/**
+	 * Set the locations to serve resources from, in order of precedence.
+	 * Each location needs to denote a directory, e.g. "/resources/".
+	 */
+	public void setLocations(Resource[] locations) {
+		Assert.notEmpty(locations, "Locations must not be empty");
+		this.locations = locations;
+	}
+
+	/**
+	 * Set the regular expression that identifies fingerprinted resource paths,
+	 * i.e. paths that change whenever the content changes and can therefore be
+	 * cached by clients "forever". Specify <code>null</code> to turn off
+	 * fingerprint detection.
+	 * @see #DEFAULT_FINGERPRINT_PATTERN
+	 * @see #setFingerprintCacheSeconds
+	 */
+	public void setFingerprintPattern(String fingerprintPattern) {
+		this.fingerprintPattern = (fingerprintPattern != null ? Pattern.compile(fingerprintPattern) : null);
+	}
+
+	/**
+	 * Set the number of seconds that fingerprinted resources may be cached
+	 * by clients. Default is one year.
+	 */
+	public void setFingerprintCacheSeconds(int fingerprintCacheSeconds) {
+		this.fingerprintCacheSeconds = fingerprintCacheSeconds;
+	}
+
+	/**
+	 * Set the maximum size (in bytes) of a resource to be kept in memory.
+	 * Default is 16 KB. Specify 0 to turn off in-memory caching.
+	 */
+	public void setMaxCachedResourceSize(int maxCachedResourceSize) {
+		this.maxCachedResourceSize = maxCachedResourceSize;
+	}
+
+	/**
+	 * Set the maximum total size (in bytes) of all resources kept in memory.
+	 * Default is 4 MB.
+	 */
+	public void setMaxCacheSize(long maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	/**
+	 * Return the total number of bytes currently held in the in-memory cache.
+	 */
+	public long getCachedBytes() {
+		synchronized (this.contentCache) {
+			return this.cachedBytes;
+		}
+	}
+
+
+	/**
+	 * Serve the resource that the request's path within the handler mapping points to.
+	 * @see org.springframework.web.servlet.HandlerMapping#PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE
+	 */
+	public void handleRequest(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+		if (path == null) {
+			throw new IllegalStateException("Required request attribute '" +
+					HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE + "' is not set");
+		}
+
+		boolean fingerprinted = isFingerprinted(path);
+		checkAndPrepare(request, response,
+				(fingerprinted ? this.fingerprintCacheSeconds : getCacheSeconds()), !fingerprinted);
+
+		Resource resource = getResource(path);
+		if (resource == null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("No matching resource found for path [" + path + "]");
+			}
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		long lastModified = determineLastModified(resource);
+		if (new ServletWebRequest(request, response).checkNotModified(lastModified)) {
+			logger.debug("Resource not modified - returning 304");
+			return;
+		}
+
+		String mimeType = getServletContext().getMimeType(resource.getFilename());
+		if (mimeType != null) {
+			response.setContentType(mimeType);
+		}
+
+		File file = getFileIfPossible(resource);
+		byte[] content = getContent(processPath(path), resource, file, lastModified);
+		long length = (content != null ? content.length : file.length());
+
+		long start = 0;
+		long end = length - 1;
+		String range = request.getHeader(HEADER_RANGE);
+		response.setHeader("Accept-Ranges", "bytes");
+		if (range != null && isRangeApplicable(request, lastModified)) {
+			long[] parsedRange = parseRange(range, length);
+			if (parsedRange == null) {
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (parsedRange.length == 2) {
+				start = parsedRange[0];
+				end = parsedRange[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+
+		long count = end - start + 1;
+		if (count <= Integer.MAX_VALUE) {
+			response.setContentLength((int) count);
+		}
+		else {
+			response.setHeader("Content-Length", Long.toString(count));
+		}
+		if (METHOD_HEAD.equals(request.getMethod()) || count <= 0) {
+			return;
+		}
+
+		if (content != null) {
+			response.getOutputStream().write(content, (int) start, (int) count);
+		}
+		else {
+			transferFile(file, start, count, response);
+		}
+	}
+
+	/**
+	 * Determine whether the given resource path is fingerprinted.
+	 * @see #setFingerprintPattern
+	 */
+	protected boolean isFingerprinted(String path) {
+		return (this.fingerprintPattern != null && this.fingerprintPattern.matcher(path).matches());
+	}
+
+	/**
+	 * Find the resource for the given path within the configured locations.
+	 * @param path the path within the handler mapping
+	 * @return the corresponding readable Resource, or <code>null</code> if none found
+	 * (or if the path is considered invalid)
+	 */
+	protected Resource getResource(String path) throws IOException {
+		Assert.state(this.locations != null, "No resource locations specified");
+		String cleanPath = processPath(path);
+		if (!isValidPath(cleanPath)) {
+			if (logger.isWarnEnabled()) {
+				logger.warn("Rejected invalid resource path [" + path + "]");
+			}
+			return null;
+		}
+		for (int i = 0; i < this.locations.length; i++) {
+			Resource resource = this.locations[i].createRelative(cleanPath);
+			if (resource.exists() && resource.isReadable()) {
+				return resource;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Check whether the given (cleaned) path is valid, i.e. does not
+	 * point outside of the resource locations or into protected directories.
+	 * The latter are matched case-insensitively, since file systems may be.
+	 */
+	protected boolean isValidPath(String path) {
+		return (StringUtils.hasLength(path) && !path.startsWith("..") && path.indexOf("/../") == -1 &&
+				!StringUtils.startsWithIgnoreCase(path, "WEB-INF") &&
+				!StringUtils.startsWithIgnoreCase(path, "META-INF") && !path.endsWith("/"));
+	}
+
+	/**
+	 * Transfer the given range of the file to the response.
+	 * <p>Uses {@link java.nio.channels.FileChannel#transferTo}, targeting the
+	 * channel returned by {@link #getResponseChannel}.
+	 */
+	protected void transferFile(File file, long start, long count, HttpServletResponse response)
+			throws IOException {
+
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel fileChannel = in.getChannel();
+			WritableByteChannel target = getResponseChannel(response);
+			long position = start;
+			long remaining = count;
+			while (remaining > 0) {
+				long transferred = fileChannel.transferTo(position, remaining, target);
+				if (transferred <= 0) {
+					break;
+				}
+				position += transferred;
+				remaining -= transferred;
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Obtain the channel to write response content to.
+	 * <p>The default implementation adapts the response's output stream.
+	 * Can be overridden to expose a container's native socket channel, where
+	 * available, in order to benefit from zero-copy transfers.
+	 * @param response current HTTP response
+	 * @return the channel to write to
+	 */
+	protected WritableByteChannel getResponseChannel(HttpServletResponse response) throws IOException {
+		return Channels.newChannel(response.getOutputStream());
+	}
+
+
+	/**
+	 * Clean the given path within the handler mapping and strip leading slashes,
+	 * so that equivalent paths resolve to the same resource and cache entry.
+	 */
+	private String processPath(String path) {
+		String cleanPath = StringUtils.cleanPath(path);
+		while (cleanPath.startsWith("/")) {
+			cleanPath = cleanPath.substring(1);
+		}
+		return cleanPath;
+	}
+
+	private long determineLastModified(Resource resource) {
+		try {
+			return resource.lastModified();
+		}
+		catch (IOException ex) {
+			return -1;
+		}
+	}
+
+	private File getFileIfPossible(Resource resource) {
+		try {
+			return resource.getFile();
+		}
+		catch (IOException ex) {
+			// Not resolvable in the file system.
+			return null;
+		}
+	}
+
+	/**
+	 * Return the content of the given resource if to be served from memory,
+	 * or <code>null</code> if to be transferred from the given file.
+	 */
+	private byte[] getContent(String path, Resource resource, File file, long lastModified) throws IOException {
+		synchronized (this.contentCache) {
+			CachedContent cached = (CachedContent) this.contentCache.get(path);
+			if (cached != null) {
+				if (cached.lastModified == lastModified) {
+					return cached.content;
+				}
+				this.contentCache.remove(path);
+				this.cachedBytes -= cached.content.length;
+			}
+		}
+		if (file != null && file.length() > this.maxCachedResourceSize) {
+			return null;
+		}
+		InputStream in = (file != null ? new FileInputStream(file) : resource.getInputStream());
+		byte[] content = FileCopyUtils.copyToByteArray(in);
+		if (content.length <= this.maxCachedResourceSize) {
+			synchronized (this.contentCache) {
+				CachedContent previous = (CachedContent) this.contentCache.put(path, new CachedContent(content, lastModified));
+				if (previous != null) {
+					this.cachedBytes -= previous.content.length;
+				}
+				this.cachedBytes += content.length;
+				for (Iterator it = this.contentCache.entrySet().iterator();
+						it.hasNext() && this.cachedBytes > this.maxCacheSize;) {
+					CachedContent eldest = (CachedContent) ((Map.Entry) it.next()).getValue();
+					it.remove();
+					this.cachedBytes -= eldest.content.length;
+				}
+			}
+		}
+		return content;
+	}
+
+	/**
+	 * Check the "If-Range" header: A range only applies if the resource
+	 * has not been modified since the given date.
+	 */
+	private boolean isRangeApplicable(HttpServletRequest request, long lastModified) {
+		if (request.getHeader(HEADER_IF_RANGE) == null) {
+			return true;
+		}
+		try {
+			long ifRange = request.getDateHeader(HEADER_IF_RANGE);
+			return (lastModified >= 0 && ifRange >= (lastModified / 1000 * 1000));
+		}
+		catch (IllegalArgumentException ex) {
+			// Entity tag rather than date: no ETags for static resources, so send it all.
+			return false;
+		}
+	}
+
+	/**
+	 * Parse a single byte range from the given "Range" header value.
+	 * @return a two-element array with first and last byte position,
+	 * an empty array if the header is to be ignored (e.g. multiple ranges),
+	 * or <code>null</code> if the range is not satisfiable
+	 */
+	private long[] parseRange(String range, long length) {
+		if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+			return new long[0];
+		}
+		String spec = range.substring(6).trim();
+		int dashIndex = spec.indexOf('-');
+		if (dashIndex == -1) {
+			return new long[0];
+		}
+		try {
+			long start;
+			long end;
+			if (dashIndex == 0) {
+				long suffixLength = Long.parseLong(spec.substring(1));
+				if (suffixLength <= 0) {
+					return null;
+				}
+				start = Math.max(0, length - suffixLength);
+				end = length - 1;
+			}
+			else {
+				start = Long.parseLong(spec.substring(0, dashIndex));
+				end = (dashIndex < spec.length() - 1 ?
+						Math.min(Long.parseLong(spec.substring(dashIndex + 1)), length - 1) : length - 1);
+			}
+			if (start >= length || start > end) {
+				return null;
+			}
+			return new long[] {start, end};
+		}
+		catch (NumberFormatException ex) {
+			return new long[0];
+		}
+	}
+
+
+	/**
+	 * Holder for cached resource content.
+	 */
+	private static class CachedContent {
+
+		public final byte[] content;
+
+		public final long lastModified;
+
+		public CachedContent(byte[] content, long lastModified) {
+			this.content = content;
+			this.lastModified = lastModified;
+		}
+	}
+
+}
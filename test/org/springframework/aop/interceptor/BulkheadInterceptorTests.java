@@ -0,0 +1,212 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+
+/**
+ * @since 2.5.7
+ */
+public class BulkheadInterceptorTests extends TestCase {
+
+	private static final String BLOCKING_KEY = "blockingTestBean";
+
+	private BulkheadInterceptor interceptor;
+
+	private Object lock;
+
+	private ITestBean blockingProxy;
+
+	private ITestBean proxy;
+
+
+	protected void setUp() {
+		this.interceptor = new BulkheadInterceptor();
+		this.interceptor.setMaxConcurrentCalls(2);
+		this.lock = new Object();
+		this.blockingProxy = createProxy(new BlockingTestBean(this.lock), BLOCKING_KEY);
+		this.proxy = createProxy(new TestBean("juergen", 50), "testBean");
+	}
+
+	private ITestBean createProxy(Object target, String beanName) {
+		ProxyFactory pf = new ProxyFactory(target);
+		if (beanName != null) {
+			pf.addAdvisor(ExposeBeanNameAdvisors.createAdvisorWithoutIntroduction(beanName));
+		}
+		pf.addAdvice(this.interceptor);
+		return (ITestBean) pf.getProxy();
+	}
+
+
+	public void testRejectsWhenFull() throws Exception {
+		Thread[] threads;
+		synchronized (this.lock) {
+			threads = startBlockedInvocations(2);
+			try {
+				this.blockingProxy.getAge();
+				fail("Should have thrown BulkheadFullException");
+			}
+			catch (BulkheadFullException ex) {
+				assertEquals(BLOCKING_KEY, ex.getTargetKey());
+			}
+			// other targets are not affected
+			assertEquals(50, this.proxy.getAge());
+			assertEquals(2, this.interceptor.getActiveCount(BLOCKING_KEY));
+		}
+		joinAll(threads);
+		assertEquals(0, this.interceptor.getActiveCount(BLOCKING_KEY));
+		assertEquals(1, this.interceptor.getRejectedCount(BLOCKING_KEY));
+		assertEquals(0, this.interceptor.getRejectedCount("testBean"));
+		assertEquals(1, this.blockingProxy.getAge());
+	}
+
+	public void testWaitsForPermit() throws Exception {
+		this.interceptor.setMaxWaitTime(5000);
+		final Object[] result = new Object[1];
+		Thread[] threads;
+		Thread waiter;
+		synchronized (this.lock) {
+			threads = startBlockedInvocations(2);
+			waiter = new Thread() {
+				public void run() {
+					try {
+						result[0] = new Integer(blockingProxy.getAge());
+					}
+					catch (Throwable ex) {
+						result[0] = ex;
+					}
+				}
+			};
+			waiter.start();
+			Thread.sleep(100);
+			assertTrue(waiter.isAlive());
+			assertEquals(2, this.interceptor.getActiveCount(BLOCKING_KEY));
+		}
+		waiter.join();
+		joinAll(threads);
+		assertEquals(new Integer(1), result[0]);
+		assertEquals(0, this.interceptor.getRejectedCount(BLOCKING_KEY));
+	}
+
+	public void testTargetLimits() throws Exception {
+		Map targetLimits = new HashMap();
+		targetLimits.put(BLOCKING_KEY, "1");
+		this.interceptor.setTargetLimits(targetLimits);
+		Thread[] threads;
+		synchronized (this.lock) {
+			threads = startBlockedInvocations(1);
+			try {
+				this.blockingProxy.getAge();
+				fail("Should have thrown BulkheadFullException");
+			}
+			catch (BulkheadFullException ex) {
+				// expected
+			}
+		}
+		joinAll(threads);
+		this.interceptor.setConcurrencyLimit(BLOCKING_KEY, 3);
+		this.blockingProxy.getAge();
+		String[] summary = this.interceptor.getBulkheadSummary();
+		assertEquals(1, summary.length);
+		assertEquals(BLOCKING_KEY + ": active = 0 of 3, rejected = 1", summary[0]);
+	}
+
+	public void testTargetsDistinguishedByIdentity() throws Exception {
+		Object otherLock = new Object();
+		ITestBean otherProxy = createProxy(new BlockingTestBean(otherLock), null);
+		Thread[] threads;
+		synchronized (this.lock) {
+			threads = startBlockedInvocations(2);
+			// another instance of the same class has its own bulkhead
+			assertEquals(1, otherProxy.getAge());
+		}
+		joinAll(threads);
+		String[] summary = this.interceptor.getBulkheadSummary();
+		assertEquals(2, summary.length);
+		assertTrue(summary[0].startsWith(BLOCKING_KEY + ": "));
+		assertTrue(summary[1].startsWith(BlockingTestBean.class.getName() + "@"));
+		assertEquals(0, this.interceptor.getRejectedCount(BLOCKING_KEY));
+	}
+
+	public void testUnknownTarget() {
+		try {
+			this.interceptor.getActiveCount("unknown");
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+
+	private Thread[] startBlockedInvocations(int count) throws InterruptedException {
+		Thread[] threads = new Thread[count];
+		for (int i = 0; i < count; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					blockingProxy.getAge();
+				}
+			};
+			threads[i].start();
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < deadline && !hasActiveCount(count)) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, this.interceptor.getActiveCount(BLOCKING_KEY));
+		return threads;
+	}
+
+	private boolean hasActiveCount(int count) {
+		try {
+			return (this.interceptor.getActiveCount(BLOCKING_KEY) == count);
+		}
+		catch (IllegalArgumentException ex) {
+			return false;
+		}
+	}
+
+	private void joinAll(Thread[] threads) throws InterruptedException {
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+	}
+
+
+	private static class BlockingTestBean extends TestBean {
+
+		private final Object lock;
+
+		public BlockingTestBean(Object lock) {
+			this.lock = lock;
+		}
+
+		public int getAge() {
+			synchronized (this.lock) {
+				return 1;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.CircuitBreakerEventPublisher;
+import org.springframework.context.event.CircuitBreakerStateChangedEvent;
+import org.springframework.context.support.StaticApplicationContext;
+
+/**
+ * @since 2.5.7
+ */
+public class CircuitBreakerInterceptorTests extends TestCase {
+
+	private static final String TARGET_KEY = "testBean";
+
+	private CircuitBreakerInterceptor interceptor;
+
+	private List transitions;
+
+	private ITestBean proxy;
+
+
+	protected void setUp() {
+		this.interceptor = new CircuitBreakerInterceptor();
+		this.interceptor.setSlidingWindowSize(10);
+		this.interceptor.setMinimumNumberOfCalls(4);
+		this.interceptor.setOpenStateDuration(100);
+		this.interceptor.setPermittedCallsInHalfOpenState(2);
+		this.transitions = new ArrayList();
+		this.interceptor.setListeners(new CircuitBreakerListener[] {new CircuitBreakerListener() {
+			public void stateChanged(CircuitBreakerInterceptor interceptor, String targetKey,
+					String oldState, String newState) {
+				transitions.add(oldState + "->" + newState);
+			}
+		}});
+		this.proxy = createProxy(new TestBean("juergen", 50), TARGET_KEY);
+	}
+
+	private ITestBean createProxy(Object target, String beanName) {
+		ProxyFactory pf = new ProxyFactory(target);
+		if (beanName != null) {
+			pf.addAdvisor(ExposeBeanNameAdvisors.createAdvisorWithoutIntroduction(beanName));
+		}
+		pf.addAdvice(this.interceptor);
+		return (ITestBean) pf.getProxy();
+	}
+
+
+	public void testStaysClosedBelowFailureRate() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			this.proxy.getAge();
+		}
+		failInvocation();
+		failInvocation();
+		assertEquals(CircuitBreakerInterceptor.STATE_CLOSED, this.interceptor.getState(TARGET_KEY));
+		assertEquals(0.2f, this.interceptor.getFailureRate(TARGET_KEY), 0.001f);
+		assertTrue(this.transitions.isEmpty());
+	}
+
+	public void testOpensAtFailureRate() throws Exception {
+		this.proxy.getAge();
+		this.proxy.getAge();
+		failInvocation();
+		assertEquals(CircuitBreakerInterceptor.STATE_CLOSED, this.interceptor.getState(TARGET_KEY));
+		failInvocation();
+		assertEquals(CircuitBreakerInterceptor.STATE_OPEN, this.interceptor.getState(TARGET_KEY));
+		try {
+			this.proxy.getAge();
+			fail("Should have thrown CircuitBreakerOpenException");
+		}
+		catch (CircuitBreakerOpenException ex) {
+			assertEquals(TARGET_KEY, ex.getTargetKey());
+		}
+		assertEquals(1, this.interceptor.getRejectedCount(TARGET_KEY));
+		assertEquals(1, this.transitions.size());
+		assertEquals("CLOSED->OPEN", this.transitions.get(0));
+	}
+
+	public void testHalfOpenProbesClose() throws Exception {
+		openCircuit();
+		Thread.sleep(150);
+		assertEquals(50, this.proxy.getAge());
+		assertEquals(CircuitBreakerInterceptor.STATE_HALF_OPEN, this.interceptor.getState(TARGET_KEY));
+		assertEquals(50, this.proxy.getAge());
+		assertEquals(CircuitBreakerInterceptor.STATE_CLOSED, this.interceptor.getState(TARGET_KEY));
+		assertEquals("OPEN->HALF_OPEN", this.transitions.get(1));
+		assertEquals("HALF_OPEN->CLOSED", this.transitions.get(2));
+	}
+
+	public void testHalfOpenProbesReopen() throws Exception {
+		openCircuit();
+		Thread.sleep(150);
+		failInvocation();
+		this.proxy.getAge();
+		assertEquals(CircuitBreakerInterceptor.STATE_OPEN, this.interceptor.getState(TARGET_KEY));
+		assertEquals("HALF_OPEN->OPEN", this.transitions.get(2));
+	}
+
+	public void testHalfOpenPermitsLimitedProbes() throws Exception {
+		Object lock = new Object();
+		String blockingKey = "blockingTestBean";
+		final ITestBean blockingProxy = createProxy(new BlockingTestBean(lock), blockingKey);
+		this.interceptor.open(blockingKey);
+		Thread.sleep(150);
+		Thread[] probes = new Thread[2];
+		synchronized (lock) {
+			for (int i = 0; i < probes.length; i++) {
+				probes[i] = new Thread() {
+					public void run() {
+						blockingProxy.getAge();
+					}
+				};
+				probes[i].start();
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!CircuitBreakerInterceptor.STATE_HALF_OPEN.equals(this.interceptor.getState(blockingKey)) &&
+					System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(50);
+			try {
+				blockingProxy.getAge();
+				fail("Should have thrown CircuitBreakerOpenException");
+			}
+			catch (CircuitBreakerOpenException ex) {
+				// expected: both probes in progress
+			}
+		}
+		for (int i = 0; i < probes.length; i++) {
+			probes[i].join();
+		}
+		assertEquals(CircuitBreakerInterceptor.STATE_CLOSED, this.interceptor.getState(blockingKey));
+	}
+
+	public void testOpensAtSlowCallRate() throws Exception {
+		this.interceptor.setSlowCallDurationThreshold(20);
+		this.interceptor.setSlowCallRateThreshold(0.5f);
+		String slowKey = "slowTestBean";
+		ITestBean slowProxy = createProxy(new SlowTestBean(), slowKey);
+		for (int i = 0; i < 4; i++) {
+			slowProxy.getAge();
+		}
+		assertEquals(CircuitBreakerInterceptor.STATE_OPEN, this.interceptor.getState(slowKey));
+		assertEquals(1, this.interceptor.getTargetKeys().length);
+	}
+
+	public void testHalfOpenStateTimeout() throws Exception {
+		this.interceptor.setHalfOpenStateTimeout(100);
+		Object lock = new Object();
+		String blockingKey = "blockingTestBean";
+		final ITestBean blockingProxy = createProxy(new BlockingTestBean(lock), blockingKey);
+		this.interceptor.open(blockingKey);
+		Thread.sleep(150);
+		Thread probe = new Thread() {
+			public void run() {
+				blockingProxy.getAge();
+			}
+		};
+		synchronized (lock) {
+			probe.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!CircuitBreakerInterceptor.STATE_HALF_OPEN.equals(this.interceptor.getState(blockingKey)) &&
+					System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(150);
+			try {
+				blockingProxy.getAge();
+				fail("Should have thrown CircuitBreakerOpenException");
+			}
+			catch (CircuitBreakerOpenException ex) {
+				// expected: probe did not complete in time
+			}
+			assertEquals(CircuitBreakerInterceptor.STATE_OPEN, this.interceptor.getState(blockingKey));
+		}
+		probe.join();
+		// the late probe result must not close the circuit
+		assertEquals(CircuitBreakerInterceptor.STATE_OPEN, this.interceptor.getState(blockingKey));
+		assertEquals("HALF_OPEN->OPEN", this.transitions.get(this.transitions.size() - 1));
+	}
+
+	public void testTargetsDistinguishedByIdentity() throws Exception {
+		ITestBean proxy1 = createProxy(new TestBean("juergen", 50), null);
+		ITestBean proxy2 = createProxy(new TestBean("rod", 40), null);
+		for (int i = 0; i < 4; i++) {
+			try {
+				proxy1.exceptional(new IllegalStateException());
+				fail("Should have thrown IllegalStateException");
+			}
+			catch (IllegalStateException ex) {
+				// expected
+			}
+			catch (Throwable ex) {
+				fail("Unexpected exception: " + ex);
+			}
+		}
+		try {
+			proxy1.getAge();
+			fail("Should have thrown CircuitBreakerOpenException");
+		}
+		catch (CircuitBreakerOpenException ex) {
+			assertTrue(ex.getTargetKey().startsWith(TestBean.class.getName() + "@"));
+		}
+		// another instance of the same class does not share the circuit
+		assertEquals(40, proxy2.getAge());
+		assertEquals(2, this.interceptor.getTargetKeys().length);
+	}
+
+	public void testIgnoredExceptions() throws Exception {
+		this.interceptor.setIgnoredExceptions(new Class[] {IOException.class});
+		for (int i = 0; i < 10; i++) {
+			try {
+				this.proxy.unreliableFileOperation();
+			}
+			catch (IOException ex) {
+				// expected
+			}
+		}
+		assertEquals(CircuitBreakerInterceptor.STATE_CLOSED, this.interceptor.getState(TARGET_KEY));
+	}
+
+	public void testManualOperations() throws Exception {
+		this.proxy.getAge();
+		this.interceptor.open(TARGET_KEY);
+		assertEquals(CircuitBreakerInterceptor.STATE_OPEN, this.interceptor.getState(TARGET_KEY));
+		this.interceptor.closeAll();
+		assertEquals(CircuitBreakerInterceptor.STATE_CLOSED, this.interceptor.getState(TARGET_KEY));
+		assertEquals(1, this.interceptor.getTargetKeys().length);
+		assertEquals(1, this.interceptor.getCircuitSummary().length);
+		assertTrue(this.interceptor.getCircuitSummary()[0].startsWith(TARGET_KEY + ": CLOSED"));
+		try {
+			this.interceptor.getState("unknown");
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testEventPublisher() throws Exception {
+		StaticApplicationContext ac = new StaticApplicationContext();
+		ac.registerSingleton("publisher", CircuitBreakerEventPublisher.class);
+		final List events = new ArrayList();
+		ac.addApplicationListener(new ApplicationListener() {
+			public void onApplicationEvent(ApplicationEvent event) {
+				if (event instanceof CircuitBreakerStateChangedEvent) {
+					events.add(event);
+				}
+			}
+		});
+		ac.refresh();
+		this.interceptor.setListeners(new CircuitBreakerListener[] {(CircuitBreakerListener) ac.getBean("publisher")});
+		openCircuit();
+		assertEquals(1, events.size());
+		CircuitBreakerStateChangedEvent event = (CircuitBreakerStateChangedEvent) events.get(0);
+		assertSame(this.interceptor, event.getCircuitBreakerInterceptor());
+		assertEquals(TARGET_KEY, event.getTargetKey());
+		assertEquals(CircuitBreakerInterceptor.STATE_CLOSED, event.getOldState());
+		assertEquals(CircuitBreakerInterceptor.STATE_OPEN, event.getNewState());
+	}
+
+
+	private void openCircuit() {
+		for (int i = 0; i < 4; i++) {
+			failInvocation();
+		}
+		assertEquals(CircuitBreakerInterceptor.STATE_OPEN, this.interceptor.getState(TARGET_KEY));
+	}
+
+	private void failInvocation() {
+		try {
+			this.proxy.exceptional(new IllegalStateException());
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		catch (Throwable ex) {
+			fail("Unexpected exception: " + ex);
+		}
+	}
+
+
+	private static class BlockingTestBean extends TestBean {
+
+		private final Object lock;
+
+		public BlockingTestBean(Object lock) {
+			this.lock = lock;
+		}
+
+		public int getAge() {
+			synchronized (this.lock) {
+				return 1;
+			}
+		}
+	}
+
+
+	private static class SlowTestBean extends TestBean {
+
+		public int getAge() {
+			try {
+				Thread.sleep(40);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return 1;
+		}
+	}
+
+}
@@ -66,12 +66,61 @@ public class ConcurrencyThrottleInterceptorTests extends TestCase {
 		testMultipleThreads(10);
 	}
 
+	public void testMultipleThreadsWithFairThrottle() {
+		testMultipleThreads(10, true);
+	}
+
+	public void testAccessTimeout() throws Throwable {
+		final ConcurrencyThrottleInterceptor cti = new ConcurrencyThrottleInterceptor();
+		cti.setAccessTimeout(100);
+		final Object blocker = new Object();
+		ProxyFactory proxyFactory = new ProxyFactory();
+		proxyFactory.setInterfaces(new Class[] {ITestBean.class});
+		proxyFactory.addAdvice(cti);
+		proxyFactory.setTarget(new TestBean() {
+			public String getName() {
+				synchronized (blocker) {
+					return super.getName();
+				}
+			}
+		});
+		final ITestBean proxy = (ITestBean) proxyFactory.getProxy();
+		Thread blockedThread = new Thread() {
+			public void run() {
+				proxy.getName();
+			}
+		};
+		synchronized (blocker) {
+			blockedThread.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (cti.getConcurrencyCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, cti.getConcurrencyCount());
+			try {
+				proxy.getName();
+				fail("Should have thrown IllegalStateException");
+			}
+			catch (IllegalStateException ex) {
+				// expected
+			}
+		}
+		blockedThread.join();
+		assertEquals(0, cti.getConcurrencyCount());
+		proxy.getName();
+	}
+
 	private void testMultipleThreads(int concurrencyLimit) {
+		testMultipleThreads(concurrencyLimit, false);
+	}
+
+	private void testMultipleThreads(int concurrencyLimit, boolean fair) {
 		TestBean tb = new TestBean();
 		ProxyFactory proxyFactory = new ProxyFactory();
 		proxyFactory.setInterfaces(new Class[] {ITestBean.class});
 		ConcurrencyThrottleInterceptor cti = new ConcurrencyThrottleInterceptor();
 		cti.setConcurrencyLimit(concurrencyLimit);
+		cti.setFair(fair);
 		proxyFactory.addAdvice(cti);
 		proxyFactory.setTarget(tb);
 		ITestBean proxy = (ITestBean) proxyFactory.getProxy();
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.factory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.TestBean;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+/**
+ * @since 2.5.7
+ */
+public class ParallelPreInstantiationTests extends TestCase {
+
+	private static final Map creationThreads = Collections.synchronizedMap(new HashMap());
+
+	private static final Map initStartTimes = Collections.synchronizedMap(new HashMap());
+
+	private static final Map initEndTimes = Collections.synchronizedMap(new HashMap());
+
+	private DefaultListableBeanFactory factory;
+
+
+	protected void setUp() {
+		creationThreads.clear();
+		initStartTimes.clear();
+		initEndTimes.clear();
+		this.factory = new DefaultListableBeanFactory();
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("preInstantiation-");
+		executor.setConcurrencyLimit(4);
+		this.factory.setPreInstantiationExecutor(executor);
+	}
+
+	protected void tearDown() {
+		this.factory.destroySingletons();
+	}
+
+
+	public void testIndependentBeansCreatedInParallel() {
+		this.factory.registerBeanDefinition("slow1", new RootBeanDefinition(SlowInitBean.class));
+		this.factory.registerBeanDefinition("slow2", new RootBeanDefinition(SlowInitBean.class));
+		this.factory.registerBeanDefinition("slow3", new RootBeanDefinition(SlowInitBean.class));
+		RootBeanDefinition lazy = new RootBeanDefinition(SlowInitBean.class);
+		lazy.setLazyInit(true);
+		this.factory.registerBeanDefinition("lazy", lazy);
+
+		this.factory.preInstantiateSingletons();
+
+		// All initializations overlapped: each one started before any of them ended.
+		long latestStart = Math.max(getInitStartTime("slow1"), Math.max(getInitStartTime("slow2"), getInitStartTime("slow3")));
+		long earliestEnd = Math.min(getInitEndTime("slow1"), Math.min(getInitEndTime("slow2"), getInitEndTime("slow3")));
+		assertTrue("Initializations did not overlap", latestStart < earliestEnd);
+		assertEquals(3, creationThreads.size());
+		assertFalse(creationThreads.get("slow1").equals(creationThreads.get("slow2")));
+		assertFalse(creationThreads.get("slow2").equals(creationThreads.get("slow3")));
+		assertFalse(this.factory.containsSingleton("lazy"));
+		assertFalse(creationThreads.containsValue(Thread.currentThread().getName()));
+	}
+
+	public void testDependentBeansCreatedInSameGroup() {
+		MutablePropertyValues pvs = new MutablePropertyValues();
+		pvs.addPropertyValue("spouse", new RuntimeBeanReference("referenced"));
+		this.factory.registerBeanDefinition("referencing", new RootBeanDefinition(SlowInitBean.class, pvs));
+		this.factory.registerBeanDefinition("referenced", new RootBeanDefinition(SlowInitBean.class));
+		RootBeanDefinition dependent = new RootBeanDefinition(SlowInitBean.class);
+		dependent.setDependsOn(new String[] {"dependee"});
+		this.factory.registerBeanDefinition("dependent", dependent);
+		this.factory.registerBeanDefinition("dependee", new RootBeanDefinition(SlowInitBean.class));
+		RootBeanDefinition autowired = new RootBeanDefinition(AutowiredBean.class);
+		autowired.setAutowireMode(RootBeanDefinition.AUTOWIRE_BY_TYPE);
+		this.factory.registerBeanDefinition("autowired", autowired);
+		this.factory.registerBeanDefinition("candidate", new RootBeanDefinition(CandidateBean.class));
+
+		this.factory.preInstantiateSingletons();
+
+		assertEquals(creationThreads.get("referencing"), creationThreads.get("referenced"));
+		assertEquals(creationThreads.get("dependent"), creationThreads.get("dependee"));
+		assertEquals(creationThreads.get("autowired"), creationThreads.get("candidate"));
+		assertSame(this.factory.getBean("referenced"), ((TestBean) this.factory.getBean("referencing")).getSpouse());
+		assertSame(this.factory.getBean("candidate"), ((AutowiredBean) this.factory.getBean("autowired")).getCandidate());
+	}
+
+	public void testCircularReference() {
+		MutablePropertyValues pvs1 = new MutablePropertyValues();
+		pvs1.addPropertyValue("spouse", new RuntimeBeanReference("bean2"));
+		this.factory.registerBeanDefinition("bean1", new RootBeanDefinition(TestBean.class, pvs1));
+		MutablePropertyValues pvs2 = new MutablePropertyValues();
+		pvs2.addPropertyValue("spouse", new RuntimeBeanReference("bean1"));
+		this.factory.registerBeanDefinition("bean2", new RootBeanDefinition(TestBean.class, pvs2));
+
+		this.factory.preInstantiateSingletons();
+
+		TestBean bean1 = (TestBean) this.factory.getBean("bean1");
+		TestBean bean2 = (TestBean) this.factory.getBean("bean2");
+		assertSame(bean2, bean1.getSpouse());
+		assertSame(bean1, bean2.getSpouse());
+	}
+
+	public void testUndeclaredDependencyWaitsForCreatingThread() {
+		RootBeanDefinition lookup = new RootBeanDefinition(LookupBean.class);
+		lookup.getPropertyValues().addPropertyValue("lookupName", "slow");
+		this.factory.registerBeanDefinition("lookup", lookup);
+		this.factory.registerBeanDefinition("slow", new RootBeanDefinition(SlowInitBean.class));
+
+		this.factory.preInstantiateSingletons();
+
+		LookupBean lookupBean = (LookupBean) this.factory.getBean("lookup");
+		assertSame(this.factory.getBean("slow"), lookupBean.getLookedUp());
+		assertTrue(((SlowInitBean) lookupBean.getLookedUp()).isInitialized());
+	}
+
+	public void testUndeclaredCircularReferenceAcrossThreads() {
+		RootBeanDefinition lookup1 = new RootBeanDefinition(LookupBean.class);
+		lookup1.getPropertyValues().addPropertyValue("lookupName", "lookup2");
+		this.factory.registerBeanDefinition("lookup1", lookup1);
+		RootBeanDefinition lookup2 = new RootBeanDefinition(LookupBean.class);
+		lookup2.getPropertyValues().addPropertyValue("lookupName", "lookup1");
+		this.factory.registerBeanDefinition("lookup2", lookup2);
+
+		this.factory.preInstantiateSingletons();
+
+		LookupBean bean1 = (LookupBean) this.factory.getBean("lookup1");
+		LookupBean bean2 = (LookupBean) this.factory.getBean("lookup2");
+		assertSame(bean2, bean1.getLookedUp());
+		assertSame(bean1, bean2.getLookedUp());
+	}
+
+	public void testCreationFailurePropagated() {
+		this.factory.registerBeanDefinition("slow", new RootBeanDefinition(SlowInitBean.class));
+		this.factory.registerBeanDefinition("failing", new RootBeanDefinition(FailingBean.class));
+		try {
+			this.factory.preInstantiateSingletons();
+			fail("Should have thrown BeanCreationException");
+		}
+		catch (BeanCreationException ex) {
+			assertEquals("failing", ex.getBeanName());
+		}
+	}
+
+
+	private static long getInitStartTime(String beanName) {
+		return ((Long) initStartTimes.get(beanName)).longValue();
+	}
+
+	private static long getInitEndTime(String beanName) {
+		return ((Long) initEndTimes.get(beanName)).longValue();
+	}
+
+
+	public static class SlowInitBean extends TestBean implements BeanNameAware, InitializingBean {
+
+		public static final long INIT_MILLIS = 200;
+
+		private String beanName;
+
+		private volatile boolean initialized;
+
+		public void setBeanName(String beanName) {
+			this.beanName = beanName;
+		}
+
+		public void afterPropertiesSet() throws InterruptedException {
+			creationThreads.put(this.beanName, Thread.currentThread().getName());
+			initStartTimes.put(this.beanName, new Long(System.currentTimeMillis()));
+			Thread.sleep(INIT_MILLIS);
+			initEndTimes.put(this.beanName, new Long(System.currentTimeMillis()));
+			this.initialized = true;
+		}
+
+		public boolean isInitialized() {
+			return this.initialized;
+		}
+	}
+
+
+	public static class CandidateBean extends SlowInitBean {
+	}
+
+
+	public static class AutowiredBean implements BeanNameAware, InitializingBean {
+
+		private String beanName;
+
+		private CandidateBean candidate;
+
+		public void setBeanName(String beanName) {
+			this.beanName = beanName;
+		}
+
+		public void setCandidate(CandidateBean candidate) {
+			this.candidate = candidate;
+		}
+
+		public CandidateBean getCandidate() {
+			return this.candidate;
+		}
+
+		public void afterPropertiesSet() {
+			creationThreads.put(this.beanName, Thread.currentThread().getName());
+		}
+	}
+
+
+	public static class LookupBean implements BeanFactoryAware, InitializingBean {
+
+		private BeanFactory beanFactory;
+
+		private String lookupName;
+
+		private Object lookedUp;
+
+		public void setBeanFactory(BeanFactory beanFactory) {
+			this.beanFactory = beanFactory;
+		}
+
+		public void setLookupName(String lookupName) {
+			this.lookupName = lookupName;
+		}
+
+		public void afterPropertiesSet() throws InterruptedException {
+			// Make sure that the other bean is in creation already.
+			Thread.sleep(100);
+			this.lookedUp = this.beanFactory.getBean(this.lookupName);
+		}
+
+		public Object getLookedUp() {
+			return this.lookedUp;
+		}
+	}
+
+
+	public static class FailingBean implements InitializingBean {
+
+		public void afterPropertiesSet() {
+			throw new IllegalStateException("Creation failed");
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.support;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.TestBean;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.BeanCreationProfile;
+import org.springframework.beans.factory.support.BeanCreationProfiler;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.StartupProfileEvent;
+import org.springframework.util.StringUtils;
+
+/**
+ * @since 2.5.7
+ */
+public class StartupProfilerTests extends TestCase {
+
+	private StaticApplicationContext context;
+
+	private StartupProfiler profiler;
+
+	private List events;
+
+
+	protected void setUp() {
+		this.context = new StaticApplicationContext();
+		MutablePropertyValues pvs = new MutablePropertyValues();
+		pvs.addPropertyValue("spouse", new RuntimeBeanReference("slow"));
+		this.context.registerSingleton("parent", TestBean.class, pvs);
+		this.context.registerSingleton("slow", SlowInitBean.class);
+		this.context.registerPrototype("prototype", TestBean.class);
+		this.profiler = new StartupProfiler();
+		this.context.setStartupProfiler(this.profiler);
+		this.events = new ArrayList();
+		this.context.addApplicationListener(new ApplicationListener() {
+			public void onApplicationEvent(ApplicationEvent event) {
+				if (event instanceof StartupProfileEvent) {
+					events.add(event);
+				}
+			}
+		});
+		this.context.refresh();
+	}
+
+	protected void tearDown() {
+		this.context.close();
+	}
+
+
+	public void testRecordsBeanCreation() {
+		BeanCreationProfiler beanProfiler = this.profiler.getBeanCreationProfiler();
+		BeanCreationProfile parent = beanProfiler.getBeanProfile("parent");
+		BeanCreationProfile slow = beanProfiler.getBeanProfile("slow");
+		assertNotNull(parent);
+		assertNotNull(slow);
+		assertTrue(parent.isCompleted());
+		assertEquals(TestBean.class.getName(), parent.getBeanClassName());
+		assertEquals("parent", slow.getParentBeanName());
+		assertEquals(1, parent.getDependencies().length);
+		assertEquals("slow", parent.getDependencies()[0]);
+		assertEquals("parent -> slow", this.profiler.getDependencyChain("slow"));
+		assertNull(this.profiler.getDependencyChain("prototype"));
+
+		assertTrue(slow.getPhaseMillis(BeanCreationProfiler.PHASE_INIT_METHODS) >= 40);
+		assertTrue(parent.getTotalMillis() >= slow.getTotalMillis());
+		assertEquals(parent.getTotalMillis() - slow.getTotalMillis(), parent.getSelfMillis(), 0.001);
+		assertTrue(parent.getPhaseMillis(BeanCreationProfiler.PHASE_POPULATION) <= parent.getSelfMillis() + 0.001);
+		assertTrue(this.profiler.getSlowestBeans()[0].startsWith("slow: "));
+	}
+
+	public void testRecordsFailedPhase() {
+		StaticApplicationContext failingContext = new StaticApplicationContext();
+		failingContext.registerSingleton("failing", FailingInitBean.class);
+		StartupProfiler failingProfiler = new StartupProfiler();
+		failingContext.setStartupProfiler(failingProfiler);
+		try {
+			failingContext.refresh();
+			fail("Should have thrown BeanCreationException");
+		}
+		catch (BeanCreationException ex) {
+			// expected
+		}
+		BeanCreationProfile failing = failingProfiler.getBeanCreationProfiler().getBeanProfile("failing");
+		assertTrue(failing.isCompleted());
+		assertTrue(failing.getPhaseMillis(BeanCreationProfiler.PHASE_INIT_METHODS) >= 20);
+	}
+
+	public void testRecordsRefreshPhases() {
+		String[] phases = this.profiler.getRefreshPhaseSummary();
+		assertEquals(9, phases.length);
+		assertTrue(phases[1].startsWith("obtainFreshBeanFactory: "));
+		assertTrue(phases[7].startsWith("finishBeanFactoryInitialization: "));
+		assertTrue(this.profiler.getRefreshMillis() >= 40);
+	}
+
+	public void testPublishesEventAndRegistersProfiler() {
+		assertEquals(1, this.events.size());
+		assertSame(this.profiler, ((StartupProfileEvent) this.events.get(0)).getStartupProfiler());
+		assertSame(this.context, ((StartupProfileEvent) this.events.get(0)).getApplicationContext());
+		assertSame(this.profiler, this.context.getBean(AbstractApplicationContext.STARTUP_PROFILER_BEAN_NAME));
+	}
+
+	public void testStopsProfilingAfterRefresh() {
+		int beanCount = this.profiler.getBeanCount();
+		this.context.getBean("prototype");
+		assertEquals(beanCount, this.profiler.getBeanCount());
+		assertNull(this.context.getDefaultListableBeanFactory().getBeanCreationProfiler());
+	}
+
+	public void testReports() throws Exception {
+		String report = this.profiler.getReport();
+		assertTrue(report.indexOf("Refresh phases:") != -1);
+		assertTrue(report.indexOf("\nparent [total ") != -1);
+		assertTrue(report.indexOf("\n  slow [total ") != -1);
+
+		StringWriter writer = new StringWriter();
+		this.profiler.getBeanCreationProfiler().writeCsv(writer);
+		String[] lines = StringUtils.tokenizeToStringArray(writer.toString(), "\r\n");
+		assertEquals(this.profiler.getBeanCount() + 1, lines.length);
+		assertTrue(lines[0].startsWith("beanName,beanClassName,parentBeanName,"));
+		assertTrue(writer.toString().indexOf("slow," + SlowInitBean.class.getName() + ",parent,") != -1);
+	}
+
+
+	public static class SlowInitBean extends TestBean implements InitializingBean {
+
+		public void afterPropertiesSet() throws InterruptedException {
+			Thread.sleep(50);
+		}
+	}
+
+
+	public static class FailingInitBean extends TestBean implements InitializingBean {
+
+		public void afterPropertiesSet() throws InterruptedException {
+			Thread.sleep(20);
+			throw new IllegalStateException("init failure");
+		}
+	}
+
+}
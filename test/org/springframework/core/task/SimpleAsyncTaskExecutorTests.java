@@ -69,6 +69,86 @@ public final class SimpleAsyncTaskExecutorTests extends TestCase {
 		}
 	}
 
+	public void testReusesIdleThreadWithinKeepAlivePeriod() throws Exception {
+		final Object monitor = new Object();
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+		executor.setKeepAliveSeconds(10);
+		ThreadHarvester task1 = new ThreadHarvester(monitor);
+		executeAndWait(executor, task1, monitor);
+		waitForIdleThreads(executor, 1);
+		ThreadHarvester task2 = new ThreadHarvester(monitor);
+		executeAndWait(executor, task2, monitor);
+		assertSame(task1.getThread(), task2.getThread());
+	}
+
+	public void testIdleThreadTerminatesAfterKeepAlivePeriod() throws Exception {
+		final Object monitor = new Object();
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+		executor.setKeepAliveSeconds(1);
+		ThreadHarvester task = new ThreadHarvester(monitor);
+		executeAndWait(executor, task, monitor);
+		task.getThread().join(5000);
+		assertFalse(task.getThread().isAlive());
+		assertEquals(0, executor.getIdleThreadCount());
+	}
+
+	public void testShutdownReleasesIdleThreads() throws Exception {
+		final Object monitor = new Object();
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+		executor.setKeepAliveSeconds(60);
+		ThreadHarvester task1 = new ThreadHarvester(monitor);
+		executeAndWait(executor, task1, monitor);
+		waitForIdleThreads(executor, 1);
+
+		executor.shutdown();
+		task1.getThread().join(5000);
+		assertFalse(task1.getThread().isAlive());
+		assertEquals(0, executor.getIdleThreadCount());
+
+		ThreadHarvester task2 = new ThreadHarvester(monitor);
+		executeAndWait(executor, task2, monitor);
+		task2.getThread().join(5000);
+		assertFalse(task2.getThread().isAlive());
+		assertEquals(0, executor.getIdleThreadCount());
+	}
+
+	public void testDoesNotReuseThreadsByDefault() throws Exception {
+		final Object monitor = new Object();
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+		ThreadHarvester task = new ThreadHarvester(monitor);
+		executeAndWait(executor, task, monitor);
+		task.getThread().join(5000);
+		assertFalse(task.getThread().isAlive());
+	}
+
+	public void testStartTimeoutAppliesToConcurrencyThrottle() throws Exception {
+		final Object blocker = new Object();
+		SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+		executor.setConcurrencyLimit(1);
+		synchronized (blocker) {
+			executor.execute(new Runnable() {
+				public void run() {
+					synchronized (blocker) {
+					}
+				}
+			});
+			try {
+				executor.execute(new NoOpRunnable(), 100);
+				fail("Should have thrown TaskTimeoutException");
+			}
+			catch (TaskTimeoutException expected) {
+			}
+		}
+	}
+
+	private void waitForIdleThreads(SimpleAsyncTaskExecutor executor, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (executor.getIdleThreadCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, executor.getIdleThreadCount());
+	}
+
 	private void executeAndWait(SimpleAsyncTaskExecutor executor, Runnable task, Object monitor) {
 		synchronized (monitor) {
 			executor.execute(task);
@@ -112,6 +192,24 @@ public final class SimpleAsyncTaskExecutorTests extends TestCase {
 	}
 
 
+	private static final class ThreadHarvester extends AbstractNotifyingRunnable {
+
+		private Thread thread;
+
+		protected ThreadHarvester(Object monitor) {
+			super(monitor);
+		}
+
+		public Thread getThread() {
+			return this.thread;
+		}
+
+		protected void doRun() {
+			this.thread = Thread.currentThread();
+		}
+	}
+
+
 	private static final class ThreadNameHarvester extends AbstractNotifyingRunnable {
 
 		private String threadName;
@@ -16,10 +16,15 @@
 
 package org.springframework.jms.connection;
 
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
+import javax.jms.MessageProducer;
 import javax.jms.QueueConnection;
 import javax.jms.QueueConnectionFactory;
 import javax.jms.QueueSession;
@@ -31,6 +36,8 @@ import javax.jms.TopicSession;
 import junit.framework.TestCase;
 import org.easymock.MockControl;
 
+import org.springframework.jms.StubQueue;
+
 /**
  * @author Juergen Hoeller
  * @since 26.07.2004
@@ -524,6 +531,200 @@ public class SingleConnectionFactoryTests extends TestCase {
 		nonTxSessionControl.verify();
 	}
 
+	public void testCachingConnectionFactoryWithSessionCacheStatistics() throws JMSException {
+		MockControl cfControl = MockControl.createControl(ConnectionFactory.class);
+		ConnectionFactory cf = (ConnectionFactory) cfControl.getMock();
+		MockControl conControl = MockControl.createNiceControl(Connection.class);
+		Connection con = (Connection) conControl.getMock();
+		MockControl session1Control = MockControl.createControl(Session.class);
+		Session session1 = (Session) session1Control.getMock();
+		MockControl session2Control = MockControl.createControl(Session.class);
+		Session session2 = (Session) session2Control.getMock();
+
+		cf.createConnection();
+		cfControl.setReturnValue(con, 1);
+		con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		conControl.setReturnValue(session1, 1);
+		conControl.setReturnValue(session2, 1);
+		session1.close();
+		session1Control.setVoidCallable(1);
+		session2.close();
+		session2Control.setVoidCallable(1);
+
+		cfControl.replay();
+		conControl.replay();
+		session1Control.replay();
+		session2Control.replay();
+
+		CachingConnectionFactory scf = new CachingConnectionFactory(cf);
+		Connection con1 = scf.createConnection();
+		Session s1 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		Session s2 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		assertEquals(2, scf.getActiveSessionCount());
+		assertEquals(2, scf.getSessionCacheMissCount());
+		assertEquals(2.0, scf.getSessionCacheUtilization(), 0.0);
+		s1.close();
+		s2.close();  // cache full: should lead to physical close
+		s1.close();  // should be ignored
+		assertEquals(0, scf.getActiveSessionCount());
+		assertEquals(1, scf.getCachedSessionCount());
+
+		Session s3 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		assertSame(session1, ((SessionProxy) s3).getTargetSession());
+		assertEquals(1, scf.getSessionCacheHitCount());
+		assertEquals(1.0 / 3, scf.getSessionCacheHitRatio(), 0.001);
+		s3.close();
+		scf.destroy();  // should trigger actual close
+
+		cfControl.verify();
+		session1Control.verify();
+		session2Control.verify();
+	}
+
+	public void testCachingConnectionFactoryWithProducerCacheSize() throws JMSException {
+		MockControl cfControl = MockControl.createControl(ConnectionFactory.class);
+		ConnectionFactory cf = (ConnectionFactory) cfControl.getMock();
+		MockControl conControl = MockControl.createNiceControl(Connection.class);
+		Connection con = (Connection) conControl.getMock();
+		MockControl sessionControl = MockControl.createControl(Session.class);
+		Session session = (Session) sessionControl.getMock();
+		MockControl producer1Control = MockControl.createNiceControl(MessageProducer.class);
+		MessageProducer producer1 = (MessageProducer) producer1Control.getMock();
+		MockControl producer2Control = MockControl.createNiceControl(MessageProducer.class);
+		MessageProducer producer2 = (MessageProducer) producer2Control.getMock();
+		StubQueue queue1 = new StubQueue("queue1");
+		StubQueue queue2 = new StubQueue("queue2");
+
+		cf.createConnection();
+		cfControl.setReturnValue(con, 1);
+		con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		conControl.setReturnValue(session, 1);
+		session.createProducer(queue1);
+		sessionControl.setReturnValue(producer1, 1);
+		session.createProducer(queue2);
+		sessionControl.setReturnValue(producer2, 1);
+		session.getTransacted();
+		sessionControl.setReturnValue(false, 1);
+		session.close();
+		sessionControl.setVoidCallable(1);
+		producer1.close();
+		producer1Control.setVoidCallable(1);
+		producer2.close();
+		producer2Control.setVoidCallable(1);
+
+		cfControl.replay();
+		conControl.replay();
+		sessionControl.replay();
+		producer1Control.replay();
+		producer2Control.replay();
+
+		CachingConnectionFactory scf = new CachingConnectionFactory(cf);
+		scf.setProducerCacheSize(1);
+		Connection con1 = scf.createConnection();
+		Session session1 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		session1.createProducer(queue1);
+		session1.createProducer(queue2);
+		session1.createProducer(queue2);  // should be served from the cache
+		session1.close();  // should evict producer for queue1
+		producer1Control.verify();
+		scf.destroy();  // should trigger actual close
+
+		cfControl.verify();
+		sessionControl.verify();
+		producer2Control.verify();
+	}
+
+	public void testCachingConnectionFactoryWithSessionThreadAffinity() throws JMSException {
+		MockControl cfControl = MockControl.createControl(ConnectionFactory.class);
+		ConnectionFactory cf = (ConnectionFactory) cfControl.getMock();
+		MockControl conControl = MockControl.createNiceControl(Connection.class);
+		Connection con = (Connection) conControl.getMock();
+		MockControl session1Control = MockControl.createControl(Session.class);
+		Session session1 = (Session) session1Control.getMock();
+		MockControl session2Control = MockControl.createControl(Session.class);
+		Session session2 = (Session) session2Control.getMock();
+
+		cf.createConnection();
+		cfControl.setReturnValue(con, 1);
+		con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		conControl.setReturnValue(session1, 1);
+		conControl.setReturnValue(session2, 1);
+		session1.close();
+		session1Control.setVoidCallable(1);
+		session2.close();
+		session2Control.setVoidCallable(1);
+
+		cfControl.replay();
+		conControl.replay();
+		session1Control.replay();
+		session2Control.replay();
+
+		CachingConnectionFactory scf = new CachingConnectionFactory(cf);
+		scf.setSessionCacheSize(2);
+		scf.setSessionThreadAffinity(true);
+		Connection con1 = scf.createConnection();
+		Session s1 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		Session s2 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		s1.close();
+		s2.close();
+		s2 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		assertSame(session2, ((SessionProxy) s2).getTargetSession());
+		s1 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		assertSame(session1, ((SessionProxy) s1).getTargetSession());
+		assertEquals(2, scf.getSessionCacheHitCount());
+		s1.close();
+		s2.close();
+		scf.destroy();  // should trigger actual close
+
+		cfControl.verify();
+		session1Control.verify();
+		session2Control.verify();
+	}
+
+	public void testCachingConnectionFactoryWithDeprecatedSessionProxyHook() throws JMSException {
+		MockControl cfControl = MockControl.createControl(ConnectionFactory.class);
+		ConnectionFactory cf = (ConnectionFactory) cfControl.getMock();
+		MockControl conControl = MockControl.createNiceControl(Connection.class);
+		Connection con = (Connection) conControl.getMock();
+		MockControl sessionControl = MockControl.createControl(Session.class);
+		Session session = (Session) sessionControl.getMock();
+
+		cf.createConnection();
+		cfControl.setReturnValue(con, 1);
+		con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		conControl.setReturnValue(session, 1);
+		session.getTransacted();
+		sessionControl.setReturnValue(false, 1);
+		session.getAcknowledgeMode();
+		sessionControl.setReturnValue(Session.AUTO_ACKNOWLEDGE, 1);
+		session.close();
+		sessionControl.setVoidCallable(1);
+
+		cfControl.replay();
+		conControl.replay();
+		sessionControl.replay();
+
+		final List proxiedSessions = new ArrayList();
+		CachingConnectionFactory scf = new CachingConnectionFactory(cf) {
+			protected Session getCachedSessionProxy(Session target, LinkedList sessionList) {
+				proxiedSessions.add(target);
+				return super.getCachedSessionProxy(target, sessionList);
+			}
+		};
+		Connection con1 = scf.createConnection();
+		Session s1 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		s1.close();
+		s1 = con1.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		assertSame(session, ((SessionProxy) s1).getTargetSession());
+		s1.close();
+		assertEquals(1, proxiedSessions.size());
+		assertEquals(1, scf.getSessionCacheHitCount());
+		scf.destroy();  // should trigger actual close
+
+		cfControl.verify();
+		sessionControl.verify();
+	}
+
 	public void testCachingConnectionFactoryWithQueueConnectionFactoryAndJms102Usage() throws JMSException {
 		MockControl cfControl = MockControl.createControl(QueueConnectionFactory.class);
 		QueueConnectionFactory cf = (QueueConnectionFactory) cfControl.getMock();
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+import javax.jms.TextMessage;
+
+import junit.framework.TestCase;
+
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.jms.StubQueue;
+import org.springframework.jms.remoting.JmsInvokerProxyFactoryBean;
+import org.springframework.jms.remoting.JmsInvokerServiceExporter;
+
+/**
+ * @since 2.5.7
+ */
+public class JmsRequestorTests extends TestCase {
+
+	private ReplyingConnectionFactory connectionFactory;
+
+	private JmsRequestor requestor;
+
+
+	protected void setUp() {
+		this.connectionFactory = new ReplyingConnectionFactory();
+		this.requestor = new JmsRequestor(this.connectionFactory);
+	}
+
+	protected void tearDown() {
+		this.requestor.destroy();
+	}
+
+
+	public void testSendAndReceiveThroughSharedReplyConsumer() throws Exception {
+		this.connectionFactory.responder = new Responder() {
+			public void respond(Message request, ReplyingConnectionFactory cf) throws JMSException {
+				cf.deliverReply(request.getJMSCorrelationID(), "re: " + ((TextMessage) request).getText());
+			}
+		};
+
+		for (int i = 0; i < 3; i++) {
+			TextMessage reply = (TextMessage) this.requestor.sendAndReceive("requests", new TextMessageCreator("ping" + i));
+			assertEquals("re: ping" + i, reply.getText());
+		}
+
+		assertEquals(1, this.connectionFactory.connectionCount);
+		assertEquals(1, this.connectionFactory.temporaryQueueCount);
+		// one session for the reply consumer, one cached session for sending
+		assertEquals(2, this.connectionFactory.sessionCount);
+		Message request = (Message) this.connectionFactory.requests.get(0);
+		assertTrue(request.getJMSReplyTo() instanceof TemporaryQueue);
+		assertNull(this.connectionFactory.messageSelector);
+		assertEquals(3, this.requestor.getRequestCount());
+		assertEquals(3, this.requestor.getReplyCount());
+		assertEquals(0, this.requestor.getPendingReplyCount());
+	}
+
+	public void testPendingRepliesDispatchedByCorrelationId() throws Exception {
+		PendingReply pending1 = this.requestor.sendRequest(new StubQueue(), new TextMessageCreator("one"));
+		PendingReply pending2 = this.requestor.sendRequest(new StubQueue(), new TextMessageCreator("two"));
+		assertFalse(pending1.getCorrelationId().equals(pending2.getCorrelationId()));
+		assertEquals(2, this.requestor.getPendingReplyCount());
+		assertNull(pending1.getReply(-1));
+		assertFalse(pending1.isDone());
+
+		this.connectionFactory.deliverReply(pending2.getCorrelationId(), "reply2");
+		this.connectionFactory.deliverReply(pending1.getCorrelationId(), "reply1");
+
+		assertTrue(pending1.isDone());
+		assertEquals("reply1", ((TextMessage) pending1.getReply()).getText());
+		assertEquals("reply2", ((TextMessage) pending2.getReply(10)).getText());
+		assertFalse(pending1.cancel());
+		assertEquals(0, this.requestor.getPendingReplyCount());
+	}
+
+	public void testExpiredRequestDiscardsLateReply() throws Exception {
+		this.requestor.setReplyTimeout(50);
+		long start = System.currentTimeMillis();
+		PendingReply pending = this.requestor.sendRequest("requests", new TextMessageCreator("ping"));
+		assertNull(pending.getReply(5000));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(pending.isDone());
+		assertEquals(0, this.requestor.getPendingReplyCount());
+		assertEquals(1, this.requestor.getExpiredRequestCount());
+
+		this.connectionFactory.deliverReply(pending.getCorrelationId(), "late");
+		assertEquals(1, this.requestor.getLateReplyCount());
+		assertNull(pending.getReply());
+	}
+
+	public void testBlockingSendAndReceiveReturnsNullAfterTimeout() throws Exception {
+		this.requestor.setReplyTimeout(20);
+		assertNull(this.requestor.sendAndReceive("requests", new TextMessageCreator("ping")));
+		assertEquals(0, this.requestor.getPendingReplyCount());
+	}
+
+	public void testConnectionFailureFailsPendingRepliesAndReconnects() throws Exception {
+		PendingReply pending = this.requestor.sendRequest("requests", new TextMessageCreator("ping"));
+		this.connectionFactory.exceptionListener.onException(new JMSException("connection lost"));
+		assertTrue(pending.isDone());
+		try {
+			pending.getReply();
+			fail("Should have thrown JMSException");
+		}
+		catch (JMSException ex) {
+			assertEquals("connection lost", ex.getMessage());
+		}
+		assertEquals(1, this.connectionFactory.closedConnectionCount);
+
+		this.requestor.sendRequest("requests", new TextMessageCreator("ping"));
+		assertEquals(2, this.connectionFactory.connectionCount);
+		assertEquals(2, this.connectionFactory.temporaryQueueCount);
+	}
+
+	public void testConfiguredReplyDestinationUsesSelector() throws Exception {
+		this.requestor.setReplyDestinationName("replies");
+		PendingReply pending = this.requestor.sendRequest("requests", new TextMessageCreator("ping"));
+
+		Message request = (Message) this.connectionFactory.requests.get(0);
+		assertEquals("replies", ((StubQueue) request.getJMSReplyTo()).getQueueName());
+		assertEquals(0, this.connectionFactory.temporaryQueueCount);
+		String selector = this.connectionFactory.messageSelector;
+		assertTrue(selector.startsWith("JMSCorrelationID LIKE '"));
+		String prefix = selector.substring(selector.indexOf('\'') + 1, selector.lastIndexOf('%'));
+		assertTrue(pending.getCorrelationId().startsWith(prefix));
+	}
+
+	public void testConcurrentRequests() throws Exception {
+		this.connectionFactory.responder = new Responder() {
+			public void respond(final Message request, final ReplyingConnectionFactory cf) {
+				new Thread() {
+					public void run() {
+						try {
+							cf.deliverReply(request.getJMSCorrelationID(), ((TextMessage) request).getText());
+						}
+						catch (JMSException ex) {
+							throw new IllegalStateException(ex.getMessage());
+						}
+					}
+				}.start();
+			}
+		};
+		final List failures = Collections.synchronizedList(new ArrayList());
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int threadIndex = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 25; j++) {
+							String text = threadIndex + "/" + j;
+							TextMessage reply = (TextMessage) requestor.sendAndReceive("requests", new TextMessageCreator(text));
+							if (reply == null || !text.equals(reply.getText())) {
+								failures.add(text);
+							}
+						}
+					}
+					catch (Throwable ex) {
+						failures.add(ex);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(Collections.EMPTY_LIST, failures);
+		assertEquals(100, this.requestor.getReplyCount());
+		assertEquals(0, this.requestor.getPendingReplyCount());
+		assertTrue(this.connectionFactory.sessionCount <= 1 + this.requestor.getSessionCacheSize());
+	}
+
+	public void testJmsInvokerProxyFactoryBeanWithRequestor() throws Throwable {
+		final JmsInvokerServiceExporter exporter = new JmsInvokerServiceExporter();
+		exporter.setServiceInterface(ITestBean.class);
+		exporter.setService(new TestBean("myname", 99));
+		exporter.afterPropertiesSet();
+		this.connectionFactory.responder = new Responder() {
+			public void respond(Message request, ReplyingConnectionFactory cf) throws JMSException {
+				exporter.onMessage(request, cf.createSession());
+			}
+		};
+
+		JmsInvokerProxyFactoryBean pfb = new JmsInvokerProxyFactoryBean();
+		pfb.setServiceInterface(ITestBean.class);
+		pfb.setConnectionFactory(this.connectionFactory);
+		pfb.setQueueName("invoker");
+		pfb.setRequestor(this.requestor);
+		pfb.afterPropertiesSet();
+		ITestBean proxy = (ITestBean) pfb.getObject();
+
+		assertEquals("myname", proxy.getName());
+		proxy.setAge(50);
+		assertEquals(50, proxy.getAge());
+		try {
+			proxy.exceptional(new IllegalStateException());
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		assertEquals(1, this.connectionFactory.connectionCount);
+		assertEquals(1, this.connectionFactory.temporaryQueueCount);
+		assertEquals(4, this.requestor.getReplyCount());
+	}
+
+
+	private static class TextMessageCreator implements MessageCreator {
+
+		private final String text;
+
+		public TextMessageCreator(String text) {
+			this.text = text;
+		}
+
+		public Message createMessage(Session session) throws JMSException {
+			return session.createTextMessage(this.text);
+		}
+	}
+
+
+	private interface Responder {
+
+		void respond(Message request, ReplyingConnectionFactory cf) throws JMSException;
+	}
+
+
+	/**
+	 * Stub ConnectionFactory that records the requests sent and delivers
+	 * replies to the MessageListener registered for the reply consumer.
+	 */
+	private static class ReplyingConnectionFactory implements ConnectionFactory, InvocationHandler {
+
+		public final List requests = Collections.synchronizedList(new ArrayList());
+
+		public Responder responder;
+
+		public volatile MessageListener messageListener;
+
+		public ExceptionListener exceptionListener;
+
+		public String messageSelector;
+
+		public int connectionCount;
+
+		public int closedConnectionCount;
+
+		public int sessionCount;
+
+		public int temporaryQueueCount;
+
+		public void deliverReply(String correlationId, String text) throws JMSException {
+			Message reply = createSession().createTextMessage(text);
+			reply.setJMSCorrelationID(correlationId);
+			this.messageListener.onMessage(reply);
+		}
+
+		public Session createSession() {
+			return (Session) createProxy(Session.class, this);
+		}
+
+		public synchronized Connection createConnection() {
+			this.connectionCount++;
+			return (Connection) createProxy(Connection.class, this);
+		}
+
+		public Connection createConnection(String username, String password) {
+			return createConnection();
+		}
+
+		private static Object createProxy(Class intf, InvocationHandler handler) {
+			return Proxy.newProxyInstance(JmsRequestorTests.class.getClassLoader(), new Class[] {intf}, handler);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (proxy instanceof Connection) {
+				if (name.equals("setExceptionListener")) {
+					this.exceptionListener = (ExceptionListener) args[0];
+				}
+				else if (name.equals("createSession")) {
+					synchronized (this) {
+						this.sessionCount++;
+					}
+					return createSession();
+				}
+				else if (name.equals("close")) {
+					this.closedConnectionCount++;
+				}
+			}
+			else if (proxy instanceof Session) {
+				if (name.equals("createTemporaryQueue")) {
+					this.temporaryQueueCount++;
+					return createProxy(TemporaryQueue.class, new SimpleHandler());
+				}
+				if (name.equals("createQueue")) {
+					return new StubQueue((String) args[0]);
+				}
+				if (name.equals("createConsumer")) {
+					this.messageSelector = (args.length > 1 ? (String) args[1] : null);
+					return createProxy(MessageConsumer.class, this);
+				}
+				if (name.equals("createProducer")) {
+					return createProxy(MessageProducer.class, this);
+				}
+				if (name.equals("createTextMessage")) {
+					Message message = (Message) createProxy(TextMessage.class, new SimpleHandler());
+					((TextMessage) message).setText((String) args[0]);
+					return message;
+				}
+				if (name.equals("createObjectMessage")) {
+					Message message = (Message) createProxy(ObjectMessage.class, new SimpleHandler());
+					((ObjectMessage) message).setObject((java.io.Serializable) args[0]);
+					return message;
+				}
+			}
+			else if (proxy instanceof MessageConsumer) {
+				if (name.equals("setMessageListener")) {
+					this.messageListener = (MessageListener) args[0];
+				}
+			}
+			else if (proxy instanceof MessageProducer) {
+				if (name.equals("send") && args.length == 2) {
+					Message request = (Message) args[1];
+					this.requests.add(request);
+					if (this.responder != null) {
+						this.responder.respond(request, this);
+					}
+				}
+				else if (name.equals("send") && args.length == 1) {
+					// reply sent by a service exporter
+					this.messageListener.onMessage((Message) args[0]);
+				}
+			}
+			if (name.equals("equals")) {
+				return Boolean.valueOf(proxy == args[0]);
+			}
+			if (name.equals("hashCode")) {
+				return new Integer(System.identityHashCode(proxy));
+			}
+			if (name.equals("toString")) {
+				return "Stub " + method.getDeclaringClass().getName();
+			}
+			return null;
+		}
+	}
+
+
+	/**
+	 * Handler for simple bean-style proxies such as messages.
+	 */
+	private static class SimpleHandler implements InvocationHandler {
+
+		private final Map properties = new HashMap();
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return Boolean.valueOf(proxy == args[0]);
+			}
+			if (name.equals("hashCode")) {
+				return new Integer(System.identityHashCode(proxy));
+			}
+			if (name.equals("toString")) {
+				return "Stub " + proxy.getClass().getInterfaces()[0].getName();
+			}
+			if (name.startsWith("set") && args != null && args.length == 1) {
+				this.properties.put(name.substring(3), args[0]);
+			}
+			else if (name.startsWith("get")) {
+				return this.properties.get(name.substring(3));
+			}
+			return null;
+		}
+	}
+
+}
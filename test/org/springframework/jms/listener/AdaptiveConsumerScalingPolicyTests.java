@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import junit.framework.TestCase;
+
+/**
+ * @since 2.5.7
+ */
+public class AdaptiveConsumerScalingPolicyTests extends TestCase {
+
+	private AdaptiveConsumerScalingPolicy policy;
+
+
+	protected void setUp() {
+		this.policy = new AdaptiveConsumerScalingPolicy();
+		this.policy.setScaleUpCooldown(1000);
+		this.policy.setScaleDownCooldown(5000);
+	}
+
+
+	public void testScaleUpAccordingToLoad() {
+		// 100 msg/s at 50 ms each => 5 busy consumers, 7.14 at 70% target ratio
+		assertEquals(3, this.policy.determineConsumerCount(statistics(10000, 1, 100, 50, 1.0)));
+	}
+
+	public void testScaleUpLimitedByMaxConsumers() {
+		this.policy.setMaxScaleUpStep(10);
+		assertEquals(8, this.policy.determineConsumerCount(statistics(10000, 1, 1000, 50, 1.0)));
+	}
+
+	public void testScaleUpWhenSaturated() {
+		// estimate does not exceed current count, but consumers are saturated
+		assertEquals(3, this.policy.determineConsumerCount(statistics(10000, 2, 20, 50, 0.95)));
+	}
+
+	public void testScaleUpCooldown() {
+		assertEquals(3, this.policy.determineConsumerCount(statistics(10000, 1, 100, 50, 1.0)));
+		assertEquals(3, this.policy.determineConsumerCount(statistics(10500, 3, 100, 50, 1.0)));
+		assertEquals(5, this.policy.determineConsumerCount(statistics(11000, 3, 100, 50, 1.0)));
+	}
+
+	public void testNoChangeWithinTargetRange() {
+		assertEquals(4, this.policy.determineConsumerCount(statistics(10000, 4, 40, 50, 0.5)));
+	}
+
+	public void testScaleDownOneAtATime() {
+		assertEquals(5, this.policy.determineConsumerCount(statistics(10000, 6, 0, 0, 0.0)));
+		assertEquals(5, this.policy.determineConsumerCount(statistics(12000, 5, 0, 0, 0.0)));
+		assertEquals(4, this.policy.determineConsumerCount(statistics(15000, 5, 0, 0, 0.0)));
+	}
+
+	public void testScaleDownNotBelowMinConsumers() {
+		assertEquals(1, this.policy.determineConsumerCount(statistics(10000, 1, 0, 0, 0.0)));
+	}
+
+	public void testNoScaleDownWhileBusy() {
+		// estimate says 2 consumers, but busy ratio is still above the scale-down threshold
+		assertEquals(4, this.policy.determineConsumerCount(statistics(10000, 4, 20, 50, 0.4)));
+	}
+
+	public void testScaleDownCooldownAfterScaleUp() {
+		assertEquals(3, this.policy.determineConsumerCount(statistics(10000, 1, 100, 50, 1.0)));
+		assertEquals(3, this.policy.determineConsumerCount(statistics(11000, 3, 0, 0, 0.0)));
+		assertEquals(2, this.policy.determineConsumerCount(statistics(15000, 3, 0, 0, 0.0)));
+	}
+
+
+	private static ConsumerStatistics statistics(long timestamp, int consumers,
+			double receiveRate, double processingTime, double busyRatio) {
+
+		return new ConsumerStatistics(timestamp, consumers, 1, 8, receiveRate, processingTime, busyRatio);
+	}
+
+}
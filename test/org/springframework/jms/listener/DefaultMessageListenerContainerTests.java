@@ -0,0 +1,425 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.listener;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+import org.easymock.MockControl;
+
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jms.StubConnectionFactory;
+import org.springframework.jms.StubQueue;
+import org.springframework.test.AssertThrows;
+
+/**
+ * @since 2.5.7
+ */
+public class DefaultMessageListenerContainerTests extends TestCase {
+
+	private DefaultMessageListenerContainer container;
+
+	private MockControl sessionControl;
+
+	private Session session;
+
+	private MockControl consumerControl;
+
+	private MessageConsumer consumer;
+
+
+	protected void setUp() throws Exception {
+		this.container = new DefaultMessageListenerContainer() {
+			protected void messageReceived(Object invoker, Session session) {
+			}
+			protected void noMessageReceived(Object invoker, Session session) {
+			}
+		};
+		this.container.setConnectionFactory(new StubConnectionFactory());
+		this.container.setDestinationName("foo");
+		this.container.setSessionTransacted(true);
+		this.container.setAcceptMessagesWhileStopping(true);
+
+		this.sessionControl = MockControl.createControl(Session.class);
+		this.session = (Session) this.sessionControl.getMock();
+		this.consumerControl = MockControl.createControl(MessageConsumer.class);
+		this.consumer = (MessageConsumer) this.consumerControl.getMock();
+	}
+
+
+	public void testBatchListenerReceivesAvailableMessages() throws Exception {
+		Message message1 = createMessage();
+		Message message2 = createMessage();
+		Message message3 = createMessage();
+		this.consumer.receive(1000);
+		this.consumerControl.setReturnValue(message1);
+		this.consumer.receiveNoWait();
+		this.consumerControl.setReturnValue(message2);
+		this.consumerControl.setReturnValue(message3);
+		this.consumerControl.setReturnValue(null);
+		this.consumerControl.replay();
+		this.session.getTransacted();
+		this.sessionControl.setReturnValue(true);
+		this.session.commit();
+		this.sessionControl.setVoidCallable(1);
+		this.sessionControl.replay();
+
+		TestBatchMessageListener listener = new TestBatchMessageListener();
+		this.container.setMessageListener(listener);
+		assertTrue(this.container.receiveAndExecute(null, this.session, this.consumer));
+
+		assertEquals(1, listener.batches.size());
+		List batch = (List) listener.batches.get(0);
+		assertEquals(3, batch.size());
+		assertSame(message1, batch.get(0));
+		assertSame(message3, batch.get(2));
+		assertSame(this.session, listener.session);
+		assertEquals(1, this.container.getBatchCount());
+		assertEquals(3, this.container.getBatchedMessageCount());
+		assertEquals(0, this.container.getFailedBatchCount());
+		assertEquals(3.0, this.container.getAverageBatchSize(), 0.0);
+		this.consumerControl.verify();
+		this.sessionControl.verify();
+	}
+
+	public void testBatchListenerLimitedByBatchSize() throws Exception {
+		this.consumer.receive(1000);
+		this.consumerControl.setReturnValue(createMessage());
+		this.consumer.receiveNoWait();
+		this.consumerControl.setReturnValue(createMessage(), 1);
+		this.consumerControl.replay();
+		this.session.getTransacted();
+		this.sessionControl.setReturnValue(true);
+		this.session.commit();
+		this.sessionControl.setVoidCallable(1);
+		this.sessionControl.replay();
+
+		TestBatchMessageListener listener = new TestBatchMessageListener();
+		this.container.setMessageListener(listener);
+		this.container.setBatchSize(2);
+		assertTrue(this.container.receiveAndExecute(null, this.session, this.consumer));
+
+		assertEquals(2, ((List) listener.batches.get(0)).size());
+		this.consumerControl.verify();
+		this.sessionControl.verify();
+	}
+
+	public void testBatchListenerRollsBackEntireBatch() throws Exception {
+		this.consumer.receive(1000);
+		this.consumerControl.setReturnValue(createMessage());
+		this.consumer.receiveNoWait();
+		this.consumerControl.setReturnValue(createMessage());
+		this.consumerControl.setReturnValue(null);
+		this.consumerControl.replay();
+		this.session.getTransacted();
+		this.sessionControl.setReturnValue(true);
+		this.session.rollback();
+		this.sessionControl.setVoidCallable(1);
+		this.sessionControl.replay();
+
+		this.container.setMessageListener(new BatchMessageListener() {
+			public void onMessages(List messages, Session session) {
+				throw new IllegalStateException("Batch failed");
+			}
+		});
+		assertTrue(this.container.receiveAndExecute(null, this.session, this.consumer));
+
+		assertEquals(1, this.container.getBatchCount());
+		assertEquals(1, this.container.getFailedBatchCount());
+		this.consumerControl.verify();
+		this.sessionControl.verify();
+	}
+
+	public void testNoMessageReceivedForBatchListener() throws Exception {
+		this.consumer.receive(1000);
+		this.consumerControl.setReturnValue(null);
+		this.consumerControl.replay();
+		this.sessionControl.replay();
+
+		TestBatchMessageListener listener = new TestBatchMessageListener();
+		this.container.setMessageListener(listener);
+		assertFalse(this.container.receiveAndExecute(null, this.session, this.consumer));
+
+		assertEquals(0, listener.batches.size());
+		assertEquals(0, this.container.getBatchCount());
+		this.consumerControl.verify();
+		this.sessionControl.verify();
+	}
+
+	public void testBatchListenerNotSupportedBySimpleContainer() throws Exception {
+		new AssertThrows(IllegalArgumentException.class) {
+			public void test() throws Exception {
+				new SimpleMessageListenerContainer().setMessageListener(new TestBatchMessageListener());
+			}
+		}.runTest();
+	}
+
+	public void testConsumerScalingPolicyFollowsLoad() throws Exception {
+		QueueStubConnectionFactory connectionFactory = new QueueStubConnectionFactory();
+		final List events = Collections.synchronizedList(new ArrayList());
+		final int[] processedCount = new int[1];
+
+		AdaptiveConsumerScalingPolicy policy = new AdaptiveConsumerScalingPolicy();
+		policy.setScaleUpCooldown(0);
+		policy.setScaleDownCooldown(0);
+		DefaultMessageListenerContainer container = new DefaultMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		container.setDestinationName("foo");
+		container.setMaxConcurrentConsumers(4);
+		container.setReceiveTimeout(20);
+		container.setScalingInterval(50);
+		container.setConsumerScalingPolicy(policy);
+		container.setApplicationEventPublisher(new ApplicationEventPublisher() {
+			public void publishEvent(ApplicationEvent event) {
+				events.add(event);
+			}
+		});
+		container.setMessageListener(new MessageListener() {
+			public void onMessage(Message message) {
+				try {
+					Thread.sleep(5);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				synchronized (processedCount) {
+					processedCount[0]++;
+				}
+			}
+		});
+		container.afterPropertiesSet();
+		try {
+			connectionFactory.addMessages(300);
+			long deadline = System.currentTimeMillis() + 10000;
+			while (connectionFactory.getPendingMessageCount() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			assertEquals(0, connectionFactory.getPendingMessageCount());
+			assertTrue(container.getScaleUpCount() > 0);
+			assertTrue(((ConsumerScalingEvent) events.get(0)).isScaleUp());
+
+			deadline = System.currentTimeMillis() + 10000;
+			while (container.getScheduledConsumerCount() > 1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			assertEquals(1, container.getScheduledConsumerCount());
+			assertEquals(1, container.getTargetConsumerCount());
+			assertTrue(container.getScaleDownCount() > 0);
+			assertNotNull(container.getLastConsumerStatistics());
+		}
+		finally {
+			container.destroy();
+		}
+		synchronized (processedCount) {
+			assertEquals(300, processedCount[0]);
+		}
+	}
+
+	public void testScaleDownOnlyStopsSurplusConsumers() throws Exception {
+		QueueStubConnectionFactory connectionFactory = new QueueStubConnectionFactory();
+		final List executedInvokers = Collections.synchronizedList(new ArrayList());
+		final int[] gate = new int[] {0, 0};
+
+		DefaultMessageListenerContainer container = new DefaultMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		container.setDestinationName("foo");
+		container.setMaxConcurrentConsumers(4);
+		container.setReceiveTimeout(5);
+		container.setScalingInterval(20);
+		container.setConsumerScalingPolicy(new ConsumerScalingPolicy() {
+			public int determineConsumerCount(ConsumerStatistics statistics) {
+				return statistics.getMaxConsumerCount();
+			}
+		});
+		container.setTaskExecutor(new SimpleAsyncTaskExecutor() {
+			public void execute(Runnable task) {
+				executedInvokers.add(task);
+				super.execute(task);
+			}
+		});
+		container.setMessageListener(new MessageListener() {
+			public void onMessage(Message message) {
+				// Hold all consumers until released, letting them check for surplus at the same time.
+				synchronized (gate) {
+					gate[0]++;
+					gate.notifyAll();
+					long deadline = System.currentTimeMillis() + 10000;
+					while (gate[1] == 0 && System.currentTimeMillis() < deadline) {
+						try {
+							gate.wait(10);
+						}
+						catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+			}
+		});
+		container.afterPropertiesSet();
+		try {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (container.getScheduledConsumerCount() < 4 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(4, container.getScheduledConsumerCount());
+
+			connectionFactory.addMessages(4);
+			synchronized (gate) {
+				while (gate[0] < 4 && System.currentTimeMillis() < deadline) {
+					gate.wait(10);
+				}
+				assertEquals(4, gate[0]);
+			}
+			// Let all consumers reach the surplus check before any of them can pass it.
+			synchronized (container.lifecycleMonitor) {
+				container.setMaxConcurrentConsumers(1);
+				synchronized (gate) {
+					gate[1] = 1;
+					gate.notifyAll();
+				}
+				Thread.sleep(100);
+			}
+
+			deadline = System.currentTimeMillis() + 10000;
+			while (container.getScheduledConsumerCount() > 1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, container.getScheduledConsumerCount());
+			Thread.sleep(100);
+			assertEquals(1, container.getScheduledConsumerCount());
+		}
+		finally {
+			container.destroy();
+		}
+		// Each invoker has been executed once: none has been stopped and rescheduled.
+		synchronized (executedInvokers) {
+			assertEquals(4, new HashSet(executedInvokers).size());
+			assertEquals(4, executedInvokers.size());
+		}
+	}
+
+
+	private static Message createMessage() {
+		return (Message) MockControl.createControl(Message.class).getMock();
+	}
+
+
+	/**
+	 * Stub ConnectionFactory that hands out Connections for a single in-memory queue.
+	 */
+	private static class QueueStubConnectionFactory implements ConnectionFactory, InvocationHandler {
+
+		private final LinkedList messages = new LinkedList();
+
+		public void addMessages(int count) {
+			synchronized (this.messages) {
+				for (int i = 0; i < count; i++) {
+					this.messages.add(createMessage());
+				}
+				this.messages.notifyAll();
+			}
+		}
+
+		public int getPendingMessageCount() {
+			synchronized (this.messages) {
+				return this.messages.size();
+			}
+		}
+
+		public Connection createConnection() {
+			return (Connection) createProxy(Connection.class);
+		}
+
+		public Connection createConnection(String username, String password) {
+			return createConnection();
+		}
+
+		private Object createProxy(Class intf) {
+			return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {intf}, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("createSession")) {
+				return createProxy(Session.class);
+			}
+			if (name.equals("createQueue")) {
+				return new StubQueue((String) args[0]);
+			}
+			if (name.equals("createConsumer")) {
+				return createProxy(MessageConsumer.class);
+			}
+			if (name.equals("getTransacted")) {
+				return Boolean.FALSE;
+			}
+			if (name.equals("getAcknowledgeMode")) {
+				return new Integer(Session.AUTO_ACKNOWLEDGE);
+			}
+			if (name.startsWith("receive")) {
+				long timeout = (args != null ? ((Long) args[0]).longValue() : 0);
+				synchronized (this.messages) {
+					if (this.messages.isEmpty() && timeout > 0) {
+						this.messages.wait(timeout);
+					}
+					return (this.messages.isEmpty() ? null : this.messages.removeFirst());
+				}
+			}
+			if (name.equals("equals")) {
+				return Boolean.valueOf(proxy == args[0]);
+			}
+			if (name.equals("hashCode")) {
+				return new Integer(System.identityHashCode(proxy));
+			}
+			if (name.equals("toString")) {
+				return "Stub " + method.getDeclaringClass().getName();
+			}
+			return null;
+		}
+	}
+
+
+	private static class TestBatchMessageListener implements BatchMessageListener {
+
+		public final List batches = new ArrayList();
+
+		public Session session;
+
+		public void onMessages(List messages, Session session) throws JMSException {
+			this.batches.add(new ArrayList(messages));
+			this.session = session;
+		}
+	}
+
+}
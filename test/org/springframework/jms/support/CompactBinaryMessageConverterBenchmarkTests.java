@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.SerializablePerson;
+import org.springframework.jms.support.converter.CompactBinaryMessageConverter;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.util.StopWatch;
+
+/**
+ * Benchmark comparing {@link CompactBinaryMessageConverter} with
+ * {@link SimpleMessageConverter} in terms of conversion time and message size.
+ *
+ * @since 2.5.7
+ */
+public class CompactBinaryMessageConverterBenchmarkTests extends TestCase {
+
+	protected static final Log logger = LogFactory.getLog(CompactBinaryMessageConverterBenchmarkTests.class);
+
+	/** Increase this if you want meaningful results! */
+	private static final int CONVERSIONS = 2000;
+
+
+	public void testBenchmarks() throws JMSException {
+		SerializablePerson person = new SerializablePerson();
+		person.setName("Juergen");
+		person.setAge(42);
+		List people = new ArrayList();
+		for (int i = 0; i < 20; i++) {
+			people.add(person);
+		}
+		Map map = new HashMap();
+		map.put("people", people);
+		map.put("count", new Integer(people.size()));
+		RemoteInvocation invocation = new RemoteInvocation("setPeople",
+				new Class[] {Map.class, String.class}, new Object[] {map, "reason"});
+
+		StopWatch sw = new StopWatch();
+		Session session = MessageCreatingSessionStub.createSession();
+		timeConversions(sw, new SimpleMessageConverter(), invocation, session);
+		timeConversions(sw, new CompactBinaryMessageConverter(), invocation, session);
+		if (logger.isInfoEnabled()) {
+			logger.info(sw.prettyPrint());
+		}
+	}
+
+	private void timeConversions(StopWatch sw, MessageConverter converter, Object payload, Session session)
+			throws JMSException {
+
+		Message message = converter.toMessage(payload, session);
+		converter.fromMessage(message);
+		sw.start(CONVERSIONS + " round trips with " + converter.getClass().getName() + " (" +
+				MessageCreatingSessionStub.getBodySize(message) + " bytes per message)");
+		for (int i = 0; i < CONVERSIONS; i++) {
+			converter.fromMessage(converter.toMessage(payload, session));
+		}
+		sw.stop();
+	}
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.support;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+
+import org.springframework.beans.SerializablePerson;
+import org.springframework.jms.support.converter.CompactBinaryMessageConverter;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.test.AssertThrows;
+
+/**
+ * @since 2.5.7
+ */
+public class CompactBinaryMessageConverterTests extends TestCase {
+
+	private final CompactBinaryMessageConverter converter = new CompactBinaryMessageConverter();
+
+	private final Session session = MessageCreatingSessionStub.createSession();
+
+
+	public void testSimpleValues() throws JMSException {
+		assertRoundTrip(null);
+		assertRoundTrip("text");
+		assertRoundTrip(Boolean.TRUE);
+		assertRoundTrip(new Integer(-42));
+		assertRoundTrip(new Integer(Integer.MIN_VALUE));
+		assertRoundTrip(new Long(Long.MAX_VALUE));
+		assertRoundTrip(new Short((short) 7));
+		assertRoundTrip(new Byte((byte) -1));
+		assertRoundTrip(new Character('x'));
+		assertRoundTrip(new Double(1.5));
+		assertRoundTrip(new Float(-0.25f));
+		assertRoundTrip(new Date());
+		assertRoundTrip(String.class);
+		assertRoundTrip(int.class);
+	}
+
+	public void testLongString() throws JMSException {
+		char[] chars = new char[70000];
+		Arrays.fill(chars, '\u20ac');
+		assertRoundTrip(new String(chars));
+	}
+
+	public void testByteArray() throws JMSException {
+		byte[] bytes = new byte[] {1, 2, 3};
+		Message message = this.converter.toMessage(bytes, this.session);
+		assertTrue(Arrays.equals(bytes, (byte[]) this.converter.fromMessage(message)));
+	}
+
+	public void testArraysAndCollections() throws JMSException {
+		Map map = new LinkedHashMap();
+		map.put("list", new ArrayList(Arrays.asList(new Object[] {"a", new Integer(1), null})));
+		map.put("set", new LinkedHashSet(Arrays.asList(new String[] {"x", "y"})));
+		map.put(new Integer(3), new HashMap());
+		assertRoundTrip(map);
+
+		String[] array = new String[] {"a", null, "c"};
+		Object result = roundTrip(array);
+		assertEquals(String[].class, result.getClass());
+		assertTrue(Arrays.equals(array, (Object[]) result));
+	}
+
+	public void testSerializableObjects() throws JMSException {
+		SerializablePerson person = new SerializablePerson();
+		person.setName("Juergen");
+		person.setAge(42);
+		List list = new ArrayList();
+		list.add(person);
+		list.add(person);
+		list.add(new java.math.BigDecimal("1.25"));
+		List result = (List) roundTrip(list);
+		assertEquals(list, result);
+		assertSame(result.get(0), result.get(1));
+	}
+
+	public void testRemoteInvocation() throws JMSException {
+		RemoteInvocation invocation = new RemoteInvocation("setName",
+				new Class[] {String.class, int.class}, new Object[] {"name", new Integer(5)});
+		invocation.addAttribute("key", "value");
+		RemoteInvocation result = (RemoteInvocation) roundTrip(invocation);
+		assertEquals("setName", result.getMethodName());
+		assertTrue(Arrays.equals(invocation.getParameterTypes(), result.getParameterTypes()));
+		assertTrue(Arrays.equals(invocation.getArguments(), result.getArguments()));
+		assertEquals("value", result.getAttribute("key"));
+	}
+
+	public void testCompactFormatIsSmallerThanJavaSerialization() throws JMSException {
+		Map map = new HashMap();
+		map.put("name", "value");
+		map.put("count", new Integer(5));
+		map.put("list", new ArrayList(Arrays.asList(new Object[] {"a", new Long(1), Boolean.TRUE})));
+		int compactSize = MessageCreatingSessionStub.getBodySize(this.converter.toMessage(map, this.session));
+		int javaSize = MessageCreatingSessionStub.getBodySize(this.session.createObjectMessage((HashMap) map));
+		assertTrue("Compact: " + compactSize + ", Java: " + javaSize, compactSize < javaSize);
+	}
+
+	public void testCompactClassDescriptors() throws JMSException {
+		CompactBinaryMessageConverter compactConverter = new CompactBinaryMessageConverter();
+		compactConverter.setCompactClassDescriptors(true);
+		RemoteInvocation invocation = new RemoteInvocation("setName",
+				new Class[] {String.class, int.class}, new Object[] {"name", new Integer(5)});
+
+		Message message = compactConverter.toMessage(invocation, this.session);
+		int compactSize = MessageCreatingSessionStub.getBodySize(message);
+		int fullSize = MessageCreatingSessionStub.getBodySize(this.converter.toMessage(invocation, this.session));
+		assertTrue("Compact descriptors: " + compactSize + ", full: " + fullSize, compactSize < fullSize);
+		// The receiving side detects the format, independent of its own setting.
+		RemoteInvocation result = (RemoteInvocation) this.converter.fromMessage(message);
+		assertEquals("setName", result.getMethodName());
+		assertTrue(Arrays.equals(invocation.getParameterTypes(), result.getParameterTypes()));
+		assertTrue(Arrays.equals(invocation.getArguments(), result.getArguments()));
+	}
+
+	public void testCompactClassDescriptorsRejectDifferentFieldLayout() throws JMSException {
+		CompactBinaryMessageConverter compactConverter = new CompactBinaryMessageConverter();
+		compactConverter.setCompactClassDescriptors(true);
+		final Message message = compactConverter.toMessage(new OriginalLayout(), this.session);
+
+		// Receiving side with a different version of the class, under the same name and serialVersionUID
+		compactConverter.setBeanClassLoader(new ClassLoader(getClass().getClassLoader()) {
+			public Class loadClass(String name) throws ClassNotFoundException {
+				return (OriginalLayout.class.getName().equals(name) ? ChangedLayout.class : super.loadClass(name));
+			}
+		});
+		final CompactBinaryMessageConverter receivingConverter = compactConverter;
+		new AssertThrows(MessageConversionException.class) {
+			public void test() throws Exception {
+				receivingConverter.fromMessage(message);
+			}
+		}.runTest();
+	}
+
+	public void testCompression() throws JMSException {
+		char[] chars = new char[10000];
+		Arrays.fill(chars, 'a');
+		String text = new String(chars);
+		this.converter.setCompressionThreshold(1024);
+		Message message = this.converter.toMessage(text, this.session);
+		assertTrue(MessageCreatingSessionStub.getBodySize(message) < 1024);
+		assertEquals(text, this.converter.fromMessage(message));
+
+		Message smallMessage = this.converter.toMessage("small", this.session);
+		assertEquals("small", this.converter.fromMessage(smallMessage));
+	}
+
+	public void testForeignBytesMessage() throws JMSException {
+		BytesMessage message = this.session.createBytesMessage();
+		message.writeBytes(new byte[] {1, 2});
+		assertTrue(Arrays.equals(new byte[] {1, 2}, (byte[]) this.converter.fromMessage(message)));
+	}
+
+	public void testObjectMessageHandledByFallback() throws JMSException {
+		ObjectMessage message = this.session.createObjectMessage("text");
+		assertEquals("text", this.converter.fromMessage(message));
+	}
+
+	public void testNonSerializableObject() {
+		new AssertThrows(MessageConversionException.class) {
+			public void test() throws Exception {
+				converter.toMessage(new Object(), session);
+			}
+		}.runTest();
+	}
+
+	public void testCyclicCollections() {
+		final List list = new ArrayList();
+		list.add("element");
+		Map map = new HashMap();
+		map.put("list", list);
+		list.add(map);
+		new AssertThrows(MessageConversionException.class) {
+			public void test() throws Exception {
+				converter.toMessage(list, session);
+			}
+		}.runTest();
+	}
+
+	public void testSharedNonCyclicReferences() throws JMSException {
+		List shared = new ArrayList(Arrays.asList(new Object[] {"a", "b"}));
+		Object[] array = new Object[] {shared, shared};
+		Object[] result = (Object[]) roundTrip(array);
+		assertEquals(shared, result[0]);
+		assertEquals(shared, result[1]);
+	}
+
+
+	private void assertRoundTrip(Object value) throws JMSException {
+		assertEquals(value, roundTrip(value));
+	}
+
+	private Object roundTrip(Object value) throws JMSException {
+		Message message = this.converter.toMessage(value, this.session);
+		assertTrue(message instanceof BytesMessage);
+		return this.converter.fromMessage(message);
+	}
+
+
+	private static class OriginalLayout implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private int count = 1;
+
+		private String name = "original";
+	}
+
+
+	private static class ChangedLayout implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private long count;
+
+		private String description;
+	}
+
+}
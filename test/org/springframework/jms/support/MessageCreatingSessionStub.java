@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.jms.BytesMessage;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+/**
+ * Stub JMS Session that creates in-memory BytesMessages and ObjectMessages,
+ * the latter holding their content in Java serialization form, just like
+ * a JMS provider would transfer them.
+ *
+ * @since 2.5.7
+ */
+class MessageCreatingSessionStub implements InvocationHandler {
+
+	public static Session createSession() {
+		return (Session) createProxy(Session.class, new MessageCreatingSessionStub());
+	}
+
+	private static Object createProxy(Class intf, InvocationHandler handler) {
+		return Proxy.newProxyInstance(MessageCreatingSessionStub.class.getClassLoader(), new Class[] {intf}, handler);
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getName().equals("createBytesMessage")) {
+			return createProxy(BytesMessage.class, new MessageHandler());
+		}
+		if (method.getName().equals("createObjectMessage")) {
+			MessageHandler handler = new MessageHandler();
+			handler.setObject((Serializable) args[0]);
+			return createProxy(ObjectMessage.class, handler);
+		}
+		throw new UnsupportedOperationException(method.getName());
+	}
+
+
+	/**
+	 * Returns the size of the given stub message's body, in bytes.
+	 */
+	public static int getBodySize(Object message) {
+		return ((MessageHandler) Proxy.getInvocationHandler(message)).body.size();
+	}
+
+
+	private static class MessageHandler implements InvocationHandler {
+
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		private int readPosition = 0;
+
+		public void setObject(Serializable object) throws Exception {
+			this.body.reset();
+			ObjectOutputStream oos = new ObjectOutputStream(this.body);
+			oos.writeObject(object);
+			oos.flush();
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("writeBytes")) {
+				byte[] bytes = (byte[]) args[0];
+				this.body.write(bytes, 0, bytes.length);
+				return null;
+			}
+			if (name.equals("getBodyLength")) {
+				return new Long(this.body.size());
+			}
+			if (name.equals("readBytes")) {
+				byte[] bytes = (byte[]) args[0];
+				byte[] content = this.body.toByteArray();
+				int count = Math.min(bytes.length, content.length - this.readPosition);
+				System.arraycopy(content, this.readPosition, bytes, 0, count);
+				this.readPosition += count;
+				return new Integer(count > 0 ? count : -1);
+			}
+			if (name.equals("reset")) {
+				this.readPosition = 0;
+				return null;
+			}
+			if (name.equals("setObject")) {
+				setObject((Serializable) args[0]);
+				return null;
+			}
+			if (name.equals("getObject")) {
+				return new ObjectInputStream(new ByteArrayInputStream(this.body.toByteArray())).readObject();
+			}
+			if (name.equals("hashCode")) {
+				return new Integer(System.identityHashCode(proxy));
+			}
+			if (name.equals("equals")) {
+				return Boolean.valueOf(proxy == args[0]);
+			}
+			if (name.equals("toString")) {
+				return "Stub message with " + this.body.size() + " bytes";
+			}
+			throw new UnsupportedOperationException(name);
+		}
+	}
+
+}
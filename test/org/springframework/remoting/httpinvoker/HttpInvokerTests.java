@@ -46,6 +46,7 @@ import org.springframework.remoting.support.DefaultRemoteInvocationExecutor;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationFactory;
 import org.springframework.remoting.support.RemoteInvocationResult;
+import org.springframework.remoting.support.RemoteResultCacheInterceptor;
 
 /**
  * @author Juergen Hoeller
@@ -128,6 +129,120 @@ public class HttpInvokerTests extends TestCase {
 		}
 	}
 
+	public void testHttpInvokerProxyFactoryBeanAndServiceExporterWithBatchedInvocations() throws Exception {
+		TestBean target = new TestBean("myname", 99);
+
+		final HttpInvokerServiceExporter exporter = new HttpInvokerServiceExporter();
+		exporter.setServiceInterface(ITestBean.class);
+		exporter.setService(target);
+		exporter.afterPropertiesSet();
+
+		HttpInvokerProxyFactoryBean pfb = new HttpInvokerProxyFactoryBean();
+		pfb.setServiceInterface(ITestBean.class);
+		pfb.setServiceUrl("http://myurl");
+		pfb.setBatchWindow(5000);
+		pfb.setMaxBatchSize(4);
+
+		final int[] requestCount = new int[1];
+		pfb.setHttpInvokerRequestExecutor(new AbstractHttpInvokerRequestExecutor() {
+			protected RemoteInvocationResult doExecuteRequest(
+					HttpInvokerClientConfiguration config, ByteArrayOutputStream baos) throws Exception {
+				synchronized (requestCount) {
+					requestCount[0]++;
+				}
+				MockHttpServletRequest request = new MockHttpServletRequest();
+				MockHttpServletResponse response = new MockHttpServletResponse();
+				request.setContent(baos.toByteArray());
+				exporter.handleRequest(request, response);
+				return readRemoteInvocationResult(
+						new ByteArrayInputStream(response.getContentAsByteArray()), config.getCodebaseUrl());
+			}
+		});
+
+		pfb.afterPropertiesSet();
+		final ITestBean proxy = (ITestBean) pfb.getObject();
+		final Object[] results = new Object[4];
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						if (index == 0) {
+							proxy.exceptional(new IllegalStateException());
+						}
+						else {
+							results[index] = proxy.getName();
+						}
+					}
+					catch (Throwable ex) {
+						results[index] = ex;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertEquals(1, requestCount[0]);
+		assertTrue(results[0] instanceof IllegalStateException);
+		for (int i = 1; i < results.length; i++) {
+			assertEquals("myname", results[i]);
+		}
+	}
+
+	public void testHttpInvokerProxyFactoryBeanWithResultCacheInterceptor() throws Exception {
+		TestBean target = new TestBean("myname", 99);
+
+		final HttpInvokerServiceExporter exporter = new HttpInvokerServiceExporter();
+		exporter.setServiceInterface(ITestBean.class);
+		exporter.setService(target);
+		exporter.afterPropertiesSet();
+
+		RemoteResultCacheInterceptor cacheInterceptor = new RemoteResultCacheInterceptor();
+		cacheInterceptor.setMappedName("getName");
+
+		final int[] requestCount = new int[1];
+		HttpInvokerRequestExecutor requestExecutor = new AbstractHttpInvokerRequestExecutor() {
+			protected RemoteInvocationResult doExecuteRequest(
+					HttpInvokerClientConfiguration config, ByteArrayOutputStream baos) throws Exception {
+				requestCount[0]++;
+				MockHttpServletRequest request = new MockHttpServletRequest();
+				MockHttpServletResponse response = new MockHttpServletResponse();
+				request.setContent(baos.toByteArray());
+				exporter.handleRequest(request, response);
+				return readRemoteInvocationResult(
+						new ByteArrayInputStream(response.getContentAsByteArray()), config.getCodebaseUrl());
+			}
+		};
+
+		HttpInvokerProxyFactoryBean pfb = new HttpInvokerProxyFactoryBean();
+		pfb.setServiceInterface(ITestBean.class);
+		pfb.setServiceUrl("http://myurl");
+		pfb.setInterceptors(new Object[] {cacheInterceptor});
+		pfb.setHttpInvokerRequestExecutor(requestExecutor);
+		pfb.afterPropertiesSet();
+		ITestBean proxy = (ITestBean) pfb.getObject();
+		assertEquals("myname", proxy.getName());
+		assertEquals("myname", proxy.getName());
+		assertEquals(99, proxy.getAge());
+		assertEquals(99, proxy.getAge());
+		assertEquals(3, requestCount[0]);
+		assertEquals(1, cacheInterceptor.getHitCount());
+
+		// a different service URL does not see the cached results
+		HttpInvokerProxyFactoryBean otherPfb = new HttpInvokerProxyFactoryBean();
+		otherPfb.setServiceInterface(ITestBean.class);
+		otherPfb.setServiceUrl("http://myotherurl");
+		otherPfb.setInterceptors(new Object[] {cacheInterceptor});
+		otherPfb.setHttpInvokerRequestExecutor(requestExecutor);
+		otherPfb.afterPropertiesSet();
+		assertEquals("myname", ((ITestBean) otherPfb.getObject()).getName());
+		assertEquals(4, requestCount[0]);
+		assertEquals(1, cacheInterceptor.getHitCount());
+	}
+
 	public void testHttpInvokerProxyFactoryBeanAndServiceExporterWithIOException() throws Exception {
 		TestBean target = new TestBean("myname", 99);
 
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.remoting.RemoteAccessException;
+
+/**
+ * @since 2.5.7
+ */
+public class NioHttpInvokerServiceExporterTests extends TestCase {
+
+	private NioHttpInvokerServiceExporter exporter;
+
+	private String serviceUrl;
+
+
+	protected void setUp() {
+		this.exporter = new NioHttpInvokerServiceExporter();
+		this.exporter.setServiceInterface(ITestBean.class);
+		this.exporter.setService(new TestBean("juergen", 50));
+		this.exporter.setPort(0);
+		this.exporter.setHostname("localhost");
+		this.exporter.setServicePath("/service");
+	}
+
+	protected void tearDown() throws Exception {
+		this.exporter.destroy();
+	}
+
+	private void startExporter() {
+		this.exporter.afterPropertiesSet();
+		this.serviceUrl = "http://localhost:" + this.exporter.getPort() + "/service";
+	}
+
+
+	public void testWithSimpleRequestExecutor() throws Throwable {
+		startExporter();
+		ITestBean proxy = createProxy(this.serviceUrl, new SimpleHttpInvokerRequestExecutor());
+		assertEquals("juergen", proxy.getName());
+		proxy.setName("rod");
+		assertEquals("rod", proxy.getName());
+		try {
+			proxy.exceptional(new IllegalStateException());
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		assertEquals(4, this.exporter.getRequestCount());
+		// connection kept alive by HttpURLConnection
+		assertEquals(1, this.exporter.getConnectionCount());
+	}
+
+	public void testWithChunkedAndCompressedRequests() throws Exception {
+		startExporter();
+		PooledCommonsHttpInvokerRequestExecutor executor = new PooledCommonsHttpInvokerRequestExecutor();
+		executor.setCompressRequests(true);
+		executor.afterPropertiesSet();
+		try {
+			ITestBean proxy = createProxy(this.serviceUrl, executor);
+			proxy.setStringArray(new String[] {"str1", "str2"});
+			assertEquals(2, proxy.getStringArray().length);
+			assertEquals(50, proxy.getAge());
+		}
+		finally {
+			executor.destroy();
+		}
+	}
+
+	public void testUnknownServicePath() throws Exception {
+		startExporter();
+		ITestBean proxy = createProxy("http://localhost:" + this.exporter.getPort() + "/unknown",
+				new SimpleHttpInvokerRequestExecutor());
+		try {
+			proxy.getName();
+			fail("Should have thrown RemoteAccessException");
+		}
+		catch (RemoteAccessException ex) {
+			assertTrue(ex.getCause() instanceof IOException);
+		}
+	}
+
+	public void testMaxRequestSize() throws Exception {
+		this.exporter.setMaxRequestSize(1024);
+		startExporter();
+		ITestBean proxy = createProxy(this.serviceUrl, new SimpleHttpInvokerRequestExecutor());
+		assertEquals("juergen", proxy.getName());
+		try {
+			proxy.setStringArray(new String[] {new String(new char[4096])});
+			fail("Should have thrown RemoteAccessException");
+		}
+		catch (RemoteAccessException ex) {
+			assertTrue(ex.getCause() instanceof IOException);
+		}
+		assertEquals("juergen", proxy.getName());
+	}
+
+	public void testConcurrentRequestsWithLimitedPendingRequests() throws Exception {
+		this.exporter.setMaxPendingRequests(2);
+		startExporter();
+		final ITestBean proxy = createProxy(this.serviceUrl, new SimpleHttpInvokerRequestExecutor());
+		final Object[] results = new Object[20];
+		Thread[] threads = new Thread[results.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 10; j++) {
+							results[index] = proxy.getName();
+						}
+					}
+					catch (Throwable ex) {
+						results[index] = ex;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		for (int i = 0; i < results.length; i++) {
+			assertEquals("juergen", results[i]);
+		}
+		assertEquals(200, this.exporter.getRequestCount());
+		assertEquals(0, this.exporter.getPendingRequestCount());
+	}
+
+	public void testRejectsNonPostRequests() throws Exception {
+		startExporter();
+		String response = sendRawRequest("GET /service HTTP/1.1\r\nHost: localhost\r\n\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 405"));
+	}
+
+	public void testRejectsRequestsWithoutLength() throws Exception {
+		startExporter();
+		String response = sendRawRequest("POST /service HTTP/1.0\r\n\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 411"));
+	}
+
+	public void testRejectsHugeChunkSize() throws Exception {
+		this.exporter.setMaxRequestSize(1024);
+		startExporter();
+		String response = sendRawRequest("POST /service HTTP/1.1\r\nHost: localhost\r\n" +
+				"Transfer-Encoding: chunked\r\n\r\n10\r\n0123456789abcdef\r\n7fffffff\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 413"));
+	}
+
+	public void testRejectsLargeHeaderBlock() throws Exception {
+		this.exporter.setMaxHeaderSize(256);
+		startExporter();
+		String response = sendRawRequest("POST /service HTTP/1.1\r\nHost: localhost\r\n" +
+				"X-Padding: " + new String(new char[512]).replace('\0', 'x') + "\r\nContent-Length: 0\r\n\r\n");
+		assertTrue(response, response.startsWith("HTTP/1.1 400"));
+	}
+
+	public void testClosesIdleConnections() throws Exception {
+		this.exporter.setKeepAliveTimeout(1);
+		startExporter();
+		Socket socket = new Socket("localhost", this.exporter.getPort());
+		try {
+			socket.setSoTimeout(5000);
+			waitForConnectionCount(1);
+			assertEquals(-1, socket.getInputStream().read());
+			waitForConnectionCount(0);
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	public void testMaxConnections() throws Exception {
+		this.exporter.setMaxConnections(2);
+		startExporter();
+		Socket[] sockets = new Socket[3];
+		try {
+			for (int i = 0; i < sockets.length; i++) {
+				// connection gets established in the TCP backlog even if not accepted
+				sockets[i] = new Socket("localhost", this.exporter.getPort());
+			}
+			waitForConnectionCount(2);
+			Thread.sleep(100);
+			assertEquals(2, this.exporter.getConnectionCount());
+			sockets[0].close();
+			waitForConnectionCount(2);
+		}
+		finally {
+			for (int i = 0; i < sockets.length; i++) {
+				if (sockets[i] != null) {
+					sockets[i].close();
+				}
+			}
+		}
+	}
+
+
+	private ITestBean createProxy(String serviceUrl, HttpInvokerRequestExecutor executor) {
+		HttpInvokerProxyFactoryBean pfb = new HttpInvokerProxyFactoryBean();
+		pfb.setServiceInterface(ITestBean.class);
+		pfb.setServiceUrl(serviceUrl);
+		pfb.setHttpInvokerRequestExecutor(executor);
+		pfb.afterPropertiesSet();
+		return (ITestBean) pfb.getObject();
+	}
+
+	private String sendRawRequest(String request) throws IOException {
+		Socket socket = new Socket("localhost", this.exporter.getPort());
+		try {
+			socket.setSoTimeout(5000);
+			OutputStream os = socket.getOutputStream();
+			os.write(request.getBytes("ISO-8859-1"));
+			os.flush();
+			InputStream is = socket.getInputStream();
+			StringBuffer response = new StringBuffer();
+			int b;
+			while ((b = is.read()) != -1) {
+				response.append((char) b);
+			}
+			return response.toString();
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	private void waitForConnectionCount(int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (this.exporter.getConnectionCount() != expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, this.exporter.getConnectionCount());
+	}
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.httpinvoker;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.remoting.RemoteAccessException;
+
+/**
+ * @since 2.5.7
+ */
+public class PooledCommonsHttpInvokerRequestExecutorTests extends TestCase {
+
+	private HttpServer server;
+
+	private String serviceUrl;
+
+	private int gzipRequestCount;
+
+	private PooledCommonsHttpInvokerRequestExecutor executor;
+
+
+	protected void setUp() throws Exception {
+		SimpleHttpInvokerServiceExporter exporter = new SimpleHttpInvokerServiceExporter() {
+			protected boolean isGzipRequest(HttpExchange exchange) {
+				boolean gzipRequest = super.isGzipRequest(exchange);
+				if (gzipRequest) {
+					gzipRequestCount++;
+				}
+				return gzipRequest;
+			}
+		};
+		exporter.setServiceInterface(ITestBean.class);
+		exporter.setService(new TestBean("juergen", 50));
+		exporter.afterPropertiesSet();
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/service", exporter);
+		this.server.start();
+		this.serviceUrl = "http://localhost:" + this.server.getAddress().getPort() + "/service";
+		this.executor = new PooledCommonsHttpInvokerRequestExecutor();
+	}
+
+	protected void tearDown() {
+		this.executor.destroy();
+		this.server.stop(0);
+	}
+
+
+	public void testChunkedRequests() throws Exception {
+		this.executor.afterPropertiesSet();
+		ITestBean proxy = createProxy(this.serviceUrl);
+		assertEquals("juergen", proxy.getName());
+		proxy.setName("rod");
+		assertEquals("rod", proxy.getName());
+		assertEquals(50, proxy.getAge());
+
+		assertEquals(1, this.executor.getServiceUrls().length);
+		assertEquals(4, this.executor.getRequestCount(this.serviceUrl));
+		assertEquals(0, this.executor.getFailureCount(this.serviceUrl));
+		assertEquals(4, this.executor.getLatencyHistogram(this.serviceUrl).getCount());
+		assertEquals(1, this.executor.getConnectionsInPool(this.serviceUrl));
+		assertEquals(0, this.gzipRequestCount);
+	}
+
+	public void testCompressedChunkedRequests() throws Exception {
+		this.executor.setCompressRequests(true);
+		this.executor.afterPropertiesSet();
+		ITestBean proxy = createProxy(this.serviceUrl);
+		proxy.setName("rod");
+		assertEquals("rod", proxy.getName());
+		assertEquals(2, this.gzipRequestCount);
+	}
+
+	public void testBufferedRequests() throws Exception {
+		this.executor.setChunkedRequests(false);
+		this.executor.afterPropertiesSet();
+		ITestBean proxy = createProxy(this.serviceUrl);
+		proxy.setName("rod");
+		assertEquals("rod", proxy.getName());
+		assertEquals(2, this.executor.getRequestCount(this.serviceUrl));
+		assertEquals(0, this.gzipRequestCount);
+	}
+
+	public void testCompressedBufferedRequests() throws Exception {
+		this.executor.setChunkedRequests(false);
+		this.executor.setCompressRequests(true);
+		this.executor.afterPropertiesSet();
+		ITestBean proxy = createProxy(this.serviceUrl);
+		proxy.setName("rod");
+		assertEquals("rod", proxy.getName());
+		assertEquals(2, this.gzipRequestCount);
+	}
+
+	public void testFailedRequestsAreCounted() throws Exception {
+		this.executor.afterPropertiesSet();
+		String unknownServiceUrl = "http://localhost:" + this.server.getAddress().getPort() + "/unknown";
+		ITestBean proxy = createProxy(unknownServiceUrl);
+		try {
+			proxy.getName();
+			fail("Should have thrown RemoteAccessException");
+		}
+		catch (RemoteAccessException ex) {
+			assertTrue(ex.getCause() instanceof IOException);
+		}
+		assertEquals(1, this.executor.getRequestCount(unknownServiceUrl));
+		assertEquals(1, this.executor.getFailureCount(unknownServiceUrl));
+		assertEquals(1, this.executor.getEndpointSummary().length);
+		this.executor.resetStatistics();
+		assertEquals(0, this.executor.getRequestCount(unknownServiceUrl));
+	}
+
+	public void testConnectionManagerOfProvidedHttpClientLeftAsIs() throws Exception {
+		MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+		connectionManager.getParams().setMaxTotalConnections(7);
+		this.executor.destroy();
+		this.executor = new PooledCommonsHttpInvokerRequestExecutor(new HttpClient(connectionManager));
+		try {
+			this.executor.setMaxTotalConnections(50);
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		this.executor.afterPropertiesSet();
+		assertEquals("juergen", createProxy(this.serviceUrl).getName());
+		this.executor.destroy();
+
+		assertEquals(7, connectionManager.getParams().getMaxTotalConnections());
+		HttpInvokerProxyFactoryBean pfb = new HttpInvokerProxyFactoryBean();
+		pfb.setServiceInterface(ITestBean.class);
+		pfb.setServiceUrl(this.serviceUrl);
+		pfb.setHttpInvokerRequestExecutor(new CommonsHttpInvokerRequestExecutor(new HttpClient(connectionManager)));
+		pfb.afterPropertiesSet();
+		assertEquals("juergen", ((ITestBean) pfb.getObject()).getName());
+		connectionManager.shutdown();
+	}
+
+	private ITestBean createProxy(String serviceUrl) {
+		HttpInvokerProxyFactoryBean pfb = new HttpInvokerProxyFactoryBean();
+		pfb.setServiceInterface(ITestBean.class);
+		pfb.setServiceUrl(serviceUrl);
+		pfb.setHttpInvokerRequestExecutor(this.executor);
+		pfb.afterPropertiesSet();
+		return (ITestBean) pfb.getObject();
+	}
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.support;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.util.SerializationTestUtils;
+
+/**
+ * @since 2.5.7
+ */
+public class RemoteInvocationBatcherTests extends TestCase {
+
+	private TestExporter exporter;
+
+	private RemoteInvocationBatcher batcher;
+
+	private int sendCount;
+
+
+	protected void setUp() {
+		this.exporter = new TestExporter();
+		this.exporter.setServiceInterface(ITestBean.class);
+		this.exporter.setService(new TestBean("juergen", 50));
+		this.batcher = new RemoteInvocationBatcher();
+		this.batcher.setBatchWindow(200);
+	}
+
+
+	public void testSingleInvocationIsSentPlain() throws Exception {
+		RemoteInvocationResult result = this.batcher.execute(getNameInvocation(), null, new ExporterSender());
+		assertFalse(result instanceof BatchRemoteInvocationResult);
+		assertEquals("juergen", result.getValue());
+		assertEquals(1, this.sendCount);
+		assertEquals(0, this.batcher.getBatchCount());
+	}
+
+	public void testConcurrentInvocationsAreBatched() throws Exception {
+		// a full batch gets sent right away, so the long window just rules out timing issues
+		this.batcher.setBatchWindow(5000);
+		this.batcher.setMaxBatchSize(5);
+		Object[] results = executeConcurrently(5, new ExporterSender());
+		for (int i = 0; i < results.length; i++) {
+			RemoteInvocationResult result = (RemoteInvocationResult) results[i];
+			assertEquals(new Integer(50), result.getValue());
+		}
+		assertEquals(1, this.sendCount);
+		assertEquals(1, this.batcher.getBatchCount());
+		assertEquals(5, this.batcher.getBatchedInvocationCount());
+	}
+
+	public void testInvocationsWithinBatchWindowAreBatched() throws Exception {
+		Object[] results = executeConcurrently(5, new ExporterSender());
+		for (int i = 0; i < results.length; i++) {
+			RemoteInvocationResult result = (RemoteInvocationResult) results[i];
+			assertEquals(new Integer(50), result.getValue());
+		}
+		assertTrue(this.sendCount < 5);
+	}
+
+	public void testConcurrentInvocationsAreBatchedWithParallelExecution() throws Exception {
+		this.exporter.setBatchTaskExecutor(new SimpleAsyncTaskExecutor());
+		testConcurrentInvocationsAreBatched();
+	}
+
+	public void testOnlyInvocationsWithSameBatchKeyAreBatched() throws Exception {
+		this.batcher.setBatchWindow(5000);
+		this.batcher.setMaxBatchSize(2);
+		final List sentUsers = new ArrayList();
+		Object[] results = executeConcurrently(new String[] {"alice", "bob", "alice", "bob"},
+				new RemoteInvocationBatcher.Sender() {
+					public RemoteInvocationResult send(RemoteInvocation invocation) throws Exception {
+						RemoteInvocation[] invocations = ((BatchRemoteInvocation) invocation).getInvocations();
+						Set users = new HashSet();
+						for (int i = 0; i < invocations.length; i++) {
+							users.add(invocations[i].getAttribute("user"));
+						}
+						synchronized (sentUsers) {
+							sentUsers.add(users);
+						}
+						return new ExporterSender().send(invocation);
+					}
+				});
+		for (int i = 0; i < results.length; i++) {
+			assertEquals(new Integer(50), ((RemoteInvocationResult) results[i]).getValue());
+		}
+		assertEquals(2, sentUsers.size());
+		assertTrue(sentUsers.contains(Collections.singleton("alice")));
+		assertTrue(sentUsers.contains(Collections.singleton("bob")));
+		assertEquals(2, this.batcher.getBatchCount());
+	}
+
+	public void testTargetExceptionIsReturnedPerInvocation() throws Exception {
+		RemoteInvocation exceptional = new RemoteInvocation("exceptional",
+				new Class[] {Throwable.class}, new Object[] {new IllegalStateException()});
+		RemoteInvocation[] invocations = new RemoteInvocation[] {exceptional, getNameInvocation()};
+		BatchRemoteInvocationResult result = (BatchRemoteInvocationResult)
+				new ExporterSender().send(new BatchRemoteInvocation(invocations));
+		assertEquals(2, result.getResults().length);
+		assertTrue(result.getResults()[0].getException() instanceof InvocationTargetException);
+		assertEquals("juergen", result.getResults()[1].getValue());
+	}
+
+	public void testNestedBatchIsRejected() throws Exception {
+		RemoteInvocation nested = new BatchRemoteInvocation(new RemoteInvocation[] {getNameInvocation()});
+		RemoteInvocation[] invocations = new RemoteInvocation[] {nested, getNameInvocation()};
+		BatchRemoteInvocationResult result = (BatchRemoteInvocationResult)
+				new ExporterSender().send(new BatchRemoteInvocation(invocations));
+		assertTrue(result.getResults()[0].getException() instanceof IllegalArgumentException);
+		assertEquals("juergen", result.getResults()[1].getValue());
+	}
+
+	public void testSendFailurePropagatesToAllCallers() throws Exception {
+		this.batcher.setBatchWindow(5000);
+		this.batcher.setMaxBatchSize(3);
+		Object[] results = executeConcurrently(3, new RemoteInvocationBatcher.Sender() {
+			public RemoteInvocationResult send(RemoteInvocation invocation) throws Exception {
+				throw new IOException("connection refused");
+			}
+		});
+		for (int i = 0; i < results.length; i++) {
+			assertTrue(results[i] instanceof IOException);
+		}
+	}
+
+	public void testNonBatchAwareEndpoint() throws Exception {
+		this.batcher.setBatchWindow(5000);
+		this.batcher.setMaxBatchSize(3);
+		Object[] results = executeConcurrently(3, new RemoteInvocationBatcher.Sender() {
+			public RemoteInvocationResult send(RemoteInvocation invocation) {
+				return new RemoteInvocationResult(new Integer(50));
+			}
+		});
+		for (int i = 0; i < results.length; i++) {
+			assertTrue(results[i] instanceof RemoteAccessException);
+		}
+	}
+
+	public void testBatchingInactiveByDefault() throws Exception {
+		RemoteInvocationBatcher batcher = new RemoteInvocationBatcher();
+		assertFalse(batcher.isBatchingActive());
+		assertEquals(RemoteInvocationBatcher.DEFAULT_MAX_BATCH_SIZE, batcher.getMaxBatchSize());
+		try {
+			batcher.setMaxBatchSize(0);
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+
+	private RemoteInvocation getNameInvocation() {
+		return new RemoteInvocation("getName", new Class[0], new Object[0]);
+	}
+
+	/**
+	 * Execute "getAge" from the given number of threads, returning either
+	 * the RemoteInvocationResult or the thrown exception for each thread.
+	 */
+	private Object[] executeConcurrently(int threadCount, RemoteInvocationBatcher.Sender sender)
+			throws InterruptedException {
+
+		return executeConcurrently(new String[threadCount], sender);
+	}
+
+	/**
+	 * Execute "getAge" for each of the given users (used as batch key),
+	 * one thread per user, returning either the RemoteInvocationResult
+	 * or the thrown exception for each thread.
+	 */
+	private Object[] executeConcurrently(final String[] users, final RemoteInvocationBatcher.Sender sender)
+			throws InterruptedException {
+
+		int threadCount = users.length;
+		final Object[] results = new Object[threadCount];
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						RemoteInvocation invocation = new RemoteInvocation("getAge", new Class[0], new Object[0]);
+						if (users[index] != null) {
+							invocation.addAttribute("user", users[index]);
+						}
+						results[index] = batcher.execute(invocation, users[index], sender);
+					}
+					catch (Exception ex) {
+						results[index] = ex;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threadCount; i++) {
+			threads[i].join();
+		}
+		return results;
+	}
+
+
+	private class ExporterSender implements RemoteInvocationBatcher.Sender {
+
+		public RemoteInvocationResult send(RemoteInvocation invocation) throws Exception {
+			synchronized (RemoteInvocationBatcherTests.this) {
+				sendCount++;
+			}
+			RemoteInvocation received = (RemoteInvocation) SerializationTestUtils.serializeAndDeserialize(invocation);
+			RemoteInvocationResult result = exporter.invokeAndCreateResult(received, exporter.getService());
+			return (RemoteInvocationResult) SerializationTestUtils.serializeAndDeserialize(result);
+		}
+	}
+
+
+	private static class TestExporter extends RemoteInvocationBasedExporter {
+	}
+
+}
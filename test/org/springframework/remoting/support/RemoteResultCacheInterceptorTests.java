@@ -0,0 +1,282 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.support;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.interceptor.ExposeTargetKeyInterceptor;
+import org.springframework.remoting.RemoteAccessException;
+
+/**
+ * @since 2.5.7
+ */
+public class RemoteResultCacheInterceptorTests extends TestCase {
+
+	private CountingReferenceDataService target;
+
+	private RemoteResultCacheInterceptor interceptor;
+
+	private ReferenceDataService proxy;
+
+
+	protected void setUp() {
+		this.target = new CountingReferenceDataService();
+		this.interceptor = new RemoteResultCacheInterceptor();
+		this.interceptor.setMappedName("lookup*");
+		ProxyFactory pf = new ProxyFactory(this.target);
+		pf.addAdvice(this.interceptor);
+		this.proxy = (ReferenceDataService) pf.getProxy();
+	}
+
+
+	public void testResultsOfMappedMethodsAreCached() throws Exception {
+		assertEquals("a1", this.proxy.lookup("a"));
+		assertEquals("a1", this.proxy.lookup("a"));
+		assertEquals("b2", this.proxy.lookup("b"));
+		assertEquals("b2", this.proxy.lookup("b"));
+		assertEquals(2, this.target.getInvocationCount());
+		assertEquals(2, this.interceptor.getHitCount());
+		assertEquals(2, this.interceptor.getMissCount());
+		assertEquals(2, this.interceptor.getCacheSize());
+	}
+
+	public void testResultsOfUnmappedMethodsAreNotCached() throws Exception {
+		this.proxy.update("a");
+		this.proxy.update("a");
+		assertEquals(2, this.target.getInvocationCount());
+		assertEquals(0, this.interceptor.getCacheSize());
+	}
+
+	public void testNullResultsAreCached() throws Exception {
+		assertNull(this.proxy.lookup(null));
+		assertNull(this.proxy.lookup(null));
+		assertEquals(1, this.target.getInvocationCount());
+	}
+
+	public void testExceptionsAreNotCached() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			try {
+				this.proxy.lookup("fail");
+				fail("Should have thrown IOException");
+			}
+			catch (IOException ex) {
+				// expected
+			}
+		}
+		assertEquals(2, this.target.getInvocationCount());
+		assertEquals(0, this.interceptor.getCacheSize());
+	}
+
+	public void testNonSerializableArgumentsAreNotCached() throws Exception {
+		Object key = new Object();
+		this.proxy.lookup(key);
+		this.proxy.lookup(key);
+		assertEquals(2, this.target.getInvocationCount());
+	}
+
+	public void testTimeToLive() throws Exception {
+		this.interceptor.setTimeToLive(50);
+		assertEquals("a1", this.proxy.lookup("a"));
+		assertEquals("a1", this.proxy.lookup("a"));
+		Thread.sleep(100);
+		assertEquals("a2", this.proxy.lookup("a"));
+		assertEquals(2, this.target.getInvocationCount());
+	}
+
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		this.interceptor.setMaxEntries(2);
+		this.proxy.lookup("a");
+		this.proxy.lookup("b");
+		this.proxy.lookup("a");
+		this.proxy.lookup("c");
+		assertEquals(2, this.interceptor.getCacheSize());
+		assertEquals(3, this.target.getInvocationCount());
+		this.proxy.lookup("a");
+		assertEquals(3, this.target.getInvocationCount());
+		this.proxy.lookup("b");
+		assertEquals(4, this.target.getInvocationCount());
+	}
+
+	public void testClear() throws Exception {
+		this.proxy.lookup("a");
+		this.interceptor.clear();
+		assertEquals(0, this.interceptor.getCacheSize());
+		this.proxy.lookup("a");
+		assertEquals(2, this.target.getInvocationCount());
+	}
+
+	public void testConcurrentInvocationsAreCoalesced() throws Exception {
+		this.target.setDelay(200);
+		Object[] results = lookupConcurrently(5, "a");
+		for (int i = 0; i < results.length; i++) {
+			assertEquals("a1", results[i]);
+		}
+		assertEquals(1, this.target.getInvocationCount());
+		assertEquals(4, this.interceptor.getCoalescedCount());
+	}
+
+	public void testCoalescedInvocationsShareException() throws Exception {
+		this.target.setDelay(200);
+		Object[] results = lookupConcurrently(3, "fail");
+		for (int i = 0; i < results.length; i++) {
+			assertTrue(results[i] instanceof IOException);
+		}
+		assertEquals(1, this.target.getInvocationCount());
+	}
+
+	public void testConcurrentInvocationsWithoutCoalescing() throws Exception {
+		this.interceptor.setCoalesceInvocations(false);
+		this.target.setDelay(200);
+		lookupConcurrently(3, "a");
+		assertEquals(3, this.target.getInvocationCount());
+		assertEquals(0, this.interceptor.getCoalescedCount());
+	}
+
+	public void testResultsAreNotSharedBetweenTargets() throws Exception {
+		CountingReferenceDataService otherTarget = new CountingReferenceDataService();
+		ProxyFactory pf = new ProxyFactory(otherTarget);
+		pf.addAdvice(this.interceptor);
+		ReferenceDataService otherProxy = (ReferenceDataService) pf.getProxy();
+		assertEquals("a1", this.proxy.lookup("a"));
+		assertEquals("a1", otherProxy.lookup("a"));
+		assertEquals(1, this.target.getInvocationCount());
+		assertEquals(1, otherTarget.getInvocationCount());
+		assertEquals(2, this.interceptor.getCacheSize());
+	}
+
+	public void testResultsAreSharedPerExposedTargetKey() throws Exception {
+		CountingReferenceDataService otherTarget = new CountingReferenceDataService();
+		ReferenceDataService proxy1 = createProxyWithTargetKey(this.target, "http://host1/service");
+		ReferenceDataService proxy2 = createProxyWithTargetKey(otherTarget, "http://host1/service");
+		ReferenceDataService proxy3 = createProxyWithTargetKey(otherTarget, "http://host2/service");
+		assertEquals("a1", proxy1.lookup("a"));
+		assertEquals("a1", proxy2.lookup("a"));
+		assertEquals(0, otherTarget.getInvocationCount());
+		assertEquals("a1", proxy3.lookup("a"));
+		assertEquals(1, otherTarget.getInvocationCount());
+	}
+
+	public void testInterruptWhileWaitingForPendingInvocation() throws Exception {
+		this.target.setDelay(500);
+		Thread invoker = new Thread() {
+			public void run() {
+				try {
+					proxy.lookup("a");
+				}
+				catch (IOException ex) {
+					throw new IllegalStateException(ex.toString());
+				}
+			}
+		};
+		invoker.start();
+		Thread.sleep(100);
+		Thread.currentThread().interrupt();
+		try {
+			this.proxy.lookup("a");
+			fail("Should have thrown RemoteAccessException");
+		}
+		catch (RemoteAccessException ex) {
+			assertTrue(ex.getCause() instanceof InterruptedException);
+			assertTrue(Thread.interrupted());
+		}
+		invoker.join();
+		assertEquals(1, this.interceptor.getCoalescedCount());
+		assertEquals(1, this.target.getInvocationCount());
+	}
+
+
+	private ReferenceDataService createProxyWithTargetKey(ReferenceDataService target, String targetKey) {
+		ProxyFactory pf = new ProxyFactory(target);
+		pf.addAdvice(new ExposeTargetKeyInterceptor(targetKey));
+		pf.addAdvice(this.interceptor);
+		return (ReferenceDataService) pf.getProxy();
+	}
+
+	private Object[] lookupConcurrently(int threadCount, final Object key) throws InterruptedException {
+		final Object[] results = new Object[threadCount];
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						results[index] = proxy.lookup(key);
+					}
+					catch (Exception ex) {
+						results[index] = ex;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threadCount; i++) {
+			threads[i].join();
+		}
+		return results;
+	}
+
+
+	public interface ReferenceDataService {
+
+		String lookup(Object key) throws IOException;
+
+		void update(Object key);
+	}
+
+
+	private static class CountingReferenceDataService implements ReferenceDataService {
+
+		private int invocationCount;
+
+		private long delay;
+
+		public void setDelay(long delay) {
+			this.delay = delay;
+		}
+
+		public synchronized int getInvocationCount() {
+			return this.invocationCount;
+		}
+
+		public String lookup(Object key) throws IOException {
+			int count;
+			synchronized (this) {
+				count = ++this.invocationCount;
+			}
+			if (this.delay > 0) {
+				try {
+					Thread.sleep(this.delay);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if ("fail".equals(key)) {
+				throw new IOException("lookup failed");
+			}
+			return (key != null ? key.toString() + count : null);
+		}
+
+		public synchronized void update(Object key) {
+			this.invocationCount++;
+		}
+	}
+
+}
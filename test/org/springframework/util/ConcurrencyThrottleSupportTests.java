@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @since 2.5.7
+ */
+public class ConcurrencyThrottleSupportTests extends TestCase {
+
+	public void testTryBeforeAccessWithoutWaiting() {
+		TestThrottle throttle = new TestThrottle();
+		throttle.setConcurrencyLimit(2);
+		assertTrue(throttle.tryBeforeAccess(0));
+		assertTrue(throttle.tryBeforeAccess(0));
+		assertFalse(throttle.tryBeforeAccess(0));
+		assertEquals(2, throttle.getConcurrencyCount());
+		throttle.afterAccess();
+		assertTrue(throttle.tryBeforeAccess(0));
+	}
+
+	public void testTryBeforeAccessWithTimeout() {
+		TestThrottle throttle = new TestThrottle();
+		throttle.setConcurrencyLimit(1);
+		throttle.beforeAccess();
+		long start = System.currentTimeMillis();
+		assertFalse(throttle.tryBeforeAccess(50));
+		assertTrue(System.currentTimeMillis() - start >= 40);
+	}
+
+	public void testConcurrencyLimitChangedAtRuntime() {
+		TestThrottle throttle = new TestThrottle();
+		throttle.setConcurrencyLimit(1);
+		throttle.setAccessTimeout(0);
+		throttle.beforeAccess();
+		try {
+			throttle.beforeAccess();
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		throttle.setConcurrencyLimit(2);
+		throttle.beforeAccess();
+		assertEquals(2, throttle.getConcurrencyCount());
+		throttle.setConcurrencyLimit(1);
+		assertFalse(throttle.tryBeforeAccess(0));
+		throttle.afterAccess();
+		assertFalse(throttle.tryBeforeAccess(0));
+		throttle.afterAccess();
+		assertEquals(0, throttle.getConcurrencyCount());
+		assertTrue(throttle.tryBeforeAccess(0));
+	}
+
+	public void testNoConcurrency() {
+		TestThrottle throttle = new TestThrottle();
+		throttle.setConcurrencyLimit(ConcurrencyThrottleSupport.NO_CONCURRENCY);
+		try {
+			throttle.tryBeforeAccess(0);
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+
+	public void testSerializationPreservesSettings() throws Exception {
+		TestThrottle throttle = new TestThrottle();
+		throttle.setConcurrencyLimit(1);
+		throttle.setFair(true);
+		throttle.setAccessTimeout(0);
+		throttle.beforeAccess();
+		TestThrottle copy = (TestThrottle) SerializationTestUtils.serializeAndDeserialize(throttle);
+		assertEquals(1, copy.getConcurrencyLimit());
+		assertTrue(copy.isFair());
+		assertEquals(0, copy.getAccessTimeout());
+		assertEquals(0, copy.getConcurrencyCount());
+		assertTrue(copy.tryBeforeAccess(0));
+		assertFalse(copy.tryBeforeAccess(0));
+	}
+
+
+	private static class TestThrottle extends ConcurrencyThrottleSupport {
+	}
+
+}
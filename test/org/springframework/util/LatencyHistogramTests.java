@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.springframework.test.AssertThrows;
+
+/**
+ * @since 2.5.7
+ */
+public class LatencyHistogramTests extends TestCase {
+
+	public void testRecordIntoBuckets() {
+		LatencyHistogram histogram = new LatencyHistogram(new long[] {10, 100});
+		histogram.record(0);
+		histogram.record(10);
+		histogram.record(11);
+		histogram.record(500);
+		assertTrue(Arrays.equals(new long[] {2, 1, 1}, histogram.getBucketCounts()));
+		assertEquals(4, histogram.getCount());
+		assertEquals(500, histogram.getMaxMillis());
+		assertEquals(130.25, histogram.getMeanMillis(), 0.001);
+	}
+
+	public void testRecordNanos() {
+		LatencyHistogram histogram = new LatencyHistogram(new long[] {1, 10});
+		histogram.recordNanos(250000);
+		histogram.recordNanos(750000);
+		histogram.recordNanos(1500000);
+		assertTrue(Arrays.equals(new long[] {2, 1, 0}, histogram.getBucketCounts()));
+		assertEquals(0.833, histogram.getMeanMillis(), 0.001);
+		assertEquals(1, histogram.getMaxMillis());
+	}
+
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentileMillis(99));
+		for (int i = 0; i < 98; i++) {
+			histogram.record(3);
+		}
+		histogram.record(40);
+		histogram.record(20000);
+		assertEquals(5, histogram.getPercentileMillis(50));
+		assertEquals(50, histogram.getPercentileMillis(99));
+		assertEquals(20000, histogram.getPercentileMillis(100));
+	}
+
+	public void testPercentileCappedAtMaximum() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(120);
+		assertEquals(120, histogram.getPercentileMillis(50));
+	}
+
+	public void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(7);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMaxMillis());
+		assertEquals("count=[0]; mean=[0ms]; p50=[0ms]; p99=[0ms]; max=[0ms]", histogram.toString());
+	}
+
+	public void testBucketBoundsMustBeAscending() {
+		new AssertThrows(IllegalArgumentException.class) {
+			public void test() {
+				new LatencyHistogram(new long[] {10, 5});
+			}
+		}.runTest();
+	}
+
+}
@@ -21,6 +21,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -384,6 +386,38 @@ public class DataBinderTests extends TestCase {
 		assertTrue("Same object", tb.equals(rod));
 	}
 
+	public void testBindingWithAllowedAndDisallowedFieldPatterns() throws Exception {
+		TestBean rod = new TestBean();
+		DataBinder binder = new DataBinder(rod);
+		binder.setAllowedFields(new String[] {"name", "to*", "*ge", "*ex*", "s*Map*"});
+		binder.setDisallowedFields(new String[] {"*uch*"});
+
+		MutablePropertyValues pvs = new MutablePropertyValues();
+		pvs.addPropertyValue("name", "Rod");
+		pvs.addPropertyValue("touchy", "Rod");
+		pvs.addPropertyValue("age", "32");
+		pvs.addPropertyValue("sex", "m");
+		pvs.addPropertyValue("someMap[key1]", "value1");
+		pvs.addPropertyValue("country", "AT");
+		pvs.addPropertyValue("date", "x");
+
+		binder.bind(pvs);
+		binder.close();
+
+		assertEquals("Rod", rod.getName());
+		assertEquals(32, rod.getAge());
+		assertEquals("m", rod.getSex());
+		assertNull(rod.getTouchy());
+		assertNull(rod.getCountry());
+		assertEquals("value1", rod.getSomeMap().get("key1"));
+		List suppressedFields = Arrays.asList(binder.getBindingResult().getSuppressedFields());
+		assertEquals(3, suppressedFields.size());
+		assertTrue(suppressedFields.contains("touchy"));
+		assertTrue(suppressedFields.contains("country"));
+		assertTrue(suppressedFields.contains("date"));
+		assertEquals(4, pvs.size());
+	}
+
 	public void testBindingWithAllowedAndDisallowedMapFields() throws Exception {
 		TestBean rod = new TestBean();
 		DataBinder binder = new DataBinder(rod);
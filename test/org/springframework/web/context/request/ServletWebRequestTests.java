@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2006 the original author or authors.
+ * Copyright 2002-2008 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,7 @@ import java.util.Map;
 import junit.framework.TestCase;
 
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 /**
  * @author Juergen Hoeller
@@ -61,4 +62,56 @@ public class ServletWebRequestTests extends TestCase {
 		assertEquals(Locale.UK, request.getLocale());
 	}
 
+	public void testCheckNotModifiedWithMatchingETag() {
+		MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/");
+		servletRequest.addHeader("If-None-Match", "\"other\", \"v1\"");
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+		ServletWebRequest request = new ServletWebRequest(servletRequest, servletResponse);
+		assertTrue(request.checkNotModified("v1"));
+		assertTrue(request.isNotModified());
+		assertEquals(304, servletResponse.getStatus());
+		assertEquals("\"v1\"", servletResponse.getHeader("ETag"));
+	}
+
+	public void testCheckNotModifiedWithWeakAndWildcardETags() {
+		MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/");
+		servletRequest.addHeader("If-None-Match", "W/\"v1\"");
+		assertTrue(new ServletWebRequest(servletRequest, new MockHttpServletResponse()).checkNotModified("\"v1\""));
+
+		servletRequest = new MockHttpServletRequest("GET", "/");
+		servletRequest.addHeader("If-None-Match", "*");
+		assertTrue(new ServletWebRequest(servletRequest, new MockHttpServletResponse()).checkNotModified("v2"));
+	}
+
+	public void testCheckModifiedWithDifferentETag() {
+		MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/");
+		servletRequest.addHeader("If-None-Match", "\"v1\"");
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+		ServletWebRequest request = new ServletWebRequest(servletRequest, servletResponse);
+		assertFalse(request.checkNotModified("v2"));
+		assertEquals(200, servletResponse.getStatus());
+		assertEquals("\"v2\"", servletResponse.getHeader("ETag"));
+	}
+
+	public void testCheckNotModifiedWithMatchingETagForHead() {
+		MockHttpServletRequest servletRequest = new MockHttpServletRequest("HEAD", "/");
+		servletRequest.addHeader("If-None-Match", "\"v1\"");
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+		assertTrue(new ServletWebRequest(servletRequest, servletResponse).checkNotModified("v1"));
+		assertEquals(304, servletResponse.getStatus());
+	}
+
+	public void testCheckNotModifiedWithMatchingETagForPost() {
+		MockHttpServletRequest servletRequest = new MockHttpServletRequest("POST", "/");
+		servletRequest.addHeader("If-None-Match", "\"v1\"");
+		MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+		assertTrue(new ServletWebRequest(servletRequest, servletResponse).checkNotModified("v1"));
+		assertEquals(412, servletResponse.getStatus());
+		assertEquals("\"v1\"", servletResponse.getHeader("ETag"));
+	}
+
 }
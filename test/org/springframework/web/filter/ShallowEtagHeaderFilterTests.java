@@ -0,0 +1,174 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.filter;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * @since 2.5.7
+ */
+public class ShallowEtagHeaderFilterTests extends TestCase {
+
+	private static final byte[] BODY = "Hello World".getBytes();
+
+	private ShallowEtagHeaderFilter filter;
+
+
+	protected void setUp() throws Exception {
+		this.filter = new ShallowEtagHeaderFilter();
+		this.filter.init(new MockFilterConfig(new MockServletContext(), "etag"));
+	}
+
+
+	public void testFilterNoMatch() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/hotels");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		this.filter.doFilter(request, response, new BodyWritingFilterChain());
+
+		assertEquals(200, response.getStatus());
+		String eTag = (String) response.getHeader("ETag");
+		assertNotNull(eTag);
+		assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+		assertEquals(BODY.length, response.getContentLength());
+		assertEquals(new String(BODY), response.getContentAsString());
+	}
+
+	public void testFilterMatch() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/hotels");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.filter.doFilter(request, response, new BodyWritingFilterChain());
+		String eTag = (String) response.getHeader("ETag");
+
+		request = new MockHttpServletRequest("GET", "/hotels");
+		request.addHeader("If-None-Match", eTag);
+		response = new MockHttpServletResponse();
+		this.filter.doFilter(request, response, new BodyWritingFilterChain());
+
+		assertEquals(304, response.getStatus());
+		assertEquals(eTag, response.getHeader("ETag"));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	public void testFilterWriter() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/hotels");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		this.filter.doFilter(request, response, new FilterChain() {
+			public void doFilter(ServletRequest req, ServletResponse resp) throws IOException {
+				resp.getWriter().write("Hello World");
+			}
+		});
+
+		assertNotNull(response.getHeader("ETag"));
+		assertEquals("Hello World", response.getContentAsString());
+	}
+
+	public void testFilterIgnoresNonGetRequest() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/hotels");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		this.filter.doFilter(request, response, new BodyWritingFilterChain());
+
+		assertNull(response.getHeader("ETag"));
+		assertEquals(new String(BODY), response.getContentAsString());
+	}
+
+	public void testFilterIgnoresErrorStatus() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/hotels");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		this.filter.doFilter(request, response, new FilterChain() {
+			public void doFilter(ServletRequest req, ServletResponse resp) throws IOException {
+				((HttpServletResponse) resp).setStatus(404);
+				resp.getOutputStream().write(BODY);
+			}
+		});
+
+		assertEquals(404, response.getStatus());
+		assertNull(response.getHeader("ETag"));
+		assertEquals(new String(BODY), response.getContentAsString());
+	}
+
+	public void testHandlerSuppliedETagShortCircuits() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/hotels");
+		request.addHeader("If-None-Match", "\"42\"");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		final int[] renderCount = new int[1];
+
+		this.filter.doFilter(request, response, new FilterChain() {
+			public void doFilter(ServletRequest req, ServletResponse resp) throws IOException {
+				ServletWebRequest webRequest =
+						new ServletWebRequest((HttpServletRequest) req, (HttpServletResponse) resp);
+				if (!webRequest.checkNotModified("42")) {
+					renderCount[0]++;
+					resp.getOutputStream().write(BODY);
+				}
+			}
+		});
+
+		assertEquals(0, renderCount[0]);
+		assertEquals(304, response.getStatus());
+		assertEquals("\"42\"", response.getHeader("ETag"));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	public void testHandlerSuppliedETagWithoutMatch() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/hotels");
+		request.addHeader("If-None-Match", "\"41\"");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		this.filter.doFilter(request, response, new FilterChain() {
+			public void doFilter(ServletRequest req, ServletResponse resp) throws IOException {
+				ServletWebRequest webRequest =
+						new ServletWebRequest((HttpServletRequest) req, (HttpServletResponse) resp);
+				if (!webRequest.checkNotModified("42")) {
+					resp.getOutputStream().write(BODY);
+				}
+			}
+		});
+
+		assertEquals(200, response.getStatus());
+		assertEquals("\"42\"", response.getHeader("ETag"));
+		assertEquals(new String(BODY), response.getContentAsString());
+	}
+
+
+	private static class BodyWritingFilterChain implements FilterChain {
+
+		public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+			response.setContentType("text/plain");
+			response.getOutputStream().write(BODY);
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.servlet.resource;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * @since 2.5.7
+ */
+public class ResourceHttpRequestHandlerTests extends TestCase {
+
+	private static final String CONTENT = "function hello() { return 'Hello World'; }";
+
+	private File dir;
+
+	private ResourceHttpRequestHandler handler;
+
+
+	protected void setUp() throws Exception {
+		this.dir = File.createTempFile("resources", "");
+		this.dir.delete();
+		this.dir.mkdir();
+		writeFile("test.js", CONTENT);
+		writeFile("app-3f2a9c1d.js", CONTENT);
+
+		StaticWebApplicationContext wac = new StaticWebApplicationContext();
+		wac.setServletContext(new MockServletContext());
+		wac.refresh();
+		this.handler = new ResourceHttpRequestHandler();
+		this.handler.setLocations(new Resource[] {new FileSystemResource(this.dir.getAbsolutePath() + "/")});
+		this.handler.setCacheSeconds(3600);
+		this.handler.setApplicationContext(wac);
+	}
+
+	protected void tearDown() {
+		FileSystemUtils.deleteRecursively(this.dir);
+	}
+
+
+	public void testGetResource() throws Exception {
+		MockHttpServletRequest request = createRequest("GET", "test.js");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.handler.handleRequest(request, response);
+
+		assertEquals(200, response.getStatus());
+		assertEquals(CONTENT.length(), response.getContentLength());
+		assertEquals(CONTENT, response.getContentAsString());
+		assertEquals("bytes", response.getHeader("Accept-Ranges"));
+		assertNotNull(response.getHeader("Last-Modified"));
+		assertEquals("max-age=3600, must-revalidate", response.getHeader("Cache-Control"));
+		assertEquals(CONTENT.length(), this.handler.getCachedBytes());
+	}
+
+	public void testGetFingerprintedResource() throws Exception {
+		MockHttpServletRequest request = createRequest("GET", "app-3f2a9c1d.js");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.handler.handleRequest(request, response);
+
+		assertEquals(CONTENT, response.getContentAsString());
+		assertEquals("max-age=31536000", response.getHeader("Cache-Control"));
+	}
+
+	public void testHeadResource() throws Exception {
+		MockHttpServletRequest request = createRequest("HEAD", "test.js");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.handler.handleRequest(request, response);
+
+		assertEquals(200, response.getStatus());
+		assertEquals(CONTENT.length(), response.getContentLength());
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	public void testNotModified() throws Exception {
+		MockHttpServletRequest request = createRequest("GET", "test.js");
+		request.addHeader("If-Modified-Since", new Long(new File(this.dir, "test.js").lastModified()));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.handler.handleRequest(request, response);
+
+		assertEquals(304, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	public void testRange() throws Exception {
+		MockHttpServletRequest request = createRequest("GET", "test.js");
+		request.addHeader("Range", "bytes=9-13");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.handler.handleRequest(request, response);
+
+		assertEquals(206, response.getStatus());
+		assertEquals("bytes 9-13/" + CONTENT.length(), response.getHeader("Content-Range"));
+		assertEquals(5, response.getContentLength());
+		assertEquals("hello", response.getContentAsString());
+	}
+
+	public void testSuffixRange() throws Exception {
+		MockHttpServletRequest request = createRequest("GET", "test.js");
+		request.addHeader("Range", "bytes=-3");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.handler.handleRequest(request, response);
+
+		assertEquals(206, response.getStatus());
+		assertEquals("; }", response.getContentAsString());
+	}
+
+	public void testUnsatisfiableRange() throws Exception {
+		MockHttpServletRequest request = createRequest("GET", "test.js");
+		request.addHeader("Range", "bytes=1000-");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.handler.handleRequest(request, response);
+
+		assertEquals(416, response.getStatus());
+		assertEquals("bytes */" + CONTENT.length(), response.getHeader("Content-Range"));
+	}
+
+	public void testLargeResourceTransferredFromFile() throws Exception {
+		this.handler.setMaxCachedResourceSize(10);
+		MockHttpServletRequest request = createRequest("GET", "test.js");
+		request.addHeader("Range", "bytes=9-");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.handler.handleRequest(request, response);
+
+		assertEquals(206, response.getStatus());
+		assertEquals(CONTENT.substring(9), response.getContentAsString());
+		assertEquals(0, this.handler.getCachedBytes());
+	}
+
+	public void testCacheEviction() throws Exception {
+		this.handler.setMaxCacheSize(CONTENT.length());
+		this.handler.handleRequest(createRequest("GET", "test.js"), new MockHttpServletResponse());
+		this.handler.handleRequest(createRequest("GET", "app-3f2a9c1d.js"), new MockHttpServletResponse());
+		assertEquals(CONTENT.length(), this.handler.getCachedBytes());
+	}
+
+	public void testCacheKeyedByCleanedPath() throws Exception {
+		String[] paths = new String[] {"test.js", "/test.js", "./test.js", "foo/../test.js"};
+		for (int i = 0; i < paths.length; i++) {
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			this.handler.handleRequest(createRequest("GET", paths[i]), response);
+			assertEquals(paths[i], CONTENT, response.getContentAsString());
+		}
+		assertEquals(CONTENT.length(), this.handler.getCachedBytes());
+	}
+
+	public void testResourceNotFound() throws Exception {
+		MockHttpServletRequest request = createRequest("GET", "missing.js");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.handler.handleRequest(request, response);
+		assertEquals(404, response.getStatus());
+	}
+
+	public void testInvalidPaths() throws Exception {
+		new File(this.dir, "web-inf").mkdir();
+		writeFile("web-inf/web.xml", CONTENT);
+		String[] paths = new String[] {"../test.js", "foo/../../test.js", "WEB-INF/web.xml", "META-INF/MANIFEST.MF",
+				"web-inf/web.xml", "Meta-Inf/MANIFEST.MF"};
+		for (int i = 0; i < paths.length; i++) {
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			this.handler.handleRequest(createRequest("GET", paths[i]), response);
+			assertEquals(paths[i], 404, response.getStatus());
+		}
+	}
+
+
+	private MockHttpServletRequest createRequest(String method, String path) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, "/resources/" + path);
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, path);
+		return request;
+	}
+
+	private void writeFile(String name, String content) throws IOException {
+		FileCopyUtils.copy(content.getBytes(), new File(this.dir, name));
+	}
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.util.Assert;
+
+/**
+ * Latency statistics for a single monitored method, as collected by a
+ * {@link PerformanceStatisticsInterceptor}.
+ *
+ * <p>Latencies are recorded in nanoseconds in a log-linear histogram:
+ * every power of two is split into 8 linear sub-buckets, which bounds
+ * the relative error of reported percentiles by 12.5% across the entire
+ * range of values, in a fixed amount of memory. Invocation counts and
+ * total latencies are kept in striped counters, spreading concurrent
+ * updates across separate cache lines. Recording a value is lock-free.
+ *
+ * <p>All statistics are exposed through bean property getters, so that
+ * instances of this class can be exported as MBeans through Spring's
+ * {@link org.springframework.jmx.export.MBeanExporter} as-is.
+ *
+ * <p>Requires JDK 1.5 or higher.
+ *
+ * @since 2.5.7
+ * @see PerformanceStatisticsInterceptor
+ * @see org.springframework.util.LatencyHistogram
+ */
+public class MethodPerformanceStatistics {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	/** Number of longs per stripe, keeping stripes on separate cache lines */
+	private static final int STRIPE_SIZE = 8;
+
+	private static final int COUNT_OFFSET = 0;
+
+	private static final int FAILURE_OFFSET = 1;
+
+	private static final int TOTAL_OFFSET = 2;
+
+	private static final int STRIPE_COUNT = determineStripeCount();
+
+	private static int determineStripeCount() {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int stripeCount = 1;
+		while (stripeCount < processors && stripeCount < 64) {
+			stripeCount <<= 1;
+		}
+		return stripeCount;
+	}
+
+
+	private final String name;
+
+	private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+
+	private final AtomicLongArray stripes = new AtomicLongArray(STRIPE_COUNT * STRIPE_SIZE);
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+
+	/**
+	 * Create a new MethodPerformanceStatistics instance.
+	 * @param name the name of the monitored method
+	 */
+	public MethodPerformanceStatistics(String name) {
+		Assert.notNull(name, "Name must not be null");
+		this.name = name;
+	}
+
+
+	/**
+	 * Return the name of the monitored method.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Record a single invocation.
+	 * @param nanos the latency of the invocation in nanoseconds
+	 * @param failed whether the invocation threw an exception
+	 */
+	public void record(long nanos, boolean failed) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		this.bucketCounts.incrementAndGet(getBucketIndex(nanos));
+		int stripe = (int) (Thread.currentThread().getId() & (STRIPE_COUNT - 1)) * STRIPE_SIZE;
+		this.stripes.incrementAndGet(stripe + COUNT_OFFSET);
+		this.stripes.addAndGet(stripe + TOTAL_OFFSET, nanos);
+		if (failed) {
+			this.stripes.incrementAndGet(stripe + FAILURE_OFFSET);
+		}
+		long currentMax = this.maxNanos.get();
+		while (nanos > currentMax && !this.maxNanos.compareAndSet(currentMax, nanos)) {
+			currentMax = this.maxNanos.get();
+		}
+	}
+
+	/**
+	 * Clear all recorded invocations.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.bucketCounts.set(i, 0);
+		}
+		for (int i = 0; i < this.stripes.length(); i++) {
+			this.stripes.set(i, 0);
+		}
+		this.maxNanos.set(0);
+	}
+
+
+	/**
+	 * Return the number of invocations recorded.
+	 */
+	public long getInvocationCount() {
+		return sumStripes(COUNT_OFFSET);
+	}
+
+	/**
+	 * Return the number of invocations that threw an exception.
+	 */
+	public long getFailureCount() {
+		return sumStripes(FAILURE_OFFSET);
+	}
+
+	/**
+	 * Return the average latency of all invocations (in milliseconds).
+	 */
+	public double getMeanMillis() {
+		long count = getInvocationCount();
+		return (count > 0 ? toMillis(sumStripes(TOTAL_OFFSET)) / count : 0.0);
+	}
+
+	/**
+	 * Return the highest latency recorded (in milliseconds).
+	 */
+	public double getMaxMillis() {
+		return toMillis(this.maxNanos.get());
+	}
+
+	/**
+	 * Return the median latency (in milliseconds).
+	 */
+	public double getP50Millis() {
+		return toMillis(getPercentileNanos(50));
+	}
+
+	/**
+	 * Return the 99th percentile latency (in milliseconds).
+	 */
+	public double getP99Millis() {
+		return toMillis(getPercentileNanos(99));
+	}
+
+	/**
+	 * Return the 99.9th percentile latency (in milliseconds).
+	 */
+	public double getP999Millis() {
+		return toMillis(getPercentileNanos(99.9));
+	}
+
+	/**
+	 * Return an approximation of the given percentile: the upper bound of
+	 * the histogram bucket that the percentile falls into, capped by the
+	 * highest value recorded.
+	 * @param percentile the percentile (between 0 and 100)
+	 * @return the approximated percentile (in nanoseconds), or 0 if no
+	 * invocations have been recorded yet
+	 */
+	public long getPercentileNanos(double percentile) {
+		Assert.isTrue(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = this.bucketCounts.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long max = this.maxNanos.get();
+		long threshold = Math.max((long) Math.ceil(total * percentile / 100), 1);
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += counts[i];
+			if (cumulative >= threshold) {
+				return Math.min(getBucketUpperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+
+	private long sumStripes(int offset) {
+		long sum = 0;
+		for (int i = offset; i < this.stripes.length(); i += STRIPE_SIZE) {
+			sum += this.stripes.get(i);
+		}
+		return sum;
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+
+	/**
+	 * Determine the histogram bucket for the given value: values below 16 get
+	 * a bucket of their own, higher values are grouped by their highest bit
+	 * and the three bits that follow it.
+	 */
+	static int getBucketIndex(long value) {
+		if (value < (SUB_BUCKET_COUNT << 1)) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+	}
+
+	/**
+	 * Determine the highest value that falls into the given histogram bucket.
+	 */
+	static long getBucketUpperBound(int index) {
+		if (index < (SUB_BUCKET_COUNT << 1)) {
+			return index;
+		}
+		int shift = (index >> SUB_BUCKET_BITS) - 1;
+		long subBucket = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+		// wraps around to Long.MAX_VALUE for the highest bucket
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+
+	/**
+	 * Return a one-line summary of the statistics recorded.
+	 */
+	public String toString() {
+		StringBuffer sb = new StringBuffer(this.name);
+		sb.append(": count=[").append(getInvocationCount()).append("]; ");
+		sb.append("failures=[").append(getFailureCount()).append("]; ");
+		sb.append("mean=[").append(getMeanMillis()).append("ms]; ");
+		sb.append("p50=[").append(getP50Millis()).append("ms]; ");
+		sb.append("p99=[").append(getP99Millis()).append("ms]; ");
+		sb.append("p999=[").append(getP999Millis()).append("ms]; ");
+		sb.append("max=[").append(getMaxMillis()).append("ms]");
+		return sb.toString();
+	}
+
+}
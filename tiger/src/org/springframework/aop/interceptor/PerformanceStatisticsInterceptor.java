@@ -0,0 +1,211 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Low-overhead AOP Alliance <code>MethodInterceptor</code> for performance
+ * monitoring in production: records the latency of every invocation in
+ * per-method {@link MethodPerformanceStatistics}, without any logging and
+ * without any locking on the invocation path.
+ *
+ * <p>In contrast to {@link PerformanceMonitorInterceptor}, which logs every
+ * single invocation, and {@link JamonPerformanceMonitorInterceptor}, which
+ * goes through JAMon's global synchronized registry, this interceptor only
+ * takes two <code>System.nanoTime()</code> readings, a map lookup and a few
+ * atomic increments per invocation. Percentiles are computed on access only.
+ *
+ * <p>Statistics are kept per target class and method signature, e.g.
+ * "com.mycompany.MyService.process(String,int)". Apply this interceptor to any bean through
+ * an Advisor, e.g. <code>&lt;aop:advisor advice-ref="performanceStatistics"
+ * pointcut="execution(* com.mycompany.service..*(..))"/&gt;</code>.
+ * The statistics are exposed through public methods, so that this interceptor
+ * can be exported as an MBean through Spring's
+ * {@link org.springframework.jmx.export.MBeanExporter} as-is; alternatively,
+ * register a {@link org.springframework.jmx.export.PerformanceStatisticsMBeanRegistrar}
+ * as listener in order to export each method's statistics as MBean of its own.
+ *
+ * <p>Requires JDK 1.5 or higher.
+ *
+ * @since 2.5.7
+ * @see MethodPerformanceStatistics
+ * @see #setListeners
+ */
+public class PerformanceStatisticsInterceptor implements MethodInterceptor {
+
+	private PerformanceStatisticsListener[] listeners = new PerformanceStatisticsListener[0];
+
+	/** Map from target Class to Map from Method to MethodPerformanceStatistics */
+	private final Map statisticsByClass = new ConcurrentHashMap();
+
+	/** Statistics keyed by name, sorted for display purposes */
+	private final Map statisticsByName = new TreeMap();
+
+
+	/**
+	 * Specify listeners to be notified of every newly monitored method.
+	 * @see org.springframework.jmx.export.PerformanceStatisticsMBeanRegistrar
+	 */
+	public void setListeners(PerformanceStatisticsListener[] listeners) {
+		this.listeners = (listeners != null ? listeners : new PerformanceStatisticsListener[0]);
+	}
+
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		MethodPerformanceStatistics statistics = getStatistics(invocation);
+		boolean failed = true;
+		long start = System.nanoTime();
+		try {
+			Object retVal = invocation.proceed();
+			failed = false;
+			return retVal;
+		}
+		finally {
+			statistics.record(System.nanoTime() - start, failed);
+		}
+	}
+
+	private MethodPerformanceStatistics getStatistics(MethodInvocation invocation) {
+		Object target = invocation.getThis();
+		Method method = invocation.getMethod();
+		Class targetClass = (target != null ? AopUtils.getTargetClass(target) : method.getDeclaringClass());
+		Map statisticsByMethod = (Map) this.statisticsByClass.get(targetClass);
+		if (statisticsByMethod != null) {
+			MethodPerformanceStatistics statistics = (MethodPerformanceStatistics) statisticsByMethod.get(method);
+			if (statistics != null) {
+				return statistics;
+			}
+		}
+		return createStatistics(targetClass, method);
+	}
+
+	private MethodPerformanceStatistics createStatistics(Class targetClass, Method method) {
+		String name = getStatisticsName(targetClass, method);
+		MethodPerformanceStatistics statistics;
+		boolean created = false;
+		synchronized (this.statisticsByName) {
+			Map statisticsByMethod = (Map) this.statisticsByClass.get(targetClass);
+			if (statisticsByMethod == null) {
+				statisticsByMethod = new ConcurrentHashMap();
+				this.statisticsByClass.put(targetClass, statisticsByMethod);
+			}
+			statistics = (MethodPerformanceStatistics) this.statisticsByName.get(name);
+			if (statistics == null) {
+				statistics = new MethodPerformanceStatistics(name);
+				this.statisticsByName.put(name, statistics);
+				created = true;
+			}
+			statisticsByMethod.put(method, statistics);
+		}
+		if (created) {
+			for (int i = 0; i < this.listeners.length; i++) {
+				this.listeners[i].statisticsCreated(this, statistics);
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Determine the name of the statistics for the given method.
+	 * Methods with the same name share their statistics.
+	 * <p>The default implementation returns the fully qualified name of the
+	 * target class, followed by a dot and the signature of the method with
+	 * short parameter type names, e.g. "com.mycompany.MyService.process(String,int)",
+	 * so that overloaded methods get statistics of their own.
+	 * @param targetClass the target class
+	 * @param method the invoked method (usually an interface method)
+	 * @return the name of the statistics (never <code>null</code>)
+	 */
+	protected String getStatisticsName(Class targetClass, Method method) {
+		StringBuffer name = new StringBuffer(targetClass.getName());
+		name.append('.').append(method.getName()).append('(');
+		Class[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0) {
+				name.append(',');
+			}
+			name.append(ClassUtils.getShortName(parameterTypes[i]));
+		}
+		return name.append(')').toString();
+	}
+
+
+	//---------------------------------------------------------------------
+	// Management operations, suitable for JMX export
+	//---------------------------------------------------------------------
+
+	/**
+	 * Return the names of all methods that have been invoked so far.
+	 */
+	public String[] getMonitoredMethods() {
+		synchronized (this.statisticsByName) {
+			return (String[]) this.statisticsByName.keySet().toArray(new String[this.statisticsByName.size()]);
+		}
+	}
+
+	/**
+	 * Return the statistics for the given method.
+	 * @param name the name of the method, as returned by {@link #getMonitoredMethods()}
+	 * @throws IllegalArgumentException if the method has not been invoked yet
+	 */
+	public MethodPerformanceStatistics getStatistics(String name) {
+		synchronized (this.statisticsByName) {
+			MethodPerformanceStatistics statistics = (MethodPerformanceStatistics) this.statisticsByName.get(name);
+			if (statistics == null) {
+				throw new IllegalArgumentException("No statistics for method [" + name + "]");
+			}
+			return statistics;
+		}
+	}
+
+	/**
+	 * Return a one-line summary per monitored method, with invocation count and percentiles.
+	 */
+	public String[] getStatisticsSummary() {
+		synchronized (this.statisticsByName) {
+			String[] summary = new String[this.statisticsByName.size()];
+			int i = 0;
+			for (Iterator it = this.statisticsByName.values().iterator(); it.hasNext();) {
+				summary[i++] = it.next().toString();
+			}
+			return summary;
+		}
+	}
+
+	/**
+	 * Clear the statistics recorded for all methods.
+	 */
+	public void resetStatistics() {
+		synchronized (this.statisticsByName) {
+			for (Iterator it = this.statisticsByName.values().iterator(); it.hasNext();) {
+				((MethodPerformanceStatistics) it.next()).reset();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+/**
+ * Callback interface for newly monitored methods of a
+ * {@link PerformanceStatisticsInterceptor}.
+ *
+ * <p>Invoked once per monitored method, on its first invocation,
+ * in the thread that performs that invocation.
+ *
+ * @since 2.5.7
+ * @see PerformanceStatisticsInterceptor#setListeners
+ * @see org.springframework.jmx.export.PerformanceStatisticsMBeanRegistrar
+ */
+public interface PerformanceStatisticsListener {
+
+	/**
+	 * Notification that the given interceptor started to collect
+	 * statistics for a method.
+	 * @param interceptor the interceptor that collects the statistics
+	 * @param statistics the statistics for the method
+	 */
+	void statisticsCreated(PerformanceStatisticsInterceptor interceptor, MethodPerformanceStatistics statistics);
+
+}
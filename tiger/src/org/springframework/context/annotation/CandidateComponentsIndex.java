@@ -0,0 +1,240 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.annotation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.PathMatcher;
+import org.springframework.util.StringUtils;
+
+/**
+ * Index of candidate component classes, as written into
+ * {@link #COMPONENTS_RESOURCE_LOCATION "META-INF/spring.components"} at build time
+ * by the {@link CandidateComponentsIndexer}. Each entry maps a class name to its
+ * stereotypes: the types of its annotations and meta-annotations, including
+ * those declared on its superclasses.
+ *
+ * <p>Allows {@link ClassPathScanningCandidateComponentProvider} to determine the
+ * classes to check for a base package without scanning the class path. An index
+ * only covers the class path root (directory or jar) that it has been found in:
+ * The index gets used for a base package only if every class path root that
+ * contains the base package has an index of its own.
+ *
+ * <p>The index can be ignored through the {@link #IGNORE_INDEX_PROPERTY_NAME
+ * "spring.index.ignore"} system property, falling back to class path scanning.
+ *
+ * @since 2.5.7
+ * @see CandidateComponentsIndexer
+ * @see ClassPathScanningCandidateComponentProvider
+ */
+public class CandidateComponentsIndex {
+
+	/**
+	 * The location of the index within a class path root.
+	 */
+	public static final String COMPONENTS_RESOURCE_LOCATION = "META-INF/spring.components";
+
+	/**
+	 * System property that instructs Spring to ignore the index, i.e.
+	 * to always scan the class path for candidate components: "spring.index.ignore".
+	 */
+	public static final String IGNORE_INDEX_PROPERTY_NAME = "spring.index.ignore";
+
+	private static final Log logger = LogFactory.getLog(CandidateComponentsIndex.class);
+
+	/** Cache of loaded indexes: ClassLoader --> CandidateComponentsIndex (or NO_INDEX) */
+	private static final Map<ClassLoader, Object> indexCache =
+			Collections.synchronizedMap(new WeakHashMap<ClassLoader, Object>());
+
+	private static final Object NO_INDEX = new Object();
+
+
+	/** URLs of the class path roots that contain an index */
+	private final Set<String> indexedRoots = new HashSet<String>();
+
+	/** Indexed classes, sorted by name: class name --> Set of stereotypes */
+	private final Map<String, Set<String>> stereotypesByType = new TreeMap<String, Set<String>>();
+
+	private final PathMatcher pathMatcher = new AntPathMatcher();
+
+
+	/**
+	 * Load the indexes from all class path roots of the given ClassLoader.
+	 * The result will be cached per ClassLoader.
+	 * @param classLoader the ClassLoader to load the indexes from
+	 * (may be <code>null</code> to use the default ClassLoader)
+	 * @return the combined index, or <code>null</code> if no index found
+	 * or if the index is to be ignored
+	 * @see #IGNORE_INDEX_PROPERTY_NAME
+	 */
+	public static CandidateComponentsIndex loadIndex(ClassLoader classLoader) {
+		if (Boolean.getBoolean(IGNORE_INDEX_PROPERTY_NAME)) {
+			return null;
+		}
+		ClassLoader classLoaderToUse = (classLoader != null ? classLoader : ClassUtils.getDefaultClassLoader());
+		Object index = indexCache.get(classLoaderToUse);
+		if (index == null) {
+			index = doLoadIndex(classLoaderToUse);
+			indexCache.put(classLoaderToUse, (index != null ? index : NO_INDEX));
+		}
+		return (index != NO_INDEX ? (CandidateComponentsIndex) index : null);
+	}
+
+	private static CandidateComponentsIndex doLoadIndex(ClassLoader classLoader) {
+		try {
+			Enumeration<URL> urls = classLoader.getResources(COMPONENTS_RESOURCE_LOCATION);
+			if (!urls.hasMoreElements()) {
+				return null;
+			}
+			CandidateComponentsIndex index = new CandidateComponentsIndex();
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				Properties props = new Properties();
+				InputStream is = url.openStream();
+				try {
+					props.load(is);
+				}
+				finally {
+					is.close();
+				}
+				String urlString = url.toString();
+				index.addIndex(urlString.substring(0, urlString.length() - COMPONENTS_RESOURCE_LOCATION.length()), props);
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Loaded candidate components index with " + index.stereotypesByType.size() +
+						" classes from class path roots " + index.indexedRoots);
+			}
+			return index;
+		}
+		catch (IOException ex) {
+			logger.warn("Could not load candidate components index - falling back to class path scanning", ex);
+			return null;
+		}
+	}
+
+
+	/**
+	 * Create a new empty CandidateComponentsIndex.
+	 * @see #addIndex
+	 */
+	protected CandidateComponentsIndex() {
+	}
+
+	/**
+	 * Add the entries of the index found in the given class path root.
+	 * @param root the URL of the class path root, ending with a slash
+	 * @param entries the index entries: class name --> comma-delimited stereotypes
+	 */
+	protected void addIndex(String root, Properties entries) {
+		this.indexedRoots.add(root);
+		for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+			String className = (String) entry.getKey();
+			Set<String> stereotypes = this.stereotypesByType.get(className);
+			if (stereotypes == null) {
+				stereotypes = new LinkedHashSet<String>();
+				this.stereotypesByType.put(className, stereotypes);
+			}
+			for (String stereotype : StringUtils.commaDelimitedListToStringArray((String) entry.getValue())) {
+				stereotypes.add(stereotype.trim());
+			}
+		}
+	}
+
+	/**
+	 * Determine whether this index covers all classes within the given base package,
+	 * i.e. whether every class path root that contains the package has an index.
+	 * @param basePackagePath the base package as resource path (e.g. "com/mycompany"),
+	 * possibly containing Ant-style wildcards
+	 * @param classLoader the ClassLoader that the index has been loaded from
+	 * @throws IOException if the class path roots could not be determined
+	 */
+	public boolean isComplete(String basePackagePath, ClassLoader classLoader) throws IOException {
+		String rootDirPath = determineRootDir(basePackagePath);
+		if (rootDirPath.length() == 0) {
+			return false;
+		}
+		ClassLoader classLoaderToUse = (classLoader != null ? classLoader : ClassUtils.getDefaultClassLoader());
+		Enumeration<URL> urls = classLoaderToUse.getResources(rootDirPath);
+		while (urls.hasMoreElements()) {
+			String urlString = StringUtils.trimTrailingCharacter(urls.nextElement().toString(), '/');
+			if (!urlString.endsWith(rootDirPath) ||
+					!this.indexedRoots.contains(urlString.substring(0, urlString.length() - rootDirPath.length()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determine the path of the directory that a base package path with
+	 * wildcards starts from, without leading and trailing slashes.
+	 */
+	private String determineRootDir(String basePackagePath) {
+		String path = StringUtils.trimTrailingCharacter(StringUtils.trimLeadingCharacter(basePackagePath, '/'), '/');
+		int wildcardIndex = path.length();
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (c == '*' || c == '?' || c == '{') {
+				wildcardIndex = i;
+				break;
+			}
+		}
+		if (wildcardIndex == path.length()) {
+			return path;
+		}
+		int separatorIndex = path.lastIndexOf('/', wildcardIndex);
+		return (separatorIndex != -1 ? path.substring(0, separatorIndex) : "");
+	}
+
+	/**
+	 * Return the names of the indexed classes whose class file path matches
+	 * the given pattern and that have at least one of the given stereotypes.
+	 * @param classFilePattern the Ant-style pattern for class file paths
+	 * (e.g. "com/mycompany/&#42;&#42;/*.class")
+	 * @param stereotypes the stereotypes to look for
+	 * @return the names of the matching classes, sorted by name
+	 */
+	public Set<String> getCandidateTypes(String classFilePattern, Set<String> stereotypes) {
+		Set<String> candidateTypes = new LinkedHashSet<String>();
+		for (Map.Entry<String, Set<String>> entry : this.stereotypesByType.entrySet()) {
+			String className = entry.getKey();
+			if (!Collections.disjoint(entry.getValue(), stereotypes) &&
+					this.pathMatcher.match(classFilePattern,
+							ClassUtils.convertClassNameToResourcePath(className) + ClassUtils.CLASS_FILE_SUFFIX)) {
+				candidateTypes.add(className);
+			}
+		}
+		return candidateTypes;
+	}
+
+}
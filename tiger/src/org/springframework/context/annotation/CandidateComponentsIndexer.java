@@ -0,0 +1,240 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.annotation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.ClassMetadata;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Build-time generator for the {@link CandidateComponentsIndex}: reads all
+ * class files in a compiled classes directory through ASM and writes the
+ * stereotypes of every annotated class into
+ * {@link CandidateComponentsIndex#COMPONENTS_RESOURCE_LOCATION "META-INF/spring.components"}
+ * within that directory, to be packaged along with the classes.
+ *
+ * <p>The stereotypes of a class are the types of its annotations and of their
+ * meta-annotations, plus those of its superclasses (for annotations that are
+ * inherited). Classes without any annotation are not indexed.
+ *
+ * <p>Can be run as main class, for example through Ant's <code>java</code> task
+ * right after compilation:
+ *
+ * <pre class="code">
+ * &lt;java classname="org.springframework.context.annotation.CandidateComponentsIndexer"
+ *     classpathref="compile.classpath" fork="true" failonerror="true"&gt;
+ *   &lt;arg value="${classes.dir}"/&gt;
+ * &lt;/java&gt;</pre>
+ *
+ * The first argument is the classes directory; further arguments specify
+ * additional class path entries to resolve superclasses from, if not
+ * available on the indexer's own class path.
+ *
+ * <p><b>Note:</b> The index needs to be regenerated whenever the classes
+ * change; a stale index hides new components from the scanner.
+ *
+ * @since 2.5.7
+ * @see CandidateComponentsIndex
+ * @see ClassPathScanningCandidateComponentProvider
+ */
+public class CandidateComponentsIndexer {
+
+	private static final String JAVA_LANG_ANNOTATION_PACKAGE = "java.lang.annotation.";
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final MetadataReaderFactory metadataReaderFactory;
+
+
+	/**
+	 * Create a new CandidateComponentsIndexer for the default ClassLoader.
+	 */
+	public CandidateComponentsIndexer() {
+		this(ClassUtils.getDefaultClassLoader());
+	}
+
+	/**
+	 * Create a new CandidateComponentsIndexer for the given ClassLoader.
+	 * @param classLoader the ClassLoader to resolve superclasses with
+	 */
+	public CandidateComponentsIndexer(ClassLoader classLoader) {
+		this.metadataReaderFactory = new CachingMetadataReaderFactory(classLoader);
+	}
+
+
+	/**
+	 * Determine the stereotypes of all annotated classes in the given directory.
+	 * @param classesDir the root directory of the compiled classes
+	 * @return the index entries: class name --> Set of stereotypes, sorted by class name
+	 * @throws IOException if a class file could not be read
+	 */
+	public Map<String, Set<String>> collectStereotypes(File classesDir) throws IOException {
+		Assert.isTrue(classesDir.isDirectory(), "Classes directory [" + classesDir + "] does not exist");
+		Map<String, Set<String>> entries = new TreeMap<String, Set<String>>();
+		collectStereotypes(classesDir, entries);
+		return entries;
+	}
+
+	private void collectStereotypes(File dir, Map<String, Set<String>> entries) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new IOException("Could not list contents of directory [" + dir + "]");
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				collectStereotypes(file, entries);
+			}
+			else if (file.getName().endsWith(ClassUtils.CLASS_FILE_SUFFIX)) {
+				MetadataReader metadataReader = this.metadataReaderFactory.getMetadataReader(new FileSystemResource(file));
+				Set<String> stereotypes = determineStereotypes(metadataReader);
+				if (!stereotypes.isEmpty()) {
+					entries.put(metadataReader.getClassMetadata().getClassName(), stereotypes);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determine the stereotypes of the given class: the types of its annotations
+	 * and meta-annotations, including those declared on its superclasses.
+	 * Types from the <code>java.lang.annotation</code> package are not included.
+	 * @param metadataReader the reader for the class
+	 * @return the Set of stereotypes (empty if none)
+	 */
+	protected Set<String> determineStereotypes(MetadataReader metadataReader) {
+		Set<String> stereotypes = new TreeSet<String>();
+		addAnnotationTypes(metadataReader.getAnnotationMetadata(), stereotypes);
+		ClassMetadata classMetadata = metadataReader.getClassMetadata();
+		while (classMetadata.hasSuperClass() && !classMetadata.getSuperClassName().startsWith("java.")) {
+			String superClassName = classMetadata.getSuperClassName();
+			try {
+				MetadataReader superClassReader = this.metadataReaderFactory.getMetadataReader(superClassName);
+				addAnnotationTypes(superClassReader.getAnnotationMetadata(), stereotypes);
+				classMetadata = superClassReader.getClassMetadata();
+			}
+			catch (IOException ex) {
+				logger.warn("Could not read superclass [" + superClassName + "] of class [" +
+						metadataReader.getClassMetadata().getClassName() + "]: " + ex);
+				break;
+			}
+		}
+		return stereotypes;
+	}
+
+	private void addAnnotationTypes(AnnotationMetadata metadata, Set<String> stereotypes) {
+		for (String annotationType : metadata.getAnnotationTypes()) {
+			if (!annotationType.startsWith(JAVA_LANG_ANNOTATION_PACKAGE)) {
+				stereotypes.add(annotationType);
+			}
+			Set<String> metaAnnotationTypes = metadata.getMetaAnnotationTypes(annotationType);
+			if (metaAnnotationTypes != null) {
+				for (String metaAnnotationType : metaAnnotationTypes) {
+					if (!metaAnnotationType.startsWith(JAVA_LANG_ANNOTATION_PACKAGE)) {
+						stereotypes.add(metaAnnotationType);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the index for the given classes directory into its
+	 * <code>META-INF/spring.components</code> file.
+	 * @param classesDir the root directory of the compiled classes
+	 * @return the number of indexed classes
+	 * @throws IOException if the classes could not be read or the index could not be written
+	 */
+	public int writeIndex(File classesDir) throws IOException {
+		Map<String, Set<String>> entries = collectStereotypes(classesDir);
+		File indexFile = new File(classesDir, CandidateComponentsIndex.COMPONENTS_RESOURCE_LOCATION);
+		File metaInfDir = indexFile.getParentFile();
+		if (!metaInfDir.isDirectory() && !metaInfDir.mkdirs()) {
+			throw new IOException("Could not create directory [" + metaInfDir + "]");
+		}
+		Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile), "ISO-8859-1");
+		try {
+			writeIndex(entries, writer);
+		}
+		finally {
+			writer.close();
+		}
+		if (logger.isInfoEnabled()) {
+			logger.info("Wrote candidate components index with " + entries.size() + " classes to [" + indexFile + "]");
+		}
+		return entries.size();
+	}
+
+	/**
+	 * Write the given index entries to the given Writer, in properties format.
+	 * @param entries the index entries: class name --> Set of stereotypes
+	 * @param writer the Writer to write to
+	 */
+	public void writeIndex(Map<String, Set<String>> entries, Writer writer) {
+		PrintWriter pw = new PrintWriter(writer);
+		pw.println("# Candidate components index: class name = stereotypes");
+		for (Map.Entry<String, Set<String>> entry : entries.entrySet()) {
+			pw.print(entry.getKey());
+			pw.print('=');
+			pw.println(StringUtils.collectionToCommaDelimitedString(entry.getValue()));
+		}
+		pw.flush();
+	}
+
+
+	/**
+	 * Generate the index for a classes directory.
+	 * @param args the classes directory, optionally followed by
+	 * additional class path entries for resolving superclasses
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: java " + CandidateComponentsIndexer.class.getName() +
+					" <classes directory> [<additional class path entry> ...]");
+			System.exit(1);
+		}
+		URL[] urls = new URL[args.length];
+		for (int i = 0; i < args.length; i++) {
+			urls[i] = new File(args[i]).toURI().toURL();
+		}
+		ClassLoader classLoader = new URLClassLoader(urls, CandidateComponentsIndexer.class.getClassLoader());
+		int count = new CandidateComponentsIndexer(classLoader).writeIndex(new File(args[0]));
+		System.out.println("Indexed " + count + " classes in [" + args[0] + "]");
+	}
+
+}
@@ -17,6 +17,7 @@
 package org.springframework.context.annotation;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -37,6 +38,7 @@ import org.springframework.core.io.support.ResourcePatternUtils;
 import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
 import org.springframework.core.type.classreading.MetadataReader;
 import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.classreading.ParallelMetadataReaderLoader;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.core.type.filter.TypeFilter;
 import org.springframework.stereotype.Component;
@@ -55,6 +57,13 @@ import org.springframework.util.SystemPropertyUtils;
  * {@link org.springframework.core.type.classreading.MetadataReader MetadataReader}
  * facility, backed by an ASM {@link org.objectweb.asm.ClassReader ClassReader}.
  *
+ * <p>If a {@link CandidateComponentsIndex} has been generated at build time for
+ * all classpath locations of a base package, only the indexed classes with a
+ * matching stereotype are checked, instead of scanning all classes in the base
+ * package. This requires all include filters to be plain {@link AnnotationTypeFilter
+ * AnnotationTypeFilters} (as is the case for the default filters); the filters
+ * themselves get applied to the indexed classes just like to scanned classes.
+ *
  * @author Mark Fisher
  * @author Juergen Hoeller
  * @author Ramnivas Laddad
@@ -62,6 +71,7 @@ import org.springframework.util.SystemPropertyUtils;
  * @see org.springframework.core.type.classreading.MetadataReaderFactory
  * @see org.springframework.core.type.AnnotationMetadata
  * @see ScannedGenericBeanDefinition
+ * @see CandidateComponentsIndex
  */
 public class ClassPathScanningCandidateComponentProvider implements ResourceLoaderAware {
 
@@ -76,10 +86,15 @@ public class ClassPathScanningCandidateComponentProvider implements ResourceLoad
 
 	private String resourcePattern = DEFAULT_RESOURCE_PATTERN;
 
+	private int metadataReadingParallelism = Runtime.getRuntime().availableProcessors();
+
 	private final List<TypeFilter> includeFilters = new LinkedList<TypeFilter>();
 
 	private final List<TypeFilter> excludeFilters = new LinkedList<TypeFilter>();
 
+	private CandidateComponentsIndex componentsIndex =
+			CandidateComponentsIndex.loadIndex(this.resourcePatternResolver.getClassLoader());
+
 
 	/**
 	 * Create a ClassPathScanningCandidateComponentProvider.
@@ -107,6 +122,7 @@ public class ClassPathScanningCandidateComponentProvider implements ResourceLoad
 	public void setResourceLoader(ResourceLoader resourceLoader) {
 		this.resourcePatternResolver = ResourcePatternUtils.getResourcePatternResolver(resourceLoader);
 		this.metadataReaderFactory = new CachingMetadataReaderFactory(resourceLoader);
+		this.componentsIndex = CandidateComponentsIndex.loadIndex(this.resourcePatternResolver.getClassLoader());
 	}
 
 	/**
@@ -127,6 +143,19 @@ public class ClassPathScanningCandidateComponentProvider implements ResourceLoad
 		this.resourcePattern = resourcePattern;
 	}
 
+	/**
+	 * Set the maximum number of threads to read the class files of a base
+	 * package with, including the calling thread. The type filters get applied
+	 * in the calling thread, after all class files have been read.
+	 * <p>Default is the number of available processors; specify 1 for reading
+	 * the class files sequentially in the calling thread.
+	 * @see org.springframework.core.type.classreading.ParallelMetadataReaderLoader
+	 */
+	public void setMetadataReadingParallelism(int metadataReadingParallelism) {
+		Assert.isTrue(metadataReadingParallelism > 0, "'metadataReadingParallelism' must be positive");
+		this.metadataReadingParallelism = metadataReadingParallelism;
+	}
+
 	/**
 	 * Add an include type filter to the <i>end</i> of the inclusion list.
 	 */
@@ -177,9 +206,10 @@ public class ClassPathScanningCandidateComponentProvider implements ResourceLoad
 	public Set<BeanDefinition> findCandidateComponents(String basePackage) {
 		Set<BeanDefinition> candidates = new LinkedHashSet<BeanDefinition>();
 		try {
-			String packageSearchPath = ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX +
-					resolveBasePackage(basePackage) + "/" + this.resourcePattern;
-			Resource[] resources = this.resourcePatternResolver.getResources(packageSearchPath);
+			Resource[] resources = findCandidateResources(resolveBasePackage(basePackage));
+			ParallelMetadataReaderLoader loader = new ParallelMetadataReaderLoader(this.metadataReaderFactory);
+			loader.setParallelism(this.metadataReadingParallelism);
+			MetadataReader[] metadataReaders = loader.getMetadataReaders(resources);
 			boolean traceEnabled = logger.isTraceEnabled();
 			boolean debugEnabled = logger.isDebugEnabled();
 			for (int i = 0; i < resources.length; i++) {
@@ -187,8 +217,8 @@ public class ClassPathScanningCandidateComponentProvider implements ResourceLoad
 				if (traceEnabled) {
 					logger.trace("Scanning " + resource);
 				}
-				if (resource.isReadable()) {
-					MetadataReader metadataReader = this.metadataReaderFactory.getMetadataReader(resource);
+				MetadataReader metadataReader = metadataReaders[i];
+				if (metadataReader != null) {
 					if (isCandidateComponent(metadataReader)) {
 						ScannedGenericBeanDefinition sbd = new ScannedGenericBeanDefinition(metadataReader);
 						sbd.setResource(resource);
@@ -224,6 +254,61 @@ public class ClassPathScanningCandidateComponentProvider implements ResourceLoad
 		return candidates;
 	}
 
+	/**
+	 * Determine the class file resources to check for candidate components:
+	 * either the indexed classes with a stereotype matching an include filter,
+	 * if the {@link CandidateComponentsIndex} covers the given base package,
+	 * or all classes in the base package, found by scanning the class path.
+	 * @param basePackagePath the resolved base package
+	 * @return the class file resources
+	 * @throws IOException if the class path could not be scanned
+	 */
+	private Resource[] findCandidateResources(String basePackagePath) throws IOException {
+		String classFilePattern = basePackagePath + "/" + this.resourcePattern;
+		if (this.componentsIndex != null) {
+			Set<String> stereotypes = getIndexedStereotypes();
+			if (stereotypes != null &&
+					this.componentsIndex.isComplete(basePackagePath, this.resourcePatternResolver.getClassLoader())) {
+				Set<String> candidateTypes = this.componentsIndex.getCandidateTypes(classFilePattern, stereotypes);
+				if (logger.isDebugEnabled()) {
+					logger.debug("Using candidate components index for base package [" + basePackagePath +
+							"]: found " + candidateTypes.size() + " classes with stereotypes " + stereotypes);
+				}
+				Resource[] resources = new Resource[candidateTypes.size()];
+				int i = 0;
+				for (String candidateType : candidateTypes) {
+					resources[i++] = this.resourcePatternResolver.getResource(ResourceLoader.CLASSPATH_URL_PREFIX +
+							ClassUtils.convertClassNameToResourcePath(candidateType) + ClassUtils.CLASS_FILE_SUFFIX);
+				}
+				return resources;
+			}
+		}
+		return this.resourcePatternResolver.getResources(
+				ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX + classFilePattern);
+	}
+
+	/**
+	 * Determine the stereotypes to look for in the candidate components index:
+	 * the annotation types of the include filters.
+	 * @return the Set of stereotypes, or <code>null</code> if the include filters
+	 * cannot be evaluated through the index
+	 */
+	private Set<String> getIndexedStereotypes() {
+		Set<String> stereotypes = new HashSet<String>();
+		for (TypeFilter tf : this.includeFilters) {
+			if (tf.getClass() != AnnotationTypeFilter.class) {
+				return null;
+			}
+			String annotationType = ((AnnotationTypeFilter) tf).getAnnotationType().getName();
+			if (annotationType.startsWith("java.lang.annotation.")) {
+				// Not recorded in the index.
+				return null;
+			}
+			stereotypes.add(annotationType);
+		}
+		return stereotypes;
+	}
+
 	/**
 	 * Resolve the specified base package into a pattern specification for
 	 * the package search path.
@@ -19,6 +19,7 @@ package org.springframework.core.type.classreading;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -81,19 +82,19 @@ class AnnotationMetadataReadingVisitor extends ClassMetadataReadingVisitor imple
 					for (Annotation metaAnnotation : metaAnnotations) {
 						metaAnnotationTypeNames.add(metaAnnotation.annotationType().getName());
 					}
-					metaAnnotationMap.put(className, metaAnnotationTypeNames);
+					metaAnnotationMap.put(className, Collections.unmodifiableSet(metaAnnotationTypeNames));
 				}
 				catch (ClassNotFoundException ex) {
 					// Class not found - can't determine meta-annotations.
 				}
-				attributesMap.put(className, attributes);
+				attributesMap.put(className, Collections.unmodifiableMap(attributes));
 			}
 		};
 	}
 
 
 	public Set<String> getAnnotationTypes() {
-		return this.attributesMap.keySet();
+		return Collections.unmodifiableSet(this.attributesMap.keySet());
 	}
 
 	public boolean hasAnnotation(String annotationType) {
@@ -17,23 +17,46 @@
 package org.springframework.core.type.classreading;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.Assert;
 
 /**
  * Caching implementation of the {@link MetadataReaderFactory} interface,
  * caching an ASM {@link org.objectweb.asm.ClassReader} per Spring Resource handle
  * (i.e. per ".class" file).
  *
+ * <p>By default, MetadataReaders are held in the JVM-wide
+ * {@link SharedMetadataReaderCache}, shared with all other factories. For
+ * ClassLoaders that are not cache-safe in the shared cache, and if shared
+ * caching has been switched off, a local cache gets used instead, holding up
+ * to {@link #setCacheLimit 256} MetadataReaders in least-recently-used order.
+ *
  * @author Juergen Hoeller
  * @since 2.5
+ * @see SharedMetadataReaderCache
  */
 public class CachingMetadataReaderFactory extends SimpleMetadataReaderFactory {
 
-	private final Map<Resource, MetadataReader> classReaderCache = new HashMap<Resource, MetadataReader>();
+	/**
+	 * Default maximum number of entries for the local MetadataReader cache: 256.
+	 */
+	public static final int DEFAULT_CACHE_LIMIT = 256;
+
+
+	private SharedMetadataReaderCache sharedCache = SharedMetadataReaderCache.getSharedInstance();
+
+	private volatile int cacheLimit = DEFAULT_CACHE_LIMIT;
+
+	private final Map<Resource, MetadataReader> classReaderCache =
+			new LinkedHashMap<Resource, MetadataReader>(DEFAULT_CACHE_LIMIT, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry<Resource, MetadataReader> eldest) {
+					return size() > getCacheLimit();
+				}
+			};
 
 
 	/**
@@ -61,7 +84,51 @@ public class CachingMetadataReaderFactory extends SimpleMetadataReaderFactory {
 	}
 
 
+	/**
+	 * Specify the shared cache to hold MetadataReaders in, or <code>null</code>
+	 * to only use a local cache for this factory.
+	 * <p>Default is the JVM-wide {@link SharedMetadataReaderCache#getSharedInstance()
+	 * shared instance}.
+	 */
+	public void setSharedCache(SharedMetadataReaderCache sharedCache) {
+		this.sharedCache = sharedCache;
+	}
+
+	/**
+	 * Return the shared cache that this factory holds MetadataReaders in, if any.
+	 */
+	public SharedMetadataReaderCache getSharedCache() {
+		return this.sharedCache;
+	}
+
+	/**
+	 * Specify the maximum number of entries for the local MetadataReader cache,
+	 * used if the shared cache is not applicable. Default is 256.
+	 */
+	public void setCacheLimit(int cacheLimit) {
+		Assert.isTrue(cacheLimit >= 0, "'cacheLimit' must not be negative");
+		this.cacheLimit = cacheLimit;
+	}
+
+	/**
+	 * Return the maximum number of entries for the local MetadataReader cache.
+	 */
+	public int getCacheLimit() {
+		return this.cacheLimit;
+	}
+
+
 	public MetadataReader getMetadataReader(Resource resource) throws IOException {
+		ClassLoader classLoader = getResourceLoader().getClassLoader();
+		if (this.sharedCache != null && this.sharedCache.isCacheSafe(classLoader)) {
+			MetadataReader metadataReader = this.sharedCache.getMetadataReader(resource, classLoader);
+			if (metadataReader == null) {
+				// Parse outside of the cache lock, allowing for concurrent reading.
+				metadataReader = super.getMetadataReader(resource);
+				metadataReader = this.sharedCache.putMetadataReader(resource, classLoader, metadataReader);
+			}
+			return metadataReader;
+		}
 		synchronized (this.classReaderCache) {
 			MetadataReader metadataReader = this.classReaderCache.get(resource);
 			if (metadataReader == null) {
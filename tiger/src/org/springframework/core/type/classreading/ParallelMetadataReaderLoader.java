@@ -0,0 +1,197 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.type.classreading;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.CustomizableThreadCreator;
+
+/**
+ * Reads the {@link MetadataReader MetadataReaders} for a number of class files
+ * in parallel, through a given {@link MetadataReaderFactory} (which needs to be
+ * thread-safe, as {@link CachingMetadataReaderFactory} is).
+ *
+ * <p>The class files get split into chunks, one per thread: all but one chunk
+ * are handed to a JVM-wide pool of daemon threads, bounded by the number of
+ * processors; the calling thread reads the remaining chunk itself and then
+ * collects the results. If the pool is busy, the calling thread reads the
+ * affected chunks as well. Small numbers of class files are always read
+ * in the calling thread.
+ *
+ * @since 2.5.7
+ * @see org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider#setMetadataReadingParallelism
+ */
+public class ParallelMetadataReaderLoader {
+
+	/** Minimum number of class files per chunk, below which parallel reading does not pay off */
+	private static final int MIN_CHUNK_SIZE = 32;
+
+	private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+	private static final ExecutorService sharedExecutor = new ThreadPoolExecutor(
+			0, PROCESSORS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+			new ReaderThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+
+
+	private final MetadataReaderFactory metadataReaderFactory;
+
+	private int parallelism = PROCESSORS;
+
+
+	/**
+	 * Create a new ParallelMetadataReaderLoader for the given factory.
+	 * @param metadataReaderFactory the thread-safe MetadataReaderFactory to read with
+	 */
+	public ParallelMetadataReaderLoader(MetadataReaderFactory metadataReaderFactory) {
+		Assert.notNull(metadataReaderFactory, "MetadataReaderFactory must not be null");
+		this.metadataReaderFactory = metadataReaderFactory;
+	}
+
+
+	/**
+	 * Set the maximum number of threads to read with, including the calling thread.
+	 * Default is the number of available processors; 1 means sequential reading.
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "'parallelism' must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Return the maximum number of threads to read with.
+	 */
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+
+	/**
+	 * Read the MetadataReaders for the given class files.
+	 * @param resources the class file resources
+	 * @return the MetadataReaders, in the order of the given resources,
+	 * with <code>null</code> for resources that are not readable
+	 * @throws IOException if a class file could not be read
+	 * (the first failure in resource order)
+	 */
+	public MetadataReader[] getMetadataReaders(final Resource[] resources) throws IOException {
+		final MetadataReader[] metadataReaders = new MetadataReader[resources.length];
+		int chunkCount = Math.min(this.parallelism, resources.length / MIN_CHUNK_SIZE);
+		if (chunkCount <= 1) {
+			readChunk(resources, metadataReaders, 0, resources.length);
+			return metadataReaders;
+		}
+		int chunkSize = (resources.length + chunkCount - 1) / chunkCount;
+		List<Future<?>> futures = new ArrayList<Future<?>>(chunkCount - 1);
+		for (int start = chunkSize; start < resources.length; start += chunkSize) {
+			final int from = start;
+			final int to = Math.min(start + chunkSize, resources.length);
+			futures.add(sharedExecutor.submit(new Callable<Object>() {
+				public Object call() throws IOException {
+					readChunk(resources, metadataReaders, from, to);
+					return null;
+				}
+			}));
+		}
+		IOException firstFailure = null;
+		try {
+			readChunk(resources, metadataReaders, 0, chunkSize);
+		}
+		catch (IOException ex) {
+			firstFailure = ex;
+		}
+		boolean interrupted = false;
+		for (Future<?> future : futures) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				}
+				catch (InterruptedException ex) {
+					// Keep waiting: the chunk writes into our result array.
+					interrupted = true;
+				}
+				catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					if (firstFailure == null) {
+						firstFailure = (IOException) cause;
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+			if (firstFailure == null) {
+				firstFailure = new InterruptedIOException("Interrupted while reading class files");
+			}
+		}
+		if (firstFailure != null) {
+			throw firstFailure;
+		}
+		return metadataReaders;
+	}
+
+	private void readChunk(Resource[] resources, MetadataReader[] metadataReaders, int from, int to)
+			throws IOException {
+
+		for (int i = from; i < to; i++) {
+			if (resources[i].isReadable()) {
+				metadataReaders[i] = this.metadataReaderFactory.getMetadataReader(resources[i]);
+			}
+		}
+	}
+
+
+	/**
+	 * ThreadFactory for the shared reader threads: daemon threads that do not
+	 * hold on to the context ClassLoader of the thread that happened to trigger
+	 * their creation.
+	 */
+	private static class ReaderThreadFactory extends CustomizableThreadCreator implements ThreadFactory {
+
+		public ReaderThreadFactory() {
+			super("metadata-reader-");
+			setDaemon(true);
+		}
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = createThread(runnable);
+			thread.setContextClassLoader(ReaderThreadFactory.class.getClassLoader());
+			return thread;
+		}
+	}
+
+}
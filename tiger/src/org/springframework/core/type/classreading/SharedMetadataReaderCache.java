@@ -0,0 +1,462 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.type.classreading;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.ClassMetadata;
+import org.springframework.util.Assert;
+
+/**
+ * JVM-wide cache of {@link MetadataReader MetadataReaders}, keyed by ClassLoader
+ * and class file Resource. Shared by all {@link CachingMetadataReaderFactory}
+ * instances by default, so that application contexts which scan the same
+ * classes (e.g. a parent context and its children, or repeated refreshes)
+ * parse every class file only once.
+ *
+ * <p>The cache is bounded by a {@link #setMaxSize maximum number of entries},
+ * evicting the least recently used entries beyond that size. Entries for
+ * class files in the file system get re-read once the file has been modified.
+ *
+ * <p>Only metadata for cache-safe ClassLoaders gets cached: the ClassLoader
+ * that this class has been loaded by, its parents, and any ClassLoader that
+ * has been explicitly {@link #acceptClassLoader accepted}. Metadata for other
+ * ClassLoaders would keep those ClassLoaders from being garbage-collected;
+ * a CachingMetadataReaderFactory falls back to a local cache for them.
+ *
+ * <p>Exposes its statistics as bean properties, which allows for exporting
+ * the shared instance through Spring's JMX support:
+ *
+ * <pre class="code">
+ * &lt;bean id="metadataReaderCache" factory-method="getSharedInstance"
+ *     class="org.springframework.core.type.classreading.SharedMetadataReaderCache"/&gt;</pre>
+ *
+ * @since 2.5.7
+ * @see #getSharedInstance()
+ * @see CachingMetadataReaderFactory#setSharedCache
+ */
+public class SharedMetadataReaderCache {
+
+	/**
+	 * The default maximum number of cached MetadataReaders: 8192.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 8192;
+
+	/** Rough size of a String object without its characters, in bytes */
+	private static final int STRING_OVERHEAD = 40;
+
+	/** Rough size of a Map or Set entry, in bytes */
+	private static final int ENTRY_OVERHEAD = 32;
+
+	/** Rough size of a cache entry including its key and the metadata objects, in bytes */
+	private static final int CACHE_ENTRY_OVERHEAD = 256;
+
+	private static final SharedMetadataReaderCache sharedInstance = new SharedMetadataReaderCache();
+
+
+	/**
+	 * Return the JVM-wide shared instance of this cache.
+	 */
+	public static SharedMetadataReaderCache getSharedInstance() {
+		return sharedInstance;
+	}
+
+
+	private final Set<ClassLoader> acceptedClassLoaders = Collections.synchronizedSet(new HashSet<ClassLoader>());
+
+	/** Cache in least-recently-used order: CacheKey --> CacheEntry */
+	private final Map<CacheKey, CacheEntry> cache = new LinkedHashMap<CacheKey, CacheEntry>(256, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+			if (size() > maxSize) {
+				estimatedMemoryUsage -= eldest.getValue().estimatedMemoryUsage;
+				evictionCount++;
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+	/** Guarded by the cache Map */
+	private long estimatedMemoryUsage;
+
+	/** Guarded by the cache Map */
+	private long evictionCount;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+
+	/**
+	 * Create a new SharedMetadataReaderCache.
+	 * <p>Usually, the {@link #getSharedInstance() shared instance} is used;
+	 * a separate instance is only useful for holding a cache of its own.
+	 */
+	public SharedMetadataReaderCache() {
+	}
+
+
+	/**
+	 * Set the maximum number of MetadataReaders to cache.
+	 * Default is {@link #DEFAULT_MAX_SIZE 8192}.
+	 * <p>Reducing the maximum size immediately evicts the least recently
+	 * used entries beyond the new size.
+	 */
+	public void setMaxSize(int maxSize) {
+		Assert.isTrue(maxSize >= 0, "'maxSize' must not be negative");
+		synchronized (this.cache) {
+			this.maxSize = maxSize;
+			for (Iterator<CacheEntry> it = this.cache.values().iterator(); it.hasNext() && this.cache.size() > maxSize;) {
+				this.estimatedMemoryUsage -= it.next().estimatedMemoryUsage;
+				this.evictionCount++;
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Return the maximum number of MetadataReaders to cache.
+	 */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Accept the given ClassLoader as cache-safe, even if it is not a parent
+	 * of the ClassLoader that this class has been loaded by.
+	 * <p>Only relevant if the Spring classes reside in a 'common' ClassLoader
+	 * whose lifecycle is not coupled to the application. Any
+	 * <code>acceptClassLoader</code> call at application startup should
+	 * be paired with a {@link #clearClassLoader} call at application shutdown.
+	 * @param classLoader the ClassLoader to accept
+	 * @see org.springframework.beans.CachedIntrospectionResults#acceptClassLoader
+	 */
+	public void acceptClassLoader(ClassLoader classLoader) {
+		if (classLoader != null) {
+			this.acceptedClassLoaders.add(classLoader);
+		}
+	}
+
+	/**
+	 * Remove all cached metadata for the given ClassLoader and its children,
+	 * and deregister those ClassLoaders from the acceptance list.
+	 * @param classLoader the ClassLoader to clear the cache for
+	 */
+	public void clearClassLoader(ClassLoader classLoader) {
+		if (classLoader == null) {
+			return;
+		}
+		synchronized (this.cache) {
+			for (Iterator<Map.Entry<CacheKey, CacheEntry>> it = this.cache.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<CacheKey, CacheEntry> entry = it.next();
+				if (isUnderneathClassLoader(entry.getKey().classLoader, classLoader)) {
+					this.estimatedMemoryUsage -= entry.getValue().estimatedMemoryUsage;
+					it.remove();
+				}
+			}
+		}
+		synchronized (this.acceptedClassLoaders) {
+			for (Iterator<ClassLoader> it = this.acceptedClassLoaders.iterator(); it.hasNext();) {
+				if (isUnderneathClassLoader(it.next(), classLoader)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached metadata. The statistics are not affected.
+	 */
+	public void clear() {
+		synchronized (this.cache) {
+			this.cache.clear();
+			this.estimatedMemoryUsage = 0;
+		}
+	}
+
+	/**
+	 * Determine whether metadata for classes of the given ClassLoader
+	 * may be held in this cache.
+	 * @param classLoader the ClassLoader that the classes belong to
+	 * (<code>null</code> indicating the bootstrap ClassLoader)
+	 * @see #acceptClassLoader
+	 */
+	public boolean isCacheSafe(ClassLoader classLoader) {
+		if (classLoader == null ||
+				isUnderneathClassLoader(SharedMetadataReaderCache.class.getClassLoader(), classLoader)) {
+			return true;
+		}
+		// Iterate over array copy in order to avoid synchronization for the entire
+		// ClassLoader check (avoiding a synchronized acceptedClassLoaders Iterator).
+		Object[] acceptedLoaderArray = this.acceptedClassLoaders.toArray();
+		for (int i = 0; i < acceptedLoaderArray.length; i++) {
+			if (isUnderneathClassLoader(classLoader, (ClassLoader) acceptedLoaderArray[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Return the cached MetadataReader for the given class file, if any.
+	 * @param resource the class file resource
+	 * @param classLoader the ClassLoader that the MetadataReader has been created for
+	 * @return the cached MetadataReader, or <code>null</code> if none cached
+	 * (or if the class file has been modified since)
+	 */
+	public MetadataReader getMetadataReader(Resource resource, ClassLoader classLoader) {
+		CacheKey key = new CacheKey(resource, classLoader);
+		CacheEntry entry;
+		synchronized (this.cache) {
+			entry = this.cache.get(key);
+		}
+		if (entry != null && entry.isStale()) {
+			synchronized (this.cache) {
+				if (this.cache.get(key) == entry) {
+					this.cache.remove(key);
+					this.estimatedMemoryUsage -= entry.estimatedMemoryUsage;
+				}
+			}
+			entry = null;
+		}
+		if (entry != null) {
+			this.hitCount.incrementAndGet();
+			return entry.metadataReader;
+		}
+		else {
+			this.missCount.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Cache the given MetadataReader for the given class file,
+	 * provided that the given ClassLoader is {@link #isCacheSafe cache-safe}.
+	 * <p>If another thread has cached a MetadataReader for the same class file
+	 * in the meantime, that MetadataReader is kept and returned instead.
+	 * @param resource the class file resource
+	 * @param classLoader the ClassLoader that the MetadataReader has been created for
+	 * @param metadataReader the MetadataReader to cache
+	 * @return the MetadataReader to use
+	 */
+	public MetadataReader putMetadataReader(Resource resource, ClassLoader classLoader, MetadataReader metadataReader) {
+		if (!isCacheSafe(classLoader)) {
+			return metadataReader;
+		}
+		CacheKey key = new CacheKey(resource, classLoader);
+		CacheEntry entry = new CacheEntry(resource, metadataReader);
+		synchronized (this.cache) {
+			CacheEntry existing = this.cache.get(key);
+			if (existing != null) {
+				if (existing.lastModified == entry.lastModified) {
+					return existing.metadataReader;
+				}
+				this.estimatedMemoryUsage -= existing.estimatedMemoryUsage;
+			}
+			this.estimatedMemoryUsage += entry.estimatedMemoryUsage;
+			this.cache.put(key, entry);
+		}
+		return metadataReader;
+	}
+
+
+	/**
+	 * Return the number of currently cached MetadataReaders.
+	 */
+	public int getSize() {
+		synchronized (this.cache) {
+			return this.cache.size();
+		}
+	}
+
+	/**
+	 * Return an estimate of the heap memory held by the cached metadata, in bytes.
+	 */
+	public long getEstimatedMemoryUsage() {
+		synchronized (this.cache) {
+			return this.estimatedMemoryUsage;
+		}
+	}
+
+	/**
+	 * Return the number of lookups that found a cached MetadataReader.
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * Return the number of lookups that did not find a cached MetadataReader.
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	/**
+	 * Return the number of MetadataReaders evicted because of the size limit.
+	 */
+	public long getEvictionCount() {
+		synchronized (this.cache) {
+			return this.evictionCount;
+		}
+	}
+
+
+	/**
+	 * Check whether the given ClassLoader is underneath the given parent,
+	 * that is, whether the parent is within the candidate's hierarchy.
+	 * @param candidate the candidate ClassLoader to check
+	 * @param parent the parent ClassLoader to check for
+	 */
+	private static boolean isUnderneathClassLoader(ClassLoader candidate, ClassLoader parent) {
+		ClassLoader classLoaderToCheck = candidate;
+		while (classLoaderToCheck != null) {
+			if (classLoaderToCheck == parent) {
+				return true;
+			}
+			classLoaderToCheck = classLoaderToCheck.getParent();
+		}
+		return false;
+	}
+
+	/**
+	 * Estimate the heap memory held by the metadata of the given MetadataReader.
+	 */
+	private static long estimateMemoryUsage(MetadataReader metadataReader) {
+		long size = CACHE_ENTRY_OVERHEAD;
+		ClassMetadata classMetadata = metadataReader.getClassMetadata();
+		size += estimateMemoryUsage(classMetadata.getClassName());
+		size += estimateMemoryUsage(classMetadata.getSuperClassName());
+		size += estimateMemoryUsage(classMetadata.getEnclosingClassName());
+		size += estimateMemoryUsage(classMetadata.getInterfaceNames());
+		AnnotationMetadata annotationMetadata = metadataReader.getAnnotationMetadata();
+		for (String annotationType : annotationMetadata.getAnnotationTypes()) {
+			size += 2 * ENTRY_OVERHEAD + estimateMemoryUsage(annotationType);
+			Map<String, Object> attributes = annotationMetadata.getAnnotationAttributes(annotationType);
+			if (attributes != null) {
+				for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+					size += ENTRY_OVERHEAD + estimateMemoryUsage(attribute.getKey()) +
+							estimateMemoryUsage(attribute.getValue());
+				}
+			}
+			Set<String> metaAnnotationTypes = annotationMetadata.getMetaAnnotationTypes(annotationType);
+			if (metaAnnotationTypes != null) {
+				for (String metaAnnotationType : metaAnnotationTypes) {
+					size += ENTRY_OVERHEAD + estimateMemoryUsage(metaAnnotationType);
+				}
+			}
+		}
+		return size;
+	}
+
+	private static long estimateMemoryUsage(Object value) {
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof String) {
+			return STRING_OVERHEAD + 2 * ((String) value).length();
+		}
+		if (value instanceof Object[]) {
+			Object[] array = (Object[]) value;
+			long size = 16 + 4 * array.length;
+			for (int i = 0; i < array.length; i++) {
+				size += estimateMemoryUsage(array[i]);
+			}
+			return size;
+		}
+		return 16;
+	}
+
+
+	/**
+	 * Cache key: the class file resource plus the identity of the ClassLoader.
+	 */
+	private static class CacheKey {
+
+		private final Resource resource;
+
+		private final ClassLoader classLoader;
+
+		public CacheKey(Resource resource, ClassLoader classLoader) {
+			this.resource = resource;
+			this.classLoader = classLoader;
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey otherKey = (CacheKey) other;
+			return (this.resource.equals(otherKey.resource) && this.classLoader == otherKey.classLoader);
+		}
+
+		public int hashCode() {
+			return this.resource.hashCode() * 29 + System.identityHashCode(this.classLoader);
+		}
+	}
+
+
+	/**
+	 * Cache entry: the MetadataReader plus the information for detecting
+	 * modified class files and for estimating the memory usage.
+	 */
+	private static class CacheEntry {
+
+		private final MetadataReader metadataReader;
+
+		private final File file;
+
+		private final long lastModified;
+
+		private final long estimatedMemoryUsage;
+
+		public CacheEntry(Resource resource, MetadataReader metadataReader) {
+			this.metadataReader = metadataReader;
+			File file = null;
+			try {
+				file = resource.getFile();
+			}
+			catch (IOException ex) {
+				// Not in the file system (e.g. in a jar file) - not expected to change.
+			}
+			this.file = file;
+			this.lastModified = (file != null ? file.lastModified() : 0);
+			this.estimatedMemoryUsage = estimateMemoryUsage(metadataReader);
+		}
+
+		public boolean isStale() {
+			return (this.file != null && this.file.lastModified() != this.lastModified);
+		}
+	}
+
+}
@@ -25,6 +25,10 @@ import org.springframework.core.type.ClassMetadata;
  * {@link MetadataReader} implementation based on an ASM
  * {@link org.objectweb.asm.ClassReader}.
  *
+ * <p>The class file gets parsed once, on construction; the resulting metadata
+ * is immutable and can safely be shared between threads. The ClassReader
+ * itself is not retained.
+ *
  * <p>Package-visible in order to allow for repackaging the ASM library
  * without effect on users of the <code>core.type</code> package.
  *
@@ -33,27 +37,22 @@ import org.springframework.core.type.ClassMetadata;
  */
 class SimpleMetadataReader implements MetadataReader {
 
-	private final ClassReader classReader;
-
-	private final ClassLoader classLoader;
+	private final AnnotationMetadataReadingVisitor metadata;
 
 
 	public SimpleMetadataReader(ClassReader classReader, ClassLoader classLoader) {
-		this.classReader = classReader;
-		this.classLoader = classLoader;
+		AnnotationMetadataReadingVisitor visitor = new AnnotationMetadataReadingVisitor(classLoader);
+		classReader.accept(visitor, true);
+		this.metadata = visitor;
 	}
 
 
 	public ClassMetadata getClassMetadata() {
-		ClassMetadataReadingVisitor visitor = new ClassMetadataReadingVisitor();
-		this.classReader.accept(visitor, true);
-		return visitor;
+		return this.metadata;
 	}
 
 	public AnnotationMetadata getAnnotationMetadata() {
-		AnnotationMetadataReadingVisitor visitor = new AnnotationMetadataReadingVisitor(this.classLoader);
-		this.classReader.accept(visitor, true);
-		return visitor;
+		return this.metadata;
 	}
 
 }
@@ -0,0 +1,660 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Asynchronous variant of {@link JmsTemplate}'s send operations: Sends are
+ * put into a bounded in-memory queue and performed by a number of sender
+ * threads, with the caller receiving a {@link Future} for each send.
+ *
+ * <p>Each sender thread holds on to its own Connection, Session and (anonymous)
+ * MessageProducer, taking as many queued sends as available - up to the
+ * {@link #setMaxBatchSize "maxBatchSize"} - and performing them within a single
+ * local JMS transaction. This amortizes the cost of the broker acknowledgement
+ * for persistent messages over an entire batch. A failing send or commit fails
+ * the entire batch, since the transaction has been rolled back; a failure to
+ * create a specific message affects that message only.
+ *
+ * <p>If the queue is full, callers are blocked until space becomes available
+ * or the {@link #setEnqueueTimeout "enqueueTimeout"} elapses, providing
+ * back-pressure to producing application code. Failed sends are reported
+ * through the returned Future as well as to the configured
+ * {@link AsyncSendFailureHandler}.
+ *
+ * <p>ConnectionFactory, destination resolution, message conversion and quality
+ * of service settings are taken from the given {@link JmsTemplate}; its
+ * transaction settings do not apply. Note that message creation and conversion
+ * happen on the sender thread: Objects passed to <code>convertAndSend</code>
+ * must not be modified afterwards.
+ *
+ * <p>Exposes throughput, batch and queue statistics through bean property
+ * getters, e.g. for export via JMX. Requires JMS 1.1 and JDK 1.5 or higher.
+ *
+ * @since 2.5.7
+ * @see JmsTemplate
+ * @see org.springframework.jmx.export.MBeanExporter
+ */
+public class AsyncJmsTemplate implements BeanNameAware, InitializingBean, DisposableBean {
+
+	/**
+	 * Default thread name prefix: "AsyncJmsTemplate-".
+	 */
+	public static final String DEFAULT_THREAD_NAME_PREFIX =
+			ClassUtils.getShortName(AsyncJmsTemplate.class) + "-";
+
+	private static final long POLL_TIMEOUT = 1000;
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private JmsTemplate jmsTemplate;
+
+	private int queueCapacity = 1000;
+
+	private int concurrentSenders = 1;
+
+	private int maxBatchSize = 50;
+
+	private boolean sessionTransacted = true;
+
+	private long enqueueTimeout = -1;
+
+	private long shutdownTimeout = 5000;
+
+	private TaskExecutor taskExecutor;
+
+	private AsyncSendFailureHandler failureHandler;
+
+	private String beanName;
+
+	private BlockingQueue<SendRequest> queue;
+
+	private volatile boolean running = false;
+
+	private CountDownLatch sendersTerminated;
+
+	private long startTime;
+
+	private final AtomicLong sentMessageCount = new AtomicLong();
+
+	private final AtomicLong failedMessageCount = new AtomicLong();
+
+	private final AtomicLong batchCount = new AtomicLong();
+
+
+	/**
+	 * Create a new AsyncJmsTemplate for bean-style usage.
+	 * @see #setJmsTemplate
+	 */
+	public AsyncJmsTemplate() {
+	}
+
+	/**
+	 * Create a new AsyncJmsTemplate, given a JmsTemplate to take
+	 * the JMS settings from.
+	 * @param jmsTemplate the JmsTemplate to take the JMS settings from
+	 */
+	public AsyncJmsTemplate(JmsTemplate jmsTemplate) {
+		this.jmsTemplate = jmsTemplate;
+	}
+
+
+	/**
+	 * Set the JmsTemplate to take the ConnectionFactory, destination
+	 * resolution, message conversion and quality of service settings from.
+	 */
+	public void setJmsTemplate(JmsTemplate jmsTemplate) {
+		this.jmsTemplate = jmsTemplate;
+	}
+
+	/**
+	 * Return the JmsTemplate that this AsyncJmsTemplate takes its JMS settings from.
+	 */
+	public JmsTemplate getJmsTemplate() {
+		return this.jmsTemplate;
+	}
+
+	/**
+	 * Set the maximum number of sends to hold in the queue. Default is 1000.
+	 * @see #setEnqueueTimeout
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		Assert.isTrue(queueCapacity > 0, "'queueCapacity' must be 1 or higher");
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Set the number of sender threads. Default is 1.
+	 * <p>Each sender thread uses a Connection of its own.
+	 */
+	public void setConcurrentSenders(int concurrentSenders) {
+		Assert.isTrue(concurrentSenders > 0, "'concurrentSenders' must be 1 or higher");
+		this.concurrentSenders = concurrentSenders;
+	}
+
+	/**
+	 * Set the maximum number of sends to perform within a single transaction.
+	 * Default is 50.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		Assert.isTrue(maxBatchSize > 0, "'maxBatchSize' must be 1 or higher");
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Set whether to perform each batch of sends within a local JMS transaction.
+	 * <p>Default is "true". Switch this to "false" to send each message
+	 * individually, with every send being acknowledged by the broker
+	 * on its own.
+	 */
+	public void setSessionTransacted(boolean sessionTransacted) {
+		this.sessionTransacted = sessionTransacted;
+	}
+
+	/**
+	 * Set the maximum time to wait for space in the queue, in milliseconds.
+	 * A send that could not be queued within this time will be rejected
+	 * with a {@link TaskRejectedException}.
+	 * <p>Default is -1, blocking the caller until space becomes available.
+	 * Specify 0 to reject sends immediately if the queue is full.
+	 */
+	public void setEnqueueTimeout(long enqueueTimeout) {
+		this.enqueueTimeout = enqueueTimeout;
+	}
+
+	/**
+	 * Set the maximum time to wait on shutdown for the sender threads to
+	 * send the remaining queued messages, in milliseconds. Sends that are
+	 * still queued after this time will be failed. Default is 5000 ms.
+	 */
+	public void setShutdownTimeout(long shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+	/**
+	 * Set the Spring TaskExecutor to use for running the sender threads.
+	 * <p>Default is a {@link org.springframework.core.task.SimpleAsyncTaskExecutor},
+	 * starting up a number of new threads, according to the "concurrentSenders"
+	 * setting. Note that the sender threads are long-lived.
+	 */
+	public void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Set a handler to be notified of failed sends, in addition to
+	 * the failure being exposed through the corresponding Future.
+	 */
+	public void setFailureHandler(AsyncSendFailureHandler failureHandler) {
+		this.failureHandler = failureHandler;
+	}
+
+	public void setBeanName(String beanName) {
+		this.beanName = beanName;
+	}
+
+
+	/**
+	 * Start the sender threads.
+	 */
+	public void afterPropertiesSet() {
+		Assert.notNull(this.jmsTemplate, "Property 'jmsTemplate' is required");
+		Assert.notNull(this.jmsTemplate.getConnectionFactory(),
+				"JmsTemplate needs to be configured with a ConnectionFactory");
+		if (this.taskExecutor == null) {
+			this.taskExecutor = new SimpleAsyncTaskExecutor(
+					this.beanName != null ? this.beanName + "-" : DEFAULT_THREAD_NAME_PREFIX);
+		}
+		this.queue = new LinkedBlockingQueue<SendRequest>(this.queueCapacity);
+		this.sendersTerminated = new CountDownLatch(this.concurrentSenders);
+		this.startTime = System.currentTimeMillis();
+		this.running = true;
+		for (int i = 0; i < this.concurrentSenders; i++) {
+			this.taskExecutor.execute(new Sender());
+		}
+	}
+
+	/**
+	 * Stop accepting sends and shut down the sender threads once they have
+	 * sent the remaining queued messages, waiting for the "shutdownTimeout" at most.
+	 * @see #setShutdownTimeout
+	 */
+	public void destroy() throws InterruptedException {
+		if (!this.running) {
+			return;
+		}
+		this.running = false;
+		if (!this.sendersTerminated.await(this.shutdownTimeout, TimeUnit.MILLISECONDS)) {
+			logger.warn("Sender threads did not finish within shutdown timeout of " + this.shutdownTimeout + " ms");
+		}
+		SendRequest request = this.queue.poll();
+		while (request != null) {
+			fail(request, new IllegalStateException("AsyncJmsTemplate has been shut down before sending"));
+			request = this.queue.poll();
+		}
+	}
+
+
+	/**
+	 * Send a message to the JmsTemplate's default destination.
+	 * @param messageCreator callback to create a message
+	 * @return a Future that indicates completion of the send
+	 * @throws TaskRejectedException if the send could not be queued
+	 * @see JmsTemplate#setDefaultDestination
+	 */
+	public Future<?> send(MessageCreator messageCreator) {
+		return enqueue(getRequiredDefaultDestination(), messageCreator);
+	}
+
+	/**
+	 * Send a message to the specified destination.
+	 * @param destination the destination to send this message to
+	 * @param messageCreator callback to create a message
+	 * @return a Future that indicates completion of the send
+	 * @throws TaskRejectedException if the send could not be queued
+	 */
+	public Future<?> send(Destination destination, MessageCreator messageCreator) {
+		Assert.notNull(destination, "Destination must not be null");
+		return enqueue(destination, messageCreator);
+	}
+
+	/**
+	 * Send a message to the specified destination.
+	 * @param destinationName the name of the destination to send this message to
+	 * (to be resolved to an actual destination by the JmsTemplate's DestinationResolver)
+	 * @param messageCreator callback to create a message
+	 * @return a Future that indicates completion of the send
+	 * @throws TaskRejectedException if the send could not be queued
+	 */
+	public Future<?> send(String destinationName, MessageCreator messageCreator) {
+		Assert.notNull(destinationName, "Destination name must not be null");
+		return enqueue(destinationName, messageCreator);
+	}
+
+	/**
+	 * Send the given object to the JmsTemplate's default destination, converting
+	 * the object to a JMS message with the JmsTemplate's MessageConverter.
+	 * @param message the object to convert to a message
+	 * @return a Future that indicates completion of the send
+	 * @throws TaskRejectedException if the send could not be queued
+	 */
+	public Future<?> convertAndSend(Object message) {
+		return enqueue(getRequiredDefaultDestination(), createConvertingMessageCreator(message));
+	}
+
+	/**
+	 * Send the given object to the specified destination, converting the object
+	 * to a JMS message with the JmsTemplate's MessageConverter.
+	 * @param destination the destination to send this message to
+	 * @param message the object to convert to a message
+	 * @return a Future that indicates completion of the send
+	 * @throws TaskRejectedException if the send could not be queued
+	 */
+	public Future<?> convertAndSend(Destination destination, Object message) {
+		return send(destination, createConvertingMessageCreator(message));
+	}
+
+	/**
+	 * Send the given object to the specified destination, converting the object
+	 * to a JMS message with the JmsTemplate's MessageConverter.
+	 * @param destinationName the name of the destination to send this message to
+	 * (to be resolved to an actual destination by the JmsTemplate's DestinationResolver)
+	 * @param message the object to convert to a message
+	 * @return a Future that indicates completion of the send
+	 * @throws TaskRejectedException if the send could not be queued
+	 */
+	public Future<?> convertAndSend(String destinationName, Object message) {
+		return send(destinationName, createConvertingMessageCreator(message));
+	}
+
+	private Object getRequiredDefaultDestination() {
+		Object destination = this.jmsTemplate.getDefaultDestination();
+		if (destination == null) {
+			destination = this.jmsTemplate.getDefaultDestinationName();
+		}
+		if (destination == null) {
+			throw new IllegalStateException("No defaultDestination or defaultDestinationName specified. " +
+					"Check configuration of JmsTemplate.");
+		}
+		return destination;
+	}
+
+	private MessageCreator createConvertingMessageCreator(final Object message) {
+		final MessageConverter converter = this.jmsTemplate.getMessageConverter();
+		if (converter == null) {
+			throw new IllegalStateException("No messageConverter registered. Check configuration of JmsTemplate.");
+		}
+		return new MessageCreator() {
+			public Message createMessage(Session session) throws JMSException {
+				return converter.toMessage(message, session);
+			}
+		};
+	}
+
+	private Future<?> enqueue(Object destination, MessageCreator messageCreator) {
+		Assert.notNull(messageCreator, "MessageCreator must not be null");
+		if (!this.running) {
+			throw new TaskRejectedException("AsyncJmsTemplate is not running");
+		}
+		SendRequest request = new SendRequest(destination, messageCreator);
+		boolean queued;
+		try {
+			if (this.enqueueTimeout < 0) {
+				this.queue.put(request);
+				queued = true;
+			}
+			else {
+				queued = this.queue.offer(request, this.enqueueTimeout, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new TaskRejectedException("Interrupted while waiting for space in send queue");
+		}
+		if (!queued) {
+			throw new TaskRejectedException("Send queue is full: capacity " + this.queueCapacity +
+					" exhausted for " + this.enqueueTimeout + " ms");
+		}
+		if (!this.running && this.queue.remove(request)) {
+			// Shut down in the meantime: the sender threads might have finished already,
+			// never picking up this request. If the request is gone from the queue already,
+			// it either got sent or failed by destroy().
+			throw new TaskRejectedException("AsyncJmsTemplate has been shut down");
+		}
+		return request;
+	}
+
+	private void fail(SendRequest request, Throwable ex) {
+		this.failedMessageCount.incrementAndGet();
+		if (this.failureHandler != null) {
+			try {
+				this.failureHandler.handleSendFailure(request.destination, request.messageCreator, ex);
+			}
+			catch (Throwable handlerEx) {
+				logger.error("AsyncSendFailureHandler threw exception", handlerEx);
+			}
+		}
+		else if (logger.isWarnEnabled()) {
+			logger.warn("Asynchronous send to destination [" + request.destination + "] failed", ex);
+		}
+		request.failed(ex);
+	}
+
+
+	//-------------------------------------------------------------------------
+	// Statistics
+	//-------------------------------------------------------------------------
+
+	/**
+	 * Return the number of sends currently waiting in the queue.
+	 */
+	public int getQueueDepth() {
+		return (this.queue != null ? this.queue.size() : 0);
+	}
+
+	/**
+	 * Return the maximum number of sends to hold in the queue.
+	 */
+	public int getQueueCapacity() {
+		return this.queueCapacity;
+	}
+
+	/**
+	 * Return the number of messages that have been sent successfully.
+	 */
+	public long getSentMessageCount() {
+		return this.sentMessageCount.get();
+	}
+
+	/**
+	 * Return the number of messages that could not be sent.
+	 */
+	public long getFailedMessageCount() {
+		return this.failedMessageCount.get();
+	}
+
+	/**
+	 * Return the number of batches that have been sent successfully.
+	 */
+	public long getBatchCount() {
+		return this.batchCount.get();
+	}
+
+	/**
+	 * Return the average number of messages per successfully sent batch.
+	 */
+	public double getAverageBatchSize() {
+		long batches = this.batchCount.get();
+		return (batches > 0 ? (double) this.sentMessageCount.get() / batches : 0);
+	}
+
+	/**
+	 * Return the average number of messages sent per second since startup.
+	 */
+	public double getThroughput() {
+		long elapsed = System.currentTimeMillis() - this.startTime;
+		return (this.startTime > 0 && elapsed > 0 ? this.sentMessageCount.get() * 1000.0 / elapsed : 0);
+	}
+
+
+	/**
+	 * Queued send, completed by a sender thread.
+	 */
+	private static class SendRequest extends FutureTask<Object> {
+
+		private static final Callable<Object> NO_OP = new Callable<Object>() {
+			public Object call() {
+				return null;
+			}
+		};
+
+		private final Object destination;
+
+		private final MessageCreator messageCreator;
+
+		public SendRequest(Object destination, MessageCreator messageCreator) {
+			super(NO_OP);
+			this.destination = destination;
+			this.messageCreator = messageCreator;
+		}
+
+		public void succeeded() {
+			set(null);
+		}
+
+		public void failed(Throwable ex) {
+			setException(ex);
+		}
+	}
+
+
+	/**
+	 * Long-lived sender, taking batches of sends from the queue
+	 * and performing them with a Session of its own.
+	 */
+	private class Sender implements Runnable {
+
+		private Connection connection;
+
+		private Session session;
+
+		private MessageProducer producer;
+
+		public void run() {
+			try {
+				List<SendRequest> batch = new ArrayList<SendRequest>(maxBatchSize);
+				while (running || !queue.isEmpty()) {
+					SendRequest first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+					if (first != null) {
+						batch.add(first);
+						queue.drainTo(batch, maxBatchSize - 1);
+						sendBatch(batch);
+						batch.clear();
+					}
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				closeResources();
+				sendersTerminated.countDown();
+			}
+		}
+
+		private void sendBatch(List<SendRequest> batch) {
+			List<SendRequest> uncommitted = new ArrayList<SendRequest>(batch.size());
+			int sent = 0;
+			try {
+				initResourcesIfNecessary();
+				for (SendRequest request : batch) {
+					if (request.isCancelled()) {
+						continue;
+					}
+					Destination destination;
+					Message message;
+					try {
+						destination = resolveDestination(request.destination);
+						message = request.messageCreator.createMessage(this.session);
+					}
+					catch (Throwable ex) {
+						fail(request, convertException(ex));
+						continue;
+					}
+					doSend(destination, message);
+					sent++;
+					if (sessionTransacted) {
+						uncommitted.add(request);
+					}
+					else {
+						sentMessageCount.incrementAndGet();
+						request.succeeded();
+					}
+				}
+				if (sent > 0) {
+					if (sessionTransacted) {
+						this.session.commit();
+						sentMessageCount.addAndGet(sent);
+					}
+					batchCount.incrementAndGet();
+					for (SendRequest request : uncommitted) {
+						request.succeeded();
+					}
+				}
+			}
+			catch (Throwable ex) {
+				if (sessionTransacted && this.session != null) {
+					try {
+						this.session.rollback();
+					}
+					catch (Throwable rollbackEx) {
+						logger.debug("Could not roll back JMS transaction after failed send", rollbackEx);
+					}
+				}
+				// Start with fresh resources for the next batch.
+				closeResources();
+				Throwable failure = convertException(ex);
+				for (SendRequest request : batch) {
+					if (!request.isDone()) {
+						fail(request, failure);
+					}
+				}
+			}
+		}
+
+		private void initResourcesIfNecessary() throws JMSException {
+			if (this.session == null) {
+				this.connection = jmsTemplate.getConnectionFactory().createConnection();
+				this.session = this.connection.createSession(sessionTransacted, jmsTemplate.getSessionAcknowledgeMode());
+				this.producer = this.session.createProducer(null);
+				if (!jmsTemplate.isMessageIdEnabled()) {
+					this.producer.setDisableMessageID(true);
+				}
+				if (!jmsTemplate.isMessageTimestampEnabled()) {
+					this.producer.setDisableMessageTimestamp(true);
+				}
+			}
+		}
+
+		private Destination resolveDestination(Object destination) throws JMSException {
+			if (destination instanceof Destination) {
+				return (Destination) destination;
+			}
+			return jmsTemplate.getDestinationResolver().resolveDestinationName(
+					this.session, (String) destination, jmsTemplate.isPubSubDomain());
+		}
+
+		private void doSend(Destination destination, Message message) throws JMSException {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Sending created message: " + message);
+			}
+			if (jmsTemplate.isExplicitQosEnabled()) {
+				this.producer.send(destination, message,
+						jmsTemplate.getDeliveryMode(), jmsTemplate.getPriority(), jmsTemplate.getTimeToLive());
+			}
+			else {
+				this.producer.send(destination, message);
+			}
+		}
+
+		private Throwable convertException(Throwable ex) {
+			return (ex instanceof JMSException ? JmsUtils.convertJmsAccessException((JMSException) ex) : ex);
+		}
+
+		private void closeResources() {
+			JmsUtils.closeMessageProducer(this.producer);
+			JmsUtils.closeSession(this.session);
+			JmsUtils.closeConnection(this.connection);
+			this.producer = null;
+			this.session = null;
+			this.connection = null;
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.core;
+
+/**
+ * Callback interface for handling failed sends of an {@link AsyncJmsTemplate},
+ * for example in order to log the failure or to hand the message over to
+ * a fallback store. Invoked on the sender thread.
+ *
+ * @since 2.5.7
+ * @see AsyncJmsTemplate#setFailureHandler
+ */
+public interface AsyncSendFailureHandler {
+
+	/**
+	 * Handle the failure of an asynchronous send.
+	 * @param destination the target destination: a {@link javax.jms.Destination}
+	 * or a destination name, or <code>null</code> for the default destination
+	 * @param messageCreator the MessageCreator that the send has been requested
+	 * with (may be passed to a subsequent send attempt)
+	 * @param ex the exception that the send failed with
+	 */
+	void handleSendFailure(Object destination, MessageCreator messageCreator, Throwable ex);
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jmx.export;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.aop.interceptor.MethodPerformanceStatistics;
+import org.springframework.aop.interceptor.PerformanceStatisticsInterceptor;
+import org.springframework.aop.interceptor.PerformanceStatisticsListener;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.support.ObjectNameManager;
+
+/**
+ * {@link PerformanceStatisticsListener} that exports the statistics of every
+ * newly monitored method as MBean of its own, through the given
+ * {@link MBeanExportOperations} (typically an {@link MBeanExporter}).
+ *
+ * <p>To be defined as a bean and passed to the "listeners" property of a
+ * {@link PerformanceStatisticsInterceptor}. The MBeans get registered under
+ * <code>[domain]:type=MethodPerformanceStatistics,name=[method name]</code>
+ * and are unregistered along with all other MBeans on shutdown of the exporter.
+ * Registration failures are logged but do not affect the monitored invocation.
+ *
+ * @since 2.5.7
+ * @see PerformanceStatisticsInterceptor#setListeners
+ */
+public class PerformanceStatisticsMBeanRegistrar implements PerformanceStatisticsListener, InitializingBean {
+
+	/**
+	 * Default JMX domain for the exported statistics: "spring.performance".
+	 */
+	public static final String DEFAULT_DOMAIN = "spring.performance";
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private MBeanExportOperations mbeanExporter;
+
+	private String domain = DEFAULT_DOMAIN;
+
+
+	/**
+	 * Set the exporter to register the statistics with.
+	 */
+	public void setMbeanExporter(MBeanExportOperations mbeanExporter) {
+		this.mbeanExporter = mbeanExporter;
+	}
+
+	/**
+	 * Set the JMX domain for the exported statistics.
+	 * Default is {@link #DEFAULT_DOMAIN}.
+	 */
+	public void setDomain(String domain) {
+		this.domain = domain;
+	}
+
+	public void afterPropertiesSet() {
+		if (this.mbeanExporter == null) {
+			throw new IllegalArgumentException("Property 'mbeanExporter' is required");
+		}
+	}
+
+
+	public void statisticsCreated(PerformanceStatisticsInterceptor interceptor, MethodPerformanceStatistics statistics) {
+		try {
+			ObjectName objectName = getObjectName(statistics);
+			// MBeanExporter's registration tracking is not thread-safe
+			synchronized (this.mbeanExporter) {
+				this.mbeanExporter.registerManagedResource(statistics, objectName);
+			}
+		}
+		catch (Exception ex) {
+			logger.warn("Could not export performance statistics for method [" + statistics.getName() + "]", ex);
+		}
+	}
+
+	/**
+	 * Determine the ObjectName for the given statistics.
+	 * @param statistics the statistics for a monitored method
+	 * @return the ObjectName to register the statistics under
+	 * @throws MalformedObjectNameException if the resulting name is invalid
+	 */
+	protected ObjectName getObjectName(MethodPerformanceStatistics statistics) throws MalformedObjectNameException {
+		return ObjectNameManager.getInstance(
+				this.domain + ":type=MethodPerformanceStatistics,name=" + ObjectName.quote(statistics.getName()));
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.annotation;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.remoting.support.RemoteResultCacheInterceptor;
+
+/**
+ * Extension of {@link RemoteResultCacheInterceptor} that caches the results
+ * of service interface methods annotated with {@link CacheableResult},
+ * in addition to any methods matched by the "mappedNames" property.
+ * Respects the time to live specified by the annotation, if any.
+ *
+ * @since 2.5.7
+ * @see CacheableResult
+ */
+public class AnnotationRemoteResultCacheInterceptor extends RemoteResultCacheInterceptor {
+
+	/** Marker for methods without a CacheableResult annotation */
+	private static final long NOT_ANNOTATED = -2;
+
+	/** Cache of annotation time to live values, keyed by Method */
+	private final Map<Method, Long> annotationTimeToLiveCache = new ConcurrentHashMap<Method, Long>();
+
+
+	@Override
+	protected boolean isCacheable(Method method) {
+		return (getAnnotationTimeToLive(method) != NOT_ANNOTATED || super.isCacheable(method));
+	}
+
+	@Override
+	protected long getTimeToLive(Method method) {
+		long timeToLive = getAnnotationTimeToLive(method);
+		return (timeToLive >= 0 ? timeToLive : super.getTimeToLive(method));
+	}
+
+	/**
+	 * Determine the time to live specified by the CacheableResult annotation
+	 * on the given method, if any.
+	 * @return the annotation's time to live, -1 for the default time to live,
+	 * or {@link #NOT_ANNOTATED} if the method does not carry the annotation
+	 */
+	private long getAnnotationTimeToLive(Method method) {
+		Long timeToLive = this.annotationTimeToLiveCache.get(method);
+		if (timeToLive == null) {
+			CacheableResult annotation = AnnotationUtils.findAnnotation(method, CacheableResult.class);
+			timeToLive = (annotation != null ? Math.max(annotation.timeToLive(), -1) : NOT_ANNOTATED);
+			this.annotationTimeToLiveCache.put(method, timeToLive);
+		}
+		return timeToLive;
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a remote service interface as idempotent, allowing
+ * its results to be cached on the client side.
+ *
+ * <p>Detected by {@link AnnotationRemoteResultCacheInterceptor}, when applied
+ * to a remote accessor such as an HTTP invoker or RMI proxy.
+ *
+ * @since 2.5.7
+ * @see AnnotationRemoteResultCacheInterceptor
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheableResult {
+
+	/**
+	 * The time (in milliseconds) that a cached result remains valid,
+	 * with 0 indicating that cached results never expire.
+	 * <p>Default is -1, using the interceptor's "timeToLive" setting.
+	 */
+	long timeToLive() default -1;
+
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.PriorityTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.SchedulingAwareRunnable;
+import org.springframework.scheduling.SchedulingTaskExecutor;
+import org.springframework.util.Assert;
+import org.springframework.util.LatencyHistogram;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Decorator for any Spring {@link org.springframework.core.task.TaskExecutor}
+ * that collects runtime statistics about the tasks passing through it:
+ * the time that tasks spend waiting before they start and the time that
+ * they take to execute (both in {@link LatencyHistogram LatencyHistograms}),
+ * the number of submitted, rejected, dropped, failed and completed tasks,
+ * and the number of currently waiting and active tasks along with their peaks.
+ *
+ * <p>All statistics are recorded through atomic counters, without any locking,
+ * and are exposed through bean property getters, so that this decorator can be
+ * exported as an MBean through Spring's {@link org.springframework.jmx.export.MBeanExporter}
+ * as-is. Simply define it in place of the original executor bean, wrapping
+ * the original executor, to monitor all tasks without any changes in callers.
+ *
+ * <p>For thread pools that expose "poolSize" and "activeCount" properties
+ * (such as {@link ThreadPoolTaskExecutor}), the current values are sampled
+ * from the target executor on access.
+ *
+ * <p>Tasks keep their scheduling hints for the target executor: a
+ * {@link SchedulingAwareRunnable} remains a SchedulingAwareRunnable,
+ * and a {@link PrioritizedTask} keeps its priority and deadline.
+ * This decorator is a {@link SchedulingTaskExecutor} and a
+ * {@link PriorityTaskExecutor} itself, delegating to the target executor
+ * where it implements those interfaces.
+ *
+ * <p>Tasks that the executors in this package drop without running them
+ * (expired {@link PrioritizedTask PrioritizedTasks}, tasks discarded by the
+ * JDK's discard policies, tasks removed on immediate shutdown) are counted
+ * as dropped and no longer as waiting. Other target executors that drop
+ * accepted tasks leave them counted as waiting.
+ *
+ * @since 2.5.7
+ * @see LatencyHistogram
+ */
+public class MonitoringTaskExecutor implements AsyncTaskExecutor, SchedulingTaskExecutor, PriorityTaskExecutor {
+
+	private final TaskExecutor targetExecutor;
+
+	private final Method poolSizeMethod;
+
+	private final Method activeCountMethod;
+
+	private final LatencyHistogram queueWaitHistogram = new LatencyHistogram();
+
+	private final LatencyHistogram executionHistogram = new LatencyHistogram();
+
+	private final AtomicLong submittedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private final AtomicLong completedCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final AtomicInteger waitingCount = new AtomicInteger();
+
+	private final AtomicInteger peakWaitingCount = new AtomicInteger();
+
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	private final AtomicInteger peakActiveCount = new AtomicInteger();
+
+
+	/**
+	 * Create a new MonitoringTaskExecutor for the given target executor.
+	 * @param targetExecutor the TaskExecutor to delegate to
+	 */
+	public MonitoringTaskExecutor(TaskExecutor targetExecutor) {
+		Assert.notNull(targetExecutor, "Target TaskExecutor must not be null");
+		this.targetExecutor = targetExecutor;
+		this.poolSizeMethod = findIntGetter(targetExecutor, "getPoolSize");
+		this.activeCountMethod = findIntGetter(targetExecutor, "getActiveCount");
+	}
+
+	private static Method findIntGetter(Object target, String methodName) {
+		Method method = ReflectionUtils.findMethod(target.getClass(), methodName, new Class[0]);
+		return (method != null && method.getReturnType() == int.class ? method : null);
+	}
+
+
+	/**
+	 * Return the TaskExecutor that this decorator delegates to.
+	 */
+	public TaskExecutor getTargetExecutor() {
+		return this.targetExecutor;
+	}
+
+	public void execute(Runnable task) {
+		execute(task, TIMEOUT_INDEFINITE);
+	}
+
+	/**
+	 * Delegates to the target executor's <code>execute(Runnable, long)</code>
+	 * method if it is an {@link AsyncTaskExecutor}, or to its plain
+	 * <code>execute(Runnable)</code> method otherwise.
+	 */
+	public void execute(Runnable task, long startTimeout) {
+		Assert.notNull(task, "Runnable must not be null");
+		Runnable taskToMonitor = (task instanceof PrioritizedTask ? ((PrioritizedTask) task).getTask() : task);
+		MonitoredTask monitoredTask = createMonitoredTask(taskToMonitor);
+		Runnable taskToExecute = (task instanceof PrioritizedTask ?
+				new PrioritizedTask((PrioritizedTask) task, monitoredTask) : monitoredTask);
+		try {
+			if (startTimeout != TIMEOUT_INDEFINITE && this.targetExecutor instanceof AsyncTaskExecutor) {
+				((AsyncTaskExecutor) this.targetExecutor).execute(taskToExecute, startTimeout);
+			}
+			else {
+				this.targetExecutor.execute(taskToExecute);
+			}
+		}
+		catch (RuntimeException ex) {
+			taskNotAccepted(monitoredTask);
+			throw ex;
+		}
+	}
+
+	public void execute(Runnable task, int priority) {
+		execute(task, priority, NO_DEADLINE);
+	}
+
+	/**
+	 * Delegates to the target executor's <code>execute(Runnable, int, long)</code>
+	 * method if it is a {@link PriorityTaskExecutor}, or to its plain
+	 * <code>execute(Runnable)</code> method otherwise.
+	 */
+	public void execute(Runnable task, int priority, long deadlineTimeout) {
+		if (!(this.targetExecutor instanceof PriorityTaskExecutor)) {
+			execute(task);
+			return;
+		}
+		Assert.notNull(task, "Runnable must not be null");
+		MonitoredTask monitoredTask = createMonitoredTask(task);
+		try {
+			((PriorityTaskExecutor) this.targetExecutor).execute(monitoredTask, priority, deadlineTimeout);
+		}
+		catch (RuntimeException ex) {
+			taskNotAccepted(monitoredTask);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Delegates to the target executor if it is a {@link SchedulingTaskExecutor},
+	 * returning <code>false</code> otherwise.
+	 */
+	public boolean prefersShortLivedTasks() {
+		return (this.targetExecutor instanceof SchedulingTaskExecutor &&
+				((SchedulingTaskExecutor) this.targetExecutor).prefersShortLivedTasks());
+	}
+
+	/**
+	 * Wrap the given task for monitoring and count it as submitted and waiting.
+	 */
+	private MonitoredTask createMonitoredTask(Runnable task) {
+		MonitoredTask monitoredTask = (task instanceof SchedulingAwareRunnable ?
+				new SchedulingAwareMonitoredTask((SchedulingAwareRunnable) task) : new MonitoredTask(task));
+		this.submittedCount.incrementAndGet();
+		updatePeak(this.peakWaitingCount, this.waitingCount.incrementAndGet());
+		return monitoredTask;
+	}
+
+	private void taskNotAccepted(MonitoredTask monitoredTask) {
+		// a task that has started already has failed within a synchronous executor: not a rejection
+		if (monitoredTask.markStarted()) {
+			this.waitingCount.decrementAndGet();
+			this.rejectedCount.incrementAndGet();
+		}
+	}
+
+	private static void updatePeak(AtomicInteger peak, int value) {
+		int currentPeak = peak.get();
+		while (value > currentPeak && !peak.compareAndSet(currentPeak, value)) {
+			currentPeak = peak.get();
+		}
+	}
+
+
+	/**
+	 * Return the histogram of times (in milliseconds) that tasks have been
+	 * waiting between submission and start of execution.
+	 */
+	public LatencyHistogram getQueueWaitHistogram() {
+		return this.queueWaitHistogram;
+	}
+
+	/**
+	 * Return the histogram of task execution times (in milliseconds).
+	 */
+	public LatencyHistogram getExecutionHistogram() {
+		return this.executionHistogram;
+	}
+
+	/**
+	 * Return a summary of the times that tasks have been waiting before execution.
+	 */
+	public String getQueueWaitSummary() {
+		return this.queueWaitHistogram.toString();
+	}
+
+	/**
+	 * Return a summary of the task execution times.
+	 */
+	public String getExecutionSummary() {
+		return this.executionHistogram.toString();
+	}
+
+	/**
+	 * Return the average time (in milliseconds) that tasks have been waiting before execution.
+	 */
+	public double getAverageQueueWaitMillis() {
+		return this.queueWaitHistogram.getMeanMillis();
+	}
+
+	/**
+	 * Return the average task execution time (in milliseconds).
+	 */
+	public double getAverageExecutionMillis() {
+		return this.executionHistogram.getMeanMillis();
+	}
+
+	/**
+	 * Return the total number of tasks submitted, including rejected ones.
+	 */
+	public long getSubmittedTaskCount() {
+		return this.submittedCount.get();
+	}
+
+	/**
+	 * Return the total number of tasks rejected by the target executor.
+	 */
+	public long getRejectedTaskCount() {
+		return this.rejectedCount.get();
+	}
+
+	/**
+	 * Return the total number of tasks that completed normally.
+	 */
+	public long getCompletedTaskCount() {
+		return this.completedCount.get();
+	}
+
+	/**
+	 * Return the total number of tasks that threw an exception.
+	 */
+	public long getFailedTaskCount() {
+		return this.failedCount.get();
+	}
+
+	/**
+	 * Return the total number of tasks that the target executor accepted
+	 * but dropped without running them.
+	 */
+	public long getDroppedTaskCount() {
+		return this.droppedCount.get();
+	}
+
+	/**
+	 * Return the number of tasks currently waiting for execution.
+	 */
+	public int getWaitingTaskCount() {
+		return this.waitingCount.get();
+	}
+
+	/**
+	 * Return the highest number of tasks that have been waiting for execution at the same time.
+	 */
+	public int getPeakWaitingTaskCount() {
+		return this.peakWaitingCount.get();
+	}
+
+	/**
+	 * Return the number of tasks currently executing.
+	 */
+	public int getActiveTaskCount() {
+		return this.activeCount.get();
+	}
+
+	/**
+	 * Return the highest number of tasks that have been executing at the same time.
+	 */
+	public int getPeakActiveTaskCount() {
+		return this.peakActiveCount.get();
+	}
+
+	/**
+	 * Return the current pool size of the target executor,
+	 * or -1 if the target executor does not expose its pool size.
+	 */
+	public int getTargetPoolSize() {
+		return invokeIntGetter(this.poolSizeMethod);
+	}
+
+	/**
+	 * Return the current number of active threads of the target executor,
+	 * or -1 if the target executor does not expose its active count.
+	 */
+	public int getTargetActiveCount() {
+		return invokeIntGetter(this.activeCountMethod);
+	}
+
+	private int invokeIntGetter(Method method) {
+		if (method == null) {
+			return -1;
+		}
+		try {
+			ReflectionUtils.makeAccessible(method);
+			return ((Integer) method.invoke(this.targetExecutor, new Object[0])).intValue();
+		}
+		catch (Exception ex) {
+			// e.g. thread pool not initialized yet
+			return -1;
+		}
+	}
+
+	/**
+	 * Reset all statistics, except for the current waiting and active counts.
+	 */
+	public void resetStatistics() {
+		this.queueWaitHistogram.reset();
+		this.executionHistogram.reset();
+		this.submittedCount.set(0);
+		this.rejectedCount.set(0);
+		this.completedCount.set(0);
+		this.failedCount.set(0);
+		this.droppedCount.set(0);
+		this.peakWaitingCount.set(this.waitingCount.get());
+		this.peakActiveCount.set(this.activeCount.get());
+	}
+
+	public String toString() {
+		return "MonitoringTaskExecutor for [" + this.targetExecutor + "]";
+	}
+
+
+	/**
+	 * Notify the MonitoringTaskExecutor that submitted the given task, if any,
+	 * that the task has been dropped without running it. To be called by the
+	 * executors in this package for every task that they discard.
+	 * @param task the task as passed to the executor, possibly wrapped
+	 * in a {@link PrioritizedTask}
+	 * @return the task as originally submitted by the caller,
+	 * for example to cancel it if it is a {@link java.util.concurrent.Future}
+	 */
+	static Runnable taskDropped(Runnable task) {
+		Runnable originalTask = (task instanceof PrioritizedTask ? ((PrioritizedTask) task).getTask() : task);
+		if (originalTask instanceof MonitoredTask) {
+			originalTask = ((MonitoredTask) originalTask).dropped();
+		}
+		return originalTask;
+	}
+
+
+	/**
+	 * Runnable decorator that records the statistics for a single task.
+	 */
+	private class MonitoredTask implements Runnable {
+
+		private final Runnable task;
+
+		private final long submissionTime = System.nanoTime();
+
+		private final AtomicInteger started = new AtomicInteger();
+
+		public MonitoredTask(Runnable task) {
+			this.task = task;
+		}
+
+		/**
+		 * Mark this task as started, returning whether it was still waiting.
+		 */
+		public boolean markStarted() {
+			return this.started.compareAndSet(0, 1);
+		}
+
+		/**
+		 * Record that this task has been dropped by the target executor.
+		 * @return the original task
+		 */
+		public Runnable dropped() {
+			if (markStarted()) {
+				waitingCount.decrementAndGet();
+				droppedCount.incrementAndGet();
+			}
+			return this.task;
+		}
+
+		public void run() {
+			long startTime = System.nanoTime();
+			if (markStarted()) {
+				waitingCount.decrementAndGet();
+			}
+			queueWaitHistogram.recordNanos(startTime - this.submissionTime);
+			updatePeak(peakActiveCount, activeCount.incrementAndGet());
+			boolean success = false;
+			try {
+				this.task.run();
+				success = true;
+			}
+			finally {
+				activeCount.decrementAndGet();
+				executionHistogram.recordNanos(System.nanoTime() - startTime);
+				if (success) {
+					completedCount.incrementAndGet();
+				}
+				else {
+					failedCount.incrementAndGet();
+				}
+			}
+		}
+
+		public String toString() {
+			return this.task.toString();
+		}
+	}
+
+
+	/**
+	 * MonitoredTask variant that exposes the "longLived" flag of the target task.
+	 */
+	private class SchedulingAwareMonitoredTask extends MonitoredTask implements SchedulingAwareRunnable {
+
+		private final boolean longLived;
+
+		public SchedulingAwareMonitoredTask(SchedulingAwareRunnable task) {
+			super(task);
+			this.longLived = task.isLongLived();
+		}
+
+		public boolean isLongLived() {
+			return this.longLived;
+		}
+	}
+
+}
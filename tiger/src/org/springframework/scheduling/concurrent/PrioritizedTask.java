@@ -0,0 +1,149 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.task.PriorityTaskExecutor;
+import org.springframework.util.Assert;
+
+/**
+ * Runnable wrapper that carries a priority and an optional deadline for
+ * the wrapped task, as ordered by a {@link PriorityTaskQueue}.
+ *
+ * <p>Tasks are ordered by descending priority first; tasks of the same
+ * priority are ordered by ascending deadline, and in submission order
+ * if their deadlines are equal as well.
+ *
+ * @since 2.5.7
+ * @see PriorityTaskQueue
+ * @see PriorityThreadPoolTaskExecutor
+ */
+public class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+	private static final AtomicLong sequenceGenerator = new AtomicLong();
+
+
+	private final Runnable task;
+
+	private final int priority;
+
+	private final long deadline;
+
+	private final long sequence = sequenceGenerator.getAndIncrement();
+
+	private volatile long enqueueTime;
+
+
+	/**
+	 * Create a new PrioritizedTask without deadline.
+	 * @param task the task to wrap
+	 * @param priority the priority of the task (higher values take precedence)
+	 */
+	public PrioritizedTask(Runnable task, int priority) {
+		this(task, priority, PriorityTaskExecutor.NO_DEADLINE);
+	}
+
+	/**
+	 * Create a new PrioritizedTask.
+	 * @param task the task to wrap
+	 * @param priority the priority of the task (higher values take precedence)
+	 * @param deadlineTimeout the time duration (in milliseconds) within which
+	 * the task needs to start, or {@link PriorityTaskExecutor#NO_DEADLINE}
+	 */
+	public PrioritizedTask(Runnable task, int priority, long deadlineTimeout) {
+		Assert.notNull(task, "Task must not be null");
+		Assert.isTrue(deadlineTimeout >= 0, "Deadline timeout must not be negative");
+		this.task = task;
+		this.priority = priority;
+		long now = System.currentTimeMillis();
+		this.deadline = (deadlineTimeout < PriorityTaskExecutor.NO_DEADLINE - now ?
+				now + deadlineTimeout : PriorityTaskExecutor.NO_DEADLINE);
+	}
+
+	/**
+	 * Create a new PrioritizedTask for the given task, with the priority
+	 * and the absolute deadline of the given original task.
+	 * @param original the PrioritizedTask to take priority and deadline from
+	 * @param task the task to wrap instead of the original's task
+	 */
+	PrioritizedTask(PrioritizedTask original, Runnable task) {
+		Assert.notNull(task, "Task must not be null");
+		this.task = task;
+		this.priority = original.priority;
+		this.deadline = original.deadline;
+	}
+
+
+	/**
+	 * Return the wrapped task.
+	 */
+	public Runnable getTask() {
+		return this.task;
+	}
+
+	/**
+	 * Return the priority of the task.
+	 */
+	public int getPriority() {
+		return this.priority;
+	}
+
+	/**
+	 * Return the absolute deadline of the task (in milliseconds since the epoch),
+	 * or {@link PriorityTaskExecutor#NO_DEADLINE} if none.
+	 */
+	public long getDeadline() {
+		return this.deadline;
+	}
+
+	/**
+	 * Return whether the deadline of the task has passed at the given time.
+	 * @param now the current time (in milliseconds since the epoch)
+	 */
+	public boolean isExpired(long now) {
+		return (now > this.deadline);
+	}
+
+	void setEnqueueTime(long enqueueTime) {
+		this.enqueueTime = enqueueTime;
+	}
+
+	long getEnqueueTime() {
+		return this.enqueueTime;
+	}
+
+
+	public void run() {
+		this.task.run();
+	}
+
+	public int compareTo(PrioritizedTask other) {
+		if (this.priority != other.priority) {
+			return (this.priority > other.priority ? -1 : 1);
+		}
+		if (this.deadline != other.deadline) {
+			return (this.deadline < other.deadline ? -1 : 1);
+		}
+		return (this.sequence < other.sequence ? -1 : (this.sequence == other.sequence ? 0 : 1));
+	}
+
+	public String toString() {
+		return "PrioritizedTask [" + this.task + "] with priority " + this.priority;
+	}
+
+}
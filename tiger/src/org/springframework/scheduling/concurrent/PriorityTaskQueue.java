@@ -0,0 +1,378 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.core.task.PriorityTaskExecutor;
+import org.springframework.util.Assert;
+import org.springframework.util.LatencyHistogram;
+
+/**
+ * Bounded {@link BlockingQueue} for a {@link java.util.concurrent.ThreadPoolExecutor},
+ * handing out pending tasks in priority order as defined by {@link PrioritizedTask}.
+ * Plain Runnables get wrapped with {@link PriorityTaskExecutor#PRIORITY_DEFAULT
+ * default priority} on insertion.
+ *
+ * <p>Tasks whose deadline has passed by the time they reach the head of the
+ * queue are dropped instead of being handed out, and passed to the
+ * {@link #taskExpired} callback. The time that each task spent waiting in
+ * the queue is recorded in a {@link LatencyHistogram} per priority.
+ *
+ * @since 2.5.7
+ * @see PrioritizedTask
+ * @see PriorityThreadPoolTaskExecutor
+ */
+public class PriorityTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	private final int capacity;
+
+	private final PriorityQueue<PrioritizedTask> queue = new PriorityQueue<PrioritizedTask>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = this.lock.newCondition();
+
+	private final Condition notFull = this.lock.newCondition();
+
+	private final ConcurrentMap<Integer, LatencyHistogram> waitHistograms =
+			new ConcurrentHashMap<Integer, LatencyHistogram>();
+
+	private final AtomicLong expiredCount = new AtomicLong();
+
+
+	/**
+	 * Create a new unbounded PriorityTaskQueue.
+	 */
+	public PriorityTaskQueue() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Create a new PriorityTaskQueue with the given capacity.
+	 * @param capacity the maximum number of pending tasks
+	 */
+	public PriorityTaskQueue(int capacity) {
+		Assert.isTrue(capacity > 0, "Capacity must be positive");
+		this.capacity = capacity;
+	}
+
+
+	public boolean offer(Runnable task) {
+		PrioritizedTask prioritizedTask = asPrioritizedTask(task);
+		this.lock.lock();
+		try {
+			if (this.queue.size() >= this.capacity) {
+				return false;
+			}
+			insert(prioritizedTask);
+			return true;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+		PrioritizedTask prioritizedTask = asPrioritizedTask(task);
+		long nanos = unit.toNanos(timeout);
+		this.lock.lockInterruptibly();
+		try {
+			while (this.queue.size() >= this.capacity) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = this.notFull.awaitNanos(nanos);
+			}
+			insert(prioritizedTask);
+			return true;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	public void put(Runnable task) throws InterruptedException {
+		PrioritizedTask prioritizedTask = asPrioritizedTask(task);
+		this.lock.lockInterruptibly();
+		try {
+			while (this.queue.size() >= this.capacity) {
+				this.notFull.await();
+			}
+			insert(prioritizedTask);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	public Runnable poll() {
+		List<PrioritizedTask> expired = new ArrayList<PrioritizedTask>(0);
+		PrioritizedTask task = null;
+		this.lock.lock();
+		try {
+			task = extract(expired);
+		}
+		finally {
+			this.lock.unlock();
+		}
+		return handOut(task, expired);
+	}
+
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + nanos;
+		while (true) {
+			List<PrioritizedTask> expired = new ArrayList<PrioritizedTask>(0);
+			PrioritizedTask task = null;
+			this.lock.lockInterruptibly();
+			try {
+				while ((task = extract(expired)) == null && expired.isEmpty() && nanos > 0) {
+					nanos = this.notEmpty.awaitNanos(nanos);
+				}
+			}
+			finally {
+				this.lock.unlock();
+			}
+			// Hand over expired tasks right away rather than holding them while waiting.
+			Runnable result = handOut(task, expired);
+			if (result != null || nanos <= 0) {
+				return result;
+			}
+			nanos = deadline - System.nanoTime();
+		}
+	}
+
+	public Runnable take() throws InterruptedException {
+		while (true) {
+			List<PrioritizedTask> expired = new ArrayList<PrioritizedTask>(0);
+			PrioritizedTask task = null;
+			this.lock.lockInterruptibly();
+			try {
+				while ((task = extract(expired)) == null && expired.isEmpty()) {
+					this.notEmpty.await();
+				}
+			}
+			finally {
+				this.lock.unlock();
+			}
+			// Hand over expired tasks before waiting again.
+			Runnable result = handOut(task, expired);
+			if (result != null) {
+				return result;
+			}
+		}
+	}
+
+	public Runnable peek() {
+		this.lock.lock();
+		try {
+			return this.queue.peek();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	public boolean remove(Object task) {
+		this.lock.lock();
+		try {
+			for (Iterator<PrioritizedTask> it = this.queue.iterator(); it.hasNext();) {
+				PrioritizedTask candidate = it.next();
+				if (candidate == task || candidate.getTask() == task) {
+					it.remove();
+					this.notFull.signal();
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	public void clear() {
+		this.lock.lock();
+		try {
+			this.queue.clear();
+			this.notFull.signalAll();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int drainTo(Collection<? super Runnable> target) {
+		return drainTo(target, Integer.MAX_VALUE);
+	}
+
+	public int drainTo(Collection<? super Runnable> target, int maxElements) {
+		Assert.isTrue(target != this, "Cannot drain queue to itself");
+		this.lock.lock();
+		try {
+			int count = 0;
+			while (count < maxElements && !this.queue.isEmpty()) {
+				target.add(this.queue.poll());
+				count++;
+			}
+			if (count > 0) {
+				this.notFull.signalAll();
+			}
+			return count;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.queue.size();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int remainingCapacity() {
+		this.lock.lock();
+		try {
+			return this.capacity - this.queue.size();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Return an iterator over a snapshot of the pending tasks, in no particular order.
+	 */
+	public Iterator<Runnable> iterator() {
+		List<Runnable> snapshot;
+		this.lock.lock();
+		try {
+			snapshot = new ArrayList<Runnable>(this.queue);
+		}
+		finally {
+			this.lock.unlock();
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+
+
+	/**
+	 * Return the queue wait histograms per task priority,
+	 * with the highest priority first.
+	 */
+	public Map<Integer, LatencyHistogram> getWaitHistograms() {
+		Map<Integer, LatencyHistogram> result =
+				new TreeMap<Integer, LatencyHistogram>(Collections.reverseOrder());
+		result.putAll(this.waitHistograms);
+		return result;
+	}
+
+	/**
+	 * Return the number of tasks that have been dropped since their deadline had passed.
+	 */
+	public long getExpiredTaskCount() {
+		return this.expiredCount.get();
+	}
+
+	/**
+	 * Callback for a task that has been dropped since its deadline had passed.
+	 * Invoked outside of the queue's lock, in the thread that polled the queue.
+	 * <p>The default implementation is empty. Can be overridden in subclasses.
+	 * @param task the expired task
+	 */
+	protected void taskExpired(PrioritizedTask task) {
+	}
+
+
+	private PrioritizedTask asPrioritizedTask(Runnable task) {
+		Assert.notNull(task, "Task must not be null");
+		return (task instanceof PrioritizedTask ? (PrioritizedTask) task :
+				new PrioritizedTask(task, PriorityTaskExecutor.PRIORITY_DEFAULT));
+	}
+
+	private void insert(PrioritizedTask task) {
+		task.setEnqueueTime(System.currentTimeMillis());
+		this.queue.offer(task);
+		this.notEmpty.signal();
+	}
+
+	/**
+	 * Extract the next non-expired task, collecting expired ones.
+	 * To be called with the lock held.
+	 */
+	private PrioritizedTask extract(List<PrioritizedTask> expired) {
+		long now = System.currentTimeMillis();
+		PrioritizedTask task = this.queue.poll();
+		while (task != null && task.isExpired(now)) {
+			expired.add(task);
+			task = this.queue.poll();
+		}
+		if (task != null || !expired.isEmpty()) {
+			this.notFull.signalAll();
+		}
+		return task;
+	}
+
+	/**
+	 * Record statistics for the given task and notify about expired ones,
+	 * outside of the lock.
+	 */
+	private Runnable handOut(PrioritizedTask task, List<PrioritizedTask> expired) {
+		for (PrioritizedTask expiredTask : expired) {
+			this.expiredCount.incrementAndGet();
+			taskExpired(expiredTask);
+		}
+		if (task != null) {
+			getWaitHistogram(task.getPriority()).record(System.currentTimeMillis() - task.getEnqueueTime());
+		}
+		return task;
+	}
+
+	private LatencyHistogram getWaitHistogram(int priority) {
+		LatencyHistogram histogram = this.waitHistograms.get(priority);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			LatencyHistogram existing = this.waitHistograms.putIfAbsent(priority, histogram);
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		return histogram;
+	}
+
+}
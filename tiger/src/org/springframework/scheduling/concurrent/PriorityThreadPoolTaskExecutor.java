@@ -0,0 +1,172 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+
+import org.springframework.core.task.PriorityTaskExecutor;
+import org.springframework.util.Assert;
+import org.springframework.util.LatencyHistogram;
+
+/**
+ * Variant of {@link ThreadPoolTaskExecutor} that executes pending tasks
+ * in priority order rather than in FIFO order, based on a bounded
+ * {@link PriorityTaskQueue}. Implements the {@link PriorityTaskExecutor}
+ * interface for submitting tasks with priority and deadline hints,
+ * allowing latency-sensitive tasks to overtake queued bulk work.
+ *
+ * <p>A task that is still pending once its deadline has passed will be
+ * dropped instead of being executed; if the task is a {@link Future}
+ * (such as a {@link java.util.concurrent.FutureTask}), it gets cancelled,
+ * so that callers waiting for its result get notified. Override
+ * {@link #handleExpiredTask} for custom handling of expired tasks.
+ *
+ * <p>The time that tasks spent waiting in the queue is tracked per priority.
+ * The statistics are exposed through bean property getters and simple
+ * operations (such as {@link #getQueueWaitSummary()} and
+ * {@link #getQueueWaitHistogram(int)}), suitable for export via JMX
+ * through Spring's {@link org.springframework.jmx.export.MBeanExporter}.
+ *
+ * <p>Note that the underlying ThreadPoolExecutor only queues tasks once
+ * its core threads are busy; tasks only get reordered while waiting in the
+ * queue. Since the queue is bounded, consider a "maxPoolSize" equal to the
+ * "corePoolSize", or a RejectedExecutionHandler such as
+ * {@link java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy}.
+ *
+ * @since 2.5.7
+ * @see PriorityTaskQueue
+ * @see PrioritizedTask
+ */
+public class PriorityThreadPoolTaskExecutor extends ThreadPoolTaskExecutor implements PriorityTaskExecutor {
+
+	/**
+	 * Creates a {@link PriorityTaskQueue} for the given capacity,
+	 * which needs to be positive.
+	 */
+	protected BlockingQueue createQueue(int queueCapacity) {
+		Assert.isTrue(queueCapacity > 0, "PriorityThreadPoolTaskExecutor requires a positive 'queueCapacity'");
+		return new PriorityTaskQueue(queueCapacity) {
+			protected void taskExpired(PrioritizedTask task) {
+				handleExpiredTask(task);
+			}
+		};
+	}
+
+	/**
+	 * Return the underlying PriorityTaskQueue.
+	 * @throws IllegalStateException if the executor hasn't been initialized yet
+	 */
+	public PriorityTaskQueue getPriorityTaskQueue() throws IllegalStateException {
+		return (PriorityTaskQueue) getThreadPoolExecutor().getQueue();
+	}
+
+
+	/**
+	 * Executes the given task with {@link #PRIORITY_DEFAULT default priority},
+	 * unless it is a {@link PrioritizedTask} already.
+	 */
+	public void execute(Runnable task) {
+		super.execute(task instanceof PrioritizedTask ? task : new PrioritizedTask(task, PRIORITY_DEFAULT));
+	}
+
+	public void execute(Runnable task, int priority) {
+		super.execute(new PrioritizedTask(task, priority));
+	}
+
+	public void execute(Runnable task, int priority, long deadlineTimeout) {
+		super.execute(new PrioritizedTask(task, priority, deadlineTimeout));
+	}
+
+	/**
+	 * Handle the given task that has been dropped since its deadline had passed.
+	 * Called in the pool thread that polled the queue.
+	 * <p>The default implementation cancels the task if it is a {@link Future},
+	 * also if it has been submitted through a {@link MonitoringTaskExecutor}.
+	 * @param task the expired task
+	 */
+	protected void handleExpiredTask(PrioritizedTask task) {
+		Runnable expiredTask = MonitoringTaskExecutor.taskDropped(task);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Dropping task [" + expiredTask + "] with priority " + task.getPriority() +
+					" since its deadline has passed");
+		}
+		if (expiredTask instanceof Future) {
+			((Future) expiredTask).cancel(false);
+		}
+	}
+
+
+	/**
+	 * Return the number of tasks currently waiting in the queue.
+	 */
+	public int getQueueSize() {
+		return getPriorityTaskQueue().size();
+	}
+
+	/**
+	 * Return the number of tasks that have been dropped since their deadline had passed.
+	 */
+	public long getExpiredTaskCount() {
+		return getPriorityTaskQueue().getExpiredTaskCount();
+	}
+
+	/**
+	 * Return the queue wait histograms per task priority, with the highest priority first.
+	 */
+	public Map<Integer, LatencyHistogram> getQueueWaitHistograms() {
+		return getPriorityTaskQueue().getWaitHistograms();
+	}
+
+	/**
+	 * Return a summary of the queue wait times per task priority,
+	 * with the highest priority first.
+	 */
+	public String[] getQueueWaitSummary() {
+		Map<Integer, LatencyHistogram> histograms = getQueueWaitHistograms();
+		String[] summary = new String[histograms.size()];
+		int i = 0;
+		for (Map.Entry<Integer, LatencyHistogram> entry : histograms.entrySet()) {
+			summary[i++] = "priority=[" + entry.getKey() + "]; " + entry.getValue();
+		}
+		return summary;
+	}
+
+	/**
+	 * Return the upper bounds (in milliseconds) of the queue wait histogram buckets.
+	 * @see #getQueueWaitHistogram(int)
+	 */
+	public long[] getQueueWaitHistogramBounds() {
+		return new LatencyHistogram().getBucketBounds();
+	}
+
+	/**
+	 * Return the queue wait histogram for the given task priority: the number of
+	 * tasks per histogram bucket, with the last element counting the tasks beyond
+	 * the highest bucket bound.
+	 * @param priority the task priority
+	 * @return the bucket counts, or <code>null</code> if no task with the given
+	 * priority has been queued yet
+	 * @see #getQueueWaitHistogramBounds()
+	 */
+	public long[] getQueueWaitHistogram(int priority) {
+		LatencyHistogram histogram = getQueueWaitHistograms().get(priority);
+		return (histogram != null ? histogram.getBucketCounts() : null);
+	}
+
+}
@@ -16,6 +16,7 @@
 
 package org.springframework.scheduling.concurrent;
 
+import java.util.Iterator;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -255,7 +256,7 @@ public class ThreadPoolTaskExecutor extends CustomizableThreadFactory
 		BlockingQueue queue = createQueue(this.queueCapacity);
 		this.threadPoolExecutor = new ThreadPoolExecutor(
 				this.corePoolSize, this.maxPoolSize, this.keepAliveSeconds, TimeUnit.SECONDS,
-				queue, this.threadFactory, this.rejectedExecutionHandler);
+				queue, this.threadFactory, new DropRecordingRejectedExecutionHandler(this.rejectedExecutionHandler));
 		if (this.allowCoreThreadTimeOut) {
 			this.threadPoolExecutor.allowCoreThreadTimeOut(true);
 		}
@@ -352,7 +353,47 @@ public class ThreadPoolTaskExecutor extends CustomizableThreadFactory
 			this.threadPoolExecutor.shutdown();
 		}
 		else {
-			this.threadPoolExecutor.shutdownNow();
+			for (Iterator it = this.threadPoolExecutor.shutdownNow().iterator(); it.hasNext();) {
+				MonitoringTaskExecutor.taskDropped((Runnable) it.next());
+			}
+		}
+	}
+
+
+	/**
+	 * RejectedExecutionHandler decorator that reports the tasks discarded by the JDK's
+	 * discard policies to a {@link MonitoringTaskExecutor} that submitted them.
+	 */
+	private static class DropRecordingRejectedExecutionHandler implements RejectedExecutionHandler {
+
+		private final RejectedExecutionHandler targetHandler;
+
+		public DropRecordingRejectedExecutionHandler(RejectedExecutionHandler targetHandler) {
+			this.targetHandler = targetHandler;
+		}
+
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+			if (executor.isShutdown() && (this.targetHandler instanceof ThreadPoolExecutor.CallerRunsPolicy ||
+					this.targetHandler instanceof ThreadPoolExecutor.DiscardPolicy ||
+					this.targetHandler instanceof ThreadPoolExecutor.DiscardOldestPolicy)) {
+				// these JDK policies silently discard the task once the executor has been shut down
+				this.targetHandler.rejectedExecution(task, executor);
+				MonitoringTaskExecutor.taskDropped(task);
+			}
+			else if (this.targetHandler instanceof ThreadPoolExecutor.DiscardPolicy) {
+				MonitoringTaskExecutor.taskDropped(task);
+			}
+			else if (this.targetHandler instanceof ThreadPoolExecutor.DiscardOldestPolicy) {
+				// same as DiscardOldestPolicy, keeping track of the discarded task
+				Runnable oldestTask = (Runnable) executor.getQueue().poll();
+				if (oldestTask != null) {
+					MonitoringTaskExecutor.taskDropped(oldestTask);
+				}
+				executor.execute(task);
+			}
+			else {
+				this.targetHandler.rejectedExecution(task, executor);
+			}
 		}
 	}
 
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.SchedulingTaskExecutor;
+import org.springframework.util.Assert;
+
+/**
+ * {@link org.springframework.core.task.TaskExecutor} implementation based on
+ * a fixed set of worker threads with one task deque per worker, as an
+ * alternative to {@link ThreadPoolTaskExecutor} for large numbers of small tasks.
+ *
+ * <p>Instead of competing for a single shared queue, tasks submitted from
+ * outside the pool are distributed across the worker deques in round-robin
+ * fashion, while tasks submitted from within a worker thread (for example,
+ * subtasks spawned by a running task) go to that worker's own deque.
+ * A worker whose deque has run empty steals tasks from the other workers'
+ * deques before going idle. Each deque is guarded by its own lock, which
+ * is typically only contended by a single thief at a time.
+ *
+ * <p>Configurable as a plain bean, with lifecycle management analogous to
+ * {@link ThreadPoolTaskExecutor}: worker threads are started on
+ * {@link #initialize()} and stopped on {@link #shutdown()}. Implements the
+ * JDK 1.5 {@link java.util.concurrent.Executor} interface as well, with the
+ * exception handling following the TaskExecutor contract.
+ *
+ * @since 2.5.7
+ * @see ThreadPoolTaskExecutor
+ */
+public class WorkStealingTaskExecutor extends CustomizableThreadFactory
+		implements AsyncTaskExecutor, SchedulingTaskExecutor, Executor, BeanNameAware, InitializingBean, DisposableBean {
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private int queueCapacity = Integer.MAX_VALUE;
+
+	private boolean asyncMode = true;
+
+	private boolean waitForTasksToCompleteOnShutdown = false;
+
+	private boolean threadNamePrefixSet = false;
+
+	private String beanName;
+
+	private Worker[] workers;
+
+	private volatile boolean running;
+
+	private final AtomicInteger submissionIndex = new AtomicInteger();
+
+	private final AtomicInteger queuedCount = new AtomicInteger();
+
+	private final AtomicInteger activeCount = new AtomicInteger();
+
+	private final AtomicLong completedCount = new AtomicLong();
+
+	private final AtomicLong stealCount = new AtomicLong();
+
+	private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<Worker>();
+
+
+	/**
+	 * Set the number of worker threads.
+	 * Default is the number of available processors.
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "'parallelism' must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Return the number of worker threads.
+	 */
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * Set the maximum number of tasks waiting for execution across all workers,
+	 * beyond which further tasks get rejected. Default is <code>Integer.MAX_VALUE</code>.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		Assert.isTrue(queueCapacity > 0, "'queueCapacity' must be positive");
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Set whether workers process the tasks in their own deque in FIFO order
+	 * ("true"), or in LIFO order ("false"). Default is "true", which suits
+	 * independent event-style tasks; LIFO order suits tasks that spawn subtasks
+	 * and wait for their results, processing the most recently spawned
+	 * (and most likely cache-hot) subtasks first. Stealing always takes the
+	 * oldest task from another worker's deque.
+	 */
+	public void setAsyncMode(boolean asyncMode) {
+		this.asyncMode = asyncMode;
+	}
+
+	/**
+	 * Set whether to wait for queued tasks to complete on shutdown.
+	 * <p>Default is "false", discarding all queued tasks on shutdown and
+	 * interrupting the worker threads. Switch this to "true" if you prefer
+	 * fully completed tasks at the expense of a longer shutdown phase.
+	 */
+	public void setWaitForTasksToCompleteOnShutdown(boolean waitForTasksToCompleteOnShutdown) {
+		this.waitForTasksToCompleteOnShutdown = waitForTasksToCompleteOnShutdown;
+	}
+
+	public void setThreadNamePrefix(String threadNamePrefix) {
+		super.setThreadNamePrefix(threadNamePrefix);
+		this.threadNamePrefixSet = true;
+	}
+
+	public void setBeanName(String name) {
+		this.beanName = name;
+	}
+
+
+	/**
+	 * Calls <code>initialize()</code> after the container applied all property values.
+	 * @see #initialize()
+	 */
+	public void afterPropertiesSet() {
+		initialize();
+	}
+
+	/**
+	 * Creates and starts the worker threads.
+	 */
+	public void initialize() {
+		if (logger.isInfoEnabled()) {
+			logger.info("Initializing work-stealing executor" + (this.beanName != null ? " '" + this.beanName + "'" : ""));
+		}
+		if (!this.threadNamePrefixSet && this.beanName != null) {
+			setThreadNamePrefix(this.beanName + "-");
+		}
+		Worker[] workers = new Worker[this.parallelism];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(i);
+		}
+		this.workers = workers;
+		this.running = true;
+		for (int i = 0; i < workers.length; i++) {
+			workers[i].thread = newThread(workers[i]);
+			workers[i].thread.start();
+		}
+	}
+
+
+	public void execute(Runnable task) {
+		Assert.notNull(task, "Runnable must not be null");
+		Worker[] workers = this.workers;
+		Assert.state(workers != null, "WorkStealingTaskExecutor not initialized");
+		if (!this.running) {
+			throw new TaskRejectedException("Executor [" + this + "] has been shut down - did not accept task: " + task);
+		}
+		if (this.queuedCount.incrementAndGet() > this.queueCapacity) {
+			this.queuedCount.decrementAndGet();
+			throw new TaskRejectedException("Executor [" + this + "] reached its queue capacity of " +
+					this.queueCapacity + " - did not accept task: " + task);
+		}
+		Worker target = currentWorker();
+		if (target == null) {
+			int index = (this.submissionIndex.getAndIncrement() & Integer.MAX_VALUE) % workers.length;
+			target = workers[index];
+		}
+		if (!target.deque.push(task)) {
+			this.queuedCount.decrementAndGet();
+			throw new TaskRejectedException("Executor [" + this + "] has been shut down - did not accept task: " + task);
+		}
+		signalIdleWorker();
+	}
+
+	/**
+	 * The start timeout is ignored: all tasks are queued for the next available worker.
+	 */
+	public void execute(Runnable task, long startTimeout) {
+		execute(task);
+	}
+
+	/**
+	 * This task executor prefers short-lived work units.
+	 */
+	public boolean prefersShortLivedTasks() {
+		return true;
+	}
+
+	/**
+	 * Return the worker that is running in the current thread, if any.
+	 */
+	private Worker currentWorker() {
+		Thread currentThread = Thread.currentThread();
+		Worker[] workers = this.workers;
+		for (int i = 0; i < workers.length; i++) {
+			if (workers[i].thread == currentThread) {
+				return workers[i];
+			}
+		}
+		return null;
+	}
+
+	private void signalIdleWorker() {
+		Worker idleWorker = this.idleWorkers.poll();
+		if (idleWorker != null) {
+			LockSupport.unpark(idleWorker.thread);
+		}
+	}
+
+
+	/**
+	 * Return the number of worker threads.
+	 */
+	public int getPoolSize() {
+		Worker[] workers = this.workers;
+		return (workers != null ? workers.length : 0);
+	}
+
+	/**
+	 * Return the number of workers currently executing a task.
+	 */
+	public int getActiveCount() {
+		return this.activeCount.get();
+	}
+
+	/**
+	 * Return the number of tasks currently waiting for execution.
+	 */
+	public int getQueuedTaskCount() {
+		return this.queuedCount.get();
+	}
+
+	/**
+	 * Return the total number of tasks executed.
+	 */
+	public long getCompletedTaskCount() {
+		return this.completedCount.get();
+	}
+
+	/**
+	 * Return the total number of tasks that have been stolen from another worker's deque.
+	 */
+	public long getStealCount() {
+		return this.stealCount.get();
+	}
+
+
+	/**
+	 * Calls <code>shutdown</code> when the BeanFactory destroys
+	 * the task executor instance.
+	 * @see #shutdown()
+	 */
+	public void destroy() {
+		shutdown();
+	}
+
+	/**
+	 * Stop the worker threads, either after completing all queued tasks
+	 * or discarding them, according to the "waitForTasksToCompleteOnShutdown" flag.
+	 */
+	public void shutdown() {
+		if (logger.isInfoEnabled()) {
+			logger.info("Shutting down work-stealing executor" + (this.beanName != null ? " '" + this.beanName + "'" : ""));
+		}
+		Worker[] workers = this.workers;
+		if (workers == null) {
+			this.running = false;
+			return;
+		}
+		// Close the deques first, under their locks: Any task accepted before
+		// is visible to the workers once they see the executor shut down.
+		for (int i = 0; i < workers.length; i++) {
+			this.queuedCount.addAndGet(-workers[i].deque.close(!this.waitForTasksToCompleteOnShutdown));
+		}
+		this.running = false;
+		for (int i = 0; i < workers.length; i++) {
+			if (!this.waitForTasksToCompleteOnShutdown) {
+				workers[i].thread.interrupt();
+			}
+			LockSupport.unpark(workers[i].thread);
+		}
+	}
+
+	/**
+	 * Return whether the executor is still accepting tasks or has queued tasks left.
+	 */
+	private boolean isActive() {
+		return (this.running || (this.waitForTasksToCompleteOnShutdown && this.queuedCount.get() > 0));
+	}
+
+
+	/**
+	 * Worker thread with its own task deque.
+	 */
+	private class Worker implements Runnable {
+
+		private final int index;
+
+		private final TaskDeque deque = new TaskDeque();
+
+		private volatile Thread thread;
+
+		public Worker(int index) {
+			this.index = index;
+		}
+
+		public void run() {
+			while (isActive()) {
+				Runnable task = (asyncMode ? this.deque.pollFirst() : this.deque.pollLast());
+				if (task == null) {
+					task = steal();
+				}
+				if (task == null) {
+					awaitWork();
+					continue;
+				}
+				queuedCount.decrementAndGet();
+				runTask(task);
+			}
+		}
+
+		private Runnable steal() {
+			Worker[] workers = WorkStealingTaskExecutor.this.workers;
+			for (int i = 1; i < workers.length; i++) {
+				Worker victim = workers[(this.index + i) % workers.length];
+				if (!victim.deque.isEmpty()) {
+					Runnable task = victim.deque.pollFirst();
+					if (task != null) {
+						stealCount.incrementAndGet();
+						return task;
+					}
+				}
+			}
+			return null;
+		}
+
+		private void awaitWork() {
+			idleWorkers.offer(this);
+			// re-check after registering as idle, to not miss a task submitted in the meantime
+			if (queuedCount.get() == 0 && isActive()) {
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+			idleWorkers.remove(this);
+			if (!running && !waitForTasksToCompleteOnShutdown) {
+				// clear interrupt flag caused by shutdown
+				Thread.interrupted();
+			}
+		}
+
+		private void runTask(Runnable task) {
+			activeCount.incrementAndGet();
+			try {
+				task.run();
+			}
+			catch (Throwable ex) {
+				logger.error("Unexpected exception thrown by task [" + task + "]", ex);
+			}
+			finally {
+				activeCount.decrementAndGet();
+				completedCount.incrementAndGet();
+			}
+		}
+	}
+
+
+	/**
+	 * Simple array-based double-ended queue, guarded by its own monitor.
+	 */
+	private static class TaskDeque {
+
+		private Runnable[] elements = new Runnable[16];
+
+		private int head;
+
+		private volatile int size;
+
+		private boolean closed;
+
+		/**
+		 * Add the given task at the end of this deque.
+		 * @return <code>false</code> if the deque has been closed
+		 */
+		public synchronized boolean push(Runnable task) {
+			if (this.closed) {
+				return false;
+			}
+			if (this.size == this.elements.length) {
+				Runnable[] newElements = new Runnable[this.elements.length * 2];
+				for (int i = 0; i < this.size; i++) {
+					newElements[i] = this.elements[(this.head + i) % this.elements.length];
+				}
+				this.elements = newElements;
+				this.head = 0;
+			}
+			this.elements[(this.head + this.size) % this.elements.length] = task;
+			this.size++;
+			return true;
+		}
+
+		public synchronized Runnable pollFirst() {
+			if (this.size == 0) {
+				return null;
+			}
+			Runnable task = this.elements[this.head];
+			this.elements[this.head] = null;
+			this.head = (this.head + 1) % this.elements.length;
+			this.size--;
+			return task;
+		}
+
+		public synchronized Runnable pollLast() {
+			if (this.size == 0) {
+				return null;
+			}
+			int index = (this.head + this.size - 1) % this.elements.length;
+			Runnable task = this.elements[index];
+			this.elements[index] = null;
+			this.size--;
+			return task;
+		}
+
+		public boolean isEmpty() {
+			return (this.size == 0);
+		}
+
+		/**
+		 * Stop accepting further tasks, optionally discarding the queued ones.
+		 * @return the number of discarded tasks
+		 */
+		public synchronized int close(boolean discard) {
+			this.closed = true;
+			return (discard ? clear() : 0);
+		}
+
+		public synchronized int clear() {
+			int cleared = this.size;
+			for (int i = 0; i < this.elements.length; i++) {
+				if (this.elements[i] != null) {
+					MonitoringTaskExecutor.taskDropped(this.elements[i]);
+				}
+				this.elements[i] = null;
+			}
+			this.head = 0;
+			this.size = 0;
+			return cleared;
+		}
+	}
+
+}
@@ -0,0 +1,610 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Servlet Filter that compresses response content with "gzip" or "deflate"
+ * encoding, as negotiated through the request's <code>Accept-Encoding</code> header.
+ *
+ * <p>Content is streamed through a {@link java.util.zip.DeflaterOutputStream}
+ * rather than being buffered in full. Only the first
+ * {@link #setMinCompressionSize "minCompressionSize"} bytes are held back, in
+ * order to decide whether compression is worthwhile: Responses that stay below
+ * that threshold are sent uncompressed, as are responses with a content type
+ * matching one of the {@link #setExcludedContentTypes "excludedContentTypes"}
+ * (typically already-compressed formats such as images or archives) and
+ * responses that carry a <code>Content-Encoding</code> of their own.
+ *
+ * <p>Every response passing through this filter carries a
+ * <code>Vary: Accept-Encoding</code> header, whether compressed or not,
+ * since the same resource may get compressed for a different client:
+ * Shared caches must not serve an uncompressed response to a client that
+ * accepts compression, nor a compressed one to a client that does not.
+ *
+ * <p>Exposes basic statistics - the number of compressed responses, the
+ * overall compression ratio and the time spent compressing - which can be
+ * exported through JMX when the filter is defined as a Spring bean and
+ * accessed via {@link DelegatingFilterProxy}.
+ *
+ * <p>Requires JDK 1.5 or higher.
+ *
+ * @since 2.5.7
+ * @see #setMinCompressionSize
+ * @see #setExcludedContentTypes
+ * @see #getCompressionRatio
+ */
+public class ResponseCompressionFilter extends OncePerRequestFilter {
+
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+	private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+	private static final String HEADER_VARY = "Vary";
+
+	private static final String ENCODING_GZIP = "gzip";
+
+	private static final String ENCODING_DEFLATE = "deflate";
+
+
+	private int minCompressionSize = 1024;
+
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+	private String[] excludedContentTypes = new String[] {
+			"image/*", "audio/*", "video/*", "application/zip", "application/x-gzip",
+			"application/x-compress", "application/x-compressed", "application/pdf"};
+
+	private final AtomicLong compressedResponseCount = new AtomicLong();
+
+	private final AtomicLong uncompressedByteCount = new AtomicLong();
+
+	private final AtomicLong compressedByteCount = new AtomicLong();
+
+	private final AtomicLong compressionNanos = new AtomicLong();
+
+
+	/**
+	 * Set the minimum number of response bytes for compression to kick in.
+	 * Default is 1024. Smaller responses are sent uncompressed.
+	 * <p>This is also the amount of content held back before the decision
+	 * is made and the response starts streaming.
+	 */
+	public void setMinCompressionSize(int minCompressionSize) {
+		Assert.isTrue(minCompressionSize >= 0, "minCompressionSize must not be negative");
+		this.minCompressionSize = minCompressionSize;
+	}
+
+	/**
+	 * Set the compression level to use (0-9).
+	 * Default is {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}.
+	 * @see java.util.zip.Deflater#setLevel
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		Assert.isTrue(compressionLevel == Deflater.DEFAULT_COMPRESSION ||
+				(compressionLevel >= Deflater.NO_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION),
+				"Invalid compression level: " + compressionLevel);
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Set the content types that should never be compressed, typically
+	 * because they are compressed already. Supports simple "xxx*", "*xxx"
+	 * and "*xxx*" patterns, for example "image/*".
+	 * <p>Default covers images, audio, video, common archive formats and PDF.
+	 * @see org.springframework.util.PatternMatchUtils#simpleMatch(String, String)
+	 */
+	public void setExcludedContentTypes(String[] excludedContentTypes) {
+		this.excludedContentTypes = (excludedContentTypes != null ? excludedContentTypes : new String[0]);
+	}
+
+
+	/**
+	 * Return the number of responses that have been compressed so far.
+	 */
+	public long getCompressedResponseCount() {
+		return this.compressedResponseCount.get();
+	}
+
+	/**
+	 * Return the total number of bytes written by the application
+	 * into compressed responses.
+	 */
+	public long getUncompressedByteCount() {
+		return this.uncompressedByteCount.get();
+	}
+
+	/**
+	 * Return the total number of bytes actually sent for compressed responses.
+	 */
+	public long getCompressedByteCount() {
+		return this.compressedByteCount.get();
+	}
+
+	/**
+	 * Return the overall compression ratio of compressed responses,
+	 * i.e. compressed size divided by original size (0.25 meaning
+	 * a reduction to a quarter of the original size), or 1.0 if no
+	 * response has been compressed yet.
+	 */
+	public double getCompressionRatio() {
+		long uncompressed = this.uncompressedByteCount.get();
+		return (uncompressed > 0 ? (double) this.compressedByteCount.get() / uncompressed : 1.0);
+	}
+
+	/**
+	 * Return the total time spent compressing response content,
+	 * in milliseconds. This does not include the time spent handing
+	 * compressed output over to the container's stream.
+	 */
+	public long getCompressionTimeMillis() {
+		return this.compressionNanos.get() / 1000000;
+	}
+
+
+	protected void doFilterInternal(
+			HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		response.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+		String contentEncoding = determineContentEncoding(request);
+		if (contentEncoding == null) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		CompressingResponseWrapper responseWrapper = new CompressingResponseWrapper(response, contentEncoding);
+		try {
+			filterChain.doFilter(request, responseWrapper);
+			responseWrapper.finishResponse();
+		}
+		finally {
+			// Release the native Deflater resources in any case, even if the chain threw.
+			responseWrapper.releaseResources();
+		}
+	}
+
+	/**
+	 * Determine the content encoding to use for the given request,
+	 * based on its <code>Accept-Encoding</code> header(s).
+	 * <p>Prefers "gzip" over "deflate", honoring a quality value of 0
+	 * as explicit rejection of the corresponding encoding.
+	 * @param request current HTTP request
+	 * @return the content encoding ("gzip" or "deflate"),
+	 * or <code>null</code> if the response should not be compressed
+	 */
+	protected String determineContentEncoding(HttpServletRequest request) {
+		boolean gzip = false;
+		boolean gzipSpecified = false;
+		boolean deflate = false;
+		Enumeration headers = request.getHeaders(HEADER_ACCEPT_ENCODING);
+		while (headers != null && headers.hasMoreElements()) {
+			String[] codings = StringUtils.tokenizeToStringArray((String) headers.nextElement(), ",");
+			for (String coding : codings) {
+				String name = coding;
+				boolean accepted = true;
+				int paramIndex = coding.indexOf(';');
+				if (paramIndex != -1) {
+					name = coding.substring(0, paramIndex).trim();
+					accepted = !isZeroQuality(coding.substring(paramIndex + 1));
+				}
+				if (ENCODING_GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+					gzip = accepted;
+					gzipSpecified = true;
+				}
+				else if ("*".equals(name) && !gzipSpecified) {
+					gzip = accepted;
+				}
+				else if (ENCODING_DEFLATE.equalsIgnoreCase(name)) {
+					deflate = accepted;
+				}
+			}
+		}
+		return (gzip ? ENCODING_GZIP : (deflate ? ENCODING_DEFLATE : null));
+	}
+
+	private boolean isZeroQuality(String params) {
+		String trimmed = StringUtils.trimAllWhitespace(params);
+		if (!trimmed.startsWith("q=")) {
+			return false;
+		}
+		try {
+			return (Double.parseDouble(trimmed.substring(2)) == 0.0);
+		}
+		catch (NumberFormatException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Determine whether content of the given type may be compressed.
+	 * @param contentType the response's content type (may be <code>null</code>)
+	 * @return <code>false</code> if the content type matches one of the excluded types
+	 * @see #setExcludedContentTypes
+	 */
+	protected boolean isCompressibleContentType(String contentType) {
+		if (contentType == null) {
+			return true;
+		}
+		int paramIndex = contentType.indexOf(';');
+		String mimeType = (paramIndex != -1 ? contentType.substring(0, paramIndex) : contentType).trim().toLowerCase();
+		return !PatternMatchUtils.simpleMatch(this.excludedContentTypes, mimeType);
+	}
+
+
+	/**
+	 * Response wrapper that holds back content up to the compression threshold,
+	 * then either switches to a compressing stream or passes content through.
+	 */
+	private class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+		private final String contentEncoding;
+
+		private final ThresholdOutputStream outputStream = new ThresholdOutputStream();
+
+		private PrintWriter writer;
+
+		private boolean compressible = true;
+
+		private int contentLength = -1;
+
+		public CompressingResponseWrapper(HttpServletResponse response, String contentEncoding) {
+			super(response);
+			this.contentEncoding = contentEncoding;
+		}
+
+		public void setContentType(String type) {
+			super.setContentType(type);
+			if (!isCompressibleContentType(type)) {
+				this.compressible = false;
+			}
+		}
+
+		public void setContentLength(int len) {
+			this.contentLength = len;
+			if (len >= 0 && len < minCompressionSize) {
+				this.compressible = false;
+			}
+		}
+
+		public void setHeader(String name, String value) {
+			if (!checkHeader(name, value)) {
+				super.setHeader(name, value);
+			}
+		}
+
+		public void addHeader(String name, String value) {
+			if (!checkHeader(name, value)) {
+				super.addHeader(name, value);
+			}
+		}
+
+		public void setIntHeader(String name, int value) {
+			if (!checkHeader(name, String.valueOf(value))) {
+				super.setIntHeader(name, value);
+			}
+		}
+
+		public void addIntHeader(String name, int value) {
+			if (!checkHeader(name, String.valueOf(value))) {
+				super.addIntHeader(name, value);
+			}
+		}
+
+		/**
+		 * Check for headers that affect compression.
+		 * @return whether the header has been handled here
+		 */
+		private boolean checkHeader(String name, String value) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				setContentLength(Integer.parseInt(value));
+				return true;
+			}
+			if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(name)) {
+				this.compressible = false;
+			}
+			else if ("Content-Type".equalsIgnoreCase(name) && !isCompressibleContentType(value)) {
+				this.compressible = false;
+			}
+			return false;
+		}
+
+		public ServletOutputStream getOutputStream() {
+			return this.outputStream;
+		}
+
+		public PrintWriter getWriter() throws IOException {
+			if (this.writer == null) {
+				String characterEncoding = getCharacterEncoding();
+				this.writer = new PrintWriter(new OutputStreamWriter(this.outputStream,
+						(characterEncoding != null ? characterEncoding : "ISO-8859-1")));
+			}
+			return this.writer;
+		}
+
+		public void flushBuffer() throws IOException {
+			if (this.writer != null) {
+				this.writer.flush();
+			}
+			this.outputStream.flush();
+		}
+
+		public void resetBuffer() {
+			this.outputStream.resetBuffer();
+			super.resetBuffer();
+		}
+
+		public void reset() {
+			this.outputStream.resetBuffer();
+			super.reset();
+			addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+			this.compressible = true;
+			this.contentLength = -1;
+		}
+
+		public void finishResponse() throws IOException {
+			if (this.writer != null) {
+				this.writer.flush();
+			}
+			this.outputStream.finish();
+		}
+
+		public void releaseResources() {
+			this.outputStream.releaseResources();
+		}
+
+
+		/**
+		 * Output stream that buffers up to the threshold, then streams
+		 * through a DeflaterOutputStream or straight to the target stream.
+		 */
+		private class ThresholdOutputStream extends ServletOutputStream {
+
+			private ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(minCompressionSize, 32));
+
+			private OutputStream targetStream;
+
+			private DeflaterOutputStream compressingStream;
+
+			private Deflater deflater;
+
+			private CountingOutputStream countingStream;
+
+			private long uncompressedBytes;
+
+			private long nanos;
+
+			public void write(int b) throws IOException {
+				if (this.targetStream == null && this.buffer.size() < minCompressionSize && compressible) {
+					this.buffer.write(b);
+					return;
+				}
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (this.targetStream == null) {
+					if (this.buffer.size() + len <= minCompressionSize && compressible) {
+						this.buffer.write(b, off, len);
+						return;
+					}
+					startStreaming(compressible, false);
+				}
+				if (this.compressingStream != null) {
+					long start = System.nanoTime();
+					this.compressingStream.write(b, off, len);
+					this.nanos += System.nanoTime() - start;
+					this.uncompressedBytes += len;
+				}
+				else {
+					this.targetStream.write(b, off, len);
+				}
+			}
+
+			public void flush() throws IOException {
+				// Content below the threshold is held back until the decision is made.
+				if (this.targetStream != null) {
+					this.targetStream.flush();
+				}
+			}
+
+			public void close() throws IOException {
+				finish();
+			}
+
+			public void resetBuffer() {
+				if (this.targetStream != null) {
+					throw new IllegalStateException("Cannot reset buffer - content already streamed");
+				}
+				this.buffer.reset();
+			}
+
+			private void startStreaming(boolean compress, boolean complete) throws IOException {
+				HttpServletResponse response = (HttpServletResponse) getResponse();
+				if (compress) {
+					response.setHeader(HEADER_CONTENT_ENCODING, contentEncoding);
+					this.countingStream = new CountingOutputStream(response.getOutputStream());
+					long start = System.nanoTime();
+					this.deflater = (ENCODING_GZIP.equals(contentEncoding) ?
+							new Deflater(compressionLevel, true) : new Deflater(compressionLevel));
+					this.compressingStream = (ENCODING_GZIP.equals(contentEncoding) ?
+							new CustomDeflaterGZIPOutputStream(this.countingStream, this.deflater) :
+							new DeflaterOutputStream(this.countingStream, this.deflater));
+					this.nanos += System.nanoTime() - start;
+					this.targetStream = this.compressingStream;
+				}
+				else {
+					if (contentLength >= 0 || complete) {
+						response.setContentLength(complete ? this.buffer.size() : contentLength);
+					}
+					this.targetStream = response.getOutputStream();
+				}
+				byte[] buffered = this.buffer.toByteArray();
+				this.buffer = null;
+				if (buffered.length > 0) {
+					write(buffered, 0, buffered.length);
+				}
+			}
+
+			public void finish() throws IOException {
+				if (this.targetStream == null) {
+					if (this.buffer.size() == 0) {
+						return;
+					}
+					// Everything fits below the threshold: send as-is, with exact length.
+					startStreaming(false, true);
+				}
+				if (this.compressingStream != null) {
+					long start = System.nanoTime();
+					try {
+						this.compressingStream.finish();
+					}
+					finally {
+						this.nanos += System.nanoTime() - start;
+						this.deflater.end();
+						this.compressingStream = null;
+					}
+					compressedResponseCount.incrementAndGet();
+					uncompressedByteCount.addAndGet(this.uncompressedBytes);
+					compressedByteCount.addAndGet(this.countingStream.getCount());
+					// Only count the deflater's work, not the output to the container.
+					compressionNanos.addAndGet(Math.max(this.nanos - this.countingStream.getWriteNanos(), 0));
+				}
+			}
+
+			public void releaseResources() {
+				if (this.deflater != null) {
+					this.deflater.end();
+					this.compressingStream = null;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * GZIP stream on top of a given (nowrap) Deflater, allowing for a custom
+	 * compression level: writes the GZIP header and trailer around the
+	 * deflated content, as {@link java.util.zip.GZIPOutputStream} does.
+	 */
+	private static class CustomDeflaterGZIPOutputStream extends DeflaterOutputStream {
+
+		private static final byte[] GZIP_HEADER = new byte[] {
+				(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+		private final CRC32 crc = new CRC32();
+
+		public CustomDeflaterGZIPOutputStream(OutputStream out, Deflater deflater) throws IOException {
+			super(out, deflater);
+			out.write(GZIP_HEADER);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			super.write(b, off, len);
+			this.crc.update(b, off, len);
+		}
+
+		public void finish() throws IOException {
+			if (!this.def.finished()) {
+				super.finish();
+				writeInt((int) this.crc.getValue());
+				writeInt(this.def.getTotalIn());
+			}
+		}
+
+		private void writeInt(int i) throws IOException {
+			this.out.write(i & 0xff);
+			this.out.write((i >> 8) & 0xff);
+			this.out.write((i >> 16) & 0xff);
+			this.out.write((i >> 24) & 0xff);
+		}
+	}
+
+
+	/**
+	 * OutputStream decorator that counts the bytes written to the target stream,
+	 * as well as the time spent writing them.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		private final OutputStream targetStream;
+
+		private long count;
+
+		private long writeNanos;
+
+		public CountingOutputStream(OutputStream targetStream) {
+			this.targetStream = targetStream;
+		}
+
+		public void write(int b) throws IOException {
+			long start = System.nanoTime();
+			try {
+				this.targetStream.write(b);
+			}
+			finally {
+				this.writeNanos += System.nanoTime() - start;
+			}
+			this.count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			try {
+				this.targetStream.write(b, off, len);
+			}
+			finally {
+				this.writeNanos += System.nanoTime() - start;
+			}
+			this.count += len;
+		}
+
+		public void flush() throws IOException {
+			this.targetStream.flush();
+		}
+
+		public long getCount() {
+			return this.count;
+		}
+
+		public long getWriteNanos() {
+			return this.writeNanos;
+		}
+	}
+
+}
@@ -27,6 +27,10 @@ import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -70,6 +74,8 @@ import org.springframework.web.bind.support.WebArgumentResolver;
 import org.springframework.web.bind.support.WebBindingInitializer;
 import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.FutureResultHandlerInterceptor;
+import org.springframework.web.servlet.DispatcherServlet;
 import org.springframework.web.servlet.HandlerAdapter;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.View;
@@ -95,6 +101,15 @@ import org.springframework.web.util.WebUtils;
  * A common use case is to apply shared binder initialization logic through
  * a custom {@link #setWebBindingInitializer WebBindingInitializer}.
  *
+ * <p>Handler methods may also return a {@link java.util.concurrent.Future},
+ * typically for work that waits on a remote system: Its eventual value will be
+ * processed like a direct return value. Note that this does <i>not</i> release
+ * the container thread, since the Servlet 2.x API does not allow for that:
+ * The request thread blocks until the result is available, up to the configured
+ * {@link #setFutureResultTimeout "futureResultTimeout"}. The mapped
+ * {@link FutureResultHandlerInterceptor FutureResultHandlerInterceptors} will be
+ * notified when waiting starts and ends.
+ *
  * @author Juergen Hoeller
  * @author Arjen Poutsma
  * @since 2.5
@@ -136,6 +151,8 @@ public class AnnotationMethodHandlerAdapter extends WebContentGenerator implemen
 
 	private WebArgumentResolver[] customArgumentResolvers;
 
+	private long futureResultTimeout = -1;
+
 	private final Map<Class<?>, ServletHandlerMethodResolver> methodResolverCache =
 			new ConcurrentHashMap<Class<?>, ServletHandlerMethodResolver>();
 
@@ -282,6 +299,17 @@ public class AnnotationMethodHandlerAdapter extends WebContentGenerator implemen
 	}
 
 
+	/**
+	 * Set the maximum time to wait for the value of a {@link java.util.concurrent.Future}
+	 * returned from a handler method, in milliseconds. Default is -1, waiting indefinitely.
+	 * <p>On timeout, the Future will be cancelled and
+	 * {@link #handleFutureResultTimeout} will be invoked.
+	 */
+	public void setFutureResultTimeout(long futureResultTimeout) {
+		this.futureResultTimeout = futureResultTimeout;
+	}
+
+
 	public boolean supports(Object handler) {
 		return getMethodResolver(handler).hasHandlerMethods();
 	}
@@ -324,6 +352,14 @@ public class AnnotationMethodHandlerAdapter extends WebContentGenerator implemen
 			ExtendedModelMap implicitModel = new BindingAwareModelMap();
 
 			Object result = methodInvoker.invokeHandlerMethod(handlerMethod, handler, webRequest, implicitModel);
+			if (result instanceof Future) {
+				try {
+					result = waitForFutureResult((Future) result, request, response, handler);
+				}
+				catch (TimeoutException ex) {
+					return handleFutureResultTimeout(request, response, handler);
+				}
+			}
 			ModelAndView mav =
 					methodInvoker.getModelAndView(handlerMethod, handler.getClass(), result, implicitModel, webRequest);
 			methodInvoker.updateModelAttributes(
@@ -360,6 +396,100 @@ public class AnnotationMethodHandlerAdapter extends WebContentGenerator implemen
 		return null;
 	}
 
+	/**
+	 * Wait for the value of the given Future returned from a handler method,
+	 * notifying the mapped {@link FutureResultHandlerInterceptor FutureResultHandlerInterceptors}.
+	 * <p>This blocks the current request thread until the result is available.
+	 * A failure of the computation will be rethrown as-is,
+	 * to be handled like an exception thrown by the handler method itself.
+	 * @param future the Future returned from the handler method
+	 * @param request current HTTP request
+	 * @param response current HTTP response
+	 * @param handler the handler object
+	 * @return the value of the Future
+	 * @throws TimeoutException if the configured timeout has been exceeded
+	 * @throws Exception if thrown by the computation of the result or an interceptor
+	 * @see #setFutureResultTimeout
+	 * @see org.springframework.web.servlet.DispatcherServlet#FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE
+	 */
+	protected Object waitForFutureResult(
+			Future future, HttpServletRequest request, HttpServletResponse response, Object handler)
+			throws Exception {
+
+		FutureResultHandlerInterceptor[] interceptors = (FutureResultHandlerInterceptor[])
+				request.getAttribute(DispatcherServlet.FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE);
+		int interceptorIndex = -1;
+		Exception failure = null;
+		try {
+			if (interceptors != null) {
+				for (int i = 0; i < interceptors.length; i++) {
+					interceptors[i].beforeFutureResultWait(request, response, handler);
+					interceptorIndex = i;
+				}
+			}
+			if (this.futureResultTimeout >= 0) {
+				return future.get(this.futureResultTimeout, TimeUnit.MILLISECONDS);
+			}
+			else {
+				return future.get();
+			}
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof Error) {
+				failure = ex;
+				throw (Error) cause;
+			}
+			failure = (cause instanceof Exception ? (Exception) cause : ex);
+			throw failure;
+		}
+		catch (TimeoutException ex) {
+			future.cancel(true);
+			failure = ex;
+			throw ex;
+		}
+		catch (InterruptedException ex) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			failure = ex;
+			throw ex;
+		}
+		catch (Exception ex) {
+			failure = ex;
+			throw ex;
+		}
+		finally {
+			for (int i = interceptorIndex; i >= 0; i--) {
+				try {
+					interceptors[i].afterFutureResultWait(request, response, handler, failure);
+				}
+				catch (Throwable ex) {
+					logger.error("FutureResultHandlerInterceptor.afterFutureResultWait threw exception", ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Handle the case where the value of a Future returned from a handler method
+	 * did not become available within the configured timeout.
+	 * <p>The default implementation logs a warning and sends an HTTP 503 error.
+	 * @param request current HTTP request
+	 * @param response current HTTP response
+	 * @param handler the handler object
+	 * @return a ModelAndView to render, or <code>null</code> if handled directly
+	 * @throws Exception an Exception that should be thrown as result of the servlet request
+	 * @see #setFutureResultTimeout
+	 */
+	protected ModelAndView handleFutureResultTimeout(
+			HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+
+		logger.warn("Future result of handler [" + handler + "] not available within " +
+				this.futureResultTimeout + " ms");
+		response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		return null;
+	}
+
 	/**
 	 * Template method for creating a new ServletRequestDataBinder instance.
 	 * <p>The default implementation creates a standard ServletRequestDataBinder.
@@ -647,7 +777,13 @@ public class AnnotationMethodHandlerAdapter extends WebContentGenerator implemen
 				ModelAndView mav = new ModelAndView().addAllObjects(implicitModel);
 				if ("".equals(attrName)) {
 					Class resolvedType = GenericTypeResolver.resolveReturnType(handlerMethod, handlerType);
-					attrName = Conventions.getVariableNameForReturnType(handlerMethod, resolvedType, returnValue);
+					if (Future.class.isAssignableFrom(resolvedType)) {
+						// Value of a Future result: name it after its actual type.
+						attrName = Conventions.getVariableName(returnValue);
+					}
+					else {
+						attrName = Conventions.getVariableNameForReturnType(handlerMethod, resolvedType, returnValue);
+					}
 				}
 				return mav.addObject(attrName, returnValue);
 			}
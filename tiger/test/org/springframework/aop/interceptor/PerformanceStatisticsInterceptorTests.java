@@ -0,0 +1,179 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.aop.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.NameMatchMethodPointcut;
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+
+/**
+ * @since 2.5.7
+ */
+public class PerformanceStatisticsInterceptorTests extends TestCase {
+
+	private static final String GET_AGE = TestBean.class.getName() + ".getAge()";
+
+	private PerformanceStatisticsInterceptor interceptor;
+
+	private List created;
+
+	private ITestBean proxy;
+
+
+	protected void setUp() {
+		this.interceptor = new PerformanceStatisticsInterceptor();
+		this.created = new ArrayList();
+		this.interceptor.setListeners(new PerformanceStatisticsListener[] {new PerformanceStatisticsListener() {
+			public void statisticsCreated(PerformanceStatisticsInterceptor interceptor, MethodPerformanceStatistics statistics) {
+				created.add(statistics.getName());
+			}
+		}});
+		ProxyFactory pf = new ProxyFactory(new TestBean("juergen", 50));
+		pf.addAdvice(this.interceptor);
+		this.proxy = (ITestBean) pf.getProxy();
+	}
+
+
+	public void testRecordsInvocations() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			assertEquals(50, this.proxy.getAge());
+		}
+		try {
+			this.proxy.exceptional(new IllegalStateException());
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+		catch (Throwable ex) {
+			fail("Unexpected exception: " + ex);
+		}
+		String[] methods = this.interceptor.getMonitoredMethods();
+		assertEquals(2, methods.length);
+		assertEquals(TestBean.class.getName() + ".exceptional(Throwable)", methods[0]);
+		assertEquals(GET_AGE, methods[1]);
+		assertEquals(2, this.created.size());
+
+		MethodPerformanceStatistics statistics = this.interceptor.getStatistics(GET_AGE);
+		assertEquals(10, statistics.getInvocationCount());
+		assertEquals(0, statistics.getFailureCount());
+		assertTrue(statistics.getMaxMillis() >= statistics.getP50Millis());
+		assertEquals(1, this.interceptor.getStatistics(TestBean.class.getName() + ".exceptional(Throwable)").getFailureCount());
+		assertTrue(this.interceptor.getStatisticsSummary()[1].startsWith(GET_AGE + ": count=[10]"));
+
+		this.interceptor.resetStatistics();
+		assertEquals(0, statistics.getInvocationCount());
+		this.proxy.getAge();
+		assertEquals(1, statistics.getInvocationCount());
+		assertEquals(2, this.created.size());
+	}
+
+	public void testOverloadedMethodsHaveSeparateStatistics() {
+		ProxyFactory pf = new ProxyFactory(new OverloadedServiceImpl());
+		pf.addAdvice(this.interceptor);
+		OverloadedService service = (OverloadedService) pf.getProxy();
+		service.process("value");
+		service.process(1);
+		service.process(2);
+		String[] methods = this.interceptor.getMonitoredMethods();
+		assertEquals(2, methods.length);
+		assertEquals(OverloadedServiceImpl.class.getName() + ".process(String)", methods[0]);
+		assertEquals(OverloadedServiceImpl.class.getName() + ".process(int)", methods[1]);
+		assertEquals(1, this.interceptor.getStatistics(methods[0]).getInvocationCount());
+		assertEquals(2, this.interceptor.getStatistics(methods[1]).getInvocationCount());
+	}
+
+	public void testWithAdvisor() {
+		NameMatchMethodPointcut pointcut = new NameMatchMethodPointcut();
+		pointcut.setMappedName("getName");
+		ProxyFactory pf = new ProxyFactory(new TestBean("juergen", 50));
+		pf.addAdvisor(new DefaultPointcutAdvisor(pointcut, this.interceptor));
+		ITestBean advised = (ITestBean) pf.getProxy();
+		advised.getName();
+		advised.getAge();
+		String[] methods = this.interceptor.getMonitoredMethods();
+		assertEquals(1, methods.length);
+		assertEquals(TestBean.class.getName() + ".getName()", methods[0]);
+	}
+
+	public void testUnknownMethod() {
+		try {
+			this.interceptor.getStatistics("unknown");
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testPercentiles() {
+		MethodPerformanceStatistics statistics = new MethodPerformanceStatistics("test");
+		assertEquals(0, statistics.getPercentileNanos(50));
+		for (int i = 1; i <= 1000; i++) {
+			statistics.record(i * 1000L, false);
+		}
+		assertEquals(1000, statistics.getInvocationCount());
+		assertEquals(0.5005, statistics.getMeanMillis(), 0.0001);
+		assertEquals(1.0, statistics.getMaxMillis(), 0.0001);
+		assertWithinRelativeError(500000, statistics.getPercentileNanos(50));
+		assertWithinRelativeError(990000, statistics.getPercentileNanos(99));
+		assertEquals(1000000, statistics.getPercentileNanos(99.9));
+		assertEquals(1000000, statistics.getPercentileNanos(100));
+	}
+
+	public void testBucketBounds() {
+		for (long value = 0; value < 100000; value++) {
+			int index = MethodPerformanceStatistics.getBucketIndex(value);
+			assertTrue(MethodPerformanceStatistics.getBucketUpperBound(index) >= value);
+			assertTrue(index == 0 || MethodPerformanceStatistics.getBucketUpperBound(index - 1) < value);
+		}
+		int highest = MethodPerformanceStatistics.getBucketIndex(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, MethodPerformanceStatistics.getBucketUpperBound(highest));
+	}
+
+
+	private void assertWithinRelativeError(long expected, long actual) {
+		assertTrue("Expected " + expected + " but was " + actual,
+				actual >= expected && actual <= expected + expected / 8);
+	}
+
+
+	public interface OverloadedService {
+
+		void process(String value);
+
+		void process(int value);
+	}
+
+
+	private static class OverloadedServiceImpl implements OverloadedService {
+
+		public void process(String value) {
+		}
+
+		public void process(int value) {
+		}
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.annotation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import example.indexed.IndexedComponent;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.type.filter.RegexPatternTypeFilter;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * @since 2.5.7
+ */
+public class CandidateComponentsIndexTests extends TestCase {
+
+	private static final String BASE_PACKAGE = "example.indexed";
+
+	private File classesDir;
+
+	private ClassLoader classLoader;
+
+
+	protected void setUp() throws Exception {
+		this.classesDir = File.createTempFile("classes", "");
+		this.classesDir.delete();
+		File packageDir = new File(this.classesDir, "example/indexed");
+		packageDir.mkdirs();
+		File sourceDir = new File(IndexedComponent.class.getResource("IndexedComponent.class").getFile()).getParentFile();
+		File[] classFiles = sourceDir.listFiles();
+		for (int i = 0; i < classFiles.length; i++) {
+			FileCopyUtils.copy(classFiles[i], new File(packageDir, classFiles[i].getName()));
+		}
+		// Only the copied classes are visible for the base package.
+		this.classLoader = new URLClassLoader(new URL[] {this.classesDir.toURI().toURL()},
+				new PackageHidingClassLoader(getClass().getClassLoader()));
+	}
+
+	protected void tearDown() {
+		FileSystemUtils.deleteRecursively(this.classesDir);
+	}
+
+
+	public void testIndexerWritesStereotypes() throws Exception {
+		assertEquals(3, new CandidateComponentsIndexer(this.classLoader).writeIndex(this.classesDir));
+
+		Properties index = loadIndex();
+		assertEquals(3, index.size());
+		assertEquals("org.springframework.stereotype.Component", index.getProperty("example.indexed.IndexedComponent"));
+		assertEquals("org.springframework.stereotype.Component",
+				index.getProperty("example.indexed.IndexedComponentSubclass"));
+		assertEquals("org.springframework.stereotype.Component,org.springframework.stereotype.Service",
+				index.getProperty("example.indexed.IndexedService"));
+		assertNull(index.getProperty("example.indexed.PlainClass"));
+	}
+
+	public void testScanningWithIndexMatchesClassPathScanning() throws Exception {
+		new CandidateComponentsIndexer(this.classLoader).writeIndex(this.classesDir);
+
+		Set<String> indexedCandidates = findCandidateClassNames(new ClassPathScanningCandidateComponentProvider(true));
+		System.setProperty(CandidateComponentsIndex.IGNORE_INDEX_PROPERTY_NAME, "true");
+		Set<String> scannedCandidates;
+		try {
+			scannedCandidates = findCandidateClassNames(new ClassPathScanningCandidateComponentProvider(true));
+		}
+		finally {
+			System.getProperties().remove(CandidateComponentsIndex.IGNORE_INDEX_PROPERTY_NAME);
+		}
+		assertEquals(2, scannedCandidates.size());
+		assertTrue(scannedCandidates.contains("example.indexed.IndexedComponent"));
+		assertTrue(scannedCandidates.contains("example.indexed.IndexedService"));
+		assertEquals(scannedCandidates, indexedCandidates);
+	}
+
+	public void testScanningUsesIndex() throws Exception {
+		writeIndexWithoutService();
+		Set<String> candidates = findCandidateClassNames(new ClassPathScanningCandidateComponentProvider(true));
+		assertEquals(Collections.singleton("example.indexed.IndexedComponent"), candidates);
+	}
+
+	public void testScanningFallsBackForCustomIncludeFilter() throws Exception {
+		writeIndexWithoutService();
+		ClassPathScanningCandidateComponentProvider provider = new ClassPathScanningCandidateComponentProvider(false);
+		provider.addIncludeFilter(new RegexPatternTypeFilter(Pattern.compile(".*Service")));
+		Set<String> candidates = findCandidateClassNames(provider);
+		assertEquals(Collections.singleton("example.indexed.IndexedService"), candidates);
+	}
+
+	public void testScanningFallsBackForClassPathRootWithoutIndex() throws Exception {
+		File otherDir = new File(this.classesDir.getPath() + "-other");
+		try {
+			new CandidateComponentsIndexer(this.classLoader).writeIndex(otherDir);
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected: no classes directory
+		}
+		otherDir.mkdir();
+		try {
+			new CandidateComponentsIndexer(this.classLoader).writeIndex(otherDir);
+			this.classLoader = new URLClassLoader(new URL[] {otherDir.toURI().toURL()}, this.classLoader);
+			assertNotNull(CandidateComponentsIndex.loadIndex(this.classLoader));
+			Set<String> candidates = findCandidateClassNames(new ClassPathScanningCandidateComponentProvider(true));
+			assertEquals(2, candidates.size());
+		}
+		finally {
+			FileSystemUtils.deleteRecursively(otherDir);
+		}
+	}
+
+
+	private Set<String> findCandidateClassNames(ClassPathScanningCandidateComponentProvider provider) {
+		provider.setResourceLoader(new DefaultResourceLoader(this.classLoader));
+		Set<String> classNames = new TreeSet<String>();
+		for (BeanDefinition candidate : provider.findCandidateComponents(BASE_PACKAGE)) {
+			classNames.add(candidate.getBeanClassName());
+		}
+		return classNames;
+	}
+
+	private Properties loadIndex() throws IOException {
+		Properties index = new Properties();
+		InputStream is = new FileInputStream(new File(this.classesDir, CandidateComponentsIndex.COMPONENTS_RESOURCE_LOCATION));
+		try {
+			index.load(is);
+		}
+		finally {
+			is.close();
+		}
+		return index;
+	}
+
+	private void writeIndexWithoutService() throws IOException {
+		new CandidateComponentsIndexer(this.classLoader).writeIndex(this.classesDir);
+		Properties index = loadIndex();
+		index.remove("example.indexed.IndexedService");
+		OutputStream os = new FileOutputStream(new File(this.classesDir, CandidateComponentsIndex.COMPONENTS_RESOURCE_LOCATION));
+		try {
+			index.store(os, null);
+		}
+		finally {
+			os.close();
+		}
+	}
+
+
+	/**
+	 * ClassLoader that hides the classes of the base package,
+	 * so that only the copies in the temporary classes directory are visible.
+	 */
+	private static class PackageHidingClassLoader extends ClassLoader {
+
+		public PackageHidingClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith(BASE_PACKAGE + ".")) {
+				throw new ClassNotFoundException(name);
+			}
+			return super.loadClass(name, resolve);
+		}
+
+		public URL getResource(String name) {
+			return (isHidden(name) ? null : super.getResource(name));
+		}
+
+		public Enumeration<URL> getResources(String name) throws IOException {
+			if (isHidden(name)) {
+				return Collections.enumeration(Collections.<URL>emptyList());
+			}
+			return super.getResources(name);
+		}
+
+		private boolean isHidden(String name) {
+			return name.startsWith(BASE_PACKAGE.replace('.', '/')) ||
+					name.equals(CandidateComponentsIndex.COMPONENTS_RESOURCE_LOCATION);
+		}
+	}
+
+}
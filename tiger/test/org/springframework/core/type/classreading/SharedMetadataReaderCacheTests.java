@@ -0,0 +1,182 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.type.classreading;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.TestCase;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * @since 2.5.7
+ */
+public class SharedMetadataReaderCacheTests extends TestCase {
+
+	private SharedMetadataReaderCache cache;
+
+
+	protected void setUp() {
+		this.cache = new SharedMetadataReaderCache();
+	}
+
+
+	public void testSharedBetweenFactories() throws Exception {
+		MetadataReader reader = createFactory(getClass().getClassLoader()).getMetadataReader(AnnotatedClass.class.getName());
+		MetadataReader reader2 = createFactory(getClass().getClassLoader()).getMetadataReader(AnnotatedClass.class.getName());
+
+		assertSame(reader, reader2);
+		assertEquals(1, this.cache.getSize());
+		assertEquals(1, this.cache.getHitCount());
+		assertEquals(1, this.cache.getMissCount());
+		assertTrue(this.cache.getEstimatedMemoryUsage() > 0);
+		assertTrue(reader.getAnnotationMetadata().hasAnnotation(Component.class.getName()));
+		try {
+			reader.getAnnotationMetadata().getAnnotationTypes().clear();
+			fail("Should have thrown UnsupportedOperationException");
+		}
+		catch (UnsupportedOperationException ex) {
+			// expected: shared metadata is immutable
+		}
+	}
+
+	public void testEvictsLeastRecentlyUsed() throws Exception {
+		CachingMetadataReaderFactory factory = createFactory(getClass().getClassLoader());
+		this.cache.setMaxSize(2);
+		MetadataReader reader = factory.getMetadataReader(AnnotatedClass.class.getName());
+		factory.getMetadataReader(String.class.getName());
+		factory.getMetadataReader(getClass().getName());
+
+		assertEquals(2, this.cache.getSize());
+		assertEquals(1, this.cache.getEvictionCount());
+		long memoryUsage = this.cache.getEstimatedMemoryUsage();
+		this.cache.setMaxSize(1);
+		assertEquals(1, this.cache.getSize());
+		assertEquals(2, this.cache.getEvictionCount());
+		assertTrue(this.cache.getEstimatedMemoryUsage() < memoryUsage);
+		assertNotSame(reader, factory.getMetadataReader(AnnotatedClass.class.getName()));
+
+		this.cache.clear();
+		assertEquals(0, this.cache.getSize());
+		assertEquals(0, this.cache.getEstimatedMemoryUsage());
+	}
+
+	public void testClassLoaderNotCacheSafe() throws Exception {
+		ClassLoader childLoader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+		CachingMetadataReaderFactory factory = createFactory(childLoader);
+		assertFalse(this.cache.isCacheSafe(childLoader));
+		MetadataReader reader = factory.getMetadataReader(AnnotatedClass.class.getName());
+		assertSame(reader, factory.getMetadataReader(AnnotatedClass.class.getName()));
+		assertEquals(0, this.cache.getSize());
+
+		this.cache.acceptClassLoader(childLoader);
+		assertTrue(this.cache.isCacheSafe(childLoader));
+		factory.getMetadataReader(AnnotatedClass.class.getName());
+		assertEquals(1, this.cache.getSize());
+
+		this.cache.clearClassLoader(childLoader);
+		assertFalse(this.cache.isCacheSafe(childLoader));
+		assertEquals(0, this.cache.getSize());
+		assertEquals(0, this.cache.getEstimatedMemoryUsage());
+	}
+
+	public void testModifiedClassFileReread() throws Exception {
+		File classFile = File.createTempFile("AnnotatedClass", ".class");
+		try {
+			FileCopyUtils.copy(AnnotatedClass.class.getResourceAsStream("SharedMetadataReaderCacheTests$AnnotatedClass.class"),
+					new FileOutputStream(classFile));
+			CachingMetadataReaderFactory factory = createFactory(getClass().getClassLoader());
+			MetadataReader reader = factory.getMetadataReader(new FileSystemResource(classFile));
+			assertSame(reader, factory.getMetadataReader(new FileSystemResource(classFile)));
+
+			classFile.setLastModified(classFile.lastModified() - 10000);
+			MetadataReader reader2 = factory.getMetadataReader(new FileSystemResource(classFile));
+			assertNotSame(reader, reader2);
+			assertEquals(AnnotatedClass.class.getName(), reader2.getClassMetadata().getClassName());
+			assertEquals(1, this.cache.getSize());
+		}
+		finally {
+			classFile.delete();
+		}
+	}
+
+	public void testParallelReadingPreservesOrder() throws Exception {
+		Resource[] resources = new PathMatchingResourcePatternResolver().getResources(
+				"classpath*:org/springframework/core/**/*.class");
+		assertTrue(resources.length > 100);
+		resources[5] = new FileSystemResource("nonExistent.class");
+		ParallelMetadataReaderLoader loader = new ParallelMetadataReaderLoader(createFactory(getClass().getClassLoader()));
+		loader.setParallelism(4);
+
+		MetadataReader[] readers = loader.getMetadataReaders(resources);
+
+		assertEquals(resources.length, readers.length);
+		assertNull(readers[5]);
+		SimpleMetadataReaderFactory sequentialFactory = new SimpleMetadataReaderFactory();
+		for (int i = 0; i < resources.length; i++) {
+			if (i != 5) {
+				assertEquals(sequentialFactory.getMetadataReader(resources[i]).getClassMetadata().getClassName(),
+						readers[i].getClassMetadata().getClassName());
+			}
+		}
+	}
+
+	public void testParallelReadingPropagatesFirstFailure() throws Exception {
+		final Resource[] resources = new PathMatchingResourcePatternResolver().getResources(
+				"classpath*:org/springframework/core/**/*.class");
+		ParallelMetadataReaderLoader loader = new ParallelMetadataReaderLoader(new SimpleMetadataReaderFactory() {
+			public MetadataReader getMetadataReader(Resource resource) throws IOException {
+				if (resource == resources[resources.length - 1]) {
+					throw new IOException("last");
+				}
+				if (resource == resources[resources.length - 2]) {
+					throw new IOException("second to last");
+				}
+				return super.getMetadataReader(resource);
+			}
+		});
+		loader.setParallelism(4);
+		try {
+			loader.getMetadataReaders(resources);
+			fail("Should have thrown IOException");
+		}
+		catch (IOException ex) {
+			assertEquals("second to last", ex.getMessage());
+		}
+	}
+
+
+	private CachingMetadataReaderFactory createFactory(ClassLoader classLoader) {
+		CachingMetadataReaderFactory factory = new CachingMetadataReaderFactory(classLoader);
+		factory.setSharedCache(this.cache);
+		return factory;
+	}
+
+
+	@Component("annotated")
+	public static class AnnotatedClass {
+	}
+
+}
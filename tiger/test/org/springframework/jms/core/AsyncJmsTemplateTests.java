@@ -0,0 +1,317 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jms.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import junit.framework.TestCase;
+
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.StubQueue;
+
+/**
+ * @since 2.5.7
+ */
+public class AsyncJmsTemplateTests extends TestCase {
+
+	private RecordingConnectionFactory connectionFactory;
+
+	private DeferredTaskExecutor taskExecutor;
+
+	private AsyncJmsTemplate asyncTemplate;
+
+
+	@Override
+	protected void setUp() {
+		this.connectionFactory = new RecordingConnectionFactory();
+		this.taskExecutor = new DeferredTaskExecutor();
+		JmsTemplate jmsTemplate = new JmsTemplate(this.connectionFactory);
+		jmsTemplate.setDefaultDestination(new StubQueue("queue"));
+		this.asyncTemplate = new AsyncJmsTemplate(jmsTemplate);
+		this.asyncTemplate.setTaskExecutor(this.taskExecutor);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.asyncTemplate.destroy();
+	}
+
+
+	public void testSendsQueuedMessagesInSingleTransaction() throws Exception {
+		this.asyncTemplate.afterPropertiesSet();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(this.asyncTemplate.convertAndSend("message" + i));
+		}
+		assertEquals(10, this.asyncTemplate.getQueueDepth());
+		this.taskExecutor.startTasks();
+
+		for (Future<?> future : futures) {
+			assertNull(future.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(10, this.connectionFactory.sentMessages.size());
+		assertEquals("message0", ((TextMessage) this.connectionFactory.sentMessages.get(0)).getText());
+		assertEquals(1, this.connectionFactory.commitCount);
+		assertEquals(10, this.asyncTemplate.getSentMessageCount());
+		assertEquals(1, this.asyncTemplate.getBatchCount());
+		assertEquals(10.0, this.asyncTemplate.getAverageBatchSize(), 0.0);
+		assertEquals(0, this.asyncTemplate.getQueueDepth());
+	}
+
+	public void testBatchesLimitedByMaxBatchSize() throws Exception {
+		this.asyncTemplate.setMaxBatchSize(4);
+		this.asyncTemplate.afterPropertiesSet();
+		Future<?> last = null;
+		for (int i = 0; i < 10; i++) {
+			last = this.asyncTemplate.convertAndSend("message" + i);
+		}
+		this.taskExecutor.startTasks();
+		last.get(5, TimeUnit.SECONDS);
+		assertEquals(3, this.connectionFactory.commitCount);
+		assertEquals(3, this.asyncTemplate.getBatchCount());
+	}
+
+	public void testRejectsSendsWhenQueueIsFull() throws Exception {
+		this.asyncTemplate.setQueueCapacity(2);
+		this.asyncTemplate.setEnqueueTimeout(0);
+		this.asyncTemplate.afterPropertiesSet();
+		this.asyncTemplate.convertAndSend("message1");
+		this.asyncTemplate.convertAndSend("message2");
+		try {
+			this.asyncTemplate.convertAndSend("message3");
+			fail("Should have thrown TaskRejectedException");
+		}
+		catch (TaskRejectedException ex) {
+			// expected
+		}
+	}
+
+	public void testFailedCommitFailsEntireBatch() throws Exception {
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		this.asyncTemplate.setFailureHandler(new AsyncSendFailureHandler() {
+			public void handleSendFailure(Object destination, MessageCreator messageCreator, Throwable ex) {
+				failures.add(ex);
+			}
+		});
+		this.asyncTemplate.afterPropertiesSet();
+		this.connectionFactory.failCommit = true;
+		Future<?> future1 = this.asyncTemplate.convertAndSend("message1");
+		Future<?> future2 = this.asyncTemplate.convertAndSend("message2");
+		this.taskExecutor.startTasks();
+
+		assertSendFailed(future1);
+		assertSendFailed(future2);
+		assertEquals(1, this.connectionFactory.rollbackCount);
+		assertEquals(2, failures.size());
+		assertEquals(2, this.asyncTemplate.getFailedMessageCount());
+		assertEquals(0, this.asyncTemplate.getSentMessageCount());
+
+		// A fresh Session will be used for subsequent sends.
+		this.connectionFactory.failCommit = false;
+		this.asyncTemplate.convertAndSend("message3").get(5, TimeUnit.SECONDS);
+		assertEquals(2, this.connectionFactory.sessionCount);
+	}
+
+	public void testFailedMessageCreationOnlyFailsAffectedMessage() throws Exception {
+		this.asyncTemplate.afterPropertiesSet();
+		Future<?> future1 = this.asyncTemplate.send(new MessageCreator() {
+			public Message createMessage(Session session) throws JMSException {
+				throw new IllegalArgumentException("Cannot create message");
+			}
+		});
+		Future<?> future2 = this.asyncTemplate.convertAndSend("queue2", "message2");
+		this.taskExecutor.startTasks();
+
+		future2.get(5, TimeUnit.SECONDS);
+		try {
+			future1.get(5, TimeUnit.SECONDS);
+			fail("Should have thrown ExecutionException");
+		}
+		catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof IllegalArgumentException);
+		}
+		assertEquals(1, this.connectionFactory.sentMessages.size());
+		assertEquals(1, this.connectionFactory.commitCount);
+	}
+
+	public void testQueuedMessagesSentOnShutdown() throws Exception {
+		this.asyncTemplate.afterPropertiesSet();
+		Future<?> future = this.asyncTemplate.convertAndSend("message");
+		this.taskExecutor.startTasks();
+		this.asyncTemplate.destroy();
+		assertTrue(future.isDone());
+		assertEquals(1, this.connectionFactory.sentMessages.size());
+		assertEquals(1, this.connectionFactory.closedConnectionCount);
+		try {
+			this.asyncTemplate.convertAndSend("message");
+			fail("Should have thrown TaskRejectedException");
+		}
+		catch (TaskRejectedException ex) {
+			// expected
+		}
+	}
+
+
+	private void assertSendFailed(Future<?> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Should have thrown ExecutionException");
+		}
+		catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof JmsException);
+		}
+	}
+
+
+	/**
+	 * TaskExecutor that holds back tasks until explicitly started,
+	 * allowing for sends to be queued up before.
+	 */
+	private static class DeferredTaskExecutor implements TaskExecutor {
+
+		private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+		public void execute(Runnable task) {
+			this.tasks.add(task);
+		}
+
+		public void startTasks() {
+			for (Runnable task : this.tasks) {
+				new Thread(task).start();
+			}
+		}
+	}
+
+
+	/**
+	 * Stub ConnectionFactory that records sent messages and transaction outcomes.
+	 */
+	private static class RecordingConnectionFactory implements ConnectionFactory, InvocationHandler {
+
+		public final List<Message> sentMessages = Collections.synchronizedList(new ArrayList<Message>());
+
+		public volatile int commitCount;
+
+		public volatile int rollbackCount;
+
+		public volatile int sessionCount;
+
+		public volatile int closedConnectionCount;
+
+		public volatile boolean failCommit;
+
+		private final List<Message> uncommittedMessages = new ArrayList<Message>();
+
+		public Connection createConnection() {
+			return (Connection) createProxy(Connection.class);
+		}
+
+		public Connection createConnection(String username, String password) {
+			return createConnection();
+		}
+
+		private Object createProxy(Class<?> intf) {
+			return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {intf}, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("createSession")) {
+				this.sessionCount++;
+				return createProxy(Session.class);
+			}
+			if (name.equals("createProducer")) {
+				return createProxy(MessageProducer.class);
+			}
+			if (name.equals("createQueue")) {
+				return new StubQueue((String) args[0]);
+			}
+			if (name.equals("createTextMessage")) {
+				TextMessageHandler handler = new TextMessageHandler((String) args[0]);
+				return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {TextMessage.class}, handler);
+			}
+			if (name.equals("send")) {
+				this.uncommittedMessages.add((Message) args[1]);
+				return null;
+			}
+			if (name.equals("commit")) {
+				if (this.failCommit) {
+					throw new JMSException("Commit failed");
+				}
+				this.sentMessages.addAll(this.uncommittedMessages);
+				this.uncommittedMessages.clear();
+				this.commitCount++;
+				return null;
+			}
+			if (name.equals("rollback")) {
+				this.uncommittedMessages.clear();
+				this.rollbackCount++;
+				return null;
+			}
+			if (name.equals("close") && method.getDeclaringClass() == Connection.class) {
+				this.closedConnectionCount++;
+				return null;
+			}
+			if (name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			if (name.equals("equals")) {
+				return (proxy == args[0]);
+			}
+			return null;
+		}
+	}
+
+
+	private static class TextMessageHandler implements InvocationHandler {
+
+		private final String text;
+
+		public TextMessageHandler(String text) {
+			this.text = text;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getName().equals("getText")) {
+				return this.text;
+			}
+			if (method.getName().equals("toString")) {
+				return "TextMessage: " + this.text;
+			}
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.jmx.export;
+
+import javax.management.ObjectName;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.interceptor.PerformanceStatisticsInterceptor;
+import org.springframework.aop.interceptor.PerformanceStatisticsListener;
+import org.springframework.beans.ITestBean;
+import org.springframework.beans.TestBean;
+import org.springframework.jmx.AbstractMBeanServerTests;
+
+/**
+ * @since 2.5.7
+ */
+public class PerformanceStatisticsMBeanRegistrarTests extends AbstractMBeanServerTests {
+
+	public void testRegistersStatisticsPerMethod() throws Exception {
+		MBeanExporter exporter = new MBeanExporter();
+		exporter.setServer(getServer());
+		PerformanceStatisticsMBeanRegistrar registrar = new PerformanceStatisticsMBeanRegistrar();
+		registrar.setMbeanExporter(exporter);
+		registrar.setDomain("test");
+		registrar.afterPropertiesSet();
+
+		PerformanceStatisticsInterceptor interceptor = new PerformanceStatisticsInterceptor();
+		interceptor.setListeners(new PerformanceStatisticsListener[] {registrar});
+		ProxyFactory pf = new ProxyFactory(new TestBean("juergen", 50));
+		pf.addAdvice(interceptor);
+		ITestBean proxy = (ITestBean) pf.getProxy();
+		proxy.getAge();
+		proxy.getAge();
+
+		ObjectName objectName = ObjectName.getInstance(
+				"test:type=MethodPerformanceStatistics,name=" + ObjectName.quote(TestBean.class.getName() + ".getAge()"));
+		assertIsRegistered("Statistics should have been exported", objectName);
+		assertEquals(new Long(2), getServer().getAttribute(objectName, "InvocationCount"));
+		assertTrue(getServer().getAttribute(objectName, "P99Millis") instanceof Double);
+
+		exporter.destroy();
+		assertIsNotRegistered("Statistics should have been unregistered", objectName);
+	}
+
+	public void testRequiresExporter() {
+		try {
+			new PerformanceStatisticsMBeanRegistrar().afterPropertiesSet();
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+}
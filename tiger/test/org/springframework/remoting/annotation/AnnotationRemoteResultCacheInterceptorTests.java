@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.remoting.annotation;
+
+import junit.framework.TestCase;
+
+import org.springframework.aop.framework.ProxyFactory;
+
+/**
+ * @since 2.5.7
+ */
+public class AnnotationRemoteResultCacheInterceptorTests extends TestCase {
+
+	private CountingReferenceDataService target;
+
+	private AnnotationRemoteResultCacheInterceptor interceptor;
+
+	private ReferenceDataService proxy;
+
+
+	@Override
+	protected void setUp() {
+		this.target = new CountingReferenceDataService();
+		this.interceptor = new AnnotationRemoteResultCacheInterceptor();
+		ProxyFactory pf = new ProxyFactory(this.target);
+		pf.addAdvice(this.interceptor);
+		this.proxy = (ReferenceDataService) pf.getProxy();
+	}
+
+
+	public void testAnnotatedMethodIsCached() {
+		assertEquals("a1", this.proxy.lookup("a"));
+		assertEquals("a1", this.proxy.lookup("a"));
+		assertEquals(1, this.target.count);
+	}
+
+	public void testNonAnnotatedMethodIsNotCached() {
+		assertEquals("a1", this.proxy.uncachedLookup("a"));
+		assertEquals("a2", this.proxy.uncachedLookup("a"));
+	}
+
+	public void testMappedNamesStillApply() {
+		this.interceptor.setMappedName("uncached*");
+		assertEquals("a1", this.proxy.uncachedLookup("a"));
+		assertEquals("a1", this.proxy.uncachedLookup("a"));
+	}
+
+	public void testAnnotationTimeToLive() throws Exception {
+		assertEquals("a1", this.proxy.shortLivedLookup("a"));
+		assertEquals("a1", this.proxy.shortLivedLookup("a"));
+		Thread.sleep(100);
+		assertEquals("a2", this.proxy.shortLivedLookup("a"));
+	}
+
+
+	public interface ReferenceDataService {
+
+		@CacheableResult
+		String lookup(String key);
+
+		@CacheableResult(timeToLive = 50)
+		String shortLivedLookup(String key);
+
+		String uncachedLookup(String key);
+	}
+
+
+	private static class CountingReferenceDataService implements ReferenceDataService {
+
+		private int count;
+
+		public String lookup(String key) {
+			return key + (++this.count);
+		}
+
+		public String shortLivedLookup(String key) {
+			return key + (++this.count);
+		}
+
+		public String uncachedLookup(String key) {
+			return key + (++this.count);
+		}
+	}
+
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.springframework.core.task.NoOpRunnable;
+import org.springframework.core.task.PriorityTaskExecutor;
+import org.springframework.core.task.StubTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.scheduling.SchedulingAwareRunnable;
+
+/**
+ * @since 2.5.7
+ */
+public class MonitoringTaskExecutorTests extends TestCase {
+
+	public void testStatisticsForSynchronousExecution() throws Exception {
+		MonitoringTaskExecutor executor = new MonitoringTaskExecutor(new SyncTaskExecutor());
+		executor.execute(new NoOpRunnable());
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(20);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					throw new IllegalStateException("task failed");
+				}
+			});
+			fail("Should have thrown IllegalStateException");
+		}
+		catch (IllegalStateException ex) {
+			// expected
+		}
+
+		assertEquals(3, executor.getSubmittedTaskCount());
+		assertEquals(2, executor.getCompletedTaskCount());
+		assertEquals(1, executor.getFailedTaskCount());
+		assertEquals(0, executor.getRejectedTaskCount());
+		assertEquals(0, executor.getWaitingTaskCount());
+		assertEquals(0, executor.getActiveTaskCount());
+		assertEquals(1, executor.getPeakActiveTaskCount());
+		assertEquals(3, executor.getExecutionHistogram().getCount());
+		assertTrue(executor.getExecutionHistogram().getMaxMillis() >= 15);
+		assertEquals(3, executor.getQueueWaitHistogram().getCount());
+	}
+
+	public void testRejectedTask() throws Exception {
+		MonitoringTaskExecutor executor = new MonitoringTaskExecutor(new TaskExecutor() {
+			public void execute(Runnable task) {
+				throw new TaskRejectedException("pool exhausted");
+			}
+		});
+		try {
+			executor.execute(new NoOpRunnable());
+			fail("Should have thrown TaskRejectedException");
+		}
+		catch (TaskRejectedException ex) {
+			// expected
+		}
+		assertEquals(1, executor.getSubmittedTaskCount());
+		assertEquals(1, executor.getRejectedTaskCount());
+		assertEquals(0, executor.getWaitingTaskCount());
+		assertEquals(0, executor.getQueueWaitHistogram().getCount());
+	}
+
+	public void testWaitingTasksAndQueueWait() throws Exception {
+		DeferringTaskExecutor target = new DeferringTaskExecutor();
+		MonitoringTaskExecutor executor = new MonitoringTaskExecutor(target);
+		executor.execute(new NoOpRunnable());
+		executor.execute(new NoOpRunnable());
+		assertEquals(2, executor.getWaitingTaskCount());
+		assertEquals(2, executor.getPeakWaitingTaskCount());
+		Thread.sleep(20);
+
+		target.runAll();
+		assertEquals(0, executor.getWaitingTaskCount());
+		assertEquals(2, executor.getPeakWaitingTaskCount());
+		assertEquals(2, executor.getCompletedTaskCount());
+		assertTrue(executor.getAverageQueueWaitMillis() >= 15);
+
+		executor.resetStatistics();
+		assertEquals(0, executor.getCompletedTaskCount());
+		assertEquals(0, executor.getPeakWaitingTaskCount());
+		assertEquals(0, executor.getQueueWaitHistogram().getCount());
+	}
+
+	public void testSubMillisecondTimesRecorded() {
+		MonitoringTaskExecutor executor = new MonitoringTaskExecutor(new SyncTaskExecutor());
+		executor.execute(new Runnable() {
+			public void run() {
+				long end = System.nanoTime() + 200000;
+				while (System.nanoTime() < end) {
+					// busy wait for 0.2 ms
+				}
+			}
+		});
+		assertTrue(executor.getAverageExecutionMillis() > 0);
+		assertTrue(executor.getAverageExecutionMillis() < 1000);
+	}
+
+	public void testKeepsSchedulingHints() {
+		DeferringTaskExecutor target = new DeferringTaskExecutor();
+		MonitoringTaskExecutor executor = new MonitoringTaskExecutor(target);
+		executor.execute(new SchedulingAwareRunnable() {
+			public void run() {
+			}
+			public boolean isLongLived() {
+				return true;
+			}
+		});
+		PrioritizedTask prioritizedTask = new PrioritizedTask(new NoOpRunnable(), 7, 60000);
+		executor.execute(prioritizedTask);
+
+		assertTrue(target.tasks.get(0) instanceof SchedulingAwareRunnable);
+		assertTrue(((SchedulingAwareRunnable) target.tasks.get(0)).isLongLived());
+		PrioritizedTask submittedTask = (PrioritizedTask) target.tasks.get(1);
+		assertEquals(7, submittedTask.getPriority());
+		assertEquals(prioritizedTask.getDeadline(), submittedTask.getDeadline());
+		target.runAll();
+		assertEquals(2, executor.getCompletedTaskCount());
+	}
+
+	public void testDelegatesSchedulingAndPriorityInterfaces() {
+		assertFalse(new MonitoringTaskExecutor(new SyncTaskExecutor()).prefersShortLivedTasks());
+		assertTrue(new MonitoringTaskExecutor(new ThreadPoolTaskExecutor()).prefersShortLivedTasks());
+
+		DeferringTaskExecutor target = new DeferringTaskExecutor();
+		MonitoringTaskExecutor executor = new MonitoringTaskExecutor(target);
+		executor.execute(new NoOpRunnable(), PriorityTaskExecutor.PRIORITY_HIGH);
+		assertEquals(1, executor.getWaitingTaskCount());
+		target.runAll();
+		assertEquals(1, executor.getCompletedTaskCount());
+	}
+
+	public void testExpiredTasksCancelledAndCountedAsDropped() throws Exception {
+		PriorityThreadPoolTaskExecutor target = new PriorityThreadPoolTaskExecutor();
+		target.setCorePoolSize(1);
+		target.setMaxPoolSize(1);
+		target.setQueueCapacity(10);
+		target.afterPropertiesSet();
+		CountDownLatch blocker = occupyPoolThread(target);
+		try {
+			MonitoringTaskExecutor executor = new MonitoringTaskExecutor(target);
+			FutureTask<Object> expiring = new FutureTask<Object>(new NoOpRunnable(), null);
+			executor.execute(expiring, PriorityTaskExecutor.PRIORITY_HIGH, 10);
+			FutureTask<Object> expiringPrioritized = new FutureTask<Object>(new NoOpRunnable(), null);
+			executor.execute(new PrioritizedTask(expiringPrioritized, PriorityTaskExecutor.PRIORITY_HIGH, 10));
+			FutureTask<Object> regular = new FutureTask<Object>(new NoOpRunnable(), null);
+			executor.execute(regular, PriorityTaskExecutor.PRIORITY_LOW);
+			assertEquals(3, executor.getWaitingTaskCount());
+			Thread.sleep(50);
+
+			blocker.countDown();
+			regular.get(5, TimeUnit.SECONDS);
+			assertCancelled(expiring);
+			assertCancelled(expiringPrioritized);
+			assertEquals(0, executor.getWaitingTaskCount());
+			assertEquals(2, executor.getDroppedTaskCount());
+			assertEquals(1, executor.getCompletedTaskCount());
+		}
+		finally {
+			blocker.countDown();
+			target.destroy();
+		}
+	}
+
+	public void testTasksDiscardedByRejectionPolicyCountedAsDropped() throws Exception {
+		ThreadPoolTaskExecutor target = new ThreadPoolTaskExecutor();
+		target.setCorePoolSize(1);
+		target.setMaxPoolSize(1);
+		target.setQueueCapacity(1);
+		target.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardOldestPolicy());
+		target.afterPropertiesSet();
+		CountDownLatch blocker = occupyPoolThread(target);
+		try {
+			MonitoringTaskExecutor executor = new MonitoringTaskExecutor(target);
+			executor.execute(new NoOpRunnable());
+			executor.execute(new NoOpRunnable());
+			assertEquals(1, executor.getWaitingTaskCount());
+			assertEquals(1, executor.getDroppedTaskCount());
+			assertEquals(0, executor.getRejectedTaskCount());
+		}
+		finally {
+			blocker.countDown();
+			target.destroy();
+		}
+	}
+
+	public void testTasksRemovedOnShutdownCountedAsDropped() throws Exception {
+		ThreadPoolTaskExecutor target = new ThreadPoolTaskExecutor();
+		target.setCorePoolSize(1);
+		target.setMaxPoolSize(1);
+		target.setQueueCapacity(10);
+		target.afterPropertiesSet();
+		CountDownLatch blocker = occupyPoolThread(target);
+		try {
+			MonitoringTaskExecutor executor = new MonitoringTaskExecutor(target);
+			executor.execute(new NoOpRunnable());
+			executor.execute(new NoOpRunnable());
+			assertEquals(2, executor.getWaitingTaskCount());
+			target.shutdown();
+			assertEquals(0, executor.getWaitingTaskCount());
+			assertEquals(2, executor.getDroppedTaskCount());
+		}
+		finally {
+			blocker.countDown();
+		}
+	}
+
+	public void testTargetPoolSizeSampling() {
+		MonitoringTaskExecutor executor = new MonitoringTaskExecutor(new DeferringTaskExecutor());
+		assertEquals(5, executor.getTargetPoolSize());
+		assertEquals(3, executor.getTargetActiveCount());
+		executor = new MonitoringTaskExecutor(new StubTaskExecutor());
+		assertEquals(-1, executor.getTargetPoolSize());
+		assertEquals(-1, executor.getTargetActiveCount());
+	}
+
+	public void testExportAsMBean() throws Exception {
+		MonitoringTaskExecutor executor = new MonitoringTaskExecutor(new SyncTaskExecutor());
+		executor.execute(new NoOpRunnable());
+		MBeanServer server = MBeanServerFactory.createMBeanServer();
+		try {
+			MBeanExporter exporter = new MBeanExporter();
+			exporter.setServer(server);
+			Map beans = new HashMap();
+			beans.put("spring:name=taskExecutor", executor);
+			exporter.setBeans(beans);
+			exporter.afterPropertiesSet();
+
+			ObjectName name = new ObjectName("spring:name=taskExecutor");
+			assertEquals(new Long(1), server.getAttribute(name, "CompletedTaskCount"));
+			assertEquals(new Integer(-1), server.getAttribute(name, "TargetPoolSize"));
+			assertTrue(((String) server.getAttribute(name, "ExecutionSummary")).startsWith("count=[1]"));
+			server.invoke(name, "resetStatistics", new Object[0], new String[0]);
+			assertEquals(0, executor.getCompletedTaskCount());
+			exporter.destroy();
+		}
+		finally {
+			MBeanServerFactory.releaseMBeanServer(server);
+		}
+	}
+
+
+	private static CountDownLatch occupyPoolThread(TaskExecutor executor) throws InterruptedException {
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					blocker.await();
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return blocker;
+	}
+
+	private static void assertCancelled(FutureTask<Object> future) throws Exception {
+		assertTrue(future.isCancelled());
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Should have thrown CancellationException");
+		}
+		catch (CancellationException ex) {
+			// expected
+		}
+	}
+
+
+	private static class DeferringTaskExecutor implements TaskExecutor {
+
+		private final List tasks = new ArrayList();
+
+		public void execute(Runnable task) {
+			this.tasks.add(task);
+		}
+
+		public void runAll() {
+			for (Iterator it = this.tasks.iterator(); it.hasNext();) {
+				((Runnable) it.next()).run();
+			}
+			this.tasks.clear();
+		}
+
+		public int getPoolSize() {
+			return 5;
+		}
+
+		public int getActiveCount() {
+			return 3;
+		}
+	}
+
+}
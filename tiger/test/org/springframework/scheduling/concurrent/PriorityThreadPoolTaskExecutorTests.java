@@ -0,0 +1,207 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.springframework.core.task.NoOpRunnable;
+import org.springframework.core.task.PriorityTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ * @since 2.5.7
+ */
+public class PriorityThreadPoolTaskExecutorTests extends TestCase {
+
+	private PriorityThreadPoolTaskExecutor executor;
+
+	private final CountDownLatch blocker = new CountDownLatch(1);
+
+	private final CountDownLatch blockerStarted = new CountDownLatch(1);
+
+
+	protected void setUp() {
+		this.executor = new PriorityThreadPoolTaskExecutor();
+		this.executor.setCorePoolSize(1);
+		this.executor.setMaxPoolSize(1);
+		this.executor.setQueueCapacity(10);
+		this.executor.afterPropertiesSet();
+	}
+
+	protected void tearDown() {
+		this.blocker.countDown();
+		this.executor.destroy();
+	}
+
+
+	public void testPendingTasksExecutedInPriorityOrder() throws Exception {
+		occupyPoolThread();
+		List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch done = new CountDownLatch(4);
+		this.executor.execute(new RecordingTask("low", executed, done), PriorityTaskExecutor.PRIORITY_LOW);
+		this.executor.execute(new RecordingTask("default", executed, done));
+		this.executor.execute(new RecordingTask("high1", executed, done), PriorityTaskExecutor.PRIORITY_HIGH);
+		this.executor.execute(new RecordingTask("high2", executed, done), PriorityTaskExecutor.PRIORITY_HIGH);
+		assertEquals(4, this.executor.getQueueSize());
+
+		this.blocker.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("[high1, high2, default, low]", executed.toString());
+	}
+
+	public void testEarlierDeadlineFirstWithinSamePriority() throws Exception {
+		occupyPoolThread();
+		List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch done = new CountDownLatch(3);
+		this.executor.execute(new RecordingTask("none", executed, done), PriorityTaskExecutor.PRIORITY_DEFAULT);
+		this.executor.execute(new RecordingTask("late", executed, done), PriorityTaskExecutor.PRIORITY_DEFAULT, 60000);
+		this.executor.execute(new RecordingTask("early", executed, done), PriorityTaskExecutor.PRIORITY_DEFAULT, 30000);
+
+		this.blocker.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("[early, late, none]", executed.toString());
+	}
+
+	public void testExpiredTaskDroppedAndCancelled() throws Exception {
+		occupyPoolThread();
+		FutureTask<Object> expiring = new FutureTask<Object>(new NoOpRunnable(), null);
+		this.executor.execute(expiring, PriorityTaskExecutor.PRIORITY_HIGH, 10);
+		FutureTask<Object> regular = new FutureTask<Object>(new NoOpRunnable(), null);
+		this.executor.execute(regular, PriorityTaskExecutor.PRIORITY_LOW);
+		Thread.sleep(50);
+
+		this.blocker.countDown();
+		regular.get(5, TimeUnit.SECONDS);
+		assertTrue(expiring.isCancelled());
+		assertEquals(1, this.executor.getExpiredTaskCount());
+	}
+
+	public void testQueueWaitHistogramsPerPriority() throws Exception {
+		occupyPoolThread();
+		CountDownLatch done = new CountDownLatch(3);
+		List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		this.executor.execute(new RecordingTask("a", executed, done), PriorityTaskExecutor.PRIORITY_HIGH);
+		this.executor.execute(new RecordingTask("b", executed, done), PriorityTaskExecutor.PRIORITY_LOW);
+		this.executor.execute(new RecordingTask("c", executed, done), PriorityTaskExecutor.PRIORITY_LOW);
+		Thread.sleep(20);
+
+		this.blocker.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(1, this.executor.getQueueWaitHistograms().get(PriorityTaskExecutor.PRIORITY_HIGH).getCount());
+		assertTrue(this.executor.getQueueWaitHistograms().get(PriorityTaskExecutor.PRIORITY_HIGH).getMaxMillis() >= 20);
+		long[] lowCounts = this.executor.getQueueWaitHistogram(PriorityTaskExecutor.PRIORITY_LOW);
+		assertEquals(this.executor.getQueueWaitHistogramBounds().length + 1, lowCounts.length);
+		long total = 0;
+		for (int i = 0; i < lowCounts.length; i++) {
+			total += lowCounts[i];
+		}
+		assertEquals(2, total);
+		assertNull(this.executor.getQueueWaitHistogram(PriorityTaskExecutor.PRIORITY_DEFAULT));
+		String[] summary = this.executor.getQueueWaitSummary();
+		assertEquals(2, summary.length);
+		assertTrue(summary[0].startsWith("priority=[10]"));
+	}
+
+	public void testBoundedQueueRejectsTasks() throws Exception {
+		occupyPoolThread();
+		for (int i = 0; i < 10; i++) {
+			this.executor.execute(new NoOpRunnable(), PriorityTaskExecutor.PRIORITY_LOW);
+		}
+		try {
+			this.executor.execute(new NoOpRunnable(), PriorityTaskExecutor.PRIORITY_HIGH);
+			fail("Should have thrown TaskRejectedException");
+		}
+		catch (TaskRejectedException ex) {
+			// expected
+		}
+	}
+
+	public void testTimedPollHandsOverExpiredTasksBeforeWaiting() throws Exception {
+		final List<PrioritizedTask> expiredTasks = new ArrayList<PrioritizedTask>();
+		final PrioritizedTask replacement = new PrioritizedTask(new NoOpRunnable(), PriorityTaskExecutor.PRIORITY_DEFAULT);
+		final PriorityTaskQueue queue = new PriorityTaskQueue() {
+			protected void taskExpired(PrioritizedTask task) {
+				expiredTasks.add(task);
+				offer(replacement);
+			}
+		};
+		queue.offer(new PrioritizedTask(new NoOpRunnable(), PriorityTaskExecutor.PRIORITY_DEFAULT, 0));
+		Thread.sleep(10);
+
+		// The replacement offered from the expiry callback must be picked up within the same poll.
+		assertSame(replacement, queue.poll(5, TimeUnit.SECONDS));
+		assertEquals(1, expiredTasks.size());
+		assertEquals(1, queue.getExpiredTaskCount());
+	}
+
+	public void testNonPositiveQueueCapacityNotSupported() {
+		PriorityThreadPoolTaskExecutor executor = new PriorityThreadPoolTaskExecutor();
+		executor.setQueueCapacity(0);
+		try {
+			executor.afterPropertiesSet();
+			fail("Should have thrown IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+
+	private void occupyPoolThread() throws InterruptedException {
+		this.executor.execute(new Runnable() {
+			public void run() {
+				blockerStarted.countDown();
+				try {
+					blocker.await();
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(this.blockerStarted.await(5, TimeUnit.SECONDS));
+	}
+
+
+	private static class RecordingTask implements Runnable {
+
+		private final String name;
+
+		private final List<String> executed;
+
+		private final CountDownLatch done;
+
+		public RecordingTask(String name, List<String> executed, CountDownLatch done) {
+			this.name = name;
+			this.executed = executed;
+			this.done = done;
+		}
+
+		public void run() {
+			this.executed.add(this.name);
+			this.done.countDown();
+		}
+	}
+
+}
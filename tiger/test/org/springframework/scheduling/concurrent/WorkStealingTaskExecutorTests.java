@@ -0,0 +1,290 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.scheduling.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.task.NoOpRunnable;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.util.StopWatch;
+
+/**
+ * @since 2.5.7
+ */
+public class WorkStealingTaskExecutorTests extends TestCase {
+
+	protected static final Log logger = LogFactory.getLog(WorkStealingTaskExecutorTests.class);
+
+	private WorkStealingTaskExecutor executor;
+
+
+	protected void setUp() {
+		this.executor = new WorkStealingTaskExecutor();
+		this.executor.setParallelism(4);
+		this.executor.setBeanName("stealer");
+		this.executor.afterPropertiesSet();
+	}
+
+	protected void tearDown() {
+		this.executor.destroy();
+	}
+
+
+	public void testExecutesTasksInNamedThreads() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(100);
+		final AtomicInteger unnamed = new AtomicInteger();
+		for (int i = 0; i < 100; i++) {
+			this.executor.execute(new Runnable() {
+				public void run() {
+					if (!Thread.currentThread().getName().startsWith("stealer-")) {
+						unnamed.incrementAndGet();
+					}
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(0, unnamed.get());
+		assertEquals(4, this.executor.getPoolSize());
+	}
+
+	public void testSubtasksSubmittedFromWorkerGetStolen() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(200);
+		final CountDownLatch allSubmitted = new CountDownLatch(1);
+		this.executor.execute(new Runnable() {
+			public void run() {
+				// all subtasks go to this worker's own deque
+				for (int i = 0; i < 200; i++) {
+					executor.execute(new Runnable() {
+						public void run() {
+							try {
+								Thread.sleep(1);
+							}
+							catch (InterruptedException ex) {
+								Thread.currentThread().interrupt();
+							}
+							latch.countDown();
+						}
+					});
+				}
+				allSubmitted.countDown();
+			}
+		});
+		assertTrue(allSubmitted.await(5, TimeUnit.SECONDS));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertTrue(this.executor.getStealCount() > 0);
+	}
+
+	public void testFailingTaskDoesNotTerminateWorker() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			this.executor.execute(new Runnable() {
+				public void run() {
+					throw new IllegalStateException("expected");
+				}
+			});
+		}
+		final CountDownLatch latch = new CountDownLatch(10);
+		for (int i = 0; i < 10; i++) {
+			this.executor.execute(new Runnable() {
+				public void run() {
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	public void testQueueCapacity() throws Exception {
+		this.executor.destroy();
+		this.executor = new WorkStealingTaskExecutor();
+		this.executor.setParallelism(1);
+		this.executor.setQueueCapacity(2);
+		this.executor.afterPropertiesSet();
+		final CountDownLatch blocker = new CountDownLatch(1);
+		final CountDownLatch blockerStarted = new CountDownLatch(1);
+		try {
+			this.executor.execute(new Runnable() {
+				public void run() {
+					blockerStarted.countDown();
+					try {
+						blocker.await();
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+			this.executor.execute(new NoOpRunnable());
+			this.executor.execute(new NoOpRunnable());
+			assertEquals(2, this.executor.getQueuedTaskCount());
+			assertEquals(1, this.executor.getActiveCount());
+			try {
+				this.executor.execute(new NoOpRunnable());
+				fail("Should have thrown TaskRejectedException");
+			}
+			catch (TaskRejectedException ex) {
+				// expected
+			}
+		}
+		finally {
+			blocker.countDown();
+		}
+	}
+
+	public void testRejectsTasksAfterShutdown() {
+		this.executor.shutdown();
+		try {
+			this.executor.execute(new NoOpRunnable());
+			fail("Should have thrown TaskRejectedException");
+		}
+		catch (TaskRejectedException ex) {
+			// expected
+		}
+	}
+
+	public void testWaitForTasksToCompleteOnShutdown() throws Exception {
+		this.executor.destroy();
+		this.executor = new WorkStealingTaskExecutor();
+		this.executor.setParallelism(2);
+		this.executor.setWaitForTasksToCompleteOnShutdown(true);
+		this.executor.afterPropertiesSet();
+		final AtomicInteger counter = new AtomicInteger();
+		for (int i = 0; i < 50; i++) {
+			this.executor.execute(new Runnable() {
+				public void run() {
+					try {
+						Thread.sleep(1);
+					}
+					catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+					counter.incrementAndGet();
+				}
+			});
+		}
+		this.executor.shutdown();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (counter.get() < 50 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(50, counter.get());
+		assertEquals(50, this.executor.getCompletedTaskCount());
+	}
+
+	public void testAcceptedTasksCompleteWhenShutdownRacesWithSubmission() throws Exception {
+		this.executor.destroy();
+		this.executor = new WorkStealingTaskExecutor();
+		this.executor.setParallelism(2);
+		this.executor.setWaitForTasksToCompleteOnShutdown(true);
+		this.executor.afterPropertiesSet();
+		final AtomicInteger accepted = new AtomicInteger();
+		final AtomicInteger executed = new AtomicInteger();
+		final Runnable task = new Runnable() {
+			public void run() {
+				executed.incrementAndGet();
+			}
+		};
+		Thread[] submitters = new Thread[4];
+		for (int i = 0; i < submitters.length; i++) {
+			submitters[i] = new Thread() {
+				public void run() {
+					try {
+						while (true) {
+							executor.execute(task);
+							accepted.incrementAndGet();
+						}
+					}
+					catch (TaskRejectedException ex) {
+						// shut down
+					}
+				}
+			};
+			submitters[i].start();
+		}
+		Thread.sleep(50);
+		this.executor.shutdown();
+		for (int i = 0; i < submitters.length; i++) {
+			submitters[i].join(5000);
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (executed.get() < accepted.get() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(accepted.get(), executed.get());
+		assertEquals(0, this.executor.getQueuedTaskCount());
+	}
+
+	public void testFineGrainedTasksComparedToThreadPoolTaskExecutor() throws Exception {
+		ThreadPoolTaskExecutor threadPool = new ThreadPoolTaskExecutor();
+		threadPool.setCorePoolSize(4);
+		threadPool.setMaxPoolSize(4);
+		threadPool.afterPropertiesSet();
+		StopWatch sw = new StopWatch("Fine-grained tasks from 4 submitters");
+		try {
+			for (int i = 0; i < 3; i++) {
+				sw.start("ThreadPoolTaskExecutor");
+				runFineGrainedTasks(threadPool, 4, 20000);
+				sw.stop();
+				sw.start("WorkStealingTaskExecutor");
+				runFineGrainedTasks(this.executor, 4, 20000);
+				sw.stop();
+			}
+		}
+		finally {
+			threadPool.destroy();
+		}
+		// timings vary too much between environments to assert on them
+		if (logger.isInfoEnabled()) {
+			logger.info(sw.prettyPrint());
+		}
+	}
+
+	private void runFineGrainedTasks(final TaskExecutor executor, int submitters, final int tasksPerSubmitter)
+			throws InterruptedException {
+
+		final CountDownLatch latch = new CountDownLatch(submitters * tasksPerSubmitter);
+		final Runnable task = new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+		Thread[] threads = new Thread[submitters];
+		for (int i = 0; i < submitters; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < tasksPerSubmitter; j++) {
+						executor.execute(task);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < submitters; i++) {
+			threads[i].join();
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+	}
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2002-2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.web.filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import junit.framework.TestCase;
+
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+/**
+ * @since 2.5.7
+ */
+public class ResponseCompressionFilterTests extends TestCase {
+
+	private static final long SLOW_WRITE_MILLIS = 100;
+
+	private ResponseCompressionFilter filter;
+
+
+	@Override
+	protected void setUp() throws Exception {
+		this.filter = new ResponseCompressionFilter();
+		this.filter.setMinCompressionSize(100);
+		this.filter.init(new MockFilterConfig(new MockServletContext(), "compression"));
+	}
+
+
+	public void testGzipCompression() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/data");
+		request.addHeader("Accept-Encoding", "gzip, deflate");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		String content = repeat("Hello compressed World! ", 200);
+
+		this.filter.doFilter(request, response, new ContentWritingFilterChain("text/html", content, false));
+
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		byte[] compressed = response.getContentAsByteArray();
+		assertTrue(compressed.length < content.length());
+		assertEquals(content, read(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+		assertEquals(1, this.filter.getCompressedResponseCount());
+		assertEquals(content.length(), this.filter.getUncompressedByteCount());
+		assertEquals(compressed.length, this.filter.getCompressedByteCount());
+		assertTrue(this.filter.getCompressionRatio() < 1.0);
+	}
+
+	public void testDeflateCompressionWithWriter() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/data");
+		request.addHeader("Accept-Encoding", "gzip;q=0, deflate");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		String content = repeat("{\"key\":\"value\"}", 100);
+
+		this.filter.doFilter(request, response, new ContentWritingFilterChain("application/json", content, true));
+
+		assertEquals("deflate", response.getHeader("Content-Encoding"));
+		byte[] compressed = response.getContentAsByteArray();
+		assertEquals(content, read(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+	}
+
+	public void testNoCompressionWithoutAcceptEncoding() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/data");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		String content = repeat("Hello World! ", 100);
+
+		this.filter.doFilter(request, response, new ContentWritingFilterChain("text/html", content, false));
+
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertEquals(content, response.getContentAsString());
+		assertEquals(0, this.filter.getCompressedResponseCount());
+	}
+
+	public void testNoCompressionBelowThreshold() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/data");
+		request.addHeader("Accept-Encoding", "gzip");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		this.filter.doFilter(request, response, new ContentWritingFilterChain("text/html", "small", false));
+
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals("Accept-Encoding", response.getHeader("Vary"));
+		assertEquals(5, response.getContentLength());
+		assertEquals("small", response.getContentAsString());
+	}
+
+	public void testNoCompressionForExcludedContentType() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/logo.png");
+		request.addHeader("Accept-Encoding", "gzip");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		String content = repeat("x", 1000);
+
+		this.filter.doFilter(request, response, new ContentWritingFilterChain("image/png", content, false));
+
+		assertNull(response.getHeader("Content-Encoding"));
+		assertEquals(content, response.getContentAsString());
+	}
+
+	public void testNoCompressionForEncodedContent() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/data");
+		request.addHeader("Accept-Encoding", "gzip");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		final String content = repeat("x", 1000);
+
+		this.filter.doFilter(request, response, new FilterChain() {
+			public void doFilter(ServletRequest req, ServletResponse resp) throws IOException {
+				((javax.servlet.http.HttpServletResponse) resp).setHeader("Content-Encoding", "identity");
+				resp.getOutputStream().write(content.getBytes());
+			}
+		});
+
+		assertEquals("identity", response.getHeader("Content-Encoding"));
+		assertEquals(content, response.getContentAsString());
+	}
+
+	public void testCompressionTimeExcludesContainerOutput() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/data");
+		request.addHeader("Accept-Encoding", "gzip");
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		HttpServletResponseWrapper slowResponse = new HttpServletResponseWrapper(response) {
+			public ServletOutputStream getOutputStream() {
+				return new ServletOutputStream() {
+					public void write(int b) throws IOException {
+						sleep();
+						response.getOutputStream().write(b);
+					}
+					public void write(byte[] b, int off, int len) throws IOException {
+						sleep();
+						response.getOutputStream().write(b, off, len);
+					}
+				};
+			}
+		};
+		String content = repeat("Hello compressed World! ", 200);
+
+		this.filter.doFilter(request, slowResponse, new ContentWritingFilterChain("text/html", content, false));
+
+		assertEquals(content, read(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+		assertTrue("Compression time includes output: " + this.filter.getCompressionTimeMillis() + " ms",
+				this.filter.getCompressionTimeMillis() < SLOW_WRITE_MILLIS);
+	}
+
+	public void testChainExceptionPropagatedAfterCompressionStarted() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/data");
+		request.addHeader("Accept-Encoding", "gzip");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		final String content = repeat("x", 1000);
+
+		try {
+			this.filter.doFilter(request, response, new FilterChain() {
+				public void doFilter(ServletRequest req, ServletResponse resp) throws IOException, ServletException {
+					resp.getOutputStream().write(content.getBytes());
+					throw new ServletException("chain failure");
+				}
+			});
+			fail("Should have thrown ServletException");
+		}
+		catch (ServletException ex) {
+			assertEquals("chain failure", ex.getMessage());
+		}
+		assertEquals("gzip", response.getHeader("Content-Encoding"));
+		assertEquals(0, this.filter.getCompressedResponseCount());
+	}
+
+	private static void sleep() throws IOException {
+		try {
+			Thread.sleep(SLOW_WRITE_MILLIS);
+		}
+		catch (InterruptedException ex) {
+			throw new IOException("Interrupted");
+		}
+	}
+
+	private static String repeat(String str, int times) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < times; i++) {
+			sb.append(str);
+		}
+		return sb.toString();
+	}
+
+	private static String read(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int count;
+		while ((count = is.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toString();
+	}
+
+
+	private static class ContentWritingFilterChain implements FilterChain {
+
+		private final String contentType;
+
+		private final String content;
+
+		private final boolean useWriter;
+
+		public ContentWritingFilterChain(String contentType, String content, boolean useWriter) {
+			this.contentType = contentType;
+			this.content = content;
+			this.useWriter = useWriter;
+		}
+
+		public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+			response.setContentType(this.contentType);
+			if (this.useWriter) {
+				response.getWriter().write(this.content);
+			}
+			else {
+				// write in chunks to exercise streaming past the threshold
+				byte[] bytes = this.content.getBytes();
+				for (int i = 0; i < bytes.length; i += 64) {
+					response.getOutputStream().write(bytes, i, Math.min(64, bytes.length - i));
+				}
+			}
+		}
+	}
+
+}
@@ -25,9 +25,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -71,6 +75,7 @@ import org.springframework.web.servlet.DispatcherServlet;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.View;
 import org.springframework.web.servlet.ViewResolver;
+import org.springframework.web.servlet.handler.FutureResultHandlerInterceptorAdapter;
 import org.springframework.web.servlet.mvc.AbstractController;
 import org.springframework.web.servlet.mvc.multiaction.InternalPathMethodNameResolver;
 import org.springframework.web.servlet.mvc.support.ControllerClassNameHandlerMapping;
@@ -672,6 +677,157 @@ public class ServletAnnotationControllerTests extends TestCase {
 		}
 	}
 
+	public void testFutureHandlerMethod() throws Exception {
+		final MyFutureResultInterceptor interceptor = new MyFutureResultInterceptor();
+		DispatcherServlet servlet = createFutureResultServlet(interceptor, -1);
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/future");
+		request.addParameter("name", "myName");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		servlet.service(request, response);
+		assertEquals("view-myName", response.getContentAsString());
+		assertEquals("pre-waiting-completed-post-after", interceptor.log.toString());
+		assertNull(request.getAttribute(DispatcherServlet.FUTURE_RESULT_INTERCEPTORS_ATTRIBUTE));
+	}
+
+	public void testFutureHandlerMethodWithException() throws Exception {
+		final MyFutureResultInterceptor interceptor = new MyFutureResultInterceptor();
+		DispatcherServlet servlet = createFutureResultServlet(interceptor, -1);
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/futureFailure");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			servlet.service(request, response);
+			fail("Should have thrown NestedServletException");
+		}
+		catch (NestedServletException ex) {
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+		}
+		assertEquals("pre-waiting-failed-after", interceptor.log.toString());
+	}
+
+	public void testFutureHandlerMethodWithTimeout() throws Exception {
+		final MyFutureResultInterceptor interceptor = new MyFutureResultInterceptor();
+		DispatcherServlet servlet = createFutureResultServlet(interceptor, 50);
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/futureNever");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		servlet.service(request, response);
+		assertEquals(503, response.getStatus());
+		assertTrue(MyFutureController.neverCompleted.isCancelled());
+		assertEquals("pre-waiting-failed-post-after", interceptor.log.toString());
+	}
+
+	@SuppressWarnings("serial")
+	private DispatcherServlet createFutureResultServlet(
+			final MyFutureResultInterceptor interceptor, final long futureResultTimeout)
+			throws ServletException {
+
+		DispatcherServlet servlet = new DispatcherServlet() {
+			protected WebApplicationContext createWebApplicationContext(WebApplicationContext parent) {
+				GenericWebApplicationContext wac = new GenericWebApplicationContext();
+				wac.registerBeanDefinition("controller", new RootBeanDefinition(MyFutureController.class));
+				RootBeanDefinition mappingDef = new RootBeanDefinition(DefaultAnnotationHandlerMapping.class);
+				mappingDef.getPropertyValues().addPropertyValue("interceptors", new Object[] {interceptor});
+				wac.registerBeanDefinition("handlerMapping", mappingDef);
+				RootBeanDefinition adapterDef = new RootBeanDefinition(AnnotationMethodHandlerAdapter.class);
+				adapterDef.getPropertyValues().addPropertyValue("futureResultTimeout", new Long(futureResultTimeout));
+				wac.registerBeanDefinition("handlerAdapter", adapterDef);
+				wac.registerBeanDefinition("viewResolver", new RootBeanDefinition(FutureTestViewResolver.class));
+				wac.refresh();
+				return wac;
+			}
+		};
+		servlet.init(new MockServletConfig());
+		return servlet;
+	}
+
+
+	@Controller
+	private static class MyFutureController {
+
+		public static FutureTask<String> neverCompleted;
+
+		@RequestMapping("/future")
+		public Future<String> handle(@RequestParam("name") final String name, Model model) {
+			model.addAttribute("name", name);
+			FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+				public String call() {
+					return "view";
+				}
+			});
+			new Thread(future).start();
+			return future;
+		}
+
+		@RequestMapping("/futureFailure")
+		public Future<String> handleFailure() {
+			FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+				public String call() {
+					throw new IllegalStateException("future failure");
+				}
+			});
+			new Thread(future).start();
+			return future;
+		}
+
+		@RequestMapping("/futureNever")
+		public Future<String> handleNever() {
+			neverCompleted = new FutureTask<String>(new Callable<String>() {
+				public String call() {
+					return "view";
+				}
+			});
+			return neverCompleted;
+		}
+	}
+
+
+	private static class MyFutureResultInterceptor extends FutureResultHandlerInterceptorAdapter {
+
+		public final StringBuilder log = new StringBuilder();
+
+		public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+			this.log.append("pre");
+			return true;
+		}
+
+		public void beforeFutureResultWait(HttpServletRequest request, HttpServletResponse response, Object handler) {
+			this.log.append("-waiting");
+		}
+
+		public void afterFutureResultWait(
+				HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+			this.log.append(ex != null ? "-failed" : "-completed");
+		}
+
+		public void postHandle(
+				HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView mv) {
+			this.log.append("-post");
+		}
+
+		public void afterCompletion(
+				HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+			this.log.append("-after");
+		}
+	}
+
+
+	private static class FutureTestViewResolver implements ViewResolver {
+
+		public View resolveViewName(final String viewName, Locale locale) {
+			return new View() {
+				public String getContentType() {
+					return null;
+				}
+				public void render(Map model, HttpServletRequest request, HttpServletResponse response)
+						throws Exception {
+					response.getWriter().write(viewName + "-" + model.get("name"));
+				}
+			};
+		}
+	}
+
 
 	@RequestMapping("/myPath.do")
 	private static class MyController extends AbstractController {